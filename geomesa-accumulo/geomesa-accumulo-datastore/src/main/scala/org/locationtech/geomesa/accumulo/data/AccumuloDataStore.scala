@@ -88,6 +88,8 @@ class AccumuloDataStore(val connector: Connector, override val config: AccumuloD
     */
   def auths: Authorizations = new Authorizations(config.authProvider.getAuthorizations.asScala: _*)
 
+  override def getAuthorizations: Seq[String] = config.authProvider.getAuthorizations.asScala
+
   @deprecated("Use connector.tableOperations()")
   lazy val tableOps: TableOperations = connector.tableOperations()
 
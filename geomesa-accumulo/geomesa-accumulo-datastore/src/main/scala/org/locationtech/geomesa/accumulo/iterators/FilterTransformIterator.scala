@@ -19,6 +19,7 @@ import org.geotools.filter.text.ecql.ECQL
 import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
 import org.locationtech.geomesa.features.kryo.KryoBufferSimpleFeature
 import org.locationtech.geomesa.index.api.GeoMesaFeatureIndex
+import org.locationtech.geomesa.index.filters.KryoBufferFilter
 import org.locationtech.geomesa.index.iterators.{IteratorCache, SamplingIterator}
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
@@ -29,7 +30,8 @@ import org.opengis.filter.Filter
  *   a) evaluate the feature against an optional filter
  *   b) apply an optional transform
  *
- * Uses lazy evaluation of attributes and binary transforms when possible.
+ * Uses lazy evaluation of attributes, filters evaluated against the serialized bytes,
+ * and binary transforms when possible.
  */
 class FilterTransformIterator extends SortedKeyValueIterator[Key, Value] with SamplingIterator with LazyLogging {
 
@@ -39,7 +41,9 @@ class FilterTransformIterator extends SortedKeyValueIterator[Key, Value] with Sa
   val topValue: Value = new Value()
 
   var sft: SimpleFeatureType = _
-  var filter: SimpleFeature => Boolean = _
+  var cql: Option[Filter] = None
+  var sampling: Option[SimpleFeature => Boolean] = None
+  var filter: KryoBufferSimpleFeature => Boolean = _
 
   var reusableSf: KryoBufferSimpleFeature = _
   var hasTransform: Boolean = _
@@ -72,11 +76,15 @@ class FilterTransformIterator extends SortedKeyValueIterator[Key, Value] with Sa
     }
     hasTransform = transform.isDefined
 
-    val cql = Option(options.get(CqlOpt)).map(IteratorCache.filter(sft, spec, _))
+    cql = Option(options.get(CqlOpt)).map(IteratorCache.filter(sft, spec, _))
     // TODO: can we optimize the configuration of sampling
-    val sampling = sample(options)
+    sampling = sample(options)
+    filter = createFilter()
+  }
 
-    filter = (cql, sampling) match {
+  // note: buffer filters hold state, so each iterator instance needs its own
+  private def createFilter(): KryoBufferSimpleFeature => Boolean = {
+    (cql.map(KryoBufferFilter(sft, _)), sampling) match {
       case (None, None)       => _ => true
       case (Some(c), None)    => c.evaluate
       case (None, Some(s))    => s
@@ -123,7 +131,9 @@ class FilterTransformIterator extends SortedKeyValueIterator[Key, Value] with Sa
     val iter = new FilterTransformIterator
     iter.source = source.deepCopy(env)
     iter.sft = sft
-    iter.filter = filter
+    iter.cql = cql
+    iter.sampling = sampling
+    iter.filter = iter.createFilter()
     iter.reusableSf = reusableSf.copy()
     iter.hasTransform = hasTransform
     iter
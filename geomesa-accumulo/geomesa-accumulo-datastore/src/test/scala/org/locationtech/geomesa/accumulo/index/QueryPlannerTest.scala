@@ -20,8 +20,8 @@ import org.locationtech.geomesa.accumulo.data.AccumuloIndexAdapter.AccumuloResul
 import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
 import org.locationtech.geomesa.features.{ScalaSimpleFeature, SerializationType, SimpleFeatureSerializers}
 import org.locationtech.geomesa.index.index.id.IdIndex
+import org.locationtech.geomesa.index.utils.ExternalSortingSimpleFeatureIterator
 import org.locationtech.geomesa.utils.index.IndexMode
-import org.locationtech.geomesa.utils.iterators.SortingSimpleFeatureIterator
 import org.opengis.filter.sort.SortBy
 import org.specs2.mutable.Specification
 import org.specs2.runner.JUnitRunner
@@ -46,7 +46,7 @@ class QueryPlannerTest extends Specification with TestWithDataStore {
       val query = new Query(sft.getTypeName)
       query.setSortBy(Array(SortBy.NATURAL_ORDER))
       val result = planner.runQuery(sft, query)
-      result must beAnInstanceOf[SortingSimpleFeatureIterator]
+      result must beAnInstanceOf[ExternalSortingSimpleFeatureIterator]
     }
 
     "not return a LazySortedIterator when the query does not have an order by clause" >> {
@@ -55,7 +55,7 @@ class QueryPlannerTest extends Specification with TestWithDataStore {
 
       val result = planner.runQuery(sft, query)
 
-      result must not (beAnInstanceOf[SortingSimpleFeatureIterator])
+      result must not (beAnInstanceOf[ExternalSortingSimpleFeatureIterator])
     }
 
     "decode and set visibility properly" >> {
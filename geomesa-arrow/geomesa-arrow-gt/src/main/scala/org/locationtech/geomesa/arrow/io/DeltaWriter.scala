@@ -236,15 +236,25 @@ object DeltaWriter extends StrictLogging {
             (deltas: CloseableIterator[Array[Byte]])
             (implicit allocator: BufferAllocator): CloseableIterator[Array[Byte]] = {
 
-    val threaded = try { deltas.toArray.groupBy(Longs.fromByteArray).values.toArray } finally { deltas.close() }
-
-    logger.trace(s"merging delta batches from ${threaded.length} thread(s)")
-
-    val dictionaries = mergeDictionaries(sft, dictionaryFields, threaded, encoding)
-
-    sort match {
-      case None => reduceNoSort(sft, dictionaryFields, encoding, dictionaries, batchSize, threaded)
-      case Some((s, r)) => reduceWithSort(sft, dictionaryFields, encoding, dictionaries, s, r, batchSize, threaded)
+    if (dictionaryFields.isEmpty && sort.isEmpty) {
+      // there is nothing to merge, so we can stream the batches back as they arrive
+      logger.trace("streaming delta batches without merging")
+      val merged = MergedDictionaries(Map.empty, Map.empty)
+      val result = reduceNoSort(sft, dictionaryFields, encoding, merged, batchSize, Iterator.single(deltas))
+      CloseableIterator(result, { CloseWithLogging(result); CloseWithLogging(deltas) })
+    } else {
+      val threaded = try { deltas.toArray.groupBy(Longs.fromByteArray).values.toArray } finally { deltas.close() }
+
+      logger.trace(s"merging delta batches from ${threaded.length} thread(s)")
+
+      val dictionaries = mergeDictionaries(sft, dictionaryFields, threaded, encoding)
+
+      sort match {
+        case None =>
+          reduceNoSort(sft, dictionaryFields, encoding, dictionaries, batchSize, threaded.iterator.map(_.iterator))
+        case Some((s, r)) =>
+          reduceWithSort(sft, dictionaryFields, encoding, dictionaries, s, r, batchSize, threaded)
+      }
     }
   }
 
@@ -256,7 +266,7 @@ object DeltaWriter extends StrictLogging {
     * @param encoding simple feature encoding
     * @param mergedDictionaries merged dictionaries and batch mappings
     * @param batchSize record batch size
-    * @param threadedBatches record batches, grouped by threading key
+    * @param threadedBatches record batches, grouped by threading key. Batches are read lazily
     * @return
     */
   private def reduceNoSort(sft: SimpleFeatureType,
@@ -264,7 +274,7 @@ object DeltaWriter extends StrictLogging {
                            encoding: SimpleFeatureEncoding,
                            mergedDictionaries: MergedDictionaries,
                            batchSize: Int,
-                           threadedBatches: Array[Array[Array[Byte]]])
+                           threadedBatches: Iterator[Iterator[Array[Byte]]])
                           (implicit allocator: BufferAllocator): CloseableIterator[Array[Byte]] = {
 
     val MergedDictionaries(dictionaries, dictionaryMappings) = mergedDictionaries
@@ -312,7 +322,7 @@ object DeltaWriter extends StrictLogging {
         }
       }
 
-      private val threadIterator = threadedBatches.iterator
+      private val threadIterator = threadedBatches
       private var threadIndex = -1
       private var batches: Iterator[Array[Byte]] = Iterator.empty
       private var mappings: Map[String, scala.collection.Map[Integer, Integer]] = _
@@ -374,7 +384,7 @@ object DeltaWriter extends StrictLogging {
           threadIndex += 1
           // set the mappings for this thread
           mappings = dictionaryMappings.map { case (f, m) => (f, m(threadIndex)) }
-          batches = threadIterator.next.iterator
+          batches = threadIterator.next
           loadNextBatch()
         } else {
           false
@@ -123,6 +123,35 @@ class DeltaWriterTest extends Specification {
         testLineReader(reader)
       }
     }
+    "stream batches without dictionaries" >> {
+      val encoding = SimpleFeatureEncoding.min(includeFids = true)
+      val result = ArrayBuffer.empty[Array[Byte]]
+
+      WithClose(new DeltaWriter(lineSft, Seq.empty, encoding, None, 10)) { writer =>
+        result.append(writer.encode(lineFeatures.drop(0).toArray, 3))
+        result.append(writer.encode(lineFeatures.drop(3).toArray, 5))
+        result.append(writer.encode(lineFeatures.drop(8).toArray, 2))
+      }
+
+      var read = 0
+      val deltas = result.iterator.map { bytes => read += 1; bytes }
+
+      val bytes = WithClose(DeltaWriter.reduce(lineSft, Seq.empty, encoding, None, 3)(deltas)) { iter =>
+        val out = ArrayBuffer.empty[Array[Byte]]
+        out.append(iter.next()) // header
+        out.append(iter.next()) // first record batch
+        // only the first delta should have been read
+        read mustEqual 1
+        iter.foreach(out.append(_))
+        read mustEqual 3
+        out.foldLeft(Array.empty[Byte])(_ ++ _)
+      }
+
+      WithClose(SimpleFeatureArrowFileReader.streaming(() => new ByteArrayInputStream(bytes))) { reader =>
+        reader.dictionaries must beEmpty
+        testLineReader(reader)
+      }
+    }
     "work with sorted line strings" >> {
       val encoding = SimpleFeatureEncoding.min(includeFids = true)
       val result = ArrayBuffer.empty[Array[Byte]]
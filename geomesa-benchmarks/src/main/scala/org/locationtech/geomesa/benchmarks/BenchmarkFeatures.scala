@@ -0,0 +1,97 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.util.Date
+
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.text.WKTUtils
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+import scala.util.Random
+
+/**
+  * Representative schemas and features shared by the benchmark suites. Features are generated from a
+  * fixed seed, so that results are comparable between runs and releases
+  */
+object BenchmarkFeatures {
+
+  val Seed = 42L
+
+  // 2018-01-01T00:00:00Z
+  val MinDate: Long = 1514764800000L
+  // one year of data
+  val DateRange: Long = 365L * 24 * 60 * 60 * 1000
+
+  val PointSft: SimpleFeatureType =
+    SimpleFeatureTypes.createType("bench-points",
+      "name:String:index=true,age:Int,speed:Double,track:String,dtg:Date,*geom:Point:srid=4326")
+
+  val PolygonSft: SimpleFeatureType =
+    SimpleFeatureTypes.createType("bench-polygons",
+      "name:String:index=true,area:Double,dtg:Date,*geom:Polygon:srid=4326")
+
+  val JsonSft: SimpleFeatureType =
+    SimpleFeatureTypes.createType("bench-json",
+      (0 until 4).map(i => s"json$i:String:json=true").mkString("", ",", ",") +
+          (0 until 16).map(i => s"attr$i:String").mkString("", ",", ",") +
+          "dtg:Date,*geom:Point:srid=4326")
+
+  /**
+    * Look up a benchmark schema by name
+    *
+    * @param name one of 'points', 'polygons' or 'json'
+    * @return
+    */
+  def sft(name: String): SimpleFeatureType = name match {
+    case "points"   => PointSft
+    case "polygons" => PolygonSft
+    case "json"     => JsonSft
+    case _ => throw new IllegalArgumentException(s"Unknown benchmark schema '$name'")
+  }
+
+  /**
+    * Create features for one of the benchmark schemas
+    *
+    * @param sft simple feature type, one of the types defined in this object
+    * @param count number of features to create
+    * @return
+    */
+  def features(sft: SimpleFeatureType, count: Int): Array[SimpleFeature] = {
+    val random = new Random(Seed)
+    Array.tabulate(count) { i =>
+      val dtg = new Date(MinDate + (random.nextDouble() * DateRange).toLong)
+      val x = random.nextDouble() * 360d - 180d
+      val y = random.nextDouble() * 180d - 90d
+      val sf = if (sft eq PointSft) {
+        ScalaSimpleFeature.create(sft, s"$i", s"name${i % 100}", Int.box(i % 150), Double.box(random.nextDouble() * 30),
+          s"track${i % 1000}", dtg, s"POINT($x $y)")
+      } else if (sft eq PolygonSft) {
+        val w = random.nextDouble() * 2
+        val h = random.nextDouble() * 2
+        val xmax = math.min(180d, x + w)
+        val ymax = math.min(90d, y + h)
+        val polygon = WKTUtils.read(s"POLYGON(($x $y, $xmax $y, $xmax $ymax, $x $ymax, $x $y))")
+        ScalaSimpleFeature.create(sft, s"$i", s"name${i % 100}", Double.box(w * h), dtg, polygon)
+      } else if (sft eq JsonSft) {
+        val json = Seq.tabulate(4)(j => json(random, i, j))
+        val attributes = Seq.tabulate(16)(j => s"value-$i-$j")
+        ScalaSimpleFeature.create(sft, s"$i", json ++ attributes ++ Seq(dtg, s"POINT($x $y)"): _*)
+      } else {
+        throw new IllegalArgumentException(s"Unknown benchmark schema '${sft.getTypeName}'")
+      }
+      sf
+    }
+  }
+
+  private def json(random: Random, i: Int, j: Int): String =
+    s"""{"id":"$i-$j","count":${random.nextInt(1000)},"score":${random.nextDouble()},""" +
+        s""""tags":["a$j","b${i % 10}","c"],"nested":{"name":"n$i","values":[1,2,3],"flag":${random.nextBoolean()}}}"""
+}
@@ -0,0 +1,72 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.nio.{ByteBuffer, ByteOrder}
+import java.util.concurrent.TimeUnit
+
+import org.locationtech.geomesa.index.utils.bin.BinSorter
+import org.openjdk.jmh.annotations._
+
+import scala.util.Random
+
+/**
+  * Benchmarks for sorting aggregated bin records
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class BinSorterBenchmark {
+
+  /**
+    * Number of bin records per batch
+    */
+  @Param(Array("1000", "100000"))
+  var records: Int = _
+
+  /**
+    * Size of each bin record - 16 for basic records, or 24 with labels
+    */
+  @Param(Array("16", "24"))
+  var binSize: Int = _
+
+  private var unsorted: Array[Byte] = _
+  private var bytes: Array[Byte] = _
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val random = new Random(BenchmarkFeatures.Seed)
+    val buffer = ByteBuffer.allocate(records * binSize).order(ByteOrder.LITTLE_ENDIAN)
+    var i = 0
+    while (i < records) {
+      buffer.putInt(random.nextInt(1000)) // track id
+      buffer.putInt(random.nextInt(Int.MaxValue)) // dtg, in seconds
+      buffer.putFloat(random.nextFloat() * 180f - 90f) // lat
+      buffer.putFloat(random.nextFloat() * 360f - 180f) // lon
+      if (binSize == 24) {
+        buffer.putLong(random.nextLong()) // label
+      }
+      i += 1
+    }
+    unsorted = buffer.array()
+    bytes = Array.ofDim[Byte](unsorted.length)
+  }
+
+  @Setup(Level.Invocation)
+  def reset(): Unit = System.arraycopy(unsorted, 0, bytes, 0, unsorted.length)
+
+  @Benchmark
+  def quickSort(): Array[Byte] = {
+    BinSorter.quickSort(bytes, 0, bytes.length - binSize, binSize)
+    bytes
+  }
+}
@@ -0,0 +1,75 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.locationtech.geomesa.curve.{BinnedTime, TimePeriod, XZ2SFC, Z3SFC}
+import org.locationtech.sfcurve.IndexRange
+import org.openjdk.jmh.annotations._
+
+/**
+  * Benchmarks for space filling curve range generation, as used during query planning
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class CurveRangesBenchmark {
+
+  /**
+    * Query bounding box size, in degrees per side
+    */
+  @Param(Array("0.1", "1", "10"))
+  var size: Double = _
+
+  /**
+    * Number of days covered by a query
+    */
+  @Param(Array("1", "7", "90"))
+  var days: Int = _
+
+  /**
+    * Target number of ranges, i.e. 'geomesa.scan.ranges.target'
+    */
+  @Param(Array("2000"))
+  var target: Int = _
+
+  private val z3 = Z3SFC(TimePeriod.Week)
+  private val xz2 = XZ2SFC(12.toShort)
+
+  private var xy: Seq[(Double, Double, Double, Double)] = _
+  private var times: Seq[(Long, Long)] = _
+
+  @Setup
+  def setup(): Unit = {
+    xy = Seq((-75d, 35d, -75d + size, 35d + size))
+    // break the interval into time bins the same way the z3 key space does
+    val toBinnedTime = BinnedTime.timeToBinnedTime(TimePeriod.Week)
+    val start = toBinnedTime(BenchmarkFeatures.MinDate + 3600000L)
+    val end = toBinnedTime(BenchmarkFeatures.MinDate + days * 86400000L)
+    val maxOffset = z3.time.max.toLong
+    times = if (start.bin == end.bin) { Seq((start.offset, end.offset)) } else {
+      val inner = Seq.fill(end.bin - start.bin - 1)(z3.wholePeriod.head)
+      Seq((start.offset, maxOffset)) ++ inner ++ Seq((0L, end.offset))
+    }
+  }
+
+  @Benchmark
+  def z3Ranges(): Seq[IndexRange] = {
+    // z3 ranges are computed per time bin
+    val target = Some(math.max(1, this.target / times.length))
+    times.flatMap(t => z3.ranges(xy, Seq(t), 64, target))
+  }
+
+  @Benchmark
+  def xz2Ranges(): Seq[IndexRange] = xz2.ranges(xy, Some(target))
+}
@@ -0,0 +1,75 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.geotools.filter.text.ecql.ECQL
+import org.locationtech.geomesa.filter.factory.FastFilterFactory
+import org.opengis.feature.simple.SimpleFeature
+import org.opengis.filter.Filter
+import org.openjdk.jmh.annotations._
+
+/**
+  * Benchmarks for filter evaluation, comparing the default geotools filters to
+  * filters optimized through the fast filter factory
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class FilterEvaluationBenchmark {
+
+  import FilterEvaluationBenchmark.Filters
+
+  @Param(Array("bbox", "bbox-dtg", "attribute", "in", "complex", "polygon-intersects"))
+  var filter: String = _
+
+  private var features: Array[SimpleFeature] = _
+
+  private var geotools: Filter = _
+  private var optimized: Filter = _
+
+  private var i = 0
+
+  @Setup
+  def setup(): Unit = {
+    val sft = if (filter.startsWith("polygon")) { BenchmarkFeatures.PolygonSft } else { BenchmarkFeatures.PointSft }
+    features = BenchmarkFeatures.features(sft, 1024)
+    geotools = ECQL.toFilter(Filters(filter))
+    optimized = FastFilterFactory.toFilter(sft, Filters(filter))
+  }
+
+  private def nextFeature(): SimpleFeature = {
+    i = (i + 1) & 1023
+    features(i)
+  }
+
+  @Benchmark
+  def evaluateGeoTools(): Boolean = geotools.evaluate(nextFeature())
+
+  @Benchmark
+  def evaluateOptimized(): Boolean = optimized.evaluate(nextFeature())
+}
+
+object FilterEvaluationBenchmark {
+
+  private val Filters = Map(
+    "bbox"       -> "bbox(geom,-120,-45,30,45)",
+    "bbox-dtg"   -> "bbox(geom,-120,-45,30,45) AND dtg DURING 2018-02-01T00:00:00.000Z/2018-06-01T00:00:00.000Z",
+    "attribute"  -> "name = 'name10'",
+    "in"         -> "track IN ('track1','track10','track100','track500','track999')",
+    "complex"    ->
+        ("(name = 'name10' OR name = 'name20' OR name = 'name30') AND age > 50 AND " +
+            "bbox(geom,-120,-45,30,45) AND dtg DURING 2018-02-01T00:00:00.000Z/2018-06-01T00:00:00.000Z"),
+    "polygon-intersects" -> "intersects(geom,POLYGON((-120 -45, 30 -45, 30 45, -120 45, -120 -45)))"
+  )
+}
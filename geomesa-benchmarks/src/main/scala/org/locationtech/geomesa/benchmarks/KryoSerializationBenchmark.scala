@@ -0,0 +1,81 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
+import org.locationtech.geomesa.features.kryo.KryoFeatureSerializer
+import org.opengis.feature.simple.SimpleFeature
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+  * Benchmarks for kryo serialization, active and lazy deserialization
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+class KryoSerializationBenchmark {
+
+  @Param(Array("points", "polygons", "json"))
+  var schema: String = _
+
+  private var features: Array[SimpleFeature] = _
+  private var serialized: Array[Array[Byte]] = _
+
+  private var serializer: KryoFeatureSerializer = _
+  private var lazySerializer: KryoFeatureSerializer = _
+
+  private var i = 0
+
+  @Setup
+  def setup(): Unit = {
+    val sft = BenchmarkFeatures.sft(schema)
+    features = BenchmarkFeatures.features(sft, 1024)
+    serializer = KryoFeatureSerializer(sft)
+    lazySerializer = KryoFeatureSerializer(sft, SerializationOptions.builder.`lazy`.immutable.build)
+    serialized = features.map(serializer.serialize)
+  }
+
+  private def nextIndex(): Int = {
+    i = (i + 1) & 1023
+    i
+  }
+
+  @Benchmark
+  def serialize(): Array[Byte] = serializer.serialize(features(nextIndex()))
+
+  @Benchmark
+  def deserialize(bh: Blackhole): Unit = {
+    val sf = serializer.deserialize(serialized(nextIndex()))
+    bh.consume(sf.getDefaultGeometry)
+    bh.consume(sf.getAttribute("dtg"))
+  }
+
+  @Benchmark
+  def deserializeLazy(bh: Blackhole): Unit = {
+    val sf = lazySerializer.deserialize(serialized(nextIndex()))
+    bh.consume(sf.getDefaultGeometry)
+    bh.consume(sf.getAttribute("dtg"))
+  }
+
+  @Benchmark
+  def deserializeAll(bh: Blackhole): Unit = {
+    val sf = serializer.deserialize(serialized(nextIndex()))
+    var j = 0
+    while (j < sf.getAttributeCount) {
+      bh.consume(sf.getAttribute(j))
+      j += 1
+    }
+  }
+}
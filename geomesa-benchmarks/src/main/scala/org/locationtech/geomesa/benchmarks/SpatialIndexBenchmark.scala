@@ -0,0 +1,88 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.benchmarks
+
+import java.util.concurrent.TimeUnit
+
+import org.locationtech.geomesa.utils.index.{BucketIndex, SpatialIndex, StripedGridIndex}
+import org.locationtech.jts.geom.{Coordinate, GeometryFactory, Point}
+import org.openjdk.jmh.annotations._
+
+import scala.util.Random
+
+/**
+  * Benchmarks for the in-memory point indices used by the Kafka live cache, under concurrent updates
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+class SpatialIndexBenchmark {
+
+  /**
+    * Index implementation
+    */
+  @Param(Array("bucket", "striped"))
+  var impl: String = _
+
+  private val count = 100000
+
+  private var index: SpatialIndex[String] = _
+  private var points: Array[Point] = _
+  private var ids: Array[String] = _
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val random = new Random(BenchmarkFeatures.Seed)
+    val gf = new GeometryFactory()
+    points = Array.fill(count)(gf.createPoint(new Coordinate(random.nextDouble * 360 - 180, random.nextDouble * 180 - 90)))
+    ids = Array.tabulate(count)(i => s"id$i")
+    index = impl match {
+      case "bucket"  => new BucketIndex[String]()
+      case "striped" => new StripedGridIndex[String]()
+    }
+    var i = 0
+    while (i < count) {
+      index.insert(points(i), ids(i), ids(i))
+      i += 1
+    }
+  }
+
+  @Benchmark
+  def update(state: SpatialIndexBenchmark.ThreadState): Unit = {
+    // simulate a feature update, as done by the kafka cache
+    val i = state.random.nextInt(count)
+    index.remove(points(i), ids(i))
+    index.insert(points(i), ids(i), ids(i))
+  }
+
+  @Benchmark
+  def get(state: SpatialIndexBenchmark.ThreadState): String = {
+    val i = state.random.nextInt(count)
+    index.get(points(i), ids(i))
+  }
+
+  @Benchmark
+  def query(state: SpatialIndexBenchmark.ThreadState): Int = {
+    val x = state.random.nextDouble * 350 - 180
+    val y = state.random.nextDouble * 170 - 90
+    index.query(x, y, x + 10, y + 10).length
+  }
+}
+
+object SpatialIndexBenchmark {
+
+  @State(Scope.Thread)
+  class ThreadState {
+    val random = new Random()
+  }
+}
@@ -30,7 +30,8 @@ class BigtableIndexAdapter(ds: BigtableDataStore) extends HBaseIndexAdapter(ds)
       originalRanges: Seq[Scan],
       colFamily: Array[Byte],
       filters: Seq[HFilter],
-      coprocessor: Boolean): Seq[Scan] = {
+      coprocessor: Boolean,
+      splits: => Seq[Array[Byte]]): Seq[Scan] = {
     if (filters.nonEmpty) {
       // bigtable does support some filters, but currently we only use custom filters that aren't supported
       throw new IllegalArgumentException(s"Bigtable doesn't support filters: ${filters.mkString(", ")}")
@@ -95,7 +95,9 @@ class CassandraIndexAdapter(ds: CassandraDataStore) extends IndexAdapter[Cassand
       val sort = hints.getSortFields
       val max = hints.getMaxFeatures
       val project = hints.getProjection
-      StatementPlan(filter, tables, statements, threads, ecql, rowsToFeatures, reducer, sort, max, project)
+      val priority = hints.getScanPriority
+      StatementPlan(filter, tables, statements, threads, ecql, rowsToFeatures, reducer, sort, max, project,
+        priority)
     }
   }
 
@@ -13,7 +13,7 @@ import com.datastax.driver.core.{Row, Statement}
 import org.locationtech.geomesa.cassandra.utils.CassandraBatchScan
 import org.locationtech.geomesa.index.api.QueryPlan.{FeatureReducer, ResultsToFeatures}
 import org.locationtech.geomesa.index.api.{FilterStrategy, QueryPlan}
-import org.locationtech.geomesa.index.utils.Explainer
+import org.locationtech.geomesa.index.utils.{Explainer, ScanScheduler}
 import org.locationtech.geomesa.index.utils.Reprojection.QueryReferenceSystems
 import org.locationtech.geomesa.utils.collection.CloseableIterator
 import org.opengis.filter.Filter
@@ -71,9 +71,10 @@ case class StatementPlan(
     reducer: Option[FeatureReducer],
     sort: Option[Seq[(String, Boolean)]],
     maxFeatures: Option[Int],
-    projection: Option[QueryReferenceSystems]
+    projection: Option[QueryReferenceSystems],
+    priority: Int = ScanScheduler.DefaultPriority
   ) extends CassandraQueryPlan {
 
   override def scan(ds: CassandraDataStore): CloseableIterator[Row] =
-    CassandraBatchScan(ds.session, ranges, numThreads)
+    CassandraBatchScan(ds.session, ranges, numThreads, priority)
 }
@@ -9,21 +9,18 @@
 package org.locationtech.geomesa.cassandra.utils
 
 import java.nio.ByteBuffer
-import java.util.concurrent._
 
 import com.datastax.driver.core._
-import org.locationtech.geomesa.index.utils.AbstractBatchScan
+import org.locationtech.geomesa.index.utils.{AbstractBatchScan, ScanScheduler}
 import org.locationtech.geomesa.utils.collection.CloseableIterator
 
-private class CassandraBatchScan(session: Session, ranges: Seq[Statement], threads: Int, buffer: Int)
-    extends AbstractBatchScan[Statement, Row](ranges, threads, buffer, CassandraBatchScan.Sentinel) {
+import scala.collection.JavaConverters._
 
-  override protected def scan(range: Statement, out: BlockingQueue[Row]): Unit = {
-    val results = session.execute(range).iterator()
-    while (results.hasNext) {
-      out.put(results.next)
-    }
-  }
+private class CassandraBatchScan(session: Session, ranges: Seq[Statement], threads: Int, buffer: Int, priority: Int)
+    extends AbstractBatchScan[Statement, Row](ranges, threads, buffer, CassandraBatchScan.Sentinel, priority) {
+
+  override protected def scan(range: Statement): CloseableIterator[Row] =
+    CloseableIterator(session.execute(range).iterator.asScala)
 }
 
 object CassandraBatchScan {
@@ -40,6 +37,10 @@ object CassandraBatchScan {
     override def getCodecRegistry: CodecRegistry = null
   }
 
-  def apply(session: Session, ranges: Seq[Statement], threads: Int): CloseableIterator[Row] =
-    new CassandraBatchScan(session, ranges, threads, 100000).start()
+  def apply(
+      session: Session,
+      ranges: Seq[Statement],
+      threads: Int,
+      priority: Int = ScanScheduler.DefaultPriority): CloseableIterator[Row] =
+    new CassandraBatchScan(session, ranges, threads, 100000, priority).start()
 }
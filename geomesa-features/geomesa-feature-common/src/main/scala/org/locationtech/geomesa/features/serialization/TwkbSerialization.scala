@@ -182,7 +182,7 @@ trait TwkbSerialization[T <: NumericWriter, V <: NumericReader]
         //   val size = readUnsignedVarInt(in)
         // }
 
-        // bounding box is not currently used, but we write it in anticipation of future filter optimizations
+        // bounding box is not used when deserializing, but may be read directly for filtering - see `readEnvelope`
         if (hasBoundingBox) {
           state.skipBoundingBox(in)
         }
@@ -207,6 +207,57 @@ trait TwkbSerialization[T <: NumericWriter, V <: NumericReader]
     }
   }
 
+  /**
+    * Read the bounds of a serialized geometry, without deserializing the geometry itself. For points,
+    * the coordinate is read directly. For other geometries, the serialized bounding box is used
+    *
+    * @param in input, positioned at the start of the serialized geometry
+    * @param envelope envelope, which will be populated with the bounds of the geometry
+    * @return true if the envelope was populated, false if the geometry is null or empty
+    */
+  def readEnvelope(in: V, envelope: Envelope): Boolean = {
+    try {
+      val precisionAndType = in.readByte()
+      if (precisionAndType == ZeroByte) {
+        false
+      } else if (precisionAndType == NOT_NULL_BYTE) {
+        // legacy serialization doesn't store bounds, so we have to deserialize the geometry
+        val geom = deserializeWkb(in)
+        if (geom == null || geom.isEmpty) { false } else {
+          envelope.init(geom.getEnvelopeInternal)
+          true
+        }
+      } else {
+        val geomType = (precisionAndType & 0x0F).toByte
+        val p = math.pow(10, VarIntEncoding.zigzagDecode((precisionAndType & 0xF0) >>> 4))
+        val flags = in.readByte()
+        if ((flags & EmptyFlag) != 0) { false } else {
+          if ((flags & ExtendedDimsFlag) != 0) {
+            in.readByte() // skip the extended dimensions precision, as we only read x and y
+          }
+          if (geomType == TwkbPoint) {
+            val x = readVarInt(in) / p
+            val y = readVarInt(in) / p
+            envelope.init(x, x, y, y)
+            true
+          } else if ((flags & BoundingBoxFlag) != 0) {
+            // bounding box is stored as min and delta to max for each dimension
+            val minX = readVarInt(in)
+            val maxX = minX + readVarInt(in)
+            val minY = readVarInt(in)
+            val maxY = minY + readVarInt(in)
+            envelope.init(minX / p, maxX / p, minY / p, maxY / p)
+            true
+          } else {
+            false // non-empty geometries other than points are always written with a bounding box
+          }
+        }
+      }
+    } catch {
+      case NonFatal(e) => logger.error(s"Error reading serialized kryo geometry bounds:", e); false
+    }
+  }
+
   private def writeLineString(out: T, g: LineString)(implicit state: DeltaState): Unit =
       writePointArray(out, g.getCoordinateSequence, g.getNumPoints)
 
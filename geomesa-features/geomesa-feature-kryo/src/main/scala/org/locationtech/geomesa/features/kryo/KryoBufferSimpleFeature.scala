@@ -17,10 +17,10 @@ import org.locationtech.geomesa.features.SerializationOption.SerializationOption
 import org.locationtech.geomesa.features.kryo.KryoBufferSimpleFeature.{KryoBufferV3, _}
 import org.locationtech.geomesa.features.kryo.impl.KryoFeatureDeserialization.KryoLongReader
 import org.locationtech.geomesa.features.kryo.impl.{KryoFeatureDeserialization, KryoFeatureDeserializationV2}
-import org.locationtech.geomesa.features.kryo.serialization.KryoUserDataSerialization
+import org.locationtech.geomesa.features.kryo.serialization.{KryoGeometrySerialization, KryoUserDataSerialization}
 import org.locationtech.geomesa.utils.collection.IntBitSet
 import org.locationtech.geomesa.utils.geotools.ImmutableFeatureId
-import org.locationtech.jts.geom.Geometry
+import org.locationtech.jts.geom.{Envelope, Geometry}
 import org.opengis.feature.`type`.{AttributeDescriptor, Name}
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
 import org.opengis.feature.{GeometryAttribute, Property}
@@ -163,6 +163,24 @@ class KryoBufferSimpleFeature(serializer: KryoFeatureDeserialization) extends Si
     */
   def getDateAsLong(index: Int): Long = delegate.getDateAsLong(index)
 
+  /**
+    * Check if an attribute is null, without deserializing it
+    *
+    * @param index attribute index
+    * @return
+    */
+  def isNull(index: Int): Boolean = delegate.isNull(index)
+
+  /**
+    * Get the bounds of a geometry attribute, without deserializing the geometry. Only points
+    * are read in full
+    *
+    * @param index attribute index
+    * @param envelope envelope to populate with the geometry bounds
+    * @return true if the envelope was populated, false if the geometry is null or empty
+    */
+  def getGeometryEnvelope(index: Int, envelope: Envelope): Boolean = delegate.getGeometryEnvelope(index, envelope)
+
   /**
     * Get the underlying kryo input, positioned to read the attribute at the given index
     *
@@ -299,6 +317,23 @@ object KryoBufferSimpleFeature {
       */
     def getDateAsLong(index: Int): Long
 
+    /**
+      * Check for null attributes without deserializing them
+      *
+      * @param index attribute number
+      * @return
+      */
+    def isNull(index: Int): Boolean
+
+    /**
+      * Read the bounds of a geometry attribute, without deserializing the geometry
+      *
+      * @param index attribute number
+      * @param envelope envelope to populate
+      * @return true if the envelope was populated, false if the geometry is null or empty
+      */
+    def getGeometryEnvelope(index: Int, envelope: Envelope): Boolean
+
     /**
       * Gets the input, positioned to read the given attribute
       *
@@ -373,6 +408,15 @@ object KryoBufferSimpleFeature {
       }
     }
 
+    override def isNull(index: Int): Boolean = index >= metadata.count || metadata.nulls.contains(index)
+
+    override def getGeometryEnvelope(index: Int, envelope: Envelope): Boolean = {
+      if (index >= metadata.count || metadata.nulls.contains(index)) { false } else {
+        metadata.setPosition(index)
+        KryoGeometrySerialization.readEnvelope(input, envelope)
+      }
+    }
+
     override def getInput(index: Int): Option[Input] = {
       if (index >= metadata.count || metadata.nulls.contains(index)) { None } else {
         metadata.setPosition(index)
@@ -541,6 +585,16 @@ object KryoBufferSimpleFeature {
       }
     }
 
+    // version 2 serialization encodes nulls inline, so we have to read the attribute
+    override def isNull(index: Int): Boolean = getAttribute(index) == null
+
+    override def getGeometryEnvelope(index: Int, envelope: Envelope): Boolean = {
+      getAttribute(index) match {
+        case g: Geometry if !g.isEmpty => envelope.init(g.getEnvelopeInternal); true
+        case _ => false
+      }
+    }
+
     override def getInput(index: Int): Option[Input] = {
       val offset = offsets(index)
       if (offset == -1) { None } else {
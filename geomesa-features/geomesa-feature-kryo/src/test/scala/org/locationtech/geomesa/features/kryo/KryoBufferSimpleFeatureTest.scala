@@ -15,6 +15,7 @@ import org.junit.runner.RunWith
 import org.locationtech.geomesa.features.ScalaSimpleFeature
 import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.jts.geom.{Envelope, Geometry}
 import org.specs2.mutable.Specification
 import org.specs2.runner.JUnitRunner
 
@@ -86,6 +87,34 @@ class KryoBufferSimpleFeatureTest extends Specification {
       laz.getAttributes mustEqual sf.getAttributes
     }
 
+    "read geometry bounds and nulls without deserializing" in {
+      val spec = "a:LineString,b:Polygon,c:MultiPoint,n:Polygon,dtg:Date,*geom:Point:srid=4326"
+      val sft = SimpleFeatureTypes.createType("testType", spec)
+      val sf = new ScalaSimpleFeature(sft, "fakeid")
+
+      sf.setAttribute("a", "LINESTRING(0 2, 2 0, 8 6)")
+      sf.setAttribute("b", "POLYGON((20 10, 30 0, 40 10, 30 20, 20 10))")
+      sf.setAttribute("c", "MULTIPOINT(0 0, 2 2)")
+      sf.setAttribute("dtg", "2013-01-02T00:00:00.000Z")
+      sf.setAttribute("geom", "POINT(55.0 49.0)")
+
+      val serializer = KryoFeatureSerializer(sft)
+
+      val serialized = serializer.serialize(sf)
+      val laz = serializer.getReusableFeature
+      laz.setBuffer(serialized)
+
+      val envelope = new Envelope()
+      foreach(Seq("a", "b", "c", "geom")) { name =>
+        laz.getGeometryEnvelope(sft.indexOf(name), envelope) must beTrue
+        envelope mustEqual sf.getAttribute(name).asInstanceOf[Geometry].getEnvelopeInternal
+      }
+      laz.getGeometryEnvelope(sft.indexOf("n"), envelope) must beFalse
+
+      laz.isNull(sft.indexOf("n")) must beTrue
+      laz.isNull(sft.indexOf("dtg")) must beFalse
+    }
+
     "correctly serialize and deserialize collection types" in {
       val spec = "a:Integer,m:Map[String,Double],l:List[Date],dtg:Date,*geom:Point:srid=4326"
       val sft = SimpleFeatureTypes.createType("testType", spec)
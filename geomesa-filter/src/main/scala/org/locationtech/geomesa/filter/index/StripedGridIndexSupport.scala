@@ -0,0 +1,20 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.filter.index
+
+import org.locationtech.geomesa.utils.index.StripedGridIndex
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+class StripedGridIndexSupport(override val sft: SimpleFeatureType, override val index: StripedGridIndex[SimpleFeature])
+    extends SpatialIndexSupport
+
+object StripedGridIndexSupport {
+  def apply(sft: SimpleFeatureType, xResolution: Int, yResolution: Int): StripedGridIndexSupport =
+    new StripedGridIndexSupport(sft, new StripedGridIndex(xResolution, yResolution))
+}
@@ -0,0 +1,487 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.data
+
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.Callable
+
+import com.typesafe.scalalogging.LazyLogging
+import org.geotools.data.Query
+import org.geotools.util.factory.Hints
+import org.locationtech.geomesa.arrow.io.records.RecordBatchUnloader
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector.SimpleFeatureEncoding
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.ArrowBatchSupport
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionMetadata, StorageFileAction}
+import org.locationtech.geomesa.fs.storage.common.FileSystemThreadedReader
+import org.locationtech.geomesa.index.iterators.{ArrowScan, DensityScan, StatsScan}
+import org.locationtech.geomesa.index.planning.{LocalQueryRunner, QueryRunner}
+import org.locationtech.geomesa.index.utils.bin.BinSorter
+import org.locationtech.geomesa.utils.bin.BinaryEncodeCallback.ByteStreamCallback
+import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder
+import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder.EncodingOptions
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.geotools.{GeometryUtils, RenderingGrid, SimpleFeatureOrdering}
+import org.locationtech.geomesa.utils.io.{CloseQuietly, WithClose}
+import org.locationtech.geomesa.utils.stats.{CountStat, Stat}
+import org.locationtech.jts.geom.Envelope
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+
+/**
+  * Runs aggregating queries (density, stats, bin and arrow) against file system storage. Each partition is
+  * read and aggregated separately, in parallel, and the partial results are merged into the final result.
+  * Partitions that can be answered from the partition metadata alone (i.e. counts) are not read at all, and
+  * storage that supports arrow record batches is not decoded into simple features for arrow queries
+  */
+object FileSystemAggregator extends LazyLogging {
+
+  import org.locationtech.geomesa.index.conf.QueryHints.RichHints
+
+  /**
+    * Does the query require aggregation
+    *
+    * @param hints query hints
+    * @return
+    */
+  def isAggregation(hints: Hints): Boolean =
+    hints.isDensityQuery || hints.isStatsQuery || hints.isBinQuery || hints.isArrowQuery
+
+  /**
+    * Gets the schema of the features returned by an aggregating query
+    *
+    * @param hints query hints
+    * @return
+    */
+  def returnSft(hints: Hints): SimpleFeatureType = {
+    if (hints.isBinQuery) {
+      BinaryOutputEncoder.BinEncodedSft
+    } else if (hints.isDensityQuery) {
+      DensityScan.DensitySft
+    } else if (hints.isStatsQuery) {
+      StatsScan.StatsSft
+    } else if (hints.isArrowQuery) {
+      org.locationtech.geomesa.arrow.ArrowEncodedSft
+    } else {
+      throw new IllegalArgumentException("Query is not an aggregating query")
+    }
+  }
+
+  /**
+    * Run an aggregating query
+    *
+    * @param storage storage
+    * @param original query
+    * @param threads number of partitions to aggregate in parallel
+    * @return
+    */
+  def apply(storage: FileSystemStorage, original: Query, threads: Int): CloseableIterator[SimpleFeature] = {
+    val query = QueryRunner.configureDefaultQuery(storage.metadata.sft, original)
+    val hints = query.getHints
+    // features will be read with any transform already applied
+    val sft = hints.getTransformSchema.getOrElse(storage.metadata.sft)
+
+    if (hints.isBinQuery) {
+      aggregate(storage, query, threads, new BinAggregator(sft, hints))
+    } else if (hints.isDensityQuery) {
+      val Some(envelope) = hints.getDensityEnvelope
+      val Some((width, height)) = hints.getDensityBounds
+      aggregate(storage, query, threads, new DensityAggregator(sft, envelope, width, height, hints.getDensityWeight))
+    } else if (hints.isStatsQuery) {
+      val encode = hints.isStatsEncode || hints.isSkipReduce
+      aggregate(storage, query, threads, new StatsAggregator(sft, hints.getStatsQuery, encode))
+    } else if (hints.isArrowQuery) {
+      if (hints.getArrowDictionaryFields.nonEmpty) {
+        // dictionaries have to be consistent across partitions, so fall back to encoding all the features at once
+        val features = storage.getReader(query, threads = threads)
+        LocalQueryRunner.transform(sft, CloseableIterator(features, features.close()), None, hints)
+      } else if (hints.getArrowSort.isEmpty) {
+        // without a sort, batches don't need to be merged so they can be returned as they are read
+        stream(storage, query, threads, new ArrowAggregator(sft, hints))
+      } else {
+        aggregate(storage, query, threads, new ArrowAggregator(sft, hints))
+      }
+    } else {
+      throw new IllegalArgumentException("Query is not an aggregating query")
+    }
+  }
+
+  /**
+    * Aggregate each partition, then merge the results
+    *
+    * @param storage storage
+    * @param query configured query
+    * @param threads number of partitions to aggregate in parallel
+    * @param aggregator aggregator
+    * @tparam T partial result type
+    * @return
+    */
+  private def aggregate[T](
+      storage: FileSystemStorage,
+      query: Query,
+      threads: Int,
+      aggregator: Aggregator[T]): CloseableIterator[SimpleFeature] = {
+
+    val filter = Option(query.getFilter).getOrElse(Filter.INCLUDE)
+
+    val partials = Seq.newBuilder[T]
+    val tasks = Seq.newBuilder[Callable[T]]
+
+    storage.getPartitionFilters(filter).foreach { fp =>
+      fp.partitions.foreach { partition =>
+        // if the filter matches the whole partition, we may be able to use the metadata instead of reading it
+        val metadata = if (fp.filter != Filter.INCLUDE) { None } else {
+          storage.metadata.getPartition(partition).flatMap(p => aggregator.aggregate(p))
+        }
+        metadata match {
+          case Some(partial) =>
+            logger.debug(s"Aggregating partition $partition from metadata")
+            partials += partial
+
+          case None =>
+            // each task gets its own copy of the hints, as they are modified when the query is configured
+            val q = new Query(query)
+            q.setHints(query.getHints.clone().asInstanceOf[Hints])
+            tasks += new Callable[T] {
+              override def call(): T = aggregator.aggregate(storage, q, partition).getOrElse {
+                WithClose(storage.getReader(q, Some(partition)))(features => aggregator.aggregate(features))
+              }
+            }
+        }
+      }
+    }
+
+    val toRun = tasks.result
+    logger.debug(s"Aggregating ${toRun.length} partitions with ${math.min(threads, toRun.length)} threads")
+
+    if (threads < 2 || toRun.lengthCompare(2) < 0) {
+      toRun.foreach(t => partials += t.call())
+    } else {
+      // use the shared read pool, so that concurrent queries don't each create their own threads
+      partials ++= FileSystemThreadedReader.invokeAll(toRun, threads)
+    }
+
+    aggregator.merge(partials.result)
+  }
+
+  /**
+    * Read arrow batches from each partition in turn, returning them as they are read instead of collecting
+    * them into partial results. Partitions are read one at a time, but each partition may be read with
+    * multiple threads
+    *
+    * @param storage storage
+    * @param query configured query
+    * @param threads number of threads used to read each partition
+    * @param aggregator aggregator
+    * @return
+    */
+  private def stream(
+      storage: FileSystemStorage,
+      query: Query,
+      threads: Int,
+      aggregator: ArrowAggregator): CloseableIterator[SimpleFeature] = {
+    val filter = Option(query.getFilter).getOrElse(Filter.INCLUDE)
+    val partitions = storage.getPartitionFilters(filter).flatMap(_.partitions)
+    logger.debug(s"Streaming arrow batches from ${partitions.length} partitions")
+    val batches = CloseableIterator(partitions.iterator).flatMap { partition =>
+      // each partition gets its own copy of the hints, as they are modified when the query is configured
+      val q = new Query(query)
+      q.setHints(query.getHints.clone().asInstanceOf[Hints])
+      aggregator.batches(storage, q, partition, threads)
+    }
+    aggregator.mergeBatches(batches)
+  }
+
+  /**
+    * Aggregates features into a partial result, and merges the partial results
+    *
+    * @tparam T partial result type
+    */
+  private sealed trait Aggregator[T] {
+
+    /**
+      * Aggregate the features from a single partition. Must be thread-safe
+      *
+      * @param features features
+      * @return
+      */
+    def aggregate(features: Iterator[SimpleFeature]): T
+
+    /**
+      * Aggregate a partition using only its metadata, if possible
+      *
+      * @param partition partition metadata
+      * @return
+      */
+    def aggregate(partition: PartitionMetadata): Option[T] = None
+
+    /**
+      * Aggregate a partition directly from the storage, without reading it as simple features, if possible.
+      * Must be thread-safe
+      *
+      * @param storage storage
+      * @param query query
+      * @param partition partition
+      * @return
+      */
+    def aggregate(storage: FileSystemStorage, query: Query, partition: String): Option[T] = None
+
+    /**
+      * Merge partial results into the final result features
+      *
+      * @param partials partial results
+      * @return
+      */
+    def merge(partials: Seq[T]): CloseableIterator[SimpleFeature]
+  }
+
+  /**
+    * Stat aggregator
+    *
+    * @param sft simple feature type
+    * @param query stat string
+    * @param encode encode the result stat, or return it as json
+    */
+  private class StatsAggregator(sft: SimpleFeatureType, query: String, encode: Boolean) extends Aggregator[Stat] {
+
+    private val count = Stat(sft, query).isInstanceOf[CountStat]
+
+    override def aggregate(features: Iterator[SimpleFeature]): Stat = {
+      val stat = Stat(sft, query)
+      features.foreach(stat.observe)
+      stat
+    }
+
+    override def aggregate(partition: PartitionMetadata): Option[Stat] = {
+      // the partition count isn't accurate for files with modifications or deletes
+      if (count && partition.files.forall(_.action == StorageFileAction.Append)) {
+        Some(new CountStat(sft, partition.count))
+      } else {
+        None
+      }
+    }
+
+    override def merge(partials: Seq[Stat]): CloseableIterator[SimpleFeature] = {
+      val stat = Stat(sft, query)
+      partials.foreach(stat += _)
+      val encoded = if (encode) { StatsScan.encodeStat(sft)(stat) } else { stat.toJson }
+      val result = new ScalaSimpleFeature(StatsScan.StatsSft, "stat", Array(encoded, GeometryUtils.zeroPoint))
+      CloseableIterator(Iterator.single(result))
+    }
+  }
+
+  /**
+    * Density aggregator
+    *
+    * @param sft simple feature type
+    * @param envelope rendering envelope
+    * @param width grid width
+    * @param height grid height
+    * @param weight weight attribute or expression
+    */
+  private class DensityAggregator(sft: SimpleFeatureType, envelope: Envelope, width: Int, height: Int,
+      weight: Option[String]) extends Aggregator[RenderingGrid] {
+
+    override def aggregate(features: Iterator[SimpleFeature]): RenderingGrid = {
+      // weight expressions aren't thread-safe, so create a new renderer for each partition
+      val renderer = DensityScan.getRenderer(sft, weight)
+      val grid = new RenderingGrid(envelope, width, height)
+      features.foreach(renderer.render(grid, _))
+      grid
+    }
+
+    override def merge(partials: Seq[RenderingGrid]): CloseableIterator[SimpleFeature] = {
+      val grid = new RenderingGrid(envelope, width, height)
+      partials.foreach(grid += _)
+      val sf = new ScalaSimpleFeature(DensityScan.DensitySft, "", Array(GeometryUtils.zeroPoint))
+      // return value in user data so it's preserved when passed through a RetypingFeatureCollection
+      sf.getUserData.put(DensityScan.DensityValueKey, DensityScan.encodeResult(grid))
+      CloseableIterator(Iterator.single(sf))
+    }
+  }
+
+  /**
+    * Bin aggregator
+    *
+    * @param sft simple feature type
+    * @param hints query hints
+    */
+  private class BinAggregator(sft: SimpleFeatureType, hints: Hints) extends Aggregator[Array[Byte]] {
+
+    import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+    private val geom = hints.getBinGeomField.map(sft.indexOf)
+    private val dtg = hints.getBinDtgField.map(sft.indexOf)
+    private val trackId = Option(hints.getBinTrackIdField).filter(_ != "id").map(sft.indexOf)
+    private val label = hints.getBinLabelField.map(sft.indexOf)
+    private val sorting = hints.isBinSorting
+    private val binSize = if (label.isDefined) { 24 } else { 16 }
+
+    if (sorting && dtg.orElse(sft.getDtgIndex).isEmpty) {
+      throw new IllegalArgumentException("Can't sort BIN features by date")
+    }
+
+    override def aggregate(features: Iterator[SimpleFeature]): Array[Byte] = {
+      val encoder = BinaryOutputEncoder(sft, EncodingOptions(geom, dtg, trackId, label))
+      val os = new ByteArrayOutputStream(1024)
+      val callback = new ByteStreamCallback(os)
+      features.foreach(encoder.encode(_, callback))
+      val bytes = os.toByteArray
+      if (sorting && bytes.length > binSize) {
+        BinSorter.quickSort(bytes, 0, bytes.length - binSize, binSize)
+      }
+      bytes
+    }
+
+    override def merge(partials: Seq[Array[Byte]]): CloseableIterator[SimpleFeature] = {
+      val nonEmpty = partials.filter(_.nonEmpty)
+      if (nonEmpty.isEmpty) { CloseableIterator.empty } else {
+        val bytes = if (sorting && nonEmpty.lengthCompare(1) > 0) {
+          val os = new ByteArrayOutputStream(nonEmpty.map(_.length).sum)
+          BinSorter.mergeSort(nonEmpty.iterator, binSize).foreach { case (b, offset) => os.write(b, offset, binSize) }
+          os.toByteArray
+        } else if (nonEmpty.lengthCompare(1) == 0) {
+          nonEmpty.head
+        } else {
+          val os = new ByteArrayOutputStream(nonEmpty.map(_.length).sum)
+          nonEmpty.foreach(os.write)
+          os.toByteArray
+        }
+        val sf = new ScalaSimpleFeature(BinaryOutputEncoder.BinEncodedSft, "", Array(bytes, GeometryUtils.zeroPoint))
+        CloseableIterator(Iterator.single(sf))
+      }
+    }
+  }
+  /**
+    * Arrow aggregator. Only handles queries without dictionary-encoded fields, as dictionaries would have to
+    * be consistent across partitions
+    *
+    * @param sft simple feature type
+    * @param hints query hints
+    */
+  private class ArrowAggregator(sft: SimpleFeatureType, hints: Hints) extends Aggregator[Seq[Array[Byte]]] {
+
+    import org.locationtech.geomesa.arrow.allocator
+
+    private val encoding = SimpleFeatureEncoding.min(hints.isArrowIncludeFid, hints.isArrowProxyFid)
+    private val batchSize = ArrowScan.getBatchSize(hints)
+    private val sort = hints.getArrowSort
+    private val reduce = !hints.isSkipReduce
+
+    private val ordering = sort.map { case (field, reverse) =>
+      val o = SimpleFeatureOrdering(sft.indexOf(field))
+      if (reverse) { o.reverse } else { o }
+    }
+
+    override def aggregate(features: Iterator[SimpleFeature]): Seq[Array[Byte]] =
+      WithClose(new BatchIterator(CloseableIterator(features)))(_.toList)
+
+    override def aggregate(storage: FileSystemStorage, query: Query, partition: String): Option[Seq[Array[Byte]]] =
+      direct(storage, query, partition).map(batches => WithClose(batches)(_.toList))
+
+    override def merge(partials: Seq[Seq[Array[Byte]]]): CloseableIterator[SimpleFeature] =
+      mergeBatches(CloseableIterator(partials.iterator.flatten))
+
+    /**
+      * Read a partition as arrow batches, lazily
+      *
+      * @param storage storage
+      * @param query query
+      * @param partition partition
+      * @param threads threads used to read the partition, if it can't be read directly as arrow batches
+      * @return
+      */
+    def batches(
+        storage: FileSystemStorage,
+        query: Query,
+        partition: String,
+        threads: Int): CloseableIterator[Array[Byte]] = {
+      direct(storage, query, partition).getOrElse {
+        new BatchIterator(storage.getReader(query, Some(partition), threads))
+      }
+    }
+
+    /**
+      * Merge arrow batches into the final result features
+      *
+      * @param batches batches
+      * @return
+      */
+    def mergeBatches(batches: CloseableIterator[Array[Byte]]): CloseableIterator[SimpleFeature] = {
+      val sf = ArrowScan.resultFeature()
+      val features = batches.map { batch => sf.setAttribute(0, batch); sf }
+      if (reduce) {
+        new ArrowScan.BatchReducer(sft, Map.empty, encoding, batchSize, sort)(features)
+      } else {
+        features
+      }
+    }
+
+    /**
+      * Read a partition directly as arrow batches, without decoding it into simple features, if possible
+      *
+      * @param storage storage
+      * @param query query
+      * @param partition partition
+      * @return
+      */
+    private def direct(
+        storage: FileSystemStorage,
+        query: Query,
+        partition: String): Option[CloseableIterator[Array[Byte]]] = {
+      storage match {
+        case s: ArrowBatchSupport => s.getArrowBatches(query, partition).map(b => CloseableIterator(b, b.close()))
+        case _ => None
+      }
+    }
+
+    /**
+      * Encodes features into arrow record batches as they are read
+      *
+      * @param features features
+      */
+    private class BatchIterator(features: CloseableIterator[SimpleFeature]) extends CloseableIterator[Array[Byte]] {
+
+      private val vector = SimpleFeatureVector.create(sft, Map.empty, encoding)
+      private val unloader = new RecordBatchUnloader(vector)
+      // the reducer merges batches assuming that each one is already sorted
+      private val sorted = if (ordering.isEmpty) { null } else { Array.ofDim[SimpleFeature](batchSize) }
+
+      override def hasNext: Boolean = features.hasNext
+
+      override def next(): Array[Byte] = {
+        var index = 0
+        while (index < batchSize && features.hasNext) {
+          if (sorted == null) {
+            vector.writer.set(index, features.next)
+          } else {
+            // we have to copy since the feature might be re-used
+            sorted(index) = ScalaSimpleFeature.copy(features.next)
+          }
+          index += 1
+        }
+        ordering.foreach { o =>
+          java.util.Arrays.sort(sorted, 0, index, o)
+          var i = 0
+          while (i < index) {
+            vector.writer.set(i, sorted(i))
+            i += 1
+          }
+        }
+        val batch = unloader.unload(index)
+        vector.clear()
+        batch
+      }
+
+      override def close(): Unit = CloseQuietly(Seq(features, vector)).foreach(e => throw e)
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.data
+
+import java.io.{Closeable, FileNotFoundException}
+import java.nio.charset.StandardCharsets
+import java.util.UUID
+import java.util.concurrent.{ScheduledThreadPoolExecutor, TimeUnit}
+
+import com.google.common.util.concurrent.MoreExecutors
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.fs.Options.{CreateOpts, Rename}
+import org.apache.hadoop.fs.{CreateFlag, FileAlreadyExistsException, FileContext, Path}
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage
+import org.locationtech.geomesa.utils.io.WithClose
+
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+
+/**
+  * Lock used to prevent multiple processes from compacting the same storage at once. The lock is a file under
+  * the storage root, containing a unique id for the holder and the time the lease was last renewed.
+  *
+  * While the lock is held, the lease is renewed in the background by rewriting the lock file with the current
+  * time, so that other processes won't consider it stale. The renewal time is stored in the file instead of
+  * relying on the file modification time, as not all file systems support updating it. If another process takes
+  * over the lock anyway, the lock will no longer be `valid`, and the holder should stop compacting as soon
+  * as possible.
+  *
+  * @param fc file context
+  * @param file lock file
+  * @param id unique id of the holder
+  * @param lease time after which the lock is considered stale, if it has not been renewed
+  */
+class FileSystemCompactionLock private (fc: FileContext, val file: Path, id: String, lease: Duration)
+    extends Closeable with LazyLogging {
+
+  import FileSystemCompactionLock.{owner, write}
+
+  @volatile
+  private var lost = false
+
+  private val renewal = {
+    val interval = math.max(1L, lease.toMillis / 3)
+    val renew = new Runnable() { override def run(): Unit = FileSystemCompactionLock.this.renew() }
+    FileSystemCompactionLock.executor.scheduleWithFixedDelay(renew, interval, interval, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+    * Is the lock still held
+    *
+    * @return
+    */
+  def valid: Boolean = !lost
+
+  override def close(): Unit = {
+    renewal.cancel(false)
+    if (!lost && owner(fc, file).exists(_.id == id)) {
+      fc.delete(file, false)
+    }
+  }
+
+  /**
+    * Renews the lease by rewriting the lock file with the current time
+    */
+  private def renew(): Unit = {
+    if (!lost) {
+      try {
+        if (owner(fc, file).exists(_.id == id)) {
+          write(fc, file, id, overwrite = true)
+        } else {
+          logger.warn(s"Compaction lock $file has been taken over by another process")
+          lost = true
+        }
+      } catch {
+        case NonFatal(e) => logger.warn(s"Error renewing compaction lock $file: $e")
+      }
+    }
+  }
+}
+
+object FileSystemCompactionLock extends LazyLogging {
+
+  val LockFile = ".compaction.lock"
+
+  private val executor = MoreExecutors.getExitingScheduledExecutorService(new ScheduledThreadPoolExecutor(1))
+
+  /**
+    * Acquire the compaction lock for a storage. A stale lock (e.g. from a process that died while compacting)
+    * will be taken over
+    *
+    * @param storage storage
+    * @param lease time after which a lock is considered stale, if it has not been renewed
+    * @return the lock, if acquired
+    */
+  def acquire(storage: FileSystemStorage, lease: Duration): Option[FileSystemCompactionLock] = {
+    val fc = storage.context.fc
+    val file = new Path(storage.context.root, LockFile)
+    val id = UUID.randomUUID().toString
+
+    def create(): Boolean = {
+      try { write(fc, file, id, overwrite = false); true } catch {
+        case _: FileAlreadyExistsException => false
+      }
+    }
+
+    if (create() || (takeover(fc, file, lease) && create())) {
+      Some(new FileSystemCompactionLock(fc, file, id, lease))
+    } else {
+      None
+    }
+  }
+
+  /**
+    * Removes a stale lock. Instead of deleting the lock, it is moved aside, so that only a single process
+    * will succeed in taking it over. If the lock was acquired by another process in the meantime, it is
+    * moved back into place
+    *
+    * @param fc file context
+    * @param file lock file
+    * @param lease time after which a lock is considered stale
+    * @return true if a stale lock was removed
+    */
+  private def takeover(fc: FileContext, file: Path, lease: Duration): Boolean = {
+    val stale = owner(fc, file)
+    // fall back to the modification time for lock files that don't contain a renewal time
+    val renewed = stale.flatMap(_.renewed).orElse {
+      try { stale.map(_ => fc.getFileStatus(file).getModificationTime) } catch {
+        case _: FileNotFoundException => None
+      }
+    }
+    renewed.exists(System.currentTimeMillis() - _ > lease.toMillis) && {
+      val moved = new Path(file.getParent, s"$LockFile.${UUID.randomUUID()}")
+      val renamed = try { fc.rename(file, moved, Rename.NONE); true } catch {
+        case _: FileNotFoundException => false // another process already took it over
+      }
+      renamed && {
+        val removed = owner(fc, moved) == stale
+        if (removed) {
+          logger.warn(s"Removed stale compaction lock $file")
+        } else {
+          try { fc.rename(moved, file, Rename.NONE) } catch {
+            case NonFatal(e) => logger.warn(s"Error restoring compaction lock $file: $e")
+          }
+        }
+        fc.delete(moved, false)
+        removed
+      }
+    }
+  }
+
+  /**
+    * Writes the lock file, with the current time as the renewal time
+    *
+    * @param fc file context
+    * @param file lock file
+    * @param id id of the lock holder
+    * @param overwrite overwrite an existing file, or fail if the file already exists
+    * @throws FileAlreadyExistsException if the file exists and overwrite is false
+    */
+  private def write(fc: FileContext, file: Path, id: String, overwrite: Boolean): Unit = {
+    val flags = java.util.EnumSet.of(CreateFlag.CREATE)
+    if (overwrite) {
+      flags.add(CreateFlag.OVERWRITE)
+    }
+    WithClose(fc.create(file, flags, CreateOpts.createParent)) { out =>
+      out.write(s"$id\n${System.currentTimeMillis()}".getBytes(StandardCharsets.UTF_8))
+    }
+  }
+
+  /**
+    * Reads the lock holder
+    *
+    * @param fc file context
+    * @param file lock file
+    * @return
+    */
+  private def owner(fc: FileContext, file: Path): Option[LockHolder] = {
+    try {
+      WithClose(fc.open(file)) { in =>
+        val lines = scala.io.Source.fromInputStream(in, StandardCharsets.UTF_8.name).getLines.toList
+        val renewed = lines.lift(1).flatMap(t => scala.util.Try(t.trim.toLong).toOption)
+        Some(LockHolder(lines.headOption.getOrElse(""), renewed))
+      }
+    } catch {
+      case _: FileNotFoundException => None
+    }
+  }
+
+  /**
+    * Contents of a lock file
+    *
+    * @param id id of the lock holder
+    * @param renewed time the lease was last renewed, in millis
+    */
+  private case class LockHolder(id: String, renewed: Option[Long])
+}
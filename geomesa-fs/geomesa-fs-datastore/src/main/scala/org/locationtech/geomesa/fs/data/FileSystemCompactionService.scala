@@ -0,0 +1,282 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.data
+
+import java.io.{Closeable, FileNotFoundException}
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.{ScheduledFuture, ScheduledThreadPoolExecutor, TimeUnit}
+
+import com.google.common.util.concurrent.MoreExecutors
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.fs.Options.{CreateOpts, Rename}
+import org.apache.hadoop.fs.{CreateFlag, Path}
+import org.locationtech.geomesa.fs.data.FileSystemCompactionService.CompactionConfig
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.StorageFileAction
+import org.locationtech.geomesa.fs.storage.common.utils.PathCache
+import org.locationtech.geomesa.index.conf.QueryProperties
+import org.locationtech.geomesa.utils.conf.GeoMesaSystemProperties.SystemProperty
+import org.locationtech.geomesa.utils.io.WithClose
+
+import scala.collection.mutable.ListBuffer
+import scala.concurrent.duration.{Duration, DurationInt}
+import scala.util.Try
+import scala.util.control.NonFatal
+
+/**
+  * Compacts partitions in the background. Partitions are compacted when they contain too many files, or
+  * when they are 'cold' (have not had any new files written for a while) and contain multiple small files or
+  * any modifications.
+  *
+  * Each run will read at most a configurable number of bytes (the I/O budget), so that compaction does
+  * not compete too heavily with queries and ingest. Partitions with the most files are compacted first. The
+  * first partition in each run is compacted even if it exceeds the budget, so that it is not starved.
+  *
+  * Compaction results are swapped into the storage metadata atomically, so queries will see either
+  * the old files or the new file, but not both. The replaced files are not deleted right away, as queries that
+  * started before the swap may still be reading them. Instead, they are recorded in a file under the storage
+  * root, and deleted by a later run once the configured delay has passed. To prevent multiple processes from
+  * compacting the same storage at once, a `FileSystemCompactionLock` is held while compacting.
+  *
+  * @param storages function to get the storages to compact
+  * @param config compaction config
+  */
+class FileSystemCompactionService(storages: => Seq[FileSystemStorage], config: CompactionConfig)
+    extends Runnable with Closeable with LazyLogging {
+
+  import FileSystemCompactionService.{CompactionCandidate, PendingDeletesFile}
+
+  private val scheduled: ScheduledFuture[_] = {
+    val interval = config.interval.toMillis
+    FileSystemCompactionService.executor.scheduleWithFixedDelay(this, interval, interval, TimeUnit.MILLISECONDS)
+  }
+
+  @volatile
+  private var closed = false
+
+  override def run(): Unit = synchronized {
+    var read = 0L
+    try {
+      val iter = storages.iterator
+      while (!closed && read < config.budget && iter.hasNext) {
+        read = compact(iter.next, read)
+      }
+    } catch {
+      case NonFatal(e) => logger.error("Error running background compaction:", e)
+    }
+  }
+
+  override def close(): Unit = {
+    closed = true
+    scheduled.cancel(false)
+    // wait for any in-progress compaction to finish
+    synchronized(())
+  }
+
+  /**
+    * Compact any partitions in the storage that need it
+    *
+    * @param storage storage
+    * @param read bytes read so far in the current run
+    * @return total bytes read in the current run
+    */
+  private def compact(storage: FileSystemStorage, read: Long): Long = {
+    val typeName = storage.metadata.sft.getTypeName
+    // pick up any changes from other processes
+    storage.metadata.reload()
+    val candidates = {
+      val now = System.currentTimeMillis()
+      storage.getPartitions.flatMap(p => candidate(storage, p.name, now)).sortBy(c => (-c.files, c.partition))
+    }
+    val deletes = new Path(storage.context.root, PendingDeletesFile)
+    if (candidates.isEmpty && !storage.context.fc.util.exists(deletes)) { read } else {
+      FileSystemCompactionLock.acquire(storage, config.lease) match {
+        case None =>
+          logger.debug(s"Skipping background compaction for schema '$typeName' as it is locked by another process")
+          read
+
+        case Some(lock) =>
+          val replaced = ListBuffer.empty[Path]
+          try {
+            var total = read
+            val iter = candidates.iterator
+            while (!closed && lock.valid && iter.hasNext) {
+              val c = iter.next
+              // the first partition in a run is always compacted, so that partitions larger than
+              // the budget don't get deferred forever
+              if (total > 0 && c.bytes > config.budget - total) {
+                logger.debug(s"Deferring compaction of partition '${c.partition}' in schema '$typeName' with " +
+                    s"${c.files} files and ${c.bytes} bytes as it exceeds the remaining budget of " +
+                    s"${config.budget - total}")
+              } else {
+                logger.debug(s"Compacting partition '${c.partition}' in schema '$typeName' with ${c.files} files " +
+                    s"and ${c.bytes} bytes")
+                try {
+                  replaced ++= storage.compactRetainingFiles(c.partition, config.threads).map(_.path)
+                  total += c.bytes
+                } catch {
+                  case NonFatal(e) => logger.error(s"Error compacting partition '${c.partition}':", e)
+                }
+              }
+            }
+            total
+          } finally {
+            try { delete(storage, deletes, replaced) } catch {
+              case NonFatal(e) => logger.error(s"Error deleting replaced files for schema '$typeName':", e)
+            }
+            lock.close()
+          }
+      }
+    }
+  }
+
+  /**
+    * Deletes files replaced by previous runs, once the delete delay has passed, and records files replaced
+    * by the current run so that they can be deleted by a later run
+    *
+    * @param storage storage
+    * @param file file used to track pending deletes
+    * @param replaced files replaced in the current run
+    */
+  private def delete(storage: FileSystemStorage, file: Path, replaced: Seq[Path]): Unit = {
+    val fc = storage.context.fc
+    val now = System.currentTimeMillis()
+
+    val existing = try {
+      WithClose(fc.open(file)) { in =>
+        scala.io.Source.fromInputStream(in, StandardCharsets.UTF_8.name).getLines.toList.flatMap { line =>
+          val i = line.indexOf('\t')
+          if (i == -1) { None } else {
+            Try(line.substring(0, i).toLong).toOption.map(_ -> new Path(line.substring(i + 1)))
+          }
+        }
+      }
+    } catch {
+      case _: FileNotFoundException => List.empty
+    }
+
+    val (expired, pending) = existing.partition { case (time, _) => now - time > config.deleteDelay.toMillis }
+    val failed = expired.filter { case (_, path) =>
+      logger.debug(s"Deleting replaced file $path")
+      try { fc.delete(path, false); PathCache.invalidate(fc, path); false } catch {
+        case NonFatal(e) => logger.warn(s"Error deleting replaced file $path, will retry in a later run: $e"); true
+      }
+    }
+
+    val remaining = failed ++ pending ++ replaced.map(now -> _)
+    if (remaining.isEmpty) {
+      fc.delete(file, false)
+    } else if (expired.nonEmpty || replaced.nonEmpty) {
+      // write to a temp file and rename it, so that we don't lose track of files if we fail part way through
+      val tmp = new Path(file.getParent, s"${file.getName}.tmp")
+      val flags = java.util.EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE)
+      WithClose(fc.create(tmp, flags, CreateOpts.createParent)) { out =>
+        remaining.foreach { case (time, path) => out.write(s"$time\t$path\n".getBytes(StandardCharsets.UTF_8)) }
+      }
+      fc.rename(tmp, file, Rename.OVERWRITE)
+    }
+  }
+
+  /**
+    * Check if a partition should be compacted
+    *
+    * @param storage storage
+    * @param partition partition
+    * @param now current time, used to check for cold partitions
+    * @return
+    */
+  private def candidate(storage: FileSystemStorage, partition: String, now: Long): Option[CompactionCandidate] = {
+    val files = storage.getFilePaths(partition)
+    if (files.lengthCompare(2) < 0) { None } else {
+      try {
+        lazy val sizes = files.map(f => PathCache.status(storage.context.fc, f.path).getLen)
+        def cold: Boolean = now - files.map(_.file.timestamp).max > config.cold.toMillis
+        def modified: Boolean = files.exists(_.file.action != StorageFileAction.Append)
+        def small: Boolean = sizes.count(_ < config.smallFile) > 1
+        if (files.lengthCompare(config.maxFiles) > 0 || (cold && (modified || small))) {
+          Some(CompactionCandidate(partition, files.length, sizes.sum))
+        } else {
+          None
+        }
+      } catch {
+        case NonFatal(e) =>
+          logger.warn(s"Error checking partition '$partition' for compaction: $e")
+          None
+      }
+    }
+  }
+}
+
+object FileSystemCompactionService {
+
+  val IntervalProperty    = SystemProperty("geomesa.fs.compaction.interval", "10 minutes")
+  val MaxFilesProperty    = SystemProperty("geomesa.fs.compaction.max-files", "10")
+  val ColdProperty        = SystemProperty("geomesa.fs.compaction.cold", "1 hour")
+  val SmallFileProperty   = SystemProperty("geomesa.fs.compaction.small-file", "128MB")
+  val BudgetProperty      = SystemProperty("geomesa.fs.compaction.budget", "1GB")
+  val ThreadsProperty     = SystemProperty("geomesa.fs.compaction.threads", "1")
+  val LeaseProperty       = SystemProperty("geomesa.fs.compaction.lease", "1 hour")
+  val DeleteDelayProperty = SystemProperty("geomesa.fs.compaction.delete-delay", "1 hour")
+
+  val PendingDeletesFile = ".compaction.deletes"
+
+  private val executor = MoreExecutors.getExitingScheduledExecutorService(new ScheduledThreadPoolExecutor(1))
+
+  /**
+    * Compaction configuration
+    *
+    * @param interval time between compaction runs
+    * @param maxFiles partitions with more files than this will be compacted
+    * @param cold partitions without new files for this long will be compacted, if they contain modifications or
+    *             more than one small file
+    * @param smallFile files smaller than this many bytes are considered small
+    * @param budget max bytes to read in each compaction run
+    * @param threads threads used to compact each partition
+    * @param lease time after which a compaction lock is considered stale
+    * @param deleteDelay time to wait before deleting files replaced by a compaction, which should be longer
+    *                    than any query that may be reading them
+    */
+  case class CompactionConfig(
+      interval: Duration,
+      maxFiles: Int,
+      cold: Duration,
+      smallFile: Long,
+      budget: Long,
+      threads: Int,
+      lease: Duration,
+      deleteDelay: Duration)
+
+  object CompactionConfig {
+
+    /**
+      * Load the compaction configuration from system properties
+      *
+      * @return
+      */
+    def apply(): CompactionConfig = {
+      // replaced files may still be read by running queries, so don't delete them before the queries time out
+      val deleteDelay = {
+        val delay = DeleteDelayProperty.toDuration.get
+        QueryProperties.QueryTimeout.toDuration.collect { case t if t >= delay => t + 1.minute }.getOrElse(delay)
+      }
+      CompactionConfig(
+        IntervalProperty.toDuration.get,
+        MaxFilesProperty.toInt.get,
+        ColdProperty.toDuration.get,
+        SmallFileProperty.toBytes.get,
+        BudgetProperty.toBytes.get,
+        ThreadsProperty.toInt.get,
+        LeaseProperty.toDuration.get,
+        deleteDelay
+      )
+    }
+  }
+
+  private case class CompactionCandidate(partition: String, files: Int, bytes: Long)
+}
@@ -13,6 +13,7 @@ import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.{FileContext, Path}
 import org.geotools.data.Query
 import org.geotools.data.store.{ContentDataStore, ContentEntry, ContentFeatureSource}
+import org.locationtech.geomesa.fs.data.FileSystemCompactionService.CompactionConfig
 import org.locationtech.geomesa.fs.storage.api._
 import org.locationtech.geomesa.fs.storage.common.StorageKeys
 import org.locationtech.geomesa.fs.storage.common.metadata.FileBasedMetadata
@@ -20,7 +21,7 @@ import org.locationtech.geomesa.index.stats.RunnableStats.UnoptimizedRunnableSta
 import org.locationtech.geomesa.index.stats.{GeoMesaStats, HasGeoMesaStats}
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
 import org.locationtech.geomesa.utils.index.GeoMesaSchemaValidator
-import org.locationtech.geomesa.utils.io.CloseQuietly
+import org.locationtech.geomesa.utils.io.{CloseQuietly, CloseWithLogging}
 import org.opengis.feature.`type`.Name
 import org.opengis.feature.simple.SimpleFeatureType
 
@@ -34,13 +35,16 @@ class FileSystemDataStore(
     readThreads: Int,
     writeTimeout: Duration,
     defaultEncoding: Option[String],
-    namespace: Option[String]
+    namespace: Option[String],
+    compaction: Option[CompactionConfig] = None
   ) extends ContentDataStore with HasGeoMesaStats with LazyLogging {
 
   namespace.foreach(setNamespaceURI)
 
   private val manager = FileSystemStorageManager(fc, conf, root, namespace)
 
+  private val compactor = compaction.map(new FileSystemCompactionService(manager.storages(), _))
+
   override val stats: GeoMesaStats = new UnoptimizedRunnableStats(this)
 
   override def createTypeNames(): java.util.List[Name] = {
@@ -90,6 +94,11 @@ class FileSystemDataStore(
   override def createFeatureSource(entry: ContentEntry): ContentFeatureSource =
     new FileSystemFeatureStore(storage(entry.getTypeName), entry, Query.ALL, readThreads, writeTimeout)
 
+  override def dispose(): Unit = {
+    compactor.foreach(CloseWithLogging(_))
+    super.dispose()
+  }
+
   /**
     * Get a handle on the underlying storage instance for a given simple feature type
     *
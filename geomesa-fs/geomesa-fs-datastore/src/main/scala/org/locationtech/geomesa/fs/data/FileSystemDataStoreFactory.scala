@@ -18,6 +18,7 @@ import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.{FileContext, Path}
 import org.geotools.data.DataAccessFactory.Param
 import org.geotools.data.{DataStore, DataStoreFactorySpi}
+import org.locationtech.geomesa.fs.data.FileSystemCompactionService.CompactionConfig
 import org.locationtech.geomesa.fs.storage.api.FileSystemStorageFactory
 import org.locationtech.geomesa.index.geotools.GeoMesaDataStoreFactory.{GeoMesaDataStoreInfo, NamespaceParams}
 import org.locationtech.geomesa.utils.classpath.ServiceLoader
@@ -64,7 +65,9 @@ class FileSystemDataStoreFactory extends DataStoreFactorySpi {
 
     val namespace = NamespaceParam.lookupOpt(params)
 
-    new FileSystemDataStore(fc, conf, path, readThreads, writeTimeout, encoding, namespace)
+    val compaction = if (AutoCompactParam.lookup(params)) { Some(CompactionConfig()) } else { None }
+
+    new FileSystemDataStore(fc, conf, path, readThreads, writeTimeout, encoding, namespace, compaction)
   }
 
   override def createNewDataStore(params: java.util.Map[String, java.io.Serializable]): DataStore =
@@ -97,6 +100,7 @@ object FileSystemDataStoreFactory extends GeoMesaDataStoreInfo {
       FileSystemDataStoreParams.EncodingParam,
       FileSystemDataStoreParams.ReadThreadsParam,
       FileSystemDataStoreParams.WriteTimeoutParam,
+      FileSystemDataStoreParams.AutoCompactParam,
       FileSystemDataStoreParams.ConfigPathsParam,
       FileSystemDataStoreParams.ConfigsParam
     )
@@ -161,6 +165,12 @@ object FileSystemDataStoreFactory extends GeoMesaDataStoreInfo {
         systemProperty = Some(SystemPropertyDurationParam(WriterFileTimeout)),
         supportsNiFiExpressions = true)
 
+    val AutoCompactParam =
+      new GeoMesaParam[java.lang.Boolean](
+        "fs.compaction.auto",
+        "Compact partitions automatically in the background",
+        default = false)
+
     @deprecated("ConfigsParam")
     val ConfParam =
       new GeoMesaParam[Properties](
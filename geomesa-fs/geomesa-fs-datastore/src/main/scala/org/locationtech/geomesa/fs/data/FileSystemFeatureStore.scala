@@ -70,14 +70,21 @@ class FileSystemFeatureStore(
     // The type name can sometimes be empty such as Query.ALL
     query.setTypeName(sft.getTypeName)
 
-    // get a closeable java iterator that DelegateSimpleFeatureIterator will process correctly
-    val iter = new FileSystemFeatureIterator(storage.getReader(query, threads = readThreads))
+    if (FileSystemAggregator.isAggregation(query.getHints)) {
+      // aggregate each partition in parallel, instead of streaming all the features back
+      val iter = new FileSystemFeatureIterator(FileSystemAggregator(storage, query, readThreads))
+      val returnSft = FileSystemAggregator.returnSft(query.getHints)
+      new DelegateSimpleFeatureReader(returnSft, new DelegateSimpleFeatureIterator(iter))
+    } else {
+      // get a closeable java iterator that DelegateSimpleFeatureIterator will process correctly
+      val iter = new FileSystemFeatureIterator(storage.getReader(query, threads = readThreads))
 
-    // transforms will be set after getting the iterator
-    val transformSft = query.getHints.getTransformSchema.getOrElse(sft)
+      // transforms will be set after getting the iterator
+      val transformSft = query.getHints.getTransformSchema.getOrElse(sft)
 
-    // note: DelegateSimpleFeatureIterator will close the iterator by checking that it implements Closeable
-    new DelegateSimpleFeatureReader(transformSft, new DelegateSimpleFeatureIterator(iter))
+      // note: DelegateSimpleFeatureIterator will close the iterator by checking that it implements Closeable
+      new DelegateSimpleFeatureReader(transformSft, new DelegateSimpleFeatureIterator(iter))
+    }
   }
 
   override def canLimit: Boolean = false
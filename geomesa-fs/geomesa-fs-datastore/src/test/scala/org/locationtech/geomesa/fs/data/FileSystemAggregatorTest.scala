@@ -0,0 +1,153 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.data
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, File}
+import java.nio.file.Files
+import java.nio.{ByteBuffer, ByteOrder}
+import java.util.Date
+
+import org.apache.commons.io.FileUtils
+import org.geotools.data.{DataStoreFinder, Query, Transaction}
+import org.geotools.filter.text.ecql.ECQL
+import org.geotools.geometry.jts.ReferencedEnvelope
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.arrow.io.SimpleFeatureArrowFileReader
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.index.conf.QueryHints
+import org.locationtech.geomesa.index.iterators.DensityScan
+import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder
+import org.locationtech.geomesa.utils.collection.SelfClosingIterator
+import org.locationtech.geomesa.utils.geotools.{CRS_EPSG_4326, FeatureUtils, SimpleFeatureTypes}
+import org.locationtech.geomesa.utils.io.WithClose
+import org.locationtech.geomesa.utils.stats.Stat
+import org.opengis.feature.simple.SimpleFeature
+import org.opengis.filter.Filter
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.collection.JavaConversions._
+
+@RunWith(classOf[JUnitRunner])
+class FileSystemAggregatorTest extends Specification {
+
+  import org.locationtech.geomesa.fs.storage.common.RichSimpleFeatureType
+
+  sequential
+
+  val sft = SimpleFeatureTypes.createType("aggregation", "name:String,age:Int,dtg:Date,*geom:Point:srid=4326")
+  sft.setScheme("daily")
+
+  val features = Seq.tabulate(10) { i =>
+    ScalaSimpleFeature.create(sft, s"$i", s"name$i", 100 + i, s"2017-06-0${5 + (i % 3)}T0$i:03:02.000Z",
+      s"POINT(10 10.$i)")
+  }
+
+  val filters = Seq(
+    "INCLUDE",
+    "dtg DURING 2017-06-05T00:00:00.000Z/2017-06-06T00:00:00.000Z",
+    "dtg DURING 2017-06-05T03:00:00.000Z/2017-06-07T04:30:00.000Z",
+    "bbox(geom, 5, 10.25, 15, 15) AND name IN ('name3', 'name4', 'name5', 'name9')"
+  ).map(ECQL.toFilter)
+
+  var dir: File = _
+
+  lazy val ds = DataStoreFinder.getDataStore(
+    Map("fs.path" -> dir.getPath, "fs.encoding" -> "parquet", "fs.read-threads" -> "4"))
+
+  step {
+    dir = Files.createTempDirectory("fsds-aggregation-test").toFile
+    ds.createSchema(sft)
+    // write each feature in a separate file, so that partitions have multiple files
+    features.foreach { feature =>
+      WithClose(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)) { writer =>
+        FeatureUtils.write(writer, feature, useProvidedFid = true)
+      }
+    }
+  }
+
+  def query(filter: Filter)(hints: (AnyRef, AnyRef)*): List[SimpleFeature] = {
+    val query = new Query(sft.getTypeName, filter)
+    hints.foreach { case (k, v) => query.getHints.put(k, v) }
+    SelfClosingIterator(ds.getFeatureReader(query, Transaction.AUTO_COMMIT)).toList
+  }
+
+  "FileSystemAggregator" should {
+    "run stats queries" >> {
+      foreach(Seq("Count()", "MinMax(age)", "Count();MinMax(dtg)")) { stat =>
+        foreach(filters) { filter =>
+          val expected = Stat(sft, stat)
+          features.filter(filter.evaluate).foreach(expected.observe)
+          val results = query(filter)(QueryHints.STATS_STRING -> stat)
+          results must haveLength(1)
+          results.head.getAttribute(0) mustEqual expected.toJson
+        }
+      }
+    }
+
+    "run density queries" >> {
+      val envelope = new ReferencedEnvelope(0, 20, 0, 20, CRS_EPSG_4326)
+      foreach(filters) { filter =>
+        val results = query(filter)(
+          QueryHints.DENSITY_BBOX -> envelope,
+          QueryHints.DENSITY_WIDTH -> Int.box(64),
+          QueryHints.DENSITY_HEIGHT -> Int.box(64))
+        results must haveLength(1)
+        val decode = DensityScan.decodeResult(envelope, 64, 64)
+        val total = results.flatMap(decode).map(_._3).sum
+        total mustEqual features.count(filter.evaluate).toDouble
+      }
+    }
+
+    "run bin queries" >> {
+      foreach(filters) { filter =>
+        val expected = features.count(filter.evaluate)
+        val results = query(filter)(QueryHints.BIN_TRACK -> "name", QueryHints.BIN_SORT -> java.lang.Boolean.TRUE)
+        val bytes = results.map(_.getAttribute(BinaryOutputEncoder.BIN_ATTRIBUTE_INDEX).asInstanceOf[Array[Byte]])
+        bytes.map(_.length).sum mustEqual expected * 16
+        if (expected > 0) {
+          val buffer = ByteBuffer.wrap(bytes.head).order(ByteOrder.LITTLE_ENDIAN)
+          val dates = Seq.tabulate(expected)(i => buffer.getInt(i * 16 + 4))
+          dates mustEqual dates.sorted
+        }
+        ok
+      }
+    }
+
+    "run arrow queries" >> {
+      import org.locationtech.geomesa.arrow.allocator
+
+      foreach(Seq(false, true)) { reverse =>
+        foreach(filters) { filter =>
+          val q = new Query(sft.getTypeName, filter)
+          q.getHints.put(QueryHints.ARROW_ENCODE, java.lang.Boolean.TRUE)
+          q.getHints.put(QueryHints.ARROW_SORT_FIELD, "dtg")
+          q.getHints.put(QueryHints.ARROW_SORT_REVERSE, java.lang.Boolean.valueOf(reverse))
+          q.getHints.put(QueryHints.ARROW_BATCH_SIZE, Int.box(2))
+          val os = new ByteArrayOutputStream()
+          // note: result features are re-used, so we have to write out the bytes as we iterate
+          SelfClosingIterator(ds.getFeatureReader(q, Transaction.AUTO_COMMIT)).foreach { sf =>
+            os.write(sf.getAttribute(0).asInstanceOf[Array[Byte]])
+          }
+          val bytes = os.toByteArray
+          val reader = SimpleFeatureArrowFileReader.streaming(() => new ByteArrayInputStream(bytes))
+          val ids = WithClose(reader)(r => WithClose(r.features())(_.map(_.getID).toList))
+          val sorted = features.filter(filter.evaluate).sortBy(_.getAttribute("dtg").asInstanceOf[Date].getTime)
+          val expected = if (reverse) { sorted.reverse } else { sorted }
+          ids mustEqual expected.map(_.getID)
+        }
+      }
+    }
+  }
+
+  step {
+    ds.dispose()
+    FileUtils.deleteDirectory(dir)
+  }
+}
@@ -0,0 +1,200 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.data
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+
+import org.apache.commons.io.FileUtils
+import org.geotools.data.{DataStoreFinder, Query, Transaction}
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.data.FileSystemCompactionService.CompactionConfig
+import org.locationtech.geomesa.utils.collection.SelfClosingIterator
+import org.locationtech.geomesa.utils.geotools.{FeatureUtils, SimpleFeatureTypes}
+import org.locationtech.geomesa.utils.io.WithClose
+import org.opengis.feature.simple.SimpleFeature
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.collection.JavaConversions._
+import scala.concurrent.duration.{Duration, DurationInt}
+
+@RunWith(classOf[JUnitRunner])
+class FileSystemCompactionServiceTest extends Specification {
+
+  import org.locationtech.geomesa.fs.storage.common.RichSimpleFeatureType
+
+  sequential
+
+  val sft = SimpleFeatureTypes.createType("compaction", "name:String,dtg:Date,*geom:Point:srid=4326")
+  sft.setScheme("daily")
+
+  val features = Seq.tabulate(10) { i =>
+    ScalaSimpleFeature.create(sft, s"$i", s"name$i", s"2017-06-05T04:03:0$i.000Z", s"POINT(10 10.$i)")
+  }
+
+  // long interval, so that compaction only runs when explicitly invoked
+  val config =
+    CompactionConfig(Duration("1 hour"), 3, Duration("1 hour"), 1024L * 1024L, 1024L * 1024L, 1, Duration("1 hour"),
+      Duration("1 hour"))
+
+  var dir: File = _
+
+  step {
+    dir = Files.createTempDirectory("fsds-compaction-test").toFile
+  }
+
+  "FileSystemCompactionService" should {
+    "compact partitions in the background" >> {
+      val ds = DataStoreFinder.getDataStore(Map("fs.path" -> dir.getPath, "fs.encoding" -> "parquet"))
+          .asInstanceOf[FileSystemDataStore]
+      ds.createSchema(sft)
+
+      // write each feature in a separate file
+      features.foreach { feature =>
+        WithClose(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)) { writer =>
+          FeatureUtils.write(writer, feature, useProvidedFid = true)
+        }
+      }
+
+      val storage = ds.storage(sft.getTypeName)
+      storage.getPartitions must haveLength(1)
+      storage.getPartitions.head.files must haveLength(10)
+
+      def query(): List[SimpleFeature] =
+        SelfClosingIterator(ds.getFeatureReader(new Query(sft.getTypeName), Transaction.AUTO_COMMIT)).toList
+
+      query() must containTheSameElementsAs(features)
+
+      // the first partition in a run should be compacted even if it's larger than the budget
+      WithClose(new FileSystemCompactionService(Seq(storage), config.copy(budget = 1L)))(_.run())
+      storage.getPartitions.head.files must haveLength(1)
+      new File(dir, s"${sft.getTypeName}/${FileSystemCompactionLock.LockFile}").exists() must beFalse
+
+      // the replaced files should not be deleted yet, as running queries may still be reading them
+      def files: Int = FileUtils.listFiles(new File(dir, sft.getTypeName), Array("parquet"), true).size
+      val deletes = new File(dir, s"${sft.getTypeName}/${FileSystemCompactionService.PendingDeletesFile}")
+      files mustEqual 11
+      deletes.exists() must beTrue
+
+      query() must containTheSameElementsAs(features)
+
+      // a new data store should see the compacted file through the metadata
+      val ds2 = DataStoreFinder.getDataStore(Map("fs.path" -> dir.getPath)).asInstanceOf[FileSystemDataStore]
+      try {
+        ds2.storage(sft.getTypeName).getPartitions.head.files must haveLength(1)
+      } finally {
+        ds2.dispose()
+      }
+
+      // a single file should not be compacted again
+      WithClose(new FileSystemCompactionService(Seq(storage), config))(_.run())
+      storage.getPartitions.head.files must haveLength(1)
+      files mustEqual 11
+
+      // the replaced files should be deleted once the delete delay has passed
+      WithClose(new FileSystemCompactionService(Seq(storage), config.copy(deleteDelay = Duration.Zero)))(_.run())
+      files mustEqual 1
+      deletes.exists() must beFalse
+      query() must containTheSameElementsAs(features)
+
+      ds.dispose()
+      ok
+    }
+
+    "not compact while another process holds the lock" >> {
+      val ds = DataStoreFinder.getDataStore(Map("fs.path" -> dir.getPath)).asInstanceOf[FileSystemDataStore]
+      try {
+        WithClose(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)) { writer =>
+          features.take(4).foreach(FeatureUtils.write(writer, _, useProvidedFid = true))
+        }
+        (0 until 3).foreach { _ =>
+          WithClose(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)) { writer =>
+            FeatureUtils.write(writer, features.last, useProvidedFid = true)
+          }
+        }
+        val storage = ds.storage(sft.getTypeName)
+        storage.getPartitions.head.files must haveLength(5)
+
+        val lock = new File(dir, s"${sft.getTypeName}/${FileSystemCompactionLock.LockFile}")
+        lock.createNewFile() must beTrue
+        WithClose(new FileSystemCompactionService(Seq(storage), config))(_.run())
+        storage.getPartitions.head.files must haveLength(5)
+
+        // a stale lock should be taken over
+        lock.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L) must beTrue
+        WithClose(new FileSystemCompactionService(Seq(storage), config))(_.run())
+        storage.getPartitions.head.files must haveLength(1)
+        lock.exists() must beFalse
+      } finally {
+        ds.dispose()
+      }
+    }
+
+    "defer partitions that exceed the remaining budget" >> {
+      val sft = SimpleFeatureTypes.createType("compaction-budget", "name:String,dtg:Date,*geom:Point:srid=4326")
+      sft.setScheme("daily")
+      val ds = DataStoreFinder.getDataStore(Map("fs.path" -> dir.getPath, "fs.encoding" -> "parquet"))
+          .asInstanceOf[FileSystemDataStore]
+      try {
+        ds.createSchema(sft)
+        // write each feature in a separate file, in two different partitions
+        Seq.tabulate(10) { i =>
+          ScalaSimpleFeature.create(sft, s"$i", s"name$i", s"2017-06-0${5 + i % 2}T04:03:0$i.000Z", "POINT(10 10)")
+        }.foreach { feature =>
+          WithClose(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)) { writer =>
+            FeatureUtils.write(writer, feature, useProvidedFid = true)
+          }
+        }
+        val storage = ds.storage(sft.getTypeName)
+        storage.getPartitions.map(_.files.length) mustEqual Seq(5, 5)
+
+        WithClose(new FileSystemCompactionService(Seq(storage), config.copy(budget = 1L)))(_.run())
+        storage.getPartitions.map(_.files.length) must containTheSameElementsAs(Seq(1, 5))
+
+        WithClose(new FileSystemCompactionService(Seq(storage), config.copy(budget = 1L)))(_.run())
+        storage.getPartitions.map(_.files.length) mustEqual Seq(1, 1)
+      } finally {
+        ds.dispose()
+      }
+    }
+
+    "renew the compaction lock while it is held" >> {
+      val ds = DataStoreFinder.getDataStore(Map("fs.path" -> dir.getPath)).asInstanceOf[FileSystemDataStore]
+      try {
+        val storage = ds.storage(sft.getTypeName)
+        val file = new File(dir, s"${sft.getTypeName}/${FileSystemCompactionLock.LockFile}")
+        val lease = Duration("1 second")
+        val lock = FileSystemCompactionLock.acquire(storage, lease)
+        lock must beSome
+        try {
+          def renewed: Long = FileUtils.readLines(file, StandardCharsets.UTF_8).get(1).toLong
+          val initial = renewed
+          eventually(40, 100.millis)(renewed must beGreaterThan(initial))
+          // the renewal time is stored in the file, so the modification time should not matter
+          file.setLastModified(System.currentTimeMillis() - 60000L) must beTrue
+          // the lock should not be stale, so another process can't acquire it
+          FileSystemCompactionLock.acquire(storage, lease) must beNone
+          lock.get.valid must beTrue
+        } finally {
+          lock.get.close()
+        }
+        file.exists() must beFalse
+      } finally {
+        ds.dispose()
+      }
+    }
+  }
+
+  step {
+    FileUtils.deleteDirectory(dir)
+  }
+}
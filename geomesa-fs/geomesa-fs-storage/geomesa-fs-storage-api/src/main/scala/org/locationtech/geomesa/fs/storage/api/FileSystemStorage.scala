@@ -142,6 +142,17 @@ trait FileSystemStorage extends Compactable with Closeable {
     */
   def getWriter(filter: Filter, partition: Option[String] = None, threads: Int = 1): FileSystemUpdateWriter
 
+  /**
+    * Compact a partition, but don't delete the files that were replaced. The replaced files are removed from
+    * the metadata, so new queries won't read them, however queries that are already running may still be
+    * reading them. The caller is responsible for deleting the files once any running queries have finished
+    *
+    * @param partition partition to compact
+    * @param threads suggested threads to use for file system operations
+    * @return the files that were replaced, or empty if the partition was not compacted
+    */
+  def compactRetainingFiles(partition: String, threads: Int = 1): Seq[StorageFilePath]
+
   override def close(): Unit = metadata.close()
 }
 
@@ -169,4 +180,21 @@ object FileSystemStorage {
       */
     def remove(): Unit
   }
+
+  /**
+    * Mixin for storage implementations that can return query results directly as arrow record batches,
+    * without decoding the stored data into simple features
+    */
+  trait ArrowBatchSupport {
+
+    /**
+      * Read a single partition as arrow record batches (without a schema or dictionaries). The arrow
+      * encoding, batch size and any transform are taken from the query hints
+      *
+      * @param query query
+      * @param partition partition to read
+      * @return record batches, or None if the partition can't be read as record batches
+      */
+    def getArrowBatches(query: Query, partition: String): Option[Iterator[Array[Byte]] with Closeable]
+  }
 }
@@ -85,6 +85,20 @@ trait StorageMetadata extends Compactable with Closeable {
     */
   def removePartition(partition: PartitionMetadata): Unit
 
+  /**
+    * Replace some of the files in a partition with new files, e.g. when compacting the partition.
+    * The default implementation removes and then adds the files as separate operations - implementations
+    * should override this if they are able to make the change atomically
+    *
+    * @param remove metadata to remove
+    * @param add metadata to add, for the same partition
+    */
+  def replacePartition(remove: PartitionMetadata, add: PartitionMetadata): Unit = {
+    require(remove.name == add.name, s"Can't replace partition '${remove.name}' with '${add.name}'")
+    removePartition(remove)
+    addPartition(add)
+  }
+
   /**
     * Invalidate any cached state and reload the current 'truth' for partition metadata. This may be an
     * expensive operation.
@@ -143,8 +157,45 @@ object StorageMetadata {
     * @param name file name (relative to the root path)
     * @param timestamp timestamp for the file
     * @param action type of file (append, modify, delete)
+    * @param stats summary stats for the features in the file, if known
+    */
+  case class StorageFile(
+      name: String,
+      timestamp: Long,
+      action: StorageFileAction = StorageFileAction.Append,
+      stats: Option[StorageFileStats] = None)
+
+  /**
+    * Summary stats for the features in a storage file. Stats are used to skip reading files that
+    * can't match a given query
+    *
+    * @param bounds spatial bounds of the default geometry, if known
+    * @param attributes min/max values for attributes
+    * @param filters bloom filters for attribute values
+    * @param ids bloom filter for feature ids, if any, serialized as a string
+    */
+  case class StorageFileStats(
+      bounds: Option[PartitionBounds],
+      attributes: Seq[AttributeBounds] = Seq.empty,
+      filters: Seq[AttributeFilter] = Seq.empty,
+      ids: Option[String] = None)
+
+  /**
+    * Min/max values for an attribute. Values are encoded as strings, based on the attribute type
+    *
+    * @param attribute attribute name
+    * @param lower min value
+    * @param upper max value
+    */
+  case class AttributeBounds(attribute: String, lower: String, upper: String)
+
+  /**
+    * Bloom filter for an attribute
+    *
+    * @param attribute attribute name
+    * @param filter bloom filter, serialized as a string
     */
-  case class StorageFile(name: String, timestamp: Long, action: StorageFileAction = StorageFileAction.Append)
+  case class AttributeFilter(attribute: String, filter: String)
 
   /**
     * Holds a storage file path
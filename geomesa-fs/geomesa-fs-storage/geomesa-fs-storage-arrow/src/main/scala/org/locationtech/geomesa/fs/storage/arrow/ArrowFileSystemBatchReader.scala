@@ -0,0 +1,210 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import java.io.Closeable
+
+import org.apache.hadoop.fs.Path
+import org.locationtech.geomesa.arrow.filter.ArrowFilterOptimizer
+import org.locationtech.geomesa.arrow.io.records.RecordBatchUnloader
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector.SimpleFeatureEncoding
+import org.locationtech.geomesa.features.{ScalaSimpleFeature, TransformSimpleFeature}
+import org.locationtech.geomesa.fs.storage.api.FileSystemContext
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureOrdering
+import org.locationtech.geomesa.utils.io.CloseWithLogging
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+
+/**
+  * Reads arrow IPC files as arrow record batches. If there is no filter, transform or sort, and the requested
+  * encoding matches the file encoding, record batches are forwarded as-is. Otherwise, the filter is
+  * evaluated against the arrow vectors, and matching rows are copied into new record batches.
+  * Unless sorting, no simple features are decoded. When sorting, each returned batch is sorted, but
+  * batches are not sorted relative to each other
+  *
+  * @param sft simple feature type
+  * @param context file system context
+  * @param files files to read
+  * @param filter filter
+  * @param transform transform
+  * @param encoding encoding of the returned batches
+  * @param batchSize max size of the returned batches, when not forwarding batches as-is
+  * @param sort sort field and reverse flag, used to sort each returned batch
+  */
+class ArrowFileSystemBatchReader(
+    sft: SimpleFeatureType,
+    context: FileSystemContext,
+    files: Seq[Path],
+    filter: Option[Filter],
+    transform: Option[(String, SimpleFeatureType)],
+    encoding: SimpleFeatureEncoding,
+    batchSize: Int,
+    sort: Option[(String, Boolean)] = None
+  ) extends Iterator[Array[Byte]] with Closeable {
+
+  import org.locationtech.geomesa.arrow.allocator
+
+  private val out = SimpleFeatureVector.create(transform.map(_._2).getOrElse(sft), Map.empty, encoding, batchSize)
+  private val unloader = new RecordBatchUnloader(out)
+  private var index = 0 // number of rows copied into the output vector
+
+  // when sorting, rows are buffered as simple features and written to the output vector on unload
+  private val ordering = sort.map { case (field, reverse) =>
+    val o = SimpleFeatureOrdering(out.sft.indexOf(field))
+    if (reverse) { o.reverse } else { o }
+  }
+  private val sorted = if (ordering.isEmpty) { null } else { Array.ofDim[SimpleFeature](batchSize) }
+
+  private val remaining = files.iterator
+  private var current: FileBatches = _
+  private var staged: Array[Byte] = _
+
+  override def hasNext: Boolean = {
+    if (staged == null) {
+      stageNext()
+    }
+    staged != null
+  }
+
+  override def next(): Array[Byte] = {
+    if (hasNext) {
+      val batch = staged
+      staged = null
+      batch
+    } else {
+      Iterator.empty.next
+    }
+  }
+
+  override def close(): Unit = {
+    if (current != null) {
+      CloseWithLogging(current)
+      current = null
+    }
+    CloseWithLogging(out)
+  }
+
+  private def stageNext(): Unit = {
+    var loop = true
+    while (loop) {
+      if (current == null) {
+        if (remaining.hasNext) {
+          current = new FileBatches(remaining.next)
+        } else {
+          // return any rows left in the output vector
+          if (index > 0) {
+            staged = unload()
+          }
+          loop = false
+        }
+      } else if (current.hasRows) {
+        current.copy()
+        if (index == batchSize) {
+          staged = unload()
+          loop = false
+        }
+      } else if (current.loadNextBatch()) {
+        if (current.forward && current.count > 0) {
+          staged = current.unload()
+          loop = false
+        }
+      } else {
+        CloseWithLogging(current)
+        current = null
+      }
+    }
+  }
+
+  private def unload(): Array[Byte] = {
+    ordering.foreach { o =>
+      java.util.Arrays.sort(sorted, 0, index, o)
+      var i = 0
+      while (i < index) {
+        out.writer.set(i, sorted(i))
+        i += 1
+      }
+    }
+    val batch = unloader.unload(index)
+    out.clear()
+    index = 0
+    batch
+  }
+
+  /**
+    * Reads the record batches from a single file
+    *
+    * @param file file
+    */
+  private class FileBatches(file: Path) extends Closeable {
+
+    private val reader = ArrowFileSystemReader.open(context, file)
+    private val vector = ArrowFileSystemReader.vector(reader)
+    private val view = vector.reader.feature
+
+    // forward the record batches directly if they don't need to be filtered, sorted or re-encoded
+    val forward: Boolean = filter.isEmpty && transform.isEmpty && ordering.isEmpty &&
+        vector.underlying.getField == out.underlying.getField
+
+    private lazy val unloader = new RecordBatchUnloader(vector)
+
+    private val optimized = filter.map(ArrowFilterOptimizer.rewrite(_, vector.sft, Map.empty))
+    private val result = transform match {
+      case None => view
+      case Some((tdefs, tsft)) => TransformSimpleFeature(vector.sft, tsft, tdefs).setFeature(view)
+    }
+
+    var count = 0
+    private var row = 0
+
+    def hasRows: Boolean = row < count
+
+    def loadNextBatch(): Boolean = {
+      if (reader.loadNextBatch()) {
+        count = reader.getVectorSchemaRoot.getRowCount
+        // if we're forwarding the batch, we don't need to examine the individual rows
+        row = if (forward) { count } else { 0 }
+        true
+      } else {
+        count = 0
+        row = 0
+        false
+      }
+    }
+
+    /**
+      * Copy rows that match the filter into the output vector, until either the output vector is full
+      * or the current batch is exhausted
+      */
+    def copy(): Unit = {
+      while (row < count && index < batchSize) {
+        vector.reader.load(row)
+        row += 1
+        if (optimized.forall(_.evaluate(view))) {
+          if (sorted == null) {
+            out.writer.set(index, result)
+          } else {
+            // we have to copy since the view is re-used for each row
+            sorted(index) = ScalaSimpleFeature.copy(result)
+          }
+          index += 1
+        }
+      }
+    }
+
+    /**
+      * Unload the current batch as-is
+      *
+      * @return
+      */
+    def unload(): Array[Byte] = unloader.unload(count)
+
+    override def close(): Unit = CloseWithLogging(Seq(reader, vector))
+  }
+}
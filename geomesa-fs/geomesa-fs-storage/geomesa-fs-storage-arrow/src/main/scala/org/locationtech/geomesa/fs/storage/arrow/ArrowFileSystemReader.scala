@@ -0,0 +1,135 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import org.apache.arrow.vector.complex.StructVector
+import org.apache.arrow.vector.ipc.ArrowStreamReader
+import org.apache.hadoop.fs.Path
+import org.locationtech.geomesa.arrow.filter.ArrowFilterOptimizer
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector
+import org.locationtech.geomesa.features.{ScalaSimpleFeature, TransformSimpleFeature}
+import org.locationtech.geomesa.fs.storage.api.FileSystemContext
+import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.io.CloseWithLogging
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+
+/**
+  * Reads simple features from arrow IPC files. The filter is evaluated against the arrow vectors
+  * directly, and only matching features are copied out
+  *
+  * @param sft simple feature type
+  * @param context file system context
+  * @param filter filter
+  * @param transform transform
+  */
+class ArrowFileSystemReader(
+    sft: SimpleFeatureType,
+    context: FileSystemContext,
+    filter: Option[Filter],
+    transform: Option[(String, SimpleFeatureType)]
+  ) extends FileSystemPathReader {
+
+  override def read(path: Path): CloseableIterator[SimpleFeature] = new PathReader(path)
+
+  private class PathReader(file: Path) extends CloseableIterator[SimpleFeature] {
+
+    private val reader = ArrowFileSystemReader.open(context, file)
+    private val vector = ArrowFileSystemReader.vector(reader)
+    private val view = vector.reader.feature
+    private val optimized = filter.map(ArrowFilterOptimizer.rewrite(_, vector.sft, Map.empty))
+
+    private val feature = new ScalaSimpleFeature(sft, "")
+    private val result = transform match {
+      case None => feature
+      case Some((tdefs, tsft)) => TransformSimpleFeature(sft, tsft, tdefs).setFeature(feature)
+    }
+
+    private var staged: Boolean = false
+    private var count = 0
+    private var i = 0
+
+    override def hasNext: Boolean = {
+      if (staged) { true } else {
+        stageNext()
+        staged
+      }
+    }
+
+    /**
+      * Note: same feature is mutated and returned for each call to .next
+      *
+      * @return
+      */
+    override def next(): SimpleFeature = {
+      if (staged || hasNext) {
+        staged = false
+        result
+      } else {
+        Iterator.empty.next
+      }
+    }
+
+    override def close(): Unit = CloseWithLogging(Seq(reader, vector))
+
+    private def stageNext(): Unit = {
+      var loop = true
+      while (loop) {
+        if (i < count) {
+          vector.reader.load(i)
+          i += 1
+          if (optimized.forall(_.evaluate(view))) {
+            feature.setId(view.getID)
+            var j = 0
+            while (j < sft.getAttributeCount) {
+              feature.setAttributeNoConvert(j, view.getAttribute(j))
+              j += 1
+            }
+            staged = true
+            loop = false
+          }
+        } else {
+          i = 0
+          loop = reader.loadNextBatch()
+          count = if (loop) { reader.getVectorSchemaRoot.getRowCount } else { 0 }
+        }
+      }
+    }
+  }
+}
+
+object ArrowFileSystemReader {
+
+  /**
+    * Open an arrow stream reader for a file
+    *
+    * @param context file system context
+    * @param file file
+    * @return
+    */
+  def open(context: FileSystemContext, file: Path): ArrowStreamReader = {
+    import org.locationtech.geomesa.arrow.allocator
+    new ArrowStreamReader(context.fc.open(file), allocator)
+  }
+
+  /**
+    * Wrap the vector loaded by an arrow stream reader. Batches loaded by the reader will be reflected
+    * in the returned vector
+    *
+    * @param reader reader
+    * @return
+    */
+  def vector(reader: ArrowStreamReader): SimpleFeatureVector = {
+    val root = reader.getVectorSchemaRoot
+    require(root.getFieldVectors.size() == 1 && root.getFieldVectors.get(0).isInstanceOf[StructVector], "Invalid file")
+    // note: files are written without dictionaries
+    SimpleFeatureVector.wrap(root.getFieldVectors.get(0).asInstanceOf[StructVector], Map.empty)
+  }
+}
@@ -0,0 +1,85 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import java.io.Closeable
+
+import org.apache.hadoop.fs.Path
+import org.geotools.data.Query
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector.SimpleFeatureEncoding
+import org.locationtech.geomesa.filter.factory.FastFilterFactory
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.{ArrowBatchSupport, FileSystemWriter}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.StorageFileAction
+import org.locationtech.geomesa.fs.storage.api._
+import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage
+import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
+import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserver
+import org.locationtech.geomesa.fs.storage.common.stats.FileStatsFilter
+import org.locationtech.geomesa.index.iterators.ArrowScan
+import org.locationtech.geomesa.index.planning.QueryRunner
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter.Filter
+
+/**
+  * Arrow implementation of FileSystemStorage. Data files are stored in the arrow IPC streaming format, which
+  * allows arrow queries to be answered with record batches instead of simple features
+  *
+  * @param context file system context
+  * @param metadata metadata
+  */
+class ArrowFileSystemStorage(context: FileSystemContext, metadata: StorageMetadata)
+    extends AbstractFileSystemStorage(context, metadata, ArrowFileSystemStorage.FileExtension)
+      with ArrowBatchSupport {
+
+  import org.locationtech.geomesa.index.conf.QueryHints.RichHints
+
+  override protected def createWriter(file: Path, observer: FileSystemObserver): FileSystemWriter =
+    new ArrowFileSystemWriter(metadata.sft, context, file, observer)
+
+  override protected def createReader(
+      filter: Option[Filter],
+      transform: Option[(String, SimpleFeatureType)]): FileSystemPathReader = {
+    val optimized = filter.map(FastFilterFactory.optimize(metadata.sft, _))
+    new ArrowFileSystemReader(metadata.sft, context, optimized, transform)
+  }
+
+  override def getArrowBatches(original: Query, partition: String): Option[Iterator[Array[Byte]] with Closeable] = {
+    val all = getFilePaths(partition)
+    // modifications and deletes have to be merged on read, which requires decoding the features
+    if (!all.forall(_.file.action == StorageFileAction.Append)) { None } else {
+      val query = QueryRunner.configureDefaultQuery(metadata.sft, original)
+      val hints = query.getHints
+      val filter = Option(query.getFilter).getOrElse(Filter.INCLUDE)
+
+      // if the partition doesn't match the filter at all, there won't be any partition filters
+      val (files, partitionFilter) = getPartitionFilters(filter, Some(partition)).headOption match {
+        case None => (Seq.empty, None)
+        case Some(fp) =>
+          val matched = FileStatsFilter(metadata.sft, filter) match {
+            case None => all
+            case Some(stats) => all.filter(f => stats.matches(f.file))
+          }
+          (matched, Option(fp.filter).filter(_ != Filter.INCLUDE).map(FastFilterFactory.optimize(metadata.sft, _)))
+      }
+
+      val encoding = SimpleFeatureEncoding.min(hints.isArrowIncludeFid, hints.isArrowProxyFid)
+      val batchSize = ArrowScan.getBatchSize(hints)
+
+      val reader = new ArrowFileSystemBatchReader(metadata.sft, context, files.map(_.path), partitionFilter,
+        hints.getTransform, encoding, batchSize, hints.getArrowSort)
+
+      Some(reader)
+    }
+  }
+}
+
+object ArrowFileSystemStorage {
+  val Encoding      = "arrow"
+  val FileExtension = "arrow"
+}
@@ -0,0 +1,19 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import org.locationtech.geomesa.fs.storage.api._
+
+class ArrowFileSystemStorageFactory extends FileSystemStorageFactory {
+
+  override def encoding: String = ArrowFileSystemStorage.Encoding
+
+  override def apply(context: FileSystemContext, metadata: StorageMetadata): FileSystemStorage =
+    new ArrowFileSystemStorage(context, metadata)
+}
@@ -0,0 +1,73 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import org.apache.hadoop.fs.Options.CreateOpts
+import org.apache.hadoop.fs.{CreateFlag, Path}
+import org.locationtech.geomesa.arrow.ArrowProperties
+import org.locationtech.geomesa.arrow.io.SimpleFeatureArrowFileWriter
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector.SimpleFeatureEncoding
+import org.locationtech.geomesa.fs.storage.api.FileSystemContext
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.FileSystemWriter
+import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserver
+import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserverFactory.NoOpObserver
+import org.locationtech.geomesa.utils.io.CloseQuietly
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+import scala.util.control.NonFatal
+
+/**
+  * Writes features to an arrow IPC (streaming format) file. Features are written with full precision
+  * and without dictionaries, so that the file can be read back without any loss
+  *
+  * @param sft simple feature type
+  * @param context file system context
+  * @param file file to write
+  * @param observer observer
+  */
+class ArrowFileSystemWriter(
+    sft: SimpleFeatureType,
+    context: FileSystemContext,
+    file: Path,
+    observer: FileSystemObserver = NoOpObserver
+  ) extends FileSystemWriter {
+
+  import org.locationtech.geomesa.arrow.allocator
+
+  private val batchSize = ArrowProperties.BatchSize.get.toInt
+
+  private val os = context.fc.create(file, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent)
+  private val writer = SimpleFeatureArrowFileWriter(sft, os, encoding = SimpleFeatureEncoding.Max)
+
+  private var count = 0
+
+  override def write(sf: SimpleFeature): Unit = {
+    writer.add(sf)
+    count += 1
+    // if the batch is full, write it out and start over
+    if (count == batchSize) {
+      writer.flush()
+      count = 0
+    }
+    observer.write(sf)
+  }
+
+  override def flush(): Unit = {
+    writer.flush()
+    count = 0
+    observer.flush()
+  }
+
+  override def close(): Unit = {
+    try { writer.close() } catch {
+      case NonFatal(e) => CloseQuietly(Seq(os, observer)).foreach(e.addSuppressed); throw e
+    }
+    CloseQuietly(Seq(os, observer)).foreach(e => throw e)
+  }
+}
@@ -0,0 +1,250 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.arrow
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.nio.file.Files
+
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileContext, Path}
+import org.geotools.data.Query
+import org.geotools.filter.text.ecql.ECQL
+import org.geotools.util.factory.Hints
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.arrow.io.{SimpleFeatureArrowFileReader, SimpleFeatureArrowIO}
+import org.locationtech.geomesa.arrow.vector.SimpleFeatureVector.SimpleFeatureEncoding
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.{ArrowBatchSupport, FileSystemWriter}
+import org.locationtech.geomesa.fs.storage.api.{FileSystemContext, FileSystemStorage, Metadata, NamedOptions}
+import org.locationtech.geomesa.fs.storage.common.metadata.FileBasedMetadataFactory
+import org.locationtech.geomesa.index.conf.QueryHints
+import org.locationtech.geomesa.index.planning.QueryRunner
+import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.io.WithClose
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+import org.specs2.matcher.MatchResult
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ArrowFileSystemStorageTest extends Specification with LazyLogging {
+
+  import org.locationtech.geomesa.arrow.allocator
+
+  val config = new Configuration()
+
+  // 8 bits resolution creates 3 partitions with our test data
+  val scheme = NamedOptions("z2-8bits")
+
+  val sft = SimpleFeatureTypes.createType("arrow-test", "*geom:Point:srid=4326,name:String,age:Int,dtg:Date")
+
+  val features = (0 until 10).map { i =>
+    val sf = new ScalaSimpleFeature(sft, i.toString)
+    sf.getUserData.put(Hints.USE_PROVIDED_FID, java.lang.Boolean.TRUE)
+    sf.setAttribute(1, s"name$i")
+    sf.setAttribute(2, s"$i")
+    sf.setAttribute(3, f"2014-01-${i + 1}%02dT00:00:01.000Z")
+    sf.setAttribute(0, s"POINT(4$i 5$i)")
+    sf
+  }
+
+  val during = "dtg DURING 2014-01-01T00:00:00.000Z/2014-01-08T12:00:00.000Z"
+
+  val filters = Seq(
+    "INCLUDE"                              -> features,
+    "IN('0', '2')"                         -> Seq(features(0), features(2)),
+    s"bbox(geom,38,48,52,62) and $during"  -> features.dropRight(2),
+    "bbox(geom,42,48,52,62)"               -> features.drop(2),
+    during                                 -> features.dropRight(2),
+    "name < 'name5'"                       -> features.take(5),
+    "name = 'name5'"                       -> features.slice(5, 6),
+    "age < 5"                              -> features.take(5)
+  )
+
+  val transformsList = Seq(null, Array("geom"), Array("geom", "dtg"), Array("name", "geom"))
+
+  "ArrowFileSystemStorage" should {
+    "read and write features" in {
+      withTestDir { dir =>
+        val storage = write(dir)
+        storage.getPartitions must haveLength(3)
+
+        foreach(transformsList) { transforms =>
+          foreach(filters) { case (filter, expected) =>
+            testQuery(storage)(filter, transforms, expected)
+          }
+        }
+
+        // verify we can load an existing storage
+        val context = FileSystemContext(FileContext.getFileContext(dir.toUri), config, dir)
+        val loaded = new FileBasedMetadataFactory().load(context)
+        loaded.foreach(_.reload()) // ensure state is loaded
+        loaded must beSome
+        testQuery(new ArrowFileSystemStorageFactory().apply(context, loaded.get))("INCLUDE", null, features)
+      }
+    }
+
+    "read arrow record batches" in {
+      withTestDir { dir =>
+        val storage = write(dir)
+
+        foreach(transformsList) { transforms =>
+          foreach(filters) { case (filter, expected) =>
+            testBatches(storage)(filter, transforms, expected)
+          }
+        }
+      }
+    }
+
+    "sort arrow record batches" in {
+      withTestDir { dir =>
+        val storage = write(dir)
+
+        val query = new Query(sft.getTypeName, Filter.INCLUDE)
+        query.getHints.put(QueryHints.ARROW_ENCODE, java.lang.Boolean.TRUE)
+        query.getHints.put(QueryHints.ARROW_BATCH_SIZE, Int.box(3))
+        query.getHints.put(QueryHints.ARROW_SORT_FIELD, "age")
+        query.getHints.put(QueryHints.ARROW_SORT_REVERSE, java.lang.Boolean.TRUE)
+
+        val batches = storage.getPartitions.map(_.name).flatMap { partition =>
+          WithClose(storage.asInstanceOf[ArrowBatchSupport].getArrowBatches(query, partition).get)(_.toList)
+        }
+
+        // the reducer assumes that each batch is already sorted
+        val encoding = SimpleFeatureEncoding.min(includeFids = true)
+        val input = CloseableIterator(batches.iterator)
+        val os = new ByteArrayOutputStream()
+        WithClose(SimpleFeatureArrowIO.reduceBatches(sft, Map.empty, encoding, Some(("age", true)), 3)(input)) {
+          _.foreach(os.write)
+        }
+
+        val bytes = os.toByteArray
+        val ids = WithClose(SimpleFeatureArrowFileReader.streaming(() => new ByteArrayInputStream(bytes))) { reader =>
+          WithClose(reader.features())(_.map(_.getID).toList)
+        }
+        ids mustEqual features.reverse.map(_.getID)
+      }
+    }
+
+    "not read arrow record batches from modified partitions" in {
+      withTestDir { dir =>
+        val storage = write(dir)
+
+        WithClose(storage.getWriter(ECQL.toFilter("IN('1')"))) { updater =>
+          updater.hasNext must beTrue
+          val feature = updater.next
+          feature.setAttribute(1, "name-updated")
+          updater.write()
+        }
+
+        val partition = storage.metadata.scheme.getPartitionName(features(1))
+        val query = new Query(sft.getTypeName, Filter.INCLUDE)
+        query.getHints.put(QueryHints.ARROW_ENCODE, java.lang.Boolean.TRUE)
+
+        foreach(storage.getPartitions.map(_.name)) { p =>
+          val batches = storage.asInstanceOf[ArrowBatchSupport].getArrowBatches(query, p)
+          batches.foreach(_.close())
+          if (p == partition) { batches must beNone } else { batches must beSome }
+        }
+      }
+    }
+  }
+
+  def write(dir: Path): FileSystemStorage = {
+    val context = FileSystemContext(FileContext.getFileContext(dir.toUri), config, dir)
+    val metadata =
+      new FileBasedMetadataFactory()
+          .create(context, Map.empty, Metadata(sft, "arrow", scheme, leafStorage = true))
+    val storage = new ArrowFileSystemStorageFactory().apply(context, metadata)
+
+    val writers = scala.collection.mutable.Map.empty[String, FileSystemWriter]
+
+    features.foreach { f =>
+      val partition = storage.metadata.scheme.getPartitionName(f)
+      val writer = writers.getOrElseUpdate(partition, storage.getWriter(partition))
+      writer.write(f)
+    }
+
+    writers.foreach(_._2.close())
+
+    logger.debug(s"wrote to ${writers.size} partitions for ${features.length} features")
+
+    storage
+  }
+
+  def withTestDir[R](code: Path => R): R = {
+    val file = new Path(Files.createTempDirectory("gm-arrow-test").toUri)
+    try { code(file) } finally {
+      file.getFileSystem(new Configuration).delete(file, true)
+    }
+  }
+
+  def testQuery(storage: FileSystemStorage)
+               (filter: String,
+                transforms: Array[String],
+                results: Seq[SimpleFeature]): MatchResult[Any] = {
+    import scala.collection.JavaConversions._
+
+    val query = new Query(sft.getTypeName, ECQL.toFilter(filter), transforms)
+    val features = {
+      val iter = SelfClosingIterator(storage.getReader(query))
+      // note: need to copy features in iterator as same object is re-used
+      iter.map(ScalaSimpleFeature.copy).toList
+    }
+    val attributes = Option(transforms).getOrElse(sft.getAttributeDescriptors.map(_.getLocalName).toArray)
+    features.map(_.getID) must containTheSameElementsAs(results.map(_.getID))
+    forall(features) { feature =>
+      feature.getAttributes must haveLength(attributes.length)
+      forall(attributes.zipWithIndex) { case (attribute, i) =>
+        feature.getAttribute(attribute) mustEqual feature.getAttribute(i)
+        feature.getAttribute(attribute) mustEqual results.find(_.getID == feature.getID).get.getAttribute(attribute)
+      }
+    }
+  }
+
+  def testBatches(storage: FileSystemStorage)
+                 (filter: String,
+                  transforms: Array[String],
+                  results: Seq[SimpleFeature]): MatchResult[Any] = {
+    import org.locationtech.geomesa.index.conf.QueryHints.RichHints
+
+    val query = new Query(sft.getTypeName, ECQL.toFilter(filter), transforms)
+    query.getHints.put(QueryHints.ARROW_ENCODE, java.lang.Boolean.TRUE)
+    query.getHints.put(QueryHints.ARROW_BATCH_SIZE, Int.box(3))
+
+    val batches = storage.getPartitions.map(_.name).flatMap { partition =>
+      val batches = storage.asInstanceOf[ArrowBatchSupport].getArrowBatches(query, partition)
+      batches must beSome
+      WithClose(batches.get)(_.toList)
+    }
+
+    val arrowSft = QueryRunner.configureDefaultQuery(sft, query).getHints.getTransformSchema.getOrElse(sft)
+    val encoding = SimpleFeatureEncoding.min(includeFids = true)
+
+    val os = new ByteArrayOutputStream()
+    val input = CloseableIterator(batches.iterator)
+    WithClose(SimpleFeatureArrowIO.reduceBatches(arrowSft, Map.empty, encoding, None, 3)(input))(_.foreach(os.write))
+
+    val bytes = os.toByteArray
+    val features = WithClose(SimpleFeatureArrowFileReader.streaming(() => new ByteArrayInputStream(bytes))) { reader =>
+      reader.sft.getAttributeCount mustEqual arrowSft.getAttributeCount
+      WithClose(reader.features())(_.map(ScalaSimpleFeature.copy).toList)
+    }
+
+    features.map(_.getID) must containTheSameElementsAs(results.map(_.getID))
+    if (arrowSft.indexOf("name") == -1) { ok } else {
+      forall(features) { feature =>
+        feature.getAttribute("name") mustEqual results.find(_.getID == feature.getID).get.getAttribute("name")
+      }
+    }
+  }
+}
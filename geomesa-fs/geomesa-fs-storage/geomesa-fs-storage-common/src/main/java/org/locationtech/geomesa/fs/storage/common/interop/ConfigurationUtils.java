@@ -47,6 +47,22 @@ public class ConfigurationUtils {
         sft.getUserData().put("geomesa.fs.observers", String.join(",", observers));
     }
 
+    public static void setStatsAttributes(SimpleFeatureType sft, List<String> attributes) {
+        sft.getUserData().put("geomesa.fs.stats", String.join(",", attributes));
+    }
+
+    public static void setBloomAttributes(SimpleFeatureType sft, List<String> attributes) {
+        sft.getUserData().put("geomesa.fs.stats.bloom", String.join(",", attributes));
+    }
+
+    public static void setBloomIds(SimpleFeatureType sft, boolean ids) {
+        sft.getUserData().put("geomesa.fs.stats.bloom.ids", String.valueOf(ids));
+    }
+
+    public static void setSortCurve(SimpleFeatureType sft, String curve) {
+        sft.getUserData().put("geomesa.fs.sort", curve);
+    }
+
     private static String serialize(String name, Map<String, String> options) {
         return ConfigFactory.empty()
                             .withValue("name", ConfigValueFactory.fromAnyRef(name))
@@ -20,6 +20,8 @@ import org.locationtech.geomesa.fs.storage.api._
 import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.{FileSystemPathReader, MetadataObserver}
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserverFactory.CompositeObserver
 import org.locationtech.geomesa.fs.storage.common.observer.{FileSystemObserver, FileSystemObserverFactory}
+import org.locationtech.geomesa.fs.storage.common.sort.SortingFileSystemWriter
+import org.locationtech.geomesa.fs.storage.common.stats.{FileStatsFilter, FileStatsTracker}
 import org.locationtech.geomesa.fs.storage.common.utils.StorageUtils.FileType
 import org.locationtech.geomesa.fs.storage.common.utils.{PathCache, StorageUtils}
 import org.locationtech.geomesa.index.planning.QueryRunner
@@ -113,6 +115,9 @@ abstract class AbstractFileSystemStorage(
     logger.debug(s"  Threading the read of ${filters.map(_.partitions.size).sum} partitions with " +
         s"$threads reader threads")
 
+    // used to skip files based on their stats
+    val stats = FileStatsFilter(metadata.sft, filter)
+
     val readers = filters.iterator.flatMap { fp =>
       lazy val reader = {
         val filter = Option(fp.filter).filter(_ != Filter.INCLUDE)
@@ -125,7 +130,17 @@ abstract class AbstractFileSystemStorage(
       }
       // each partition must be read separately, to ensure modifications are handled correctly
       fp.partitions.iterator.flatMap { p =>
-        val files = getFilePaths(p)
+        val files = stats match {
+          case None => getFilePaths(p)
+          case Some(s) =>
+            val all = getFilePaths(p)
+            val matched = all.filter(f => s.matches(f.file))
+            if (matched.lengthCompare(all.length) != 0) {
+              logger.debug(s"  Skipping ${all.length - matched.length} of ${all.length} files in partition $p " +
+                  "based on file stats")
+            }
+            matched
+        }
         if (files.isEmpty) { Iterator.empty } else { Iterator.single(reader -> files) }
       }
     }
@@ -146,37 +161,12 @@ abstract class AbstractFileSystemStorage(
 
   override def compact(partition: Option[String], threads: Int): Unit = {
     partition.map(Seq(_)).getOrElse(metadata.getPartitions().map(_.name)).foreach { partition =>
-      val toCompact = getFilePaths(partition)
-
-      if (toCompact.lengthCompare(2) < 0) {
-        logger.debug(s"Skipping compaction for single data file: ${toCompact.mkString(", ")}")
-      } else {
-        val path = StorageUtils.nextFile(context.root, partition, metadata.leafStorage, extension, FileType.Compacted)
-
-        logger.debug(s"Compacting data files: [${toCompact.mkString(", ")}] to into file $path")
-
-        var written = 0L
-
-        val reader = createReader(None, None)
-        def threaded = FileSystemThreadedReader(Iterator.single(reader -> toCompact), threads)
-        val compactObserver = new CompactObserver(partition, path, toCompact)
-        val observer = if (observers.isEmpty) { compactObserver } else {
-          new CompositeObserver(observers.map(_.apply(path)).+:(compactObserver))
-        }
-
-        WithClose(createWriter(path, observer), threaded) { case (writer, features) =>
-          while (features.hasNext) {
-            writer.write(features.next())
-            written += 1
-          }
-        }
-        PathCache.register(context.fc, path)
-
-        logger.debug(s"Wrote compacted file $path")
-        logger.debug(s"Deleting old files [${toCompact.mkString(", ")}]")
+      val replaced = compactRetainingFiles(partition, threads)
+      if (replaced.nonEmpty) {
+        logger.debug(s"Deleting old files [${replaced.mkString(", ")}]")
 
         val failures = ListBuffer.empty[Path]
-        toCompact.foreach { file =>
+        replaced.foreach { file =>
           if (!context.fc.delete(file.path, false)) {
             failures.append(file.path)
           }
@@ -186,9 +176,43 @@ abstract class AbstractFileSystemStorage(
         if (failures.nonEmpty) {
           logger.error(s"Failed to delete some files: [${failures.mkString(", ")}]")
         }
+      }
+    }
+  }
+
+  override def compactRetainingFiles(partition: String, threads: Int): Seq[StorageFilePath] = {
+    val toCompact = getFilePaths(partition)
+
+    if (toCompact.lengthCompare(2) < 0) {
+      logger.debug(s"Skipping compaction for single data file: ${toCompact.mkString(", ")}")
+      Seq.empty
+    } else {
+      val path = StorageUtils.nextFile(context.root, partition, metadata.leafStorage, extension, FileType.Compacted)
+
+      logger.debug(s"Compacting data files: [${toCompact.mkString(", ")}] to into file $path")
+
+      var written = 0L
 
-        logger.debug(s"Compacted $written records into file $path")
+      val reader = createReader(None, None)
+      def threaded = FileSystemThreadedReader(Iterator.single(reader -> toCompact), threads)
+      val compactObserver = new CompactObserver(partition, path, toCompact)
+      val observer = if (observers.isEmpty) { compactObserver } else {
+        new CompositeObserver(observers.map(_.apply(path)).+:(compactObserver))
       }
+
+      def compacted = SortingFileSystemWriter(metadata.sft, createWriter(path, observer))
+
+      WithClose(compacted, threaded) { case (writer, features) =>
+        while (features.hasNext) {
+          writer.write(features.next())
+          written += 1
+        }
+      }
+      PathCache.register(context.fc, path)
+
+      logger.debug(s"Compacted $written records into file $path")
+
+      toCompact
     }
   }
 
@@ -212,7 +236,7 @@ abstract class AbstractFileSystemStorage(
     val observer = if (observers.isEmpty) { updateObserver } else {
       new CompositeObserver(observers.map(_.apply(path)).+:(updateObserver))
     }
-    createWriter(path, observer)
+    SortingFileSystemWriter(metadata.sft, createWriter(path, observer))
   }
 
   /**
@@ -272,9 +296,10 @@ abstract class AbstractFileSystemStorage(
     * @param file file being written
     * @param action file type
     */
-  class UpdateObserver(partition: String, file: Path, action: StorageFileAction) extends MetadataObserver {
-    override protected def onClose(bounds: Envelope, count: Long): Unit = {
-      val files = Seq(StorageFile(file.getName, System.currentTimeMillis(), action))
+  class UpdateObserver(partition: String, file: Path, action: StorageFileAction)
+      extends MetadataObserver(metadata.sft) {
+    override protected def onClose(bounds: Envelope, count: Long, stats: StorageFileStats): Unit = {
+      val files = Seq(StorageFile(file.getName, System.currentTimeMillis(), action, Some(stats)))
       metadata.addPartition(PartitionMetadata(partition, files, PartitionBounds(bounds), count))
     }
   }
@@ -286,12 +311,16 @@ abstract class AbstractFileSystemStorage(
     * @param file compacted file being written
     * @param replaced files being replaced
     */
-  class CompactObserver(partition: String, file: Path, replaced: Seq[StorageFilePath]) extends MetadataObserver {
-    override protected def onClose(bounds: Envelope, count: Long): Unit = {
+  class CompactObserver(partition: String, file: Path, replaced: Seq[StorageFilePath])
+      extends MetadataObserver(metadata.sft) {
+    override protected def onClose(bounds: Envelope, count: Long, stats: StorageFileStats): Unit = {
       val partitionBounds = PartitionBounds(bounds)
-      metadata.removePartition(PartitionMetadata(partition, replaced.map(_.file), partitionBounds, count))
-      val added = Seq(StorageFile(file.getName, System.currentTimeMillis(), StorageFileAction.Append))
-      metadata.addPartition(PartitionMetadata(partition, added, partitionBounds, count))
+      val removed = PartitionMetadata(partition, replaced.map(_.file), partitionBounds, count)
+      // use the latest timestamp of the replaced files, so that any files written to the partition while we were
+      // compacting will still sort after the compacted file
+      val timestamp = replaced.map(_.file.timestamp).max
+      val added = Seq(StorageFile(file.getName, timestamp, StorageFileAction.Append, Some(stats)))
+      metadata.replacePartition(removed, PartitionMetadata(partition, added, partitionBounds, count))
     }
   }
 }
@@ -307,11 +336,14 @@ object AbstractFileSystemStorage {
 
   /**
    * Tracks metadata during writes
+   *
+   * @param sft simple feature type
    */
-  abstract class MetadataObserver extends FileSystemObserver {
+  abstract class MetadataObserver(sft: SimpleFeatureType) extends FileSystemObserver {
 
     private var count: Long = 0L
     private val bounds: Envelope = new Envelope()
+    private val stats = new FileStatsTracker(sft)
 
     override def write(feature: SimpleFeature): Unit = {
       // Update internal count/bounds/etc
@@ -320,12 +352,13 @@ object AbstractFileSystemStorage {
       if (geom != null) {
         bounds.expandToInclude(geom.getEnvelopeInternal)
       }
+      stats.add(feature)
     }
 
     override def flush(): Unit = {}
 
-    override def close(): Unit = onClose(bounds, count)
+    override def close(): Unit = onClose(bounds, count, stats.stats(bounds))
 
-    protected def onClose(bounds: Envelope, count: Long): Unit
+    protected def onClose(bounds: Envelope, count: Long, stats: StorageFileStats): Unit
   }
 }
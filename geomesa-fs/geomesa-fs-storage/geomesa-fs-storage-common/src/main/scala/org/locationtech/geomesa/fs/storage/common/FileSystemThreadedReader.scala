@@ -9,6 +9,8 @@
 package org.locationtech.geomesa.fs.storage.common
 
 import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.{BiConsumer, Supplier}
 
 import com.typesafe.scalalogging.StrictLogging
 import org.apache.hadoop.fs.Path
@@ -16,7 +18,8 @@ import org.locationtech.geomesa.features.ScalaSimpleFeature
 import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{StorageFileAction, StorageFilePath}
 import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
 import org.locationtech.geomesa.utils.collection.CloseableIterator
-import org.locationtech.geomesa.utils.io.WithClose
+import org.locationtech.geomesa.utils.conf.GeoMesaSystemProperties.SystemProperty
+import org.locationtech.geomesa.utils.io.{CloseQuietly, WithClose}
 import org.opengis.feature.simple.SimpleFeature
 
 import scala.util.control.NonFatal
@@ -24,12 +27,17 @@ import scala.util.control.NonFatal
 /**
   * Multi-threaded file reads
   *
-  * @param es executor service used by the read tasks
+  * @param executor executor used by the read tasks
+  * @param prefetcher prefetcher used to open files ahead of the read tasks
   * @param phaser phaser for tracking read task completion
   * @param queue intermediate queue populated by the read tasks
   */
-class FileSystemThreadedReader private (es: ExecutorService, phaser: Phaser, queue: BlockingQueue[SimpleFeature])
-    extends CloseableIterator[SimpleFeature] {
+class FileSystemThreadedReader private (
+    executor: FileSystemThreadedReader.QueryExecutor,
+    prefetcher: FileSystemThreadedReader.Prefetcher,
+    phaser: Phaser,
+    queue: BlockingQueue[SimpleFeature]
+  ) extends CloseableIterator[SimpleFeature] {
 
   private val localQueue = new java.util.LinkedList[SimpleFeature]()
 
@@ -71,35 +79,67 @@ class FileSystemThreadedReader private (es: ExecutorService, phaser: Phaser, que
     }
   }
 
-  override def close(): Unit = es.shutdownNow()
+  override def close(): Unit = {
+    try { executor.close() } finally {
+      prefetcher.close()
+    }
+  }
 }
 
 object FileSystemThreadedReader extends StrictLogging {
 
+  /**
+    * Number of files per query to open ahead of the read threads
+    */
+  val ReadAheadProperty = SystemProperty("geomesa.fs.reader.read-ahead", "2")
+
+  /**
+    * Max number of features per query to buffer between the read threads and the client
+    */
+  val BufferSizeProperty = SystemProperty("geomesa.fs.reader.buffer.size", "100000")
+
+  // shared pool for read tasks - per-query concurrency is limited by the query executor
+  private lazy val ReadPool = pool("geomesa-fs-reader")
+
+  // shared pool for opening files ahead of the read tasks - per-query concurrency is limited by the prefetcher
+  private lazy val PrefetchPool = pool("geomesa-fs-prefetch")
+
+  /**
+    * Read files
+    *
+    * @param readers readers and the files to read with each one
+    * @param threads number of files to read in parallel
+    * @param readAhead number of files to open ahead of the read threads
+    * @param buffer max number of features to buffer between the read threads and the client
+    * @return
+    */
   def apply(
       readers: Iterator[(FileSystemPathReader, Seq[StorageFilePath])],
-      threads: Int): CloseableIterator[SimpleFeature] = {
+      threads: Int,
+      readAhead: Int = ReadAheadProperty.toInt.get,
+      buffer: Int = BufferSizeProperty.toInt.get): CloseableIterator[SimpleFeature] = {
 
     if (threads < 2) {
-      readers.flatMap { case (reader, files) =>
+      val prefetcher = new Prefetcher(readAhead)
+      // ensure files are sorted in reverse chronological order
+      val partitions = readers.toList.map { case (reader, files) => files.sorted.map(prefetcher.request(reader, _)) }
+      CloseableIterator(partitions.iterator, prefetcher.close()).flatMap { files =>
         val mods = scala.collection.mutable.HashSet.empty[String]
-        // ensure files are sorted in reverse chronological order
-        CloseableIterator(files.sorted.iterator).flatMap(f => read(reader, f, mods))
+        CloseableIterator(files.iterator).flatMap(f => read(f, mods))
       }
     } else {
-      val queue = new LinkedBlockingQueue[SimpleFeature](2000000)
-      val es = Executors.newFixedThreadPool(threads)
+      val queue = new LinkedBlockingQueue[SimpleFeature](buffer)
+      val executor = new QueryExecutor(threads)
+      val prefetcher = new Prefetcher(readAhead)
 
       val phaser = new Phaser(1) {
         override protected def onAdvance(phase: Int, registeredParties: Int): Boolean = {
-          // when all tasks have been completed, shutdown the executor service
-          es.shutdown()
           true // return true to indicate the phaser should terminate
         }
       }
 
       try {
-        readers.foreach { case (reader, files) =>
+        val chains = readers.map { case (reader, files) =>
           // group our files by actions which can be parallelized
           val groups = scala.collection.mutable.ListBuffer.empty[Seq[StorageFilePath]]
           var group = scala.collection.mutable.ArrayBuffer.empty[StorageFilePath]
@@ -118,36 +158,271 @@ object FileSystemThreadedReader extends StrictLogging {
           if (group.nonEmpty) {
             groups += group // add the last group
           }
+          (reader, groups.toList)
+        }.toList
+
+        // request prefetches in the approximate order the files will be read - the first group of each
+        // partition, then the second group of each partition, etc
+        val prefetched = scala.collection.mutable.Map.empty[StorageFilePath, PrefetchedFile]
+        val depth = if (chains.isEmpty) { 0 } else { chains.map(_._2.length).max }
+        var i = 0
+        while (i < depth) {
+          chains.foreach { case (reader, groups) =>
+            groups.lift(i).foreach(_.foreach(f => prefetched.put(f, prefetcher.request(reader, f))))
+          }
+          i += 1
+        }
 
-          es.submit(new ChainedReaderTask(es, phaser, reader, groups.head, groups.tail, queue))
+        chains.foreach { case (_, groups) =>
+          val files = groups.map(_.map(prefetched.apply))
+          executor.submit(new ChainedReaderTask(executor, phaser, files.head, files.tail, queue))
         }
       } catch {
-        case NonFatal(e) => es.shutdownNow(); throw e
+        case NonFatal(e) => executor.close(); prefetcher.close(); throw e
       } finally {
         phaser.arriveAndDeregister()
       }
 
-      new FileSystemThreadedReader(es, phaser, queue)
+      new FileSystemThreadedReader(executor, prefetcher, phaser, queue)
+    }
+  }
+
+  /**
+    * Runs tasks on the shared read pool and waits for them to complete. At most `threads` tasks will
+    * run at once. If any task fails, tasks that haven't started yet are cancelled and the error is thrown
+    *
+    * @param tasks tasks to run
+    * @param threads number of tasks to run in parallel
+    * @tparam T result type
+    * @return task results, in the same order as the tasks
+    */
+  def invokeAll[T](tasks: Seq[Callable[T]], threads: Int): Seq[T] = {
+    val executor = new QueryExecutor(threads)
+    val futures = tasks.map(t => new FutureTask[T](t))
+    try {
+      futures.foreach(executor.submit)
+      futures.map { future =>
+        try { future.get } catch {
+          case e: ExecutionException => throw e.getCause
+        }
+      }
+    } finally {
+      executor.close()
+      // note: don't interrupt running tasks, as the threads are shared
+      futures.foreach(_.cancel(false))
     }
   }
 
   /**
     * Reads a file
     *
-    * @param reader reader
     * @param file file to read
     * @param mods collection to track modifications
     * @return
     */
   private def read(
-      reader: FileSystemPathReader,
-      file: StorageFilePath,
+      file: PrefetchedFile,
       mods: scala.collection.mutable.Set[String]): CloseableIterator[SimpleFeature] = {
-    file.file.action match {
-      case StorageFileAction.Append => new AppendingReaderIterator(reader, file.path, mods)
-      case StorageFileAction.Modify => new ModifyingReaderIterator(reader, file.path, mods)
-      case StorageFileAction.Delete => new DeletingReaderIterator(reader, file.path, mods)
-      case _ => throw new NotImplementedError(s"Unexpected storage action: ${file.file.action}")
+    val path = file.file.path
+    file.file.file.action match {
+      case StorageFileAction.Append => new AppendingReaderIterator(path, file.open(), mods)
+      case StorageFileAction.Modify => new ModifyingReaderIterator(path, file.open(), mods)
+      case StorageFileAction.Delete => new DeletingReaderIterator(path, file.open(), mods)
+      case _ => file.discard(); throw new NotImplementedError(s"Unexpected storage action: ${file.file.file.action}")
+    }
+  }
+
+  private def pool(name: String): ExecutorService = {
+    val factory = new ThreadFactory() {
+      private val count = new AtomicInteger(0)
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"$name-${count.incrementAndGet()}")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    // note: threads are bounded by the number of concurrent queries, as each query limits its own tasks
+    new ThreadPoolExecutor(0, Int.MaxValue, 60L, TimeUnit.SECONDS, new SynchronousQueue[Runnable](), factory)
+  }
+
+  /**
+    * Runs tasks for a single query on the shared read pool, with at most `threads` tasks running at once
+    *
+    * @param threads max concurrent tasks
+    */
+  private class QueryExecutor(threads: Int) {
+
+    private val pending = new ConcurrentLinkedQueue[Runnable]()
+    private val running = new AtomicInteger(0)
+
+    @volatile
+    private var closed = false
+
+    def isClosed: Boolean = closed
+
+    def submit(task: Runnable): Unit = {
+      if (!closed) {
+        pending.offer(task)
+        schedule()
+      }
+    }
+
+    def close(): Unit = {
+      closed = true
+      pending.clear()
+    }
+
+    private def schedule(): Unit = {
+      var loop = true
+      while (loop) {
+        val count = running.get
+        if (closed || count >= threads || pending.isEmpty) {
+          loop = false
+        } else if (running.compareAndSet(count, count + 1)) {
+          try { ReadPool.execute(new Worker()) } catch {
+            case NonFatal(e) => running.decrementAndGet(); throw e
+          }
+        }
+      }
+    }
+
+    private class Worker extends Runnable {
+      override def run(): Unit = {
+        try {
+          var task = pending.poll()
+          while (task != null && !closed) {
+            task.run()
+            task = pending.poll()
+          }
+        } finally {
+          running.decrementAndGet()
+          // pick up any tasks that were submitted after our last poll
+          schedule()
+        }
+      }
+    }
+  }
+
+  /**
+    * Opens files asynchronously ahead of the read tasks, so that the latency of opening a file (e.g. fetching
+    * the first bytes and reading the footer from an object store) overlaps with the reading of other files.
+    *
+    * Files are opened in the order they are requested. At most `depth` files are opened (or being opened)
+    * without having been claimed by a read task, which bounds the memory used by prefetched buffers.
+    *
+    * @param depth number of files to open ahead, or 0 to disable prefetching
+    */
+  private class Prefetcher(depth: Int) {
+
+    // note: mutable state is guarded by `this`
+    private val pending = new java.util.LinkedList[PrefetchedFile]()
+    private val started = new java.util.HashSet[PrefetchedFile]()
+    private var closed = false
+
+    def request(reader: FileSystemPathReader, file: StorageFilePath): PrefetchedFile = synchronized {
+      val prefetched = new PrefetchedFile(reader, file, this)
+      if (depth > 0) {
+        pending.add(prefetched)
+        schedule()
+      }
+      prefetched
+    }
+
+    def close(): Unit = {
+      val open = synchronized {
+        closed = true
+        pending.clear()
+        val copy = new java.util.ArrayList(started)
+        started.clear()
+        copy
+      }
+      val iter = open.iterator()
+      while (iter.hasNext) {
+        iter.next().discard()
+      }
+    }
+
+    /**
+      * Claim a file - if it hasn't been started yet, it will not be prefetched
+      *
+      * @param file file
+      * @return true if the file was started and needs to be awaited
+      */
+    private [FileSystemThreadedReader] def claim(file: PrefetchedFile): Boolean = synchronized {
+      if (started.remove(file)) { true } else { pending.remove(file); false }
+    }
+
+    /**
+      * Indicates that a started file has been claimed, freeing up a slot for the next file
+      */
+    private [FileSystemThreadedReader] def release(): Unit = synchronized(schedule())
+
+    private def schedule(): Unit = {
+      while (!closed && started.size < depth && !pending.isEmpty) {
+        val next = pending.poll()
+        started.add(next)
+        next.start()
+      }
+    }
+  }
+
+  /**
+    * A file that may be opened ahead of time
+    *
+    * @param reader reader
+    * @param file file
+    * @param prefetcher owning prefetcher
+    */
+  private class PrefetchedFile(reader: FileSystemPathReader, val file: StorageFilePath, prefetcher: Prefetcher) {
+
+    @volatile
+    private var future: CompletableFuture[CloseableIterator[SimpleFeature]] = _
+
+    def start(): Unit = {
+      val open = new Supplier[CloseableIterator[SimpleFeature]]() {
+        override def get(): CloseableIterator[SimpleFeature] = {
+          logger.trace(s"Prefetching file ${file.path}")
+          val iter = reader.read(file.path)
+          try { iter.hasNext } catch {
+            // let the read task handle the error
+            case NonFatal(e) => CloseQuietly(iter); throw e
+          }
+          iter
+        }
+      }
+      future = CompletableFuture.supplyAsync(open, PrefetchPool)
+    }
+
+    /**
+      * Open the file for reading. If the file has been prefetched, this will return the prefetched iterator,
+      * otherwise it will open it synchronously
+      *
+      * @return
+      */
+    def open(): CloseableIterator[SimpleFeature] = {
+      if (!prefetcher.claim(this)) { reader.read(file.path) } else {
+        try { future.get() } catch {
+          case e: ExecutionException => throw e.getCause
+        } finally {
+          prefetcher.release()
+        }
+      }
+    }
+
+    /**
+      * Close any prefetched iterator without reading it
+      */
+    def discard(): Unit = {
+      if (prefetcher.claim(this)) {
+        prefetcher.release()
+      }
+      val f = future
+      if (f != null) {
+        f.whenComplete(new BiConsumer[CloseableIterator[SimpleFeature], Throwable]() {
+          override def accept(iter: CloseableIterator[SimpleFeature], e: Throwable): Unit =
+            if (iter != null) { CloseQuietly(iter) }
+        })
+      }
     }
   }
 
@@ -155,20 +430,18 @@ object FileSystemThreadedReader extends StrictLogging {
     * Performs a set of chained (dependent) reads. The groups must be handled serially, but the files within a
     * given group can be read in parallel.
     *
-    * @param es executor service for submitting new read tasks
+    * @param executor executor for submitting new read tasks
     * @param phaser phaser to track run lifecycle
-    * @param reader reader
     * @param group current group of files that can be read in parallel
     * @param chain remaining groups of files that must be read sequentially
     * @param queue result queue
     * @param mods modifications/deletes for this group of files
     */
   private class ChainedReaderTask(
-      es: ExecutorService,
+      executor: QueryExecutor,
       phaser: Phaser,
-      reader: FileSystemPathReader,
-      group: Seq[StorageFilePath],
-      chain: Seq[Seq[StorageFilePath]],
+      group: Seq[PrefetchedFile],
+      chain: Seq[Seq[PrefetchedFile]],
       queue: BlockingQueue[SimpleFeature],
       mods: scala.collection.mutable.Set[String] = scala.collection.mutable.HashSet.empty[String]
   ) extends Runnable {
@@ -181,7 +454,7 @@ object FileSystemThreadedReader extends StrictLogging {
           // when this group is done, submit the next group for processing
           try {
             if (chain.nonEmpty) {
-              es.submit(new ChainedReaderTask(es, phaser, reader, chain.head, chain.tail, queue, mods))
+              executor.submit(new ChainedReaderTask(executor, phaser, chain.head, chain.tail, queue, mods))
             }
             true // return true to indicate the phaser should terminate
           } finally {
@@ -190,7 +463,9 @@ object FileSystemThreadedReader extends StrictLogging {
         }
       }
       try {
-        group.foreach(file => es.submit(new ReaderTask(child, queue, file.path, read(reader, file, mods))))
+        group.foreach { file =>
+          executor.submit(new ReaderTask(executor, child, queue, file.file.path, read(file, mods)))
+        }
       } finally {
         child.arriveAndDeregister()
       }
@@ -200,12 +475,14 @@ object FileSystemThreadedReader extends StrictLogging {
   /**
     * Task to run a reader and add the results to a result queue
     *
+    * @param executor executor, used to check for cancellation
     * @param phaser phaser for tracking completion of this task
     * @param queue result queue
     * @param path file path (for logging)
     * @param iter lazily evaluated iterator for reading the path
     */
   private class ReaderTask(
+      executor: QueryExecutor,
       phaser: Phaser,
       queue: BlockingQueue[SimpleFeature],
       path: Path,
@@ -216,7 +493,13 @@ object FileSystemThreadedReader extends StrictLogging {
 
     override def run(): Unit = {
       try {
-        iter.foreach(queue.put)
+        WithClose(iter) { features =>
+          while (!executor.isClosed && features.hasNext) {
+            val feature = features.next()
+            // since the threads are shared, we can't rely on interrupts to stop us if the query is closed
+            while (!executor.isClosed && !queue.offer(feature, 100, TimeUnit.MILLISECONDS)) {}
+          }
+        }
       } catch {
         case NonFatal(e) => logger.error(s"Error reading file $path", e)
       } finally {
@@ -228,13 +511,13 @@ object FileSystemThreadedReader extends StrictLogging {
   /**
     * Reads a file, skipping features marked as modified
     *
-    * @param reader reader
     * @param path file path
+    * @param features features read from the file
     * @param mods set of modified feature IDs that shouldn't be returned
     */
   private class AppendingReaderIterator(
-      reader: FileSystemPathReader,
       path: Path,
+      features: CloseableIterator[SimpleFeature],
       mods: scala.collection.Set[String]
     ) extends CloseableIterator[SimpleFeature] {
 
@@ -244,9 +527,9 @@ object FileSystemThreadedReader extends StrictLogging {
 
     private val delegate = {
       if (mods.isEmpty) {
-        reader.read(path)
+        features
       } else {
-        reader.read(path).filter { f => if (mods.contains(f.getID)) { count += 1; false } else { true } }
+        features.filter { f => if (mods.contains(f.getID)) { count += 1; false } else { true } }
       }
     }
 
@@ -268,13 +551,13 @@ object FileSystemThreadedReader extends StrictLogging {
   /**
     * Reads a file, skipping features marked as modified
     *
-    * @param reader reader
     * @param path file path
+    * @param features features read from the file
     * @param mods set of modified feature IDs that shouldn't be returned
     */
   private class ModifyingReaderIterator(
-      reader: FileSystemPathReader,
       path: Path,
+      features: CloseableIterator[SimpleFeature],
       mods: scala.collection.mutable.Set[String]
     ) extends CloseableIterator[SimpleFeature] {
 
@@ -282,7 +565,7 @@ object FileSystemThreadedReader extends StrictLogging {
 
     private var count = 0
 
-    private val delegate = reader.read(path).filter { f => count += 1; mods.add(f.getID) }
+    private val delegate = features.filter { f => count += 1; mods.add(f.getID) }
 
     override def hasNext: Boolean = delegate.hasNext
 
@@ -300,13 +583,13 @@ object FileSystemThreadedReader extends StrictLogging {
   /**
     * Reads a file, tracking deletes
     *
-    * @param reader reader
     * @param path file path
+    * @param features lazily evaluated features read from the file
     * @param mods deleted feature ids will be added here
     */
   private class DeletingReaderIterator(
-      reader: FileSystemPathReader,
       path: Path,
+      features: => CloseableIterator[SimpleFeature],
       mods: scala.collection.mutable.Set[String]
     ) extends CloseableIterator[SimpleFeature] {
 
@@ -314,7 +597,7 @@ object FileSystemThreadedReader extends StrictLogging {
 
     try {
       var count = 0
-      WithClose(reader.read(path)) { features =>
+      WithClose(features) { features =>
         while (features.hasNext) {
           mods.add(features.next().getID)
           count += 1
@@ -14,9 +14,11 @@ import org.apache.hadoop.mapred.InvalidJobConfException
 import org.apache.hadoop.mapreduce._
 import org.apache.hadoop.mapreduce.lib.output.{FileOutputCommitter, FileOutputFormat}
 import org.apache.hadoop.mapreduce.security.TokenCache
-import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionBounds, PartitionMetadata, StorageFile}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionBounds, PartitionMetadata, StorageFile, StorageFileAction}
 import org.locationtech.geomesa.fs.storage.api.{FileSystemContext, StorageMetadataFactory}
-import org.locationtech.geomesa.fs.storage.common.jobs.PartitionOutputFormat.{PartitionState, SingleFileOutputFormat}
+import org.locationtech.geomesa.fs.storage.common.jobs.PartitionOutputFormat.{PartitionState, SingleFileOutputFormat, SortingRecordWriter}
+import org.locationtech.geomesa.fs.storage.common.sort.{FeatureSorter, SortBufferProperty, SortCurve}
+import org.locationtech.geomesa.fs.storage.common.stats.FileStatsTracker
 import org.locationtech.geomesa.fs.storage.common.utils.StorageUtils
 import org.locationtech.geomesa.utils.io.CloseWithLogging
 import org.locationtech.jts.geom.{Envelope, Geometry}
@@ -61,6 +63,7 @@ class PartitionOutputFormat(delegate: SingleFileOutputFormat) extends OutputForm
       }
     }
     private val fileType = StorageConfiguration.getFileType(context.getConfiguration)
+    private val curve = SortCurve(metadata.sft)
 
     private val counter = context.getCounter(Group, Features)
     private val cache = scala.collection.mutable.Map.empty[String, PartitionState]
@@ -74,6 +77,7 @@ class PartitionOutputFormat(delegate: SingleFileOutputFormat) extends OutputForm
         state.bounds.expandToInclude(geom.getEnvelopeInternal)
       }
       state.count += 1L
+      state.stats.add(value)
       counter.increment(1)
     }
 
@@ -81,7 +85,8 @@ class PartitionOutputFormat(delegate: SingleFileOutputFormat) extends OutputForm
       cache.foreach { case (partition, state) =>
         logger.debug(s"Closing writer for $partition")
         state.writer.close(context)
-        val files = Seq(StorageFile(state.file, System.currentTimeMillis()))
+        val stats = Some(state.stats.stats(state.bounds))
+        val files = Seq(StorageFile(state.file, System.currentTimeMillis(), StorageFileAction.Append, stats))
         metadata.addPartition(PartitionMetadata(partition, files, PartitionBounds(state.bounds), state.count))
       }
       CloseWithLogging(metadata)
@@ -93,7 +98,11 @@ class PartitionOutputFormat(delegate: SingleFileOutputFormat) extends OutputForm
       val file = StorageUtils.nextFile(root, partition, metadata.leafStorage, metadata.encoding, fileType)
       logger.debug(s"Creating record writer at path $file")
       // noinspection LanguageFeature
-      PartitionState(root, file.getName, delegate.getRecordWriter(context, file))
+      val writer = curve match {
+        case None => delegate.getRecordWriter(context, file)
+        case Some(c) => new SortingRecordWriter(delegate.getRecordWriter(context, file), c)
+      }
+      PartitionState(root, file.getName, writer, new FileStatsTracker(metadata.sft))
     }
   }
 }
@@ -104,7 +113,31 @@ object PartitionOutputFormat {
     def getRecordWriter(context: TaskAttemptContext, file: Path): RecordWriter[Void, SimpleFeature]
   }
 
-  private case class PartitionState(root: Path, file: String, writer: RecordWriter[Void, SimpleFeature]) {
+  /**
+    * Record writer that sorts features by a space-filling curve before passing them to the delegate writer
+    *
+    * @param delegate delegate writer
+    * @param curve sort curve
+    */
+  private class SortingRecordWriter(delegate: RecordWriter[Void, SimpleFeature], curve: SortCurve)
+      extends RecordWriter[Void, SimpleFeature] {
+
+    private val sorter = new FeatureSorter(curve, SortBufferProperty.toInt.get, f => delegate.write(null, f))
+
+    override def write(key: Void, value: SimpleFeature): Unit = sorter.add(value)
+
+    override def close(context: TaskAttemptContext): Unit = {
+      try { sorter.flush() } finally {
+        delegate.close(context)
+      }
+    }
+  }
+
+  private case class PartitionState(
+      root: Path,
+      file: String,
+      writer: RecordWriter[Void, SimpleFeature],
+      stats: FileStatsTracker) {
     var count = 0L
     val bounds = new Envelope()
   }
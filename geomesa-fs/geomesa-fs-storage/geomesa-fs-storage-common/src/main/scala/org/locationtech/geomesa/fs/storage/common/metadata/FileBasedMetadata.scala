@@ -10,12 +10,10 @@ package org.locationtech.geomesa.fs.storage.common.metadata
 
 import java.io.InputStreamReader
 import java.nio.charset.StandardCharsets
-import java.util.UUID
 import java.util.concurrent._
 
 import com.typesafe.config._
 import com.typesafe.scalalogging.LazyLogging
-import org.apache.hadoop.fs.Options.CreateOpts
 import org.apache.hadoop.fs._
 import org.locationtech.geomesa.fs.storage.api.StorageMetadata.PartitionMetadata
 import org.locationtech.geomesa.fs.storage.api.{NamedOptions, PartitionScheme, StorageMetadata}
@@ -26,12 +24,18 @@ import org.locationtech.jts.geom.Envelope
 import org.opengis.feature.simple.SimpleFeatureType
 
 import scala.collection.parallel.ExecutionContextTaskSupport
-import scala.concurrent.ExecutionContext
+import scala.concurrent.{ExecutionContext, ExecutionContextExecutorService}
 import scala.util.control.NonFatal
 
 /**
-  * StorageMetadata implementation. Saves changes as a series of timestamped changelogs to allow
-  * concurrent modifications. The current state is obtained by replaying all the logs.
+  * StorageMetadata implementation. Saves changes as an append-only, sequentially numbered transaction log,
+  * to allow concurrent modifications. The state is periodically checkpointed when the metadata is compacted.
+  * The current state is obtained by reading the latest checkpoint and replaying any log entries written
+  * after it. Once loaded, subsequent reloads only need to read entries that have been written since the
+  * last reload.
+  *
+  * Metadata written by older versions (as individual timestamped update files) is read on the initial load
+  * if there is no checkpoint, and is folded into the log when the metadata is compacted.
   *
   * Note that state is not read off disk until 'reload' is called.
   *
@@ -64,6 +68,17 @@ class FileBasedMetadata(
 
   private val partitions = new ConcurrentHashMap[String, PartitionMetadata]()
 
+  private val log = new MetadataLog(fc, new Path(directory, FileBasedMetadata.LogDirectory))
+
+  // merged state of the log, as of `version` - note: guarded by `this`
+  private val configs = scala.collection.mutable.Map.empty[String, PartitionConfig]
+  // the last log version applied to our state, or -1 if the state hasn't been loaded yet
+  private var version = -1L
+
+  // the last log version we know about, used as a hint when appending to the log
+  @volatile
+  private var head = 0L
+
   override def getPartition(name: String): Option[PartitionMetadata] = Option(partitions.get(name))
 
   override def getPartitions(prefix: Option[String]): Seq[PartitionMetadata] = {
@@ -75,85 +90,178 @@ class FileBasedMetadata(
   }
 
   override def addPartition(partition: PartitionMetadata): Unit = {
-    val config = {
-      val action = PartitionAction.Add
-      val files = partition.files.toSet
-      val envelope = EnvelopeConfig(partition.bounds.map(_.envelope).getOrElse(new Envelope()))
-      PartitionConfig(partition.name, action, files, partition.count, envelope, System.currentTimeMillis())
-    }
-    FileBasedMetadata.writePartitionConfig(fc, directory, config)
+    append(Seq(FileBasedMetadata.config(partition, PartitionAction.Add)))
     partitions.merge(partition.name, partition, FileBasedMetadata.add)
   }
 
   override def removePartition(partition: PartitionMetadata): Unit = {
-    val config = {
-      val action = PartitionAction.Remove
-      val files = partition.files.toSet
-      val envelope = EnvelopeConfig(partition.bounds.map(_.envelope).getOrElse(new Envelope()))
-      PartitionConfig(partition.name, action, files, partition.count, envelope, System.currentTimeMillis())
-    }
-    FileBasedMetadata.writePartitionConfig(fc, directory, config)
+    append(Seq(FileBasedMetadata.config(partition, PartitionAction.Remove)))
     partitions.merge(partition.name, partition, FileBasedMetadata.remove)
   }
 
-  override def compact(partition: Option[String], threads: Int): Unit = reload(partition, threads, write = true)
-
-  override def reload(): Unit = reload(None, 4, write = false)
-
-  override def close(): Unit = {}
+  /**
+    * Replaces files in a partition by writing a single log entry, so that readers will never see the
+    * partition without either the old or the new files
+    *
+    * @param remove metadata to remove
+    * @param add metadata to add, for the same partition
+    */
+  override def replacePartition(remove: PartitionMetadata, add: PartitionMetadata): Unit = {
+    require(remove.name == add.name, s"Can't replace partition '${remove.name}' with '${add.name}'")
+    val configs = Seq(
+      FileBasedMetadata.config(remove, PartitionAction.Remove),
+      FileBasedMetadata.config(add, PartitionAction.Add)
+    )
+    append(configs)
+    val replace = new java.util.function.BiFunction[String, PartitionMetadata, PartitionMetadata]() {
+      override def apply(name: String, existing: PartitionMetadata): PartitionMetadata = {
+        val removed = if (existing == null) { null } else { FileBasedMetadata.remove(existing, remove) }
+        if (removed == null) { add } else { removed + add }
+      }
+    }
+    partitions.compute(add.name, replace)
+  }
 
-  private def reload(partition: Option[String], threads: Int, write: Boolean): Unit = {
+  /**
+    * Compacts the metadata by writing a new checkpoint of the log. Any metadata files written by older
+    * versions are folded into the checkpoint and removed. Note that the checkpoint always covers all
+    * partitions, so the partition parameter is ignored
+    *
+    * @param partition ignored
+    * @param threads number of threads used to read metadata files
+    */
+  override def compact(partition: Option[String], threads: Int): Unit = synchronized {
     require(threads > 0, "Threads must be a positive number")
     val ec = ExecutionContext.fromExecutorService(Executors.newFixedThreadPool(threads))
     try {
-      // read the compaction baseline file
-      val compacted = FileBasedMetadata.readCompactedConfig(fc, directory)
-      // read any updates to the given partition(s)
-      // use a parallel collection, so that we get some threading on reading and deleting individual update files
-      val paths = FileBasedMetadata.listPartitionConfigs(ec, fc, directory, partition).par
-      paths.tasksupport = new ExecutionContextTaskSupport(ec)
-      val updates = paths.flatMap(FileBasedMetadata.readPartitionConfig(fc, _)).seq
+      val previous = log.lastCheckpoint()
+      val legacy = load(ec, legacy = true)
+      if (legacy.nonEmpty || !previous.contains(version)) {
+        log.writeCheckpoint(version, configs.values.toList)
+      }
+      // once the checkpoint is written, we can remove the old files
+      val deletes = legacy.par
+      deletes.tasksupport = new ExecutionContextTaskSupport(ec)
+      deletes.foreach(fc.delete(_, false))
+      // keep the entries since the previous checkpoint, in case any readers are still using them
+      previous.foreach(log.clean)
+    } finally {
+      ec.shutdown()
+    }
+  }
 
-      partition match {
-        case None =>
-          // group by partition and merge updates by timestamp
-          val grouped = (compacted ++ updates).groupBy(_.name).values
-          val merged = grouped.flatMap(mergePartitionConfigs).filter(_.files.nonEmpty).toList
-
-          // update the in-memory map - update key by key, instead of clearing the map and repopulating it,
-          // so that callers don't ever see an empty map
-          val keys = new java.util.HashSet(partitions.keySet())
-          merged.foreach { m =>
-            keys.remove(m.name)
-            partitions.put(m.name, m.toMetadata)
-          }
-          keys.asScala.foreach(partitions.remove)
+  override def reload(): Unit = synchronized {
+    if (version >= 0 && log.lastCheckpoint().forall(_ <= version)) {
+      // read any new entries from the log
+      val changed = scala.collection.mutable.Set.empty[String]
+      var entry = log.read(version + 1)
+      while (entry.isDefined) {
+        entry.get.foreach { config =>
+          update(config)
+          changed += config.name
+        }
+        version += 1
+        entry = log.read(version + 1)
+      }
+      head = math.max(head, version)
+      changed.foreach { name =>
+        configs.get(name) match {
+          case None => partitions.remove(name)
+          case Some(c) => partitions.put(name, c.toMetadata)
+        }
+      }
+    } else {
+      // either we haven't loaded yet, or a checkpoint was written since our last reload and
+      // the entries we haven't read may have been removed - load from the latest checkpoint
+      val ec = ExecutionContext.fromExecutorService(Executors.newFixedThreadPool(4))
+      try { load(ec, legacy = false) } finally {
+        ec.shutdown()
+      }
+    }
+  }
 
-          if (write) {
-            FileBasedMetadata.writeCompactedConfig(fc, directory, merged)
-            paths.foreach(fc.delete(_, false)) // note: already a parallel collection
-          }
+  override def close(): Unit = {}
 
-        case Some(p) =>
-          // get the compacted baseline just for the partition we're reading
-          val (matched, others) = compacted.partition(_.name == p)
-          // merge the updates by timestamp
-          val merged = mergePartitionConfigs(updates ++ matched).filter(_.files.nonEmpty)
-          // only update the single partition entry in the in-memory map
-          merged match {
-            case None => partitions.remove(partition)
-            case Some(m) => partitions.put(p, m.toMetadata)
-          }
+  /**
+    * Append an update to the log
+    *
+    * @param configs updates, which will be written as a single log entry
+    */
+  private def append(configs: Seq[PartitionConfig]): Unit = {
+    val written = log.append(configs, head)
+    head = math.max(head, written)
+  }
 
-          if (write) {
-            // we keep the baseline compaction for other partitions but update the one we're reading
-            FileBasedMetadata.writeCompactedConfig(fc, directory, others ++ merged)
-            paths.foreach(fc.delete(_, false)) // note: already a parallel collection
-          }
+  /**
+    * Apply a log entry to the current state
+    *
+    * @param config log entry
+    */
+  private def update(config: PartitionConfig): Unit = {
+    val merged = config.action match {
+      case PartitionAction.Add    => Some(configs.get(config.name).map(_ + config).getOrElse(config))
+      case PartitionAction.Remove => configs.get(config.name).map(_ - config)
+    }
+    merged.filter(_.files.nonEmpty) match {
+      case None => configs.remove(config.name)
+      case Some(m) => configs.put(config.name, m)
+    }
+  }
+
+  /**
+    * Load the full state from the latest checkpoint and the log
+    *
+    * @param ec execution context used for multi-threading
+    * @param legacy read any metadata files written by older versions, even if there is a checkpoint
+    * @return any metadata files written by older versions that were read
+    */
+  private def load(ec: ExecutionContextExecutorService, legacy: Boolean): Seq[Path] = {
+    configs.clear()
+    val checkpoint = log.lastCheckpoint()
+    checkpoint.foreach(v => log.readCheckpoint(v).foreach(c => configs.put(c.name, c)))
+    version = checkpoint.getOrElse(0L)
+
+    val legacyPaths = if (!legacy && checkpoint.isDefined) { Seq.empty } else {
+      // read the compaction baseline file and any individual updates
+      val compacted = FileBasedMetadata.readCompactedConfig(fc, directory)
+      // use a parallel collection, so that we get some threading on reading individual update files
+      val paths = FileBasedMetadata.listPartitionConfigs(ec, fc, directory, None).par
+      paths.tasksupport = new ExecutionContextTaskSupport(ec)
+      val updates = paths.flatMap(FileBasedMetadata.readPartitionConfig(fc, _)).seq
+      if (compacted.nonEmpty || updates.nonEmpty) {
+        // group by partition and merge updates by timestamp
+        val grouped = (configs.values.toSeq ++ compacted ++ updates).groupBy(_.name)
+        configs.clear()
+        grouped.foreach { case (name, c) => mergePartitionConfigs(c).foreach(configs.put(name, _)) }
       }
-    } finally {
-      ec.shutdown()
+      val baseline = new Path(directory, FileBasedMetadata.CompactedPath)
+      if (compacted.isEmpty) { paths.seq } else { paths.seq :+ baseline }
+    }
+
+    // read the entries written after the checkpoint - we list the log and read them in parallel, then
+    // check for any entries written while we were reading
+    val listed = log.list()._1.filter(_ > version).par
+    listed.tasksupport = new ExecutionContextTaskSupport(ec)
+    val prefetched = listed.flatMap(v => log.read(v).map(v -> _)).seq.toMap
+    var entry = prefetched.get(version + 1).orElse(log.read(version + 1))
+    while (entry.isDefined) {
+      entry.get.foreach(update)
+      version += 1
+      entry = prefetched.get(version + 1).orElse(log.read(version + 1))
     }
+    head = math.max(head, version)
+
+    // update the in-memory map - update key by key, instead of clearing the map and repopulating it,
+    // so that callers don't ever see an empty map
+    val merged = configs.values.filter(_.files.nonEmpty).toList
+    val keys = new java.util.HashSet(partitions.keySet())
+    merged.foreach { m =>
+      keys.remove(m.name)
+      partitions.put(m.name, m.toMetadata)
+    }
+    keys.asScala.foreach(partitions.remove)
+
+    legacyPaths
   }
 }
 
@@ -164,12 +272,11 @@ object FileBasedMetadata extends MethodProfiling with LazyLogging {
   val MetadataType = "file"
   val DefaultOptions = NamedOptions(MetadataType)
 
+  private val LogDirectory     = "log"
   private val CompactedPath    = "compacted.json"
   private val UpdateFilePrefix = "update-"
   private val JsonPathSuffix   = ".json"
 
-  private val options = ConfigRenderOptions.concise().setFormatted(true)
-
   // function to add/merge an existing partition in an atomic call
   private val add = new java.util.function.BiFunction[PartitionMetadata, PartitionMetadata, PartitionMetadata]() {
     override def apply(existing: PartitionMetadata, update: PartitionMetadata): PartitionMetadata =
@@ -185,26 +292,16 @@ object FileBasedMetadata extends MethodProfiling with LazyLogging {
   }
 
   /**
-    * Write metadata for a single partition operation to disk
+    * Create a config for a partition operation
     *
-    * @param fc file context
-    * @param directory metadata path
-    * @param config partition config
+    * @param partition partition metadata
+    * @param action action
+    * @return
     */
-  private def writePartitionConfig(fc: FileContext, directory: Path, config: PartitionConfig): Unit = {
-    val name = s"$UpdateFilePrefix${sanitizePartitionName(config.name)}-${UUID.randomUUID()}$JsonPathSuffix"
-    val data = profile("Serialized partition configuration") {
-      PartitionConfigConvert.to(config).render(options)
-    }
-    profile("Persisted partition configuration") {
-      val file = new Path(directory, name)
-      WithClose(fc.create(file, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent)) { out =>
-        out.write(data.getBytes(StandardCharsets.UTF_8))
-        out.hflush()
-        out.hsync()
-      }
-      PathCache.register(fc, file)
-    }
+  private def config(partition: PartitionMetadata, action: PartitionAction.PartitionAction): PartitionConfig = {
+    val files = partition.files.toSet
+    val envelope = EnvelopeConfig(partition.bounds.map(_.envelope).getOrElse(new Envelope()))
+    PartitionConfig(partition.name, action, files, partition.count, envelope, System.currentTimeMillis())
   }
 
   /**
@@ -229,29 +326,6 @@ object FileBasedMetadata extends MethodProfiling with LazyLogging {
     }
   }
 
-  /**
-    * Write metadata for a single partition operation to disk
-    *
-    * @param fc file context
-    * @param directory metadata path
-    * @param config partition config
-    */
-  private def writeCompactedConfig(fc: FileContext, directory: Path, config: Seq[PartitionConfig]): Unit = {
-    val data = profile("Serialized compacted partition configuration") {
-      CompactedConfigConvert.to(CompactedConfig(config)).render(options)
-    }
-    profile("Persisted compacted partition configuration") {
-      val file = new Path(directory, CompactedPath)
-      val flags = java.util.EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE)
-      WithClose(fc.create(file, flags, CreateOpts.createParent)) { out =>
-        out.write(data.getBytes(StandardCharsets.UTF_8))
-        out.hflush()
-        out.hsync()
-      }
-      PathCache.register(fc, file)
-    }
-  }
-
   /**
     * Read and parse a partition metadata file
     *
@@ -172,6 +172,8 @@ object FileBasedMetadataFactory extends MethodProfiling with LazyLogging {
     override def getPartitions(prefix: Option[String]): Seq[PartitionMetadata] = loader.metadata.getPartitions(prefix)
     override def addPartition(partition: PartitionMetadata): Unit = loader.metadata.addPartition(partition)
     override def removePartition(partition: PartitionMetadata): Unit = loader.metadata.removePartition(partition)
+    override def replacePartition(remove: PartitionMetadata, add: PartitionMetadata): Unit =
+      loader.metadata.replacePartition(remove, add)
     override def reload(): Unit = loader.metadata.reload()
     override def compact(partition: Option[String], threads: Int): Unit = loader.metadata.compact(partition, threads)
     override def close(): Unit = if (closed.compareAndSet(false, true)) { loader.dereference() }
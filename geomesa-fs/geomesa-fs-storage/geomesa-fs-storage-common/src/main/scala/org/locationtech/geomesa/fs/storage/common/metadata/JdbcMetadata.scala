@@ -12,13 +12,16 @@ import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
 import java.nio.charset.StandardCharsets
 import java.sql.{Connection, ResultSet, SQLException}
 
+import com.typesafe.config.{ConfigFactory, ConfigRenderOptions}
 import com.typesafe.scalalogging.LazyLogging
 import org.apache.commons.dbcp2.{PoolableConnection, PoolingDataSource}
-import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionMetadata, StorageFile, StorageFileAction}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionMetadata, StorageFile, StorageFileAction, StorageFileStats}
 import org.locationtech.geomesa.fs.storage.api.{Metadata, PartitionScheme, StorageMetadata}
 import org.locationtech.geomesa.utils.io.WithClose
 import org.opengis.feature.simple.SimpleFeatureType
 
+import scala.util.control.NonFatal
+
 /**
   * Storage metadata implementation backed by a SQL database. Currently tested with H2 and Postgres - other
   * databases may have incompatibilities in the SQL syntax.
@@ -60,6 +63,9 @@ import org.opengis.feature.simple.SimpleFeatureType
   * ** name varchar(256) not null
   * ** id int not null - foreign key to `storage_partitions`
   * ** file varchar(256) not null
+  * ** typ char(1) not null
+  * ** ts bigint
+  * ** stats text - summary stats for the file, as JSON
   * ** primary key (root, name, id, file)
   *
   * @param pool connection pool
@@ -92,6 +98,23 @@ class JdbcMetadata(
   override def removePartition(partition: PartitionMetadata): Unit =
     WithClose(pool.getConnection())(connection => PartitionsTable.delete(connection, root, partition))
 
+  override def replacePartition(remove: PartitionMetadata, add: PartitionMetadata): Unit = {
+    require(remove.name == add.name, s"Can't replace partition '${remove.name}' with '${add.name}'")
+    WithClose(pool.getConnection()) { connection =>
+      val autoCommit = connection.getAutoCommit
+      connection.setAutoCommit(false)
+      try {
+        PartitionsTable.delete(connection, root, remove)
+        PartitionsTable.insert(connection, root, add)
+        connection.commit()
+      } catch {
+        case NonFatal(e) => connection.rollback(); throw e
+      } finally {
+        connection.setAutoCommit(autoCommit)
+      }
+    }
+  }
+
   override def compact(partition: Option[String], threads: Int): Unit = {
     WithClose(pool.getConnection()) { connection =>
       partition match {
@@ -352,6 +375,7 @@ object JdbcMetadata extends LazyLogging {
     private val FileCol = "file"
     private val TypeCol = "typ"
     private val TimeCol = "ts"
+    private val StatsCol = "stats"
 
     private val CreateStatement: String =
       s"create table if not exists $TableName (" +
@@ -361,21 +385,25 @@ object JdbcMetadata extends LazyLogging {
           s"$FileCol varchar(256) not null, " +
           s"$TypeCol char(1) not null, " +
           s"$TimeCol bigint, " +
+          s"$StatsCol text, " +
           s"primary key ($RootCol, $NameCol, $IdCol, $FileCol))"
 
     private val InsertStatement: String =
-      s"insert into $TableName ($RootCol, $NameCol, $IdCol, $FileCol, $TypeCol, $TimeCol) values (?, ?, ?, ?, ?, ?)"
+      s"insert into $TableName ($RootCol, $NameCol, $IdCol, $FileCol, $TypeCol, $TimeCol, $StatsCol) " +
+          "values (?, ?, ?, ?, ?, ?, ?)"
 
     private val DeleteStatement: String =
       s"delete from $TableName where $RootCol = ? and and $IdCol = ?"
 
     private val SelectStatement: String =
-      s"select $FileCol, $TypeCol, $TimeCol from $TableName where $RootCol = ? and $IdCol = ?"
+      s"select $FileCol, $TypeCol, $TimeCol, $StatsCol from $TableName where $RootCol = ? and $IdCol = ?"
 
     private val ClearStatement: String = s"delete from $TableName where $RootCol = ?"
 
     private val ClearPartitionStatement: String = s"delete from $TableName where $RootCol = ? and $NameCol = ?"
 
+    private val StatsRenderOptions = ConfigRenderOptions.concise()
+
     def create(connection: Connection): Unit =
       WithClose(connection.createStatement())(_.executeUpdate(CreateStatement))
 
@@ -384,7 +412,7 @@ object JdbcMetadata extends LazyLogging {
         statement.setString(1, root)
         statement.setString(2, name)
         statement.setInt(3, id)
-        files.foreach { case StorageFile(file, timestamp, action) =>
+        files.foreach { case StorageFile(file, timestamp, action, stats) =>
           statement.setString(4, file)
           val char = action match {
             case StorageFileAction.Append => "a"
@@ -394,6 +422,10 @@ object JdbcMetadata extends LazyLogging {
           }
           statement.setString(5, char)
           statement.setLong(6, timestamp)
+          stats match {
+            case Some(s) => statement.setString(7, StorageFileStatsConvert.to(s).render(StatsRenderOptions))
+            case None    => statement.setNull(7, java.sql.Types.VARCHAR)
+          }
           statement.executeUpdate()
         }
       }
@@ -420,7 +452,10 @@ object JdbcMetadata extends LazyLogging {
               case "d" => StorageFileAction.Delete
               case a => throw new IllegalStateException(s"Expected an action of 'a', 'm', or 'd' but got: $a")
             }
-            files += StorageFile(results.getString(1), results.getLong(3), action)
+            val stats = Option(results.getString(4)).map { s =>
+              pureconfig.loadConfigOrThrow[StorageFileStats](ConfigFactory.parseString(s))
+            }
+            files += StorageFile(results.getString(1), results.getLong(3), action, stats)
           }
         }
       }
@@ -452,9 +487,12 @@ object JdbcMetadata extends LazyLogging {
           statement.executeUpdate(s"alter table $TableName add column $TimeCol bigint")
           statement.executeUpdate(s"update $TableName set $TypeCol = 'a', $TimeCol = 0")
           statement.executeUpdate(s"alter table $TableName alter column $TypeCol char(1) not null")
-        } else if (cols != 6) {
+        }
+        if (cols == 4 || cols == 6) {
+          statement.executeUpdate(s"alter table $TableName add column $StatsCol text")
+        } else if (cols != 7) {
           throw new IllegalStateException(s"Unexpected schema detected for table $TableName: " +
-              s"expected 6 columns, but found $cols")
+              s"expected 7 columns, but found $cols")
         }
       }
     }
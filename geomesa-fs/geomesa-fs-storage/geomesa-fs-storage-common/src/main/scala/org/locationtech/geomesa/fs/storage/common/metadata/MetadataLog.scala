@@ -0,0 +1,305 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.metadata
+
+import java.io.{FileNotFoundException, InputStreamReader}
+import java.nio.charset.StandardCharsets
+import java.util.UUID
+
+import com.typesafe.config._
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.fs.Options.{CreateOpts, Rename}
+import org.apache.hadoop.fs._
+import org.locationtech.geomesa.fs.storage.common.utils.PathCache
+import org.locationtech.geomesa.utils.io.WithClose
+import org.locationtech.geomesa.utils.stats.MethodProfiling
+
+import scala.util.control.NonFatal
+
+/**
+  * Append-only transaction log for partition metadata.
+  *
+  * Each change is written as a new log entry, numbered sequentially starting from 1. Entries are never
+  * overwritten - a writer claims the next version by creating the entry file without the overwrite flag, and
+  * moves on to the following version if another writer claimed it first. Readers track the last version they
+  * have applied, so only new entries need to be read on each reload, without listing the metadata directory.
+  *
+  * Claiming a version relies on the file system providing an atomic 'create if not exists', which HDFS does.
+  * Object stores such as S3 don't, so concurrent writers may overwrite each other's entries - when using an
+  * object store, only a single process should modify the metadata at any one time.
+  *
+  * Periodically, the state of the log is written out as a checkpoint. The version of the latest checkpoint
+  * is tracked in a pointer file, and older entries may be removed once they are covered by a checkpoint.
+  *
+  * @param fc file context
+  * @param directory log directory
+  */
+class MetadataLog(fc: FileContext, directory: Path) extends MethodProfiling with LazyLogging {
+
+  import MetadataLog._
+
+  private val options = ConfigRenderOptions.concise().setFormatted(true)
+
+  /**
+    * Gets the version of the latest checkpoint, if any
+    *
+    * @return
+    */
+  def lastCheckpoint(): Option[Long] = {
+    val file = new Path(directory, LastCheckpointPath)
+    try {
+      WithClose(fc.open(file)) { in =>
+        Some(scala.io.Source.fromInputStream(in, StandardCharsets.UTF_8.name).mkString.trim.toLong)
+      }
+    } catch {
+      case _: FileNotFoundException => None
+    }
+  }
+
+  /**
+    * Read a checkpoint
+    *
+    * @param version checkpoint version
+    * @return
+    */
+  def readCheckpoint(version: Long): Seq[PartitionConfig] = {
+    val file = new Path(directory, checkpointName(version))
+    val config = profile("Loaded metadata checkpoint")(parse(file))
+    profile("Parsed metadata checkpoint") {
+      pureconfig.loadConfigOrThrow[CompactedConfig](config).partitions
+    }
+  }
+
+  /**
+    * Write a checkpoint, and update the latest checkpoint pointer
+    *
+    * @param version version of the last log entry included in the checkpoint
+    * @param configs merged partition configs
+    */
+  def writeCheckpoint(version: Long, configs: Seq[PartitionConfig]): Unit = {
+    val data = profile("Serialized metadata checkpoint") {
+      CompactedConfigConvert.to(CompactedConfig(configs)).render(options)
+    }
+    profile("Persisted metadata checkpoint") {
+      write(new Path(directory, checkpointName(version)), data)
+      write(new Path(directory, LastCheckpointPath), version.toString)
+    }
+  }
+
+  /**
+    * Read a log entry
+    *
+    * @param version version
+    * @return the entry, or None if the entry doesn't exist or is still being written. An entry that
+    *         can't be parsed will be returned as empty
+    */
+  def read(version: Long): Option[Seq[PartitionConfig]] = {
+    val file = new Path(directory, entryName(version))
+    try {
+      val config = profile("Loaded metadata log entry")(parse(file))
+      profile("Parsed metadata log entry") {
+        if (config.hasPath(MultiEntryPath)) {
+          Some(pureconfig.loadConfigOrThrow[CompactedConfig](config).partitions)
+        } else {
+          Some(Seq(pureconfig.loadConfigOrThrow[PartitionConfig](config)))
+        }
+      }
+    } catch {
+      case _: FileNotFoundException => None
+      case NonFatal(e) =>
+        // entries are written in place after being claimed, so a recent entry may not be complete yet -
+        // treat it as missing so that it will be read again on the next reload
+        val modified = try { fc.getFileStatus(file).getModificationTime } catch {
+          case _: FileNotFoundException => Long.MaxValue
+        }
+        if (System.currentTimeMillis() - modified < InProgressMillis) {
+          logger.debug(s"Metadata log entry at path $file appears to be in progress: $e")
+          None
+        } else {
+          // this indicates a corrupted file - skip it instead of blocking all further updates
+          logger.error(s"Error reading metadata log entry at path $file:", e)
+          Some(Seq.empty)
+        }
+    }
+  }
+
+  /**
+    * Append a new entry to the log. Multiple configs will be written as a single entry, so that readers
+    * will see them applied together
+    *
+    * @param configs partition configs
+    * @param version the last known version of the log, used as a starting point to find the end of the log
+    * @return the version of the new entry
+    */
+  def append(configs: Seq[PartitionConfig], version: Long): Long = {
+    val data = profile("Serialized metadata log entry") {
+      configs match {
+        case Seq(config) => PartitionConfigConvert.to(config).render(options)
+        case _ => CompactedConfigConvert.to(CompactedConfig(configs)).render(options)
+      }
+    }
+    profile("Persisted metadata log entry") {
+      // entries before the latest checkpoint may have been deleted, so don't start looking before it
+      var next = end(math.max(version, lastCheckpoint().getOrElse(0L)) + 1)
+      var written = false
+      while (!written) {
+        try {
+          claim(new Path(directory, entryName(next)), data)
+          written = true
+        } catch {
+          case _: FileAlreadyExistsException =>
+            // another writer claimed this version, try the next one
+            next = end(next + 1)
+        }
+      }
+      next
+    }
+  }
+
+  /**
+    * List the versions of the log entries and checkpoints currently on disk. Note that this requires
+    * a directory listing, so is not intended to be used on every read
+    *
+    * @return (entry versions, checkpoint versions)
+    */
+  def list(): (Seq[Long], Seq[Long]) = {
+    val entries = Seq.newBuilder[Long]
+    val checkpoints = Seq.newBuilder[Long]
+    if (fc.util.exists(directory)) {
+      profile("Listed metadata log") {
+        val iter = fc.listStatus(directory)
+        while (iter.hasNext) {
+          val name = iter.next.getPath.getName
+          if (name.endsWith(JsonPathSuffix)) {
+            val base = name.substring(0, name.length - JsonPathSuffix.length)
+            if (base.startsWith(CheckpointPrefix)) {
+              toVersion(base.substring(CheckpointPrefix.length)).foreach(checkpoints += _)
+            } else {
+              toVersion(base).foreach(entries += _)
+            }
+          }
+        }
+      }
+    }
+    (entries.result.sorted, checkpoints.result.sorted)
+  }
+
+  /**
+    * Delete log entries and checkpoints that are covered by a later checkpoint
+    *
+    * @param checkpoint version of the oldest checkpoint to keep
+    */
+  def clean(checkpoint: Long): Unit = {
+    val (entries, checkpoints) = list()
+    profile("Cleaned metadata log") {
+      entries.filter(_ <= checkpoint).foreach(v => fc.delete(new Path(directory, entryName(v)), false))
+      checkpoints.filter(_ < checkpoint).foreach(v => fc.delete(new Path(directory, checkpointName(v)), false))
+    }
+  }
+
+  /**
+    * Finds the end of the log, i.e. the first version that doesn't exist. Uses an exponential search
+    * to avoid checking every entry when the starting point is behind
+    *
+    * @param start starting version
+    * @return
+    */
+  private def end(start: Long): Long = {
+    def exists(version: Long): Boolean = fc.util.exists(new Path(directory, entryName(version)))
+    if (!exists(start)) { start } else {
+      var found = start
+      var step = 1L
+      while (exists(start + step)) {
+        found = start + step
+        step *= 2
+      }
+      var missing = start + step
+      while (missing - found > 1) {
+        val mid = found + (missing - found) / 2
+        if (exists(mid)) { found = mid } else { missing = mid }
+      }
+      missing
+    }
+  }
+
+  /**
+    * Parse a json file
+    *
+    * @param file file
+    * @throws FileNotFoundException if the file doesn't exist
+    * @return
+    */
+  private def parse(file: Path): Config = {
+    WithClose(new InputStreamReader(fc.open(file), StandardCharsets.UTF_8)) { in =>
+      ConfigFactory.parseReader(in, ConfigParseOptions.defaults().setSyntax(ConfigSyntax.JSON))
+    }
+  }
+
+  /**
+    * Writes a log entry. The file is created without the overwrite flag, which will fail atomically
+    * (on file systems that support it) if another writer has already created it
+    *
+    * @param file file to write
+    * @param data file contents
+    * @throws FileAlreadyExistsException if the file already exists
+    */
+  private def claim(file: Path, data: String): Unit = {
+    WithClose(fc.create(file, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent)) { out =>
+      out.write(data.getBytes(StandardCharsets.UTF_8))
+      out.hflush()
+      out.hsync()
+    }
+    PathCache.register(fc, file)
+  }
+
+  /**
+    * Writes a file by writing to a temporary file and then moving it into place, so that readers never
+    * see a partially written file. Any existing file will be overwritten
+    *
+    * @param file file to write
+    * @param data file contents
+    */
+  private def write(file: Path, data: String): Unit = {
+    val tmp = new Path(directory, s"$TempFilePrefix${UUID.randomUUID()}")
+    try {
+      WithClose(fc.create(tmp, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent)) { out =>
+        out.write(data.getBytes(StandardCharsets.UTF_8))
+        out.hflush()
+        out.hsync()
+      }
+      fc.rename(tmp, file, Rename.OVERWRITE)
+    } catch {
+      case NonFatal(e) =>
+        try { fc.delete(tmp, false) } catch {
+          case NonFatal(suppressed) => e.addSuppressed(suppressed)
+        }
+        throw e
+    }
+    PathCache.register(fc, file)
+  }
+}
+
+object MetadataLog {
+
+  private val LastCheckpointPath = "_last_checkpoint"
+  private val CheckpointPrefix   = "checkpoint-"
+  private val TempFilePrefix     = ".tmp-"
+  private val JsonPathSuffix     = ".json"
+  private val MultiEntryPath     = "partitions"
+
+  // entries that can't be parsed are assumed to still be in progress until they're this old
+  private val InProgressMillis = 60000L
+
+  private def entryName(version: Long): String = f"$version%020d$JsonPathSuffix"
+
+  private def checkpointName(version: Long): String = f"$CheckpointPrefix$version%020d$JsonPathSuffix"
+
+  private def toVersion(name: String): Option[Long] =
+    if (name.nonEmpty && name.forall(Character.isDigit)) { Some(name.toLong) } else { None }
+}
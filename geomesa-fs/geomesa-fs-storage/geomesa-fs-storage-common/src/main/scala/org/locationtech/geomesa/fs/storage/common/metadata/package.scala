@@ -10,7 +10,7 @@ package org.locationtech.geomesa.fs.storage.common
 
 import com.typesafe.config.{ConfigValue, ConfigValueFactory}
 import org.locationtech.geomesa.fs.storage.api.StorageMetadata.StorageFileAction.StorageFileAction
-import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionBounds, PartitionMetadata, StorageFile, StorageFileAction}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{AttributeBounds, AttributeFilter, PartitionBounds, PartitionMetadata, StorageFile, StorageFileAction, StorageFileStats}
 import org.locationtech.geomesa.fs.storage.common.metadata.PartitionAction.PartitionAction
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
 import org.locationtech.jts.geom.Envelope
@@ -120,6 +120,10 @@ package object metadata {
 
   implicit val PartitionActionConvert: ConfigConvert[PartitionAction] = new EnumerationConvert(PartitionAction)
   implicit val StorageFileActionConvert: ConfigConvert[StorageFileAction] = new EnumerationConvert(StorageFileAction)
+  implicit val PartitionBoundsConvert: ConfigConvert[PartitionBounds] = deriveConvert[PartitionBounds]
+  implicit val AttributeBoundsConvert: ConfigConvert[AttributeBounds] = deriveConvert[AttributeBounds]
+  implicit val AttributeFilterConvert: ConfigConvert[AttributeFilter] = deriveConvert[AttributeFilter]
+  implicit val StorageFileStatsConvert: ConfigConvert[StorageFileStats] = deriveConvert[StorageFileStats]
   implicit val StorageFileReader: ConfigReader[StorageFile] = ConfigReader.fromCursor(readStorageFile)
   implicit val StorageFileWriter: ConfigWriter[StorageFile] = deriveWriter[StorageFile]
   implicit val EnvelopeConfigConvert: ConfigConvert[EnvelopeConfig] = deriveConvert[EnvelopeConfig]
@@ -127,7 +131,7 @@ package object metadata {
   implicit val CompactedConfigConvert: ConfigConvert[CompactedConfig] = deriveConvert[CompactedConfig]
 
   /**
-    * Back-compatible read of storage files with and without actions
+    * Back-compatible read of storage files with and without actions and stats
     *
     * @param cur cursor
     * @return
@@ -138,8 +142,9 @@ package object metadata {
       name   <- obj.atKey("name").right.flatMap(_.asString).right
       ts     <- obj.atKey("timestamp").right.flatMap(ConfigReader[Long].from).right
       action <- obj.atKey("action").right.flatMap(StorageFileActionConvert.from).right
+      stats  <- ConfigReader[Option[StorageFileStats]].from(obj.atKeyOrUndefined("stats")).right
     } yield {
-      StorageFile(name, ts, action)
+      StorageFile(name, ts, action, stats)
     }
 
     if (withAction.isRight) { withAction } else {
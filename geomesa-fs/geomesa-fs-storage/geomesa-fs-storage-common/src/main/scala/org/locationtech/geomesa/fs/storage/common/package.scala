@@ -62,6 +62,10 @@ package object common {
     val MetadataKey    = "geomesa.fs.metadata"
     val SchemeKey      = "geomesa.fs.scheme"
     val ObserversKey   = "geomesa.fs.observers"
+    val StatsKey       = "geomesa.fs.stats"
+    val BloomKey       = "geomesa.fs.stats.bloom"
+    val BloomIdsKey    = "geomesa.fs.stats.bloom.ids"
+    val SortKey        = "geomesa.fs.sort"
 
     @deprecated("Replaced with SchemeKey")
     val PartitionSchemeKey = "geomesa.fs.partition-scheme.config"
@@ -99,6 +103,24 @@ package object common {
       if (obs == null || obs.isEmpty) { Seq.empty } else { obs.split(",") }
     }
 
+    def setStatsAttributes(names: Seq[String]): Unit = sft.getUserData.put(StatsKey, names.mkString(","))
+    def getStatsAttributes: Seq[String] = list(StatsKey)
+
+    def setBloomAttributes(names: Seq[String]): Unit = sft.getUserData.put(BloomKey, names.mkString(","))
+    def getBloomAttributes: Seq[String] = list(BloomKey)
+
+    def setBloomIds(ids: Boolean): Unit = sft.getUserData.put(BloomIdsKey, ids.toString)
+    def isBloomIds: Boolean = Option(sft.getUserData.get(BloomIdsKey)).exists(_.toString.equalsIgnoreCase("true"))
+
+    def setSortCurve(name: String): Unit = sft.getUserData.put(SortKey, name)
+    def getSortCurve: Option[String] =
+      Option(sft.getUserData.get(SortKey).asInstanceOf[String]).map(_.trim).filter(_.nonEmpty)
+
+    private def list(key: String): Seq[String] = {
+      val values = sft.getUserData.get(key).asInstanceOf[String]
+      if (values == null || values.isEmpty) { Seq.empty } else { values.split(",").map(_.trim).filter(_.nonEmpty) }
+    }
+
     private def remove(key: String): Option[String] = Option(sft.getUserData.remove(key).asInstanceOf[String])
   }
 }
@@ -0,0 +1,92 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.sort
+
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.opengis.feature.simple.SimpleFeature
+
+/**
+  * Buffers features and hands them off in space-filling curve order. Ordering features before writing them
+  * clusters nearby features into the same row groups/stripes, so that the min/max statistics kept by columnar
+  * formats can be used to skip data for spatial and temporal predicates.
+  *
+  * To keep memory bounded, features are sorted in runs - once the buffer is full, it is sorted and emitted.
+  * Features are copied when added, so callers may re-use feature instances
+  *
+  * @param curve sort curve
+  * @param size max number of features to buffer before sorting
+  * @param emit callback for sorted features
+  */
+class FeatureSorter(curve: SortCurve, size: Int, emit: SimpleFeature => Unit) {
+
+  require(size > 0, s"Sort buffer size must be positive: $size")
+
+  private var buffer: Array[AnyRef] = new Array[AnyRef](math.min(size, 1024))
+  private var count = 0
+
+  /**
+    * Add a feature to the buffer. If the buffer is full, it will be sorted and emitted
+    *
+    * @param feature feature
+    */
+  def add(feature: SimpleFeature): Unit = {
+    if (count == buffer.length) {
+      // grow the buffer lazily, so that small files don't allocate the full size
+      val copy = new Array[AnyRef](math.min(size, buffer.length * 2))
+      System.arraycopy(buffer, 0, copy, 0, count)
+      buffer = copy
+    }
+    buffer(count) = curve.key(ScalaSimpleFeature.copy(feature))
+    count += 1
+    if (count == size) {
+      flush()
+    }
+  }
+
+  /**
+    * Sort and emit any buffered features
+    */
+  def flush(): Unit = {
+    if (count > 0) {
+      java.util.Arrays.sort(buffer, 0, count)
+      var i = 0
+      while (i < count) {
+        emit(buffer(i).asInstanceOf[SortKey].feature)
+        buffer(i) = null
+        i += 1
+      }
+      count = 0
+    }
+  }
+}
+
+/**
+  * Sort key for a feature
+  *
+  * @param bin time bin, or 0 for non-temporal curves
+  * @param z curve index value
+  * @param feature feature
+  */
+class SortKey(val bin: Short, val z: Long, val feature: SimpleFeature) extends Comparable[SortKey] {
+  override def compareTo(o: SortKey): Int = {
+    val b = java.lang.Short.compare(bin, o.bin)
+    if (b != 0) { b } else { java.lang.Long.compare(z, o.z) }
+  }
+}
+
+object SortKey {
+
+  /**
+    * Sort key that sorts after any valid key, used for features that can't be indexed
+    *
+    * @param feature feature
+    * @return
+    */
+  def last(feature: SimpleFeature): SortKey = new SortKey(Short.MaxValue, Long.MaxValue, feature)
+}
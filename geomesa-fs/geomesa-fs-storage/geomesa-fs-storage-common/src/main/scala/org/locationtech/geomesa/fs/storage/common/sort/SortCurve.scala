@@ -0,0 +1,149 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.sort
+
+import java.util.Date
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.curve.TimePeriod.TimePeriod
+import org.locationtech.geomesa.curve.{BinnedTime, XZ2SFC, Z2SFC, Z3SFC}
+import org.locationtech.jts.geom.Geometry
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+import scala.util.control.NonFatal
+
+/**
+  * Space-filling curve used to order features before writing them
+  */
+trait SortCurve {
+
+  /**
+    * Curve name
+    *
+    * @return
+    */
+  def name: String
+
+  /**
+    * Gets the sort key for a feature
+    *
+    * @param feature feature
+    * @return
+    */
+  def key(feature: SimpleFeature): SortKey
+}
+
+object SortCurve extends LazyLogging {
+
+  import org.locationtech.geomesa.fs.storage.common.{RichSimpleFeatureType => StorageSimpleFeatureType}
+  import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+  val Z2Name  = "z2"
+  val Z3Name  = "z3"
+  val XZ2Name = "xz2"
+
+  /**
+    * Gets the sort curve configured for the simple feature type, if any
+    *
+    * @param sft simple feature type
+    * @return
+    */
+  def apply(sft: SimpleFeatureType): Option[SortCurve] = sft.getSortCurve.map(apply(sft, _))
+
+  /**
+    * Create a sort curve by name
+    *
+    * @param sft simple feature type
+    * @param name curve name
+    * @return
+    */
+  def apply(sft: SimpleFeatureType, name: String): SortCurve = {
+    val geom = sft.getGeomIndex
+    if (geom == -1) {
+      throw new IllegalArgumentException(s"Sorting by $name requires a geometry attribute: ${sft.getTypeName}")
+    }
+    name.toLowerCase(java.util.Locale.US) match {
+      case Z2Name => new Z2SortCurve(geom)
+      case XZ2Name => new XZ2SortCurve(geom, sft.getXZPrecision)
+      case Z3Name =>
+        val dtg = sft.getDtgIndex.getOrElse {
+          throw new IllegalArgumentException(s"Sorting by $name requires a date attribute: ${sft.getTypeName}")
+        }
+        new Z3SortCurve(geom, dtg, sft.getZ3Interval)
+      case _ =>
+        throw new IllegalArgumentException(s"Invalid sort curve '$name', expected one of " +
+            Seq(Z2Name, Z3Name, XZ2Name).mkString(", "))
+    }
+  }
+
+  private class Z2SortCurve(geom: Int) extends SortCurve {
+
+    override val name: String = Z2Name
+
+    override def key(feature: SimpleFeature): SortKey = {
+      val geometry = feature.getAttribute(geom).asInstanceOf[Geometry]
+      if (geometry == null) { SortKey.last(feature) } else {
+        try {
+          val centre = geometry.getEnvelopeInternal.centre()
+          new SortKey(0, Z2SFC.index(centre.x, centre.y, lenient = true).z, feature)
+        } catch {
+          case NonFatal(e) =>
+            logger.debug(s"Unable to index feature ${feature.getID}", e)
+            SortKey.last(feature)
+        }
+      }
+    }
+  }
+
+  private class XZ2SortCurve(geom: Int, precision: Short) extends SortCurve {
+
+    private val sfc = XZ2SFC(precision)
+
+    override val name: String = XZ2Name
+
+    override def key(feature: SimpleFeature): SortKey = {
+      val geometry = feature.getAttribute(geom).asInstanceOf[Geometry]
+      if (geometry == null) { SortKey.last(feature) } else {
+        try {
+          val env = geometry.getEnvelopeInternal
+          new SortKey(0, sfc.index(env.getMinX, env.getMinY, env.getMaxX, env.getMaxY, lenient = true), feature)
+        } catch {
+          case NonFatal(e) =>
+            logger.debug(s"Unable to index feature ${feature.getID}", e)
+            SortKey.last(feature)
+        }
+      }
+    }
+  }
+
+  private class Z3SortCurve(geom: Int, dtg: Int, period: TimePeriod) extends SortCurve {
+
+    private val sfc = Z3SFC(period)
+    private val timeToIndex = BinnedTime.timeToBinnedTime(period)
+
+    override val name: String = Z3Name
+
+    override def key(feature: SimpleFeature): SortKey = {
+      val geometry = feature.getAttribute(geom).asInstanceOf[Geometry]
+      if (geometry == null) { SortKey.last(feature) } else {
+        try {
+          val centre = geometry.getEnvelopeInternal.centre()
+          // use the same default as the z3 index for null dates
+          val date = feature.getAttribute(dtg).asInstanceOf[Date]
+          val BinnedTime(bin, offset) = timeToIndex(if (date == null) { 0L } else { date.getTime })
+          new SortKey(bin, sfc.index(centre.x, centre.y, offset, lenient = true).z, feature)
+        } catch {
+          case NonFatal(e) =>
+            logger.debug(s"Unable to index feature ${feature.getID}", e)
+            SortKey.last(feature)
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.sort
+
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.FileSystemWriter
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+/**
+  * Writer that sorts features by a space-filling curve before passing them to the delegate writer
+  *
+  * @param delegate delegate writer
+  * @param curve sort curve
+  * @param size max number of features to buffer before sorting
+  */
+class SortingFileSystemWriter(delegate: FileSystemWriter, curve: SortCurve, size: Int) extends FileSystemWriter {
+
+  private val sorter = new FeatureSorter(curve, size, f => delegate.write(f))
+
+  override def write(feature: SimpleFeature): Unit = sorter.add(feature)
+
+  override def flush(): Unit = {
+    sorter.flush()
+    delegate.flush()
+  }
+
+  override def close(): Unit = {
+    try { sorter.flush() } finally {
+      delegate.close()
+    }
+  }
+}
+
+object SortingFileSystemWriter {
+
+  /**
+    * Wraps the writer in a sorting writer, if the simple feature type is configured for sorting
+    *
+    * @param sft simple feature type
+    * @param writer writer
+    * @return
+    */
+  def apply(sft: SimpleFeatureType, writer: FileSystemWriter): FileSystemWriter = {
+    SortCurve(sft) match {
+      case None => writer
+      case Some(curve) => new SortingFileSystemWriter(writer, curve, SortBufferProperty.toInt.get)
+    }
+  }
+}
@@ -0,0 +1,16 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common
+
+import org.locationtech.geomesa.utils.conf.GeoMesaSystemProperties.SystemProperty
+
+package object sort {
+
+  val SortBufferProperty = SystemProperty("geomesa.fs.writer.sort.buffer", "100000")
+}
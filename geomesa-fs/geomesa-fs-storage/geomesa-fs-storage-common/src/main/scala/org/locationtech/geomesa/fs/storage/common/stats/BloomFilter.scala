@@ -0,0 +1,115 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.stats
+
+import java.nio.ByteBuffer
+import java.util.Base64
+
+import scala.util.hashing.MurmurHash3
+
+/**
+  * Simple bloom filter for string values, using double hashing. Bloom filters are serialized as base64
+  * strings, so that they can be stored in the storage metadata
+  *
+  * @param bits bit set
+  * @param hashes number of hash functions
+  */
+class BloomFilter private (bits: Array[Long], hashes: Int) {
+
+  private val size = bits.length.toLong * 64
+
+  /**
+    * Add a value to the filter
+    *
+    * @param value value
+    */
+  def add(value: String): Unit = {
+    val (h1, h2) = hash(value)
+    var i = 0
+    while (i < hashes) {
+      val bit = index(h1, h2, i)
+      bits((bit >>> 6).toInt) |= 1L << (bit & 63)
+      i += 1
+    }
+  }
+
+  /**
+    * Check if the value might be contained in the filter. False positives are possible, but
+    * false negatives are not
+    *
+    * @param value value
+    * @return
+    */
+  def mightContain(value: String): Boolean = {
+    val (h1, h2) = hash(value)
+    var i = 0
+    while (i < hashes) {
+      val bit = index(h1, h2, i)
+      if ((bits((bit >>> 6).toInt) & (1L << (bit & 63))) == 0) {
+        return false
+      }
+      i += 1
+    }
+    true
+  }
+
+  /**
+    * Serialize the filter as a string
+    *
+    * @return
+    */
+  def serialize(): String = {
+    val buffer = ByteBuffer.allocate(4 + bits.length * 8)
+    buffer.putInt(hashes)
+    bits.foreach(buffer.putLong)
+    Base64.getEncoder.encodeToString(buffer.array())
+  }
+
+  private def hash(value: String): (Int, Int) =
+    (MurmurHash3.stringHash(value, BloomFilter.Seed1), MurmurHash3.stringHash(value, BloomFilter.Seed2))
+
+  private def index(h1: Int, h2: Int, i: Int): Long = {
+    val combined = h1.toLong + i.toLong * h2.toLong
+    ((combined % size) + size) % size
+  }
+}
+
+object BloomFilter {
+
+  private val Seed1 = 0x3c074a61
+  private val Seed2 = 0x6b43a9b5
+
+  /**
+    * Create a new filter sized for the expected number of values
+    *
+    * @param expected expected number of distinct values
+    * @param fpp false positive probability
+    * @return
+    */
+  def apply(expected: Int, fpp: Double): BloomFilter = {
+    require(fpp > 0 && fpp < 1, s"False positive probability must be between 0 and 1: $fpp")
+    val n = math.max(expected, 1)
+    val m = math.max(64L, math.ceil(-n * math.log(fpp) / (math.log(2) * math.log(2))).toLong)
+    val k = math.max(1, math.round(m.toDouble / n * math.log(2)).toInt)
+    new BloomFilter(Array.ofDim[Long](((m + 63) / 64).toInt), k)
+  }
+
+  /**
+    * Deserialize a filter from a string
+    *
+    * @param serialized serialized filter
+    * @return
+    */
+  def deserialize(serialized: String): BloomFilter = {
+    val buffer = ByteBuffer.wrap(Base64.getDecoder.decode(serialized))
+    val hashes = buffer.getInt
+    val bits = Array.fill(buffer.remaining() / 8)(buffer.getLong)
+    new BloomFilter(bits, hashes)
+  }
+}
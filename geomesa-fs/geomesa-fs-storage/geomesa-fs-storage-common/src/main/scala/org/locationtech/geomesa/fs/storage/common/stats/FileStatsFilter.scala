@@ -0,0 +1,174 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.stats
+
+import org.locationtech.geomesa.filter.{Bounds, FilterHelper, isSpatialFilter}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{StorageFile, StorageFileStats}
+import org.locationtech.jts.geom.Envelope
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter._
+import org.opengis.filter.spatial.BinarySpatialOperator
+import org.opengis.filter.temporal.BinaryTemporalOperator
+
+/**
+  * Evaluates a query filter against the stats of a storage file, to determine if the file can be skipped.
+  *
+  * Evaluation is conservative - a file is only skipped if its stats show that no feature in the file could
+  * match the filter. Files without stats are never skipped.
+  */
+trait FileStatsFilter {
+
+  /**
+    * Could the file contain any features matching the filter
+    *
+    * @param file storage file
+    * @return
+    */
+  def matches(file: StorageFile): Boolean = file.stats.forall(s => matches(s))
+
+  /**
+    * Could a file with the given stats contain any features matching the filter
+    *
+    * @param stats file stats
+    * @return
+    */
+  def matches(stats: StorageFileStats): Boolean
+}
+
+object FileStatsFilter {
+
+  import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+  import scala.collection.JavaConverters._
+
+  /**
+    * Create a stats filter for the given query filter
+    *
+    * @param sft simple feature type
+    * @param filter query filter
+    * @return a stats filter, or None if the query filter can't be used to skip files
+    */
+  def apply(sft: SimpleFeatureType, filter: Filter): Option[FileStatsFilter] = compile(sft, filter)
+
+  private def compile(sft: SimpleFeatureType, filter: Filter): Option[FileStatsFilter] = {
+    filter match {
+      case f: And =>
+        val children = f.getChildren.asScala.flatMap(compile(sft, _))
+        if (children.isEmpty) { None } else if (children.lengthCompare(1) == 0) { children.headOption } else {
+          Some(new AndFilter(children))
+        }
+
+      case f: Or =>
+        val children = f.getChildren.asScala.map(compile(sft, _))
+        // if any child can't be evaluated, then we can't skip any files
+        if (children.exists(_.isEmpty)) { None } else { Some(new OrFilter(children.flatten)) }
+
+      case Filter.EXCLUDE =>
+        Some(ExcludeFilter)
+
+      case f: Id =>
+        Some(new IdFilter(f.getIDs.asScala.map(_.toString).toSeq))
+
+      case f: BinarySpatialOperator if isSpatialFilter(f) => spatial(sft, f)
+      case f: BinaryComparisonOperator => attribute(sft, f)
+      case f: PropertyIsBetween        => attribute(sft, f)
+      case f: BinaryTemporalOperator   => attribute(sft, f)
+
+      case _ => None
+    }
+  }
+
+  private def spatial(sft: SimpleFeatureType, filter: Filter): Option[FileStatsFilter] = {
+    val geom = sft.getGeomField
+    if (geom == null) { None } else {
+      val geometries = FilterHelper.extractGeometries(filter, geom)
+      if (geometries.disjoint) {
+        Some(ExcludeFilter)
+      } else if (geometries.isEmpty) {
+        None
+      } else {
+        Some(new SpatialFilter(geometries.values.map(_.getEnvelopeInternal)))
+      }
+    }
+  }
+
+  private def attribute(sft: SimpleFeatureType, filter: Filter): Option[FileStatsFilter] = {
+    val names = FilterHelper.propertyNames(filter, sft)
+    if (names.lengthCompare(1) != 0) { None } else {
+      val name = names.head
+      val descriptor = sft.getDescriptor(name)
+      val binding = if (descriptor == null) { null } else { descriptor.getType.getBinding }
+      if (binding == null || !isSupported(binding)) { None } else {
+        val caseInsensitive = filter match {
+          case f: BinaryComparisonOperator => !f.isMatchingCase && binding == classOf[String]
+          case _ => false
+        }
+        if (caseInsensitive) { None } else {
+          val bounds = FilterHelper.extractAttributeBounds(filter, name, binding.asInstanceOf[Class[Any]])
+          if (bounds.disjoint) {
+            Some(ExcludeFilter)
+          } else if (bounds.isEmpty) {
+            None
+          } else {
+            Some(new AttributeBoundsFilter(name, binding, bounds.values))
+          }
+        }
+      }
+    }
+  }
+
+  private object ExcludeFilter extends FileStatsFilter {
+    override def matches(stats: StorageFileStats): Boolean = false
+  }
+
+  private class AndFilter(children: Seq[FileStatsFilter]) extends FileStatsFilter {
+    override def matches(stats: StorageFileStats): Boolean = children.forall(_.matches(stats))
+  }
+
+  private class OrFilter(children: Seq[FileStatsFilter]) extends FileStatsFilter {
+    override def matches(stats: StorageFileStats): Boolean = children.exists(_.matches(stats))
+  }
+
+  private class IdFilter(ids: Seq[String]) extends FileStatsFilter {
+    override def matches(stats: StorageFileStats): Boolean = {
+      stats.ids.forall { serialized =>
+        val bloom = BloomFilter.deserialize(serialized)
+        ids.exists(bloom.mightContain)
+      }
+    }
+  }
+
+  private class SpatialFilter(envelopes: Seq[Envelope]) extends FileStatsFilter {
+    override def matches(stats: StorageFileStats): Boolean =
+      stats.bounds.forall(b => envelopes.exists(_.intersects(b.envelope)))
+  }
+
+  private class AttributeBoundsFilter(name: String, binding: Class[_], bounds: Seq[Bounds[Any]])
+      extends FileStatsFilter {
+
+    // equality values can also be checked against bloom filters
+    private val values =
+      if (bounds.forall(_.isEquals)) { Some(bounds.flatMap(_.lower.value).map(encode)) } else { None }
+
+    override def matches(stats: StorageFileStats): Boolean = {
+      val inRange = stats.attributes.find(_.attribute == name).forall { range =>
+        val lower = Bounds.Bound[Any](Some(decode(range.lower, binding)), inclusive = true)
+        val upper = Bounds.Bound[Any](Some(decode(range.upper, binding)), inclusive = true)
+        val file = Bounds(lower, upper)
+        bounds.exists(_.intersects(file))
+      }
+      inRange && values.forall { v =>
+        stats.filters.find(_.attribute == name).forall { f =>
+          val bloom = BloomFilter.deserialize(f.filter)
+          v.exists(bloom.mightContain)
+        }
+      }
+    }
+  }
+}
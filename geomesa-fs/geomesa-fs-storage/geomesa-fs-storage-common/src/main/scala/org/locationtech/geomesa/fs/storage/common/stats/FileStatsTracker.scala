@@ -0,0 +1,170 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.stats
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{AttributeBounds, AttributeFilter, PartitionBounds, StorageFileStats}
+import org.locationtech.geomesa.fs.storage.common.stats.FileStatsTracker.{MinMaxTracker, ValueTracker}
+import org.locationtech.jts.geom.Envelope
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+
+/**
+  * Tracks summary stats for the features written to a single file. By default, the min/max values of the
+  * default date attribute are tracked. Additional attributes and bloom filters can be configured through
+  * the simple feature type user data
+  *
+  * @param sft simple feature type
+  */
+class FileStatsTracker(sft: SimpleFeatureType) {
+
+  private val minMax = FileStatsTracker.minMaxAttributes(sft).map(new MinMaxTracker(sft, _)).toArray
+  private val values = FileStatsTracker.bloomAttributes(sft).map(new ValueTracker(sft, _)).toArray
+  private val ids = if (FileStatsTracker.bloomIds(sft)) { Some(new ValueTracker(sft, null)) } else { None }
+
+  /**
+    * Add a feature to the stats
+    *
+    * @param feature feature
+    */
+  def add(feature: SimpleFeature): Unit = {
+    var i = 0
+    while (i < minMax.length) {
+      minMax(i).add(feature)
+      i += 1
+    }
+    i = 0
+    while (i < values.length) {
+      values(i).add(feature)
+      i += 1
+    }
+    ids.foreach(_.add(feature))
+  }
+
+  /**
+    * Get the stats for the features added so far
+    *
+    * @param bounds spatial bounds of the features
+    * @return
+    */
+  def stats(bounds: Envelope): StorageFileStats = {
+    val attributes = minMax.flatMap(_.bounds).toSeq
+    val filters = values.flatMap(v => v.filter.map(AttributeFilter(v.name, _))).toSeq
+    StorageFileStats(PartitionBounds(bounds), attributes, filters, ids.flatMap(_.filter))
+  }
+}
+
+object FileStatsTracker extends LazyLogging {
+
+  import org.locationtech.geomesa.fs.storage.common.{RichSimpleFeatureType => StorageSimpleFeatureType}
+  import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+  /**
+    * Attributes that will have min/max values tracked
+    *
+    * @param sft simple feature type
+    * @return
+    */
+  def minMaxAttributes(sft: SimpleFeatureType): Seq[String] =
+    supported(sft, (sft.getDtgField.toSeq ++ sft.getStatsAttributes).distinct)
+
+  /**
+    * Attributes that will have bloom filters tracked
+    *
+    * @param sft simple feature type
+    * @return
+    */
+  def bloomAttributes(sft: SimpleFeatureType): Seq[String] = supported(sft, sft.getBloomAttributes.distinct)
+
+  /**
+    * Will feature ids have bloom filters tracked
+    *
+    * @param sft simple feature type
+    * @return
+    */
+  def bloomIds(sft: SimpleFeatureType): Boolean = sft.isBloomIds
+
+  private def supported(sft: SimpleFeatureType, attributes: Seq[String]): Seq[String] = {
+    attributes.filter { name =>
+      val descriptor = sft.getDescriptor(name)
+      if (descriptor == null) {
+        logger.warn(s"Ignoring stats for attribute '$name' which does not exist in schema ${sft.getTypeName}")
+        false
+      } else if (!isSupported(descriptor.getType.getBinding)) {
+        logger.warn(s"Ignoring stats for attribute '$name' of unsupported type " +
+            descriptor.getType.getBinding.getSimpleName)
+        false
+      } else {
+        true
+      }
+    }
+  }
+
+  /**
+    * Tracks the min/max values of an attribute
+    *
+    * @param sft simple feature type
+    * @param name attribute name
+    */
+  private class MinMaxTracker(sft: SimpleFeatureType, name: String) {
+
+    private val i = sft.indexOf(name)
+
+    private var min: Comparable[Any] = _
+    private var max: Comparable[Any] = _
+
+    def add(feature: SimpleFeature): Unit = {
+      val value = feature.getAttribute(i).asInstanceOf[Comparable[Any]]
+      if (value != null) {
+        if (min == null || value.compareTo(min) < 0) {
+          min = value
+        }
+        if (max == null || value.compareTo(max) > 0) {
+          max = value
+        }
+      }
+    }
+
+    def bounds: Option[AttributeBounds] =
+      if (min == null) { None } else { Some(AttributeBounds(name, encode(min), encode(max))) }
+  }
+
+  /**
+    * Tracks the distinct values of an attribute, up to a configured max number of values
+    *
+    * @param sft simple feature type
+    * @param name attribute name, or null to track feature ids
+    */
+  private class ValueTracker(sft: SimpleFeatureType, val name: String) {
+
+    private val i = if (name == null) { -1 } else { sft.indexOf(name) }
+    private val maxValues = BloomMaxValuesProperty.toInt.get
+
+    private var values = scala.collection.mutable.HashSet.empty[String]
+
+    def add(feature: SimpleFeature): Unit = {
+      if (values != null) {
+        val value = if (i == -1) { feature.getID } else { feature.getAttribute(i) }
+        if (value != null) {
+          values.add(encode(value))
+          if (values.size > maxValues) {
+            values = null // too many values to be useful
+          }
+        }
+      }
+    }
+
+    def filter: Option[String] = {
+      if (values == null) { None } else {
+        val bloom = BloomFilter(values.size, BloomFppProperty.toDouble.get)
+        values.foreach(bloom.add)
+        Some(bloom.serialize())
+      }
+    }
+  }
+}
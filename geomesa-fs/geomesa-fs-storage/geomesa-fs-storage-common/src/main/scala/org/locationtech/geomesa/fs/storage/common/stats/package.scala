@@ -0,0 +1,73 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common
+
+import java.util.Date
+
+import org.locationtech.geomesa.utils.conf.GeoMesaSystemProperties.SystemProperty
+
+package object stats {
+
+  val BloomMaxValuesProperty = SystemProperty("geomesa.fs.stats.bloom.max-values", "10000")
+  val BloomFppProperty = SystemProperty("geomesa.fs.stats.bloom.fpp", "0.01")
+
+  // attribute types that we track stats for
+  private val SupportedBindings: Set[Class[_]] = Set(
+    classOf[String],
+    classOf[java.lang.Integer],
+    classOf[java.lang.Long],
+    classOf[java.lang.Float],
+    classOf[java.lang.Double],
+    classOf[Date]
+  )
+
+  /**
+    * Can we track stats for the given attribute type
+    *
+    * @param binding attribute type
+    * @return
+    */
+  private [stats] def isSupported(binding: Class[_]): Boolean = SupportedBindings.contains(binding)
+
+  /**
+    * Encode an attribute value as a string
+    *
+    * @param value attribute value, of a supported type
+    * @return
+    */
+  private [stats] def encode(value: Any): String = value match {
+    case d: Date => d.getTime.toString
+    case v => v.toString
+  }
+
+  /**
+    * Decode an attribute value from a string
+    *
+    * @param value encoded value
+    * @param binding attribute type, of a supported type
+    * @return
+    */
+  private [stats] def decode(value: String, binding: Class[_]): AnyRef = {
+    if (binding == classOf[String]) {
+      value
+    } else if (binding == classOf[java.lang.Integer]) {
+      Int.box(value.toInt)
+    } else if (binding == classOf[java.lang.Long]) {
+      Long.box(value.toLong)
+    } else if (binding == classOf[java.lang.Float]) {
+      Float.box(value.toFloat)
+    } else if (binding == classOf[java.lang.Double]) {
+      Double.box(value.toDouble)
+    } else if (binding == classOf[Date]) {
+      new Date(value.toLong)
+    } else {
+      throw new IllegalArgumentException(s"Unsupported binding: ${binding.getName}")
+    }
+  }
+}
@@ -9,18 +9,21 @@
 package org.locationtech.geomesa.fs.storage.common
 
 import java.io.File
+import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 
-import org.apache.commons.io.FileUtils
+import org.apache.commons.io.{FileUtils, IOUtils}
 import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Options.CreateOpts
 import org.apache.hadoop.fs.permission.FsPermission
-import org.apache.hadoop.fs.{FileContext, Path}
+import org.apache.hadoop.fs.{CreateFlag, FileContext, Path}
 import org.junit.runner.RunWith
-import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionBounds, PartitionMetadata, StorageFile, StorageFileAction}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata._
 import org.locationtech.geomesa.fs.storage.api.{FileSystemContext, Metadata, NamedOptions, PartitionSchemeFactory}
-import org.locationtech.geomesa.fs.storage.common.metadata.FileBasedMetadataFactory
+import org.locationtech.geomesa.fs.storage.common.metadata.{FileBasedMetadata, FileBasedMetadataFactory}
 import org.locationtech.geomesa.fs.storage.common.utils.PathCache
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.io.WithClose
 import org.locationtech.jts.geom.Envelope
 import org.specs2.mutable.Specification
 import org.specs2.runner.JUnitRunner
@@ -136,6 +139,122 @@ class FileBasedMetadataTest extends Specification with AllExpectations {
         }
       }
     }
+    "persist file stats" in {
+      withPath { context =>
+        val stats = StorageFileStats(PartitionBounds(new Envelope(-10, 10, -5, 5)),
+          Seq(AttributeBounds("dtg", "1546300800000", "1546387200000")), Seq(AttributeFilter("name", "AAAAAQ==")))
+        val f1 = StorageFile("file1", 0L, StorageFileAction.Append, Some(stats))
+        val f2 = StorageFile("file2", 1L, StorageFileAction.Modify, Some(stats.copy(ids = Some("AAAAAg=="))))
+        val created = factory.create(context, Map.empty, meta)
+        created.addPartition(PartitionMetadata("1", Seq(f1), new Envelope(-10, 10, -5, 5), 10L))
+        created.addPartition(PartitionMetadata("1", Seq(f2, f3), new Envelope(-11, 11, -5, 5), 20L))
+        PathCache.invalidate(fc, context.root)
+        val loaded = factory.load(context)
+        loaded.foreach(_.reload()) // ensure state is loaded
+        loaded must beSome
+        foreach(Seq(created, loaded.get)) { metadata =>
+          metadata.getPartition("1").map(_.files) must beSome(containTheSameElementsAs(Seq(f1, f2, f3)))
+        }
+        // verify stats are kept through compaction
+        loaded.get.compact(None)
+        PathCache.invalidate(fc, context.root)
+        val compacted = factory.load(context)
+        compacted.foreach(_.reload())
+        compacted.flatMap(_.getPartition("1").map(_.files)) must beSome(containTheSameElementsAs(Seq(f1, f2, f3)))
+      }
+    }
+  }
+
+  "FileBasedMetadata" should {
+    "apply incremental updates from the transaction log" in {
+      withPath { context =>
+        factory.create(context, Map.empty, meta)
+        val directory = new Path(context.root, "metadata")
+        val writer = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+        val reader = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+
+        writer.addPartition(PartitionMetadata("1", Seq(f1), new Envelope(-10, 10, -5, 5), 10L))
+        reader.reload()
+        reader.getPartition("1").map(_.files) must beSome(Seq(f1))
+
+        writer.addPartition(PartitionMetadata("1", Seq(f2, f3), new Envelope(-11, 11, -5, 5), 20L))
+        writer.addPartition(PartitionMetadata("2", Seq(f5), new Envelope(-1, 1, -5, 5), 20L))
+        reader.reload()
+        reader.getPartition("1").map(_.files) must beSome(containTheSameElementsAs(Seq(f1, f2, f3)))
+        reader.getPartition("1").map(_.count) must beSome(30L)
+        reader.getPartition("2").map(_.files) must beSome(Seq(f5))
+
+        writer.compact(None)
+        writer.removePartition(PartitionMetadata("2", Seq(f5), new Envelope(-1, 1, -5, 5), 20L))
+        writer.addPartition(PartitionMetadata("3", Seq(f6), new Envelope(-1, 1, -5, 5), 5L))
+        writer.compact(None)
+        writer.addPartition(PartitionMetadata("3", Seq(f2), new Envelope(-1, 1, -5, 5), 5L))
+
+        // entries covered by the older checkpoint should have been removed
+        val log = fc.util.listStatus(new Path(directory, "log")).map(_.getPath.getName).filter(_.endsWith(".json"))
+        log must containTheSameElementsAs(Seq(4, 5, 6).map(v => f"$v%020d.json") ++
+            Seq(3, 5).map(v => f"checkpoint-$v%020d.json"))
+
+        // the reader is behind the latest checkpoint, so will reload from it
+        reader.reload()
+        foreach(Seq(reader, new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true))) { m =>
+          m.reload()
+          m.getPartitions().map(_.name) must containTheSameElementsAs(Seq("1", "3"))
+          m.getPartition("1").map(_.files) must beSome(containTheSameElementsAs(Seq(f1, f2, f3)))
+          m.getPartition("3").map(_.files) must beSome(containTheSameElementsAs(Seq(f6, f2)))
+          m.getPartition("3").map(_.count) must beSome(10L)
+        }
+      }
+    }
+    "wait for log entries that are still being written" in {
+      withPath { context =>
+        factory.create(context, Map.empty, meta)
+        val directory = new Path(context.root, "metadata")
+        val writer = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+        val reader = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+
+        writer.addPartition(PartitionMetadata("1", Seq(f1), new Envelope(-10, 10, -5, 5), 10L))
+        // simulate another writer that has claimed the next version but not finished writing it
+        val claimed = new Path(directory, f"log/${2}%020d.json")
+        WithClose(fc.create(claimed, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent))(_ => ())
+        writer.addPartition(PartitionMetadata("2", Seq(f5), new Envelope(-1, 1, -5, 5), 20L))
+        fc.util.exists(new Path(directory, f"log/${3}%020d.json")) must beTrue
+
+        reader.reload()
+        reader.getPartitions().map(_.name) mustEqual Seq("1")
+
+        val entry = WithClose(fc.open(new Path(directory, f"log/${1}%020d.json")))(IOUtils.toByteArray)
+        WithClose(fc.create(claimed, java.util.EnumSet.of(CreateFlag.OVERWRITE)))(_.write(entry))
+        reader.reload()
+        reader.getPartitions().map(_.name) must containTheSameElementsAs(Seq("1", "2"))
+      }
+    }
+    "read and compact metadata written by older versions" in {
+      withPath { context =>
+        factory.create(context, Map.empty, meta)
+        val directory = new Path(context.root, "metadata")
+        val legacy = new Path(directory, "nested/update-3-legacy.json")
+        WithClose(fc.create(legacy, java.util.EnumSet.of(CreateFlag.CREATE), CreateOpts.createParent)) { out =>
+          out.write(("{\"action\":\"Add\",\"count\":1,\"envelope\":{\"xmax\":1.0,\"xmin\":0.0," +
+              "\"ymax\":1.0,\"ymin\":0.0},\"files\":[\"file1\"],\"name\":\"3\",\"timestamp\":1}")
+              .getBytes(StandardCharsets.UTF_8))
+        }
+        val metadata = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+        metadata.addPartition(PartitionMetadata("1", Seq(f2), new Envelope(-10, 10, -5, 5), 10L))
+        metadata.reload()
+        metadata.getPartitions().map(_.name) must containTheSameElementsAs(Seq("1", "3"))
+        metadata.getPartition("3").map(_.files) must beSome(Seq(f1))
+
+        metadata.compact(None)
+        fc.util.exists(legacy) must beFalse
+
+        val loaded = new FileBasedMetadata(fc, directory, sft, encoding, scheme, leafStorage = true)
+        loaded.reload()
+        loaded.getPartitions().map(_.name) must containTheSameElementsAs(Seq("1", "3"))
+        loaded.getPartition("1").map(_.files) must beSome(Seq(f2))
+        loaded.getPartition("3").map(_.files) must beSome(Seq(f1))
+      }
+    }
   }
 
   def withPath[R](code: FileSystemContext => R): R = {
@@ -0,0 +1,143 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common
+
+import java.util.concurrent.Callable
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.apache.hadoop.fs.Path
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{StorageFile, StorageFileAction, StorageFilePath}
+import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
+import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.opengis.feature.simple.SimpleFeature
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class FileSystemThreadedReaderTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("threaded", "name:String,dtg:Date,*geom:Point:srid=4326")
+
+  def feature(id: String, name: String): SimpleFeature =
+    ScalaSimpleFeature.create(sft, id, name, "2019-01-01T00:00:00.000Z", "POINT (0 0)")
+
+  /**
+    * Stand-in for a high-latency file system - each file takes `latency` millis to open
+    *
+    * @param files files, keyed by name
+    * @param latency time to open a file, in millis
+    */
+  class ThrottledReader(files: Map[String, Seq[SimpleFeature]], latency: Long) extends FileSystemPathReader {
+
+    val opening = new AtomicInteger(0)
+    val maxOpening = new AtomicInteger(0)
+    val opened = new AtomicInteger(0)
+    val closed = new AtomicInteger(0)
+
+    override def read(path: Path): CloseableIterator[SimpleFeature] = {
+      val current = opening.incrementAndGet()
+      var max = maxOpening.get
+      while (current > max && !maxOpening.compareAndSet(max, current)) {
+        max = maxOpening.get
+      }
+      try { Thread.sleep(latency) } finally {
+        opening.decrementAndGet()
+      }
+      opened.incrementAndGet()
+      CloseableIterator(files(path.getName).iterator, closed.incrementAndGet())
+    }
+  }
+
+  def file(name: String, timestamp: Long, action: StorageFileAction.Value = StorageFileAction.Append) =
+    StorageFilePath(StorageFile(name, timestamp, action), new Path(s"/tmp/$name"))
+
+  val appends = (0 until 8).map(i => s"f$i" -> (0 until 10).map(j => feature(s"$i-$j", s"name$i"))).toMap
+
+  "FileSystemThreadedReader" should {
+    "read files with prefetching" in {
+      foreach(Seq(1, 4)) { threads =>
+        foreach(Seq(0, 2, 8)) { readAhead =>
+          val reader = new ThrottledReader(appends, 10)
+          val files = appends.keys.toSeq.map(file(_, 0L))
+          val result =
+            SelfClosingIterator(FileSystemThreadedReader(Iterator.single(reader -> files), threads, readAhead)).toList
+          result.map(_.getID) must containTheSameElementsAs(appends.values.flatten.map(_.getID).toSeq)
+          reader.opened.get mustEqual 8
+          reader.closed.get mustEqual 8
+        }
+      }
+    }
+
+    "open files ahead of the read threads" in {
+      val reader = new ThrottledReader(appends, 200)
+      val files = appends.keys.toSeq.map(file(_, 0L))
+      val result = SelfClosingIterator(FileSystemThreadedReader(Iterator.single(reader -> files), 2, 4)).toList
+      result must haveLength(80)
+      // 2 read threads + 4 prefetches
+      reader.maxOpening.get must beGreaterThan(2)
+      reader.maxOpening.get must beLessThanOrEqualTo(6)
+    }
+
+    "apply modifications and deletes with prefetching" in {
+      val files = Map(
+        "append" -> Seq(feature("0", "original"), feature("1", "original"), feature("2", "original")),
+        "modify" -> Seq(feature("1", "modified")),
+        "delete" -> Seq(feature("2", "deleted"))
+      )
+      val paths = Seq(
+        file("append", 0L),
+        file("modify", 1L, StorageFileAction.Modify),
+        file("delete", 2L, StorageFileAction.Delete)
+      )
+      foreach(Seq(1, 4)) { threads =>
+        val reader = new ThrottledReader(files, 10)
+        val result = SelfClosingIterator(FileSystemThreadedReader(Iterator.single(reader -> paths), threads, 4)).toList
+        result.map(f => f.getID -> f.getAttribute("name")) must containTheSameElementsAs(
+          Seq("0" -> "original", "1" -> "modified"))
+      }
+    }
+
+    "close prefetched files when closed early" in {
+      val reader = new ThrottledReader(appends, 10)
+      val files = appends.keys.toSeq.map(file(_, 0L))
+      val result = FileSystemThreadedReader(Iterator.single(reader -> files), 2, 4, 5)
+      result.hasNext must beTrue
+      result.close()
+      eventually(reader.closed.get mustEqual reader.opened.get)
+    }
+
+    "run tasks on the shared pool with limited concurrency" in {
+      val running = new AtomicInteger(0)
+      val maxRunning = new AtomicInteger(0)
+      val tasks = Seq.tabulate(10) { i =>
+        new Callable[Int] {
+          override def call(): Int = {
+            val current = running.incrementAndGet()
+            var max = maxRunning.get
+            while (current > max && !maxRunning.compareAndSet(max, current)) {
+              max = maxRunning.get
+            }
+            try { Thread.sleep(10) } finally {
+              running.decrementAndGet()
+            }
+            i
+          }
+        }
+      }
+      FileSystemThreadedReader.invokeAll(tasks, 3) mustEqual Seq.range(0, 10)
+      maxRunning.get must beLessThanOrEqualTo(3)
+
+      val failing = tasks.take(2) :+ new Callable[Int] { override def call(): Int = throw new RuntimeException("test") }
+      FileSystemThreadedReader.invokeAll(failing, 3) must throwA[RuntimeException]
+    }
+  }
+}
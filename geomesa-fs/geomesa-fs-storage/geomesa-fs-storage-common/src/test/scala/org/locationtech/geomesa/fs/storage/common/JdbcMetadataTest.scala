@@ -15,7 +15,7 @@ import org.apache.commons.io.{FileUtils, IOUtils}
 import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.{FileContext, Path}
 import org.junit.runner.RunWith
-import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{PartitionBounds, PartitionMetadata, StorageFile, StorageFileAction}
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata._
 import org.locationtech.geomesa.fs.storage.api.{FileSystemContext, Metadata, NamedOptions, PartitionSchemeFactory}
 import org.locationtech.geomesa.fs.storage.common.metadata.{JdbcMetadata, JdbcMetadataFactory, MetadataJson}
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
@@ -134,6 +134,28 @@ class JdbcMetadataTest extends Specification with AllExpectations {
         }
       }
     }
+    "persist file stats" in {
+      withPath { context =>
+        val stats = StorageFileStats(PartitionBounds(new Envelope(-10, 10, -5, 5)),
+          Seq(AttributeBounds("dtg", "1546300800000", "1546387200000")), Seq(AttributeFilter("name", "AAAAAQ==")))
+        val f1 = StorageFile("file1", 0L, StorageFileAction.Append, Some(stats))
+        val f2 = StorageFile("file2", 1L, StorageFileAction.Modify, Some(stats.copy(ids = Some("AAAAAg=="))))
+        val config = getConfig(context.root)
+        WithClose(factory.create(context, config, meta)) { created =>
+          created.addPartition(PartitionMetadata("1", Seq(f1), new Envelope(-10, 10, -5, 5), 10L))
+          created.addPartition(PartitionMetadata("1", Seq(f2, f3), new Envelope(-11, 11, -5, 5), 20L))
+          val loaded = factory.load(context)
+          loaded must beSome
+          try {
+            foreach(Seq(created, loaded.get)) { metadata =>
+              metadata.getPartition("1").map(_.files) must beSome(containTheSameElementsAs(Seq(f1, f2, f3)))
+            }
+          } finally {
+            loaded.get.close()
+          }
+        }
+      }
+    }
     "delete and compact" in {
       withPath { context =>
         val config = getConfig(context.root)
@@ -0,0 +1,132 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.sort
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.curve._
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.FileSystemWriter
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.jts.geom.Point
+import org.opengis.feature.simple.SimpleFeature
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.collection.mutable.ArrayBuffer
+
+@RunWith(classOf[JUnitRunner])
+class SortingFileSystemWriterTest extends Specification {
+
+  import org.locationtech.geomesa.fs.storage.common.RichSimpleFeatureType
+
+  val sft = SimpleFeatureTypes.createType("sort", "name:String,dtg:Date,*geom:Point:srid=4326")
+
+  // features in a scattered order
+  val features = (0 until 100).map { i =>
+    val j = (i * 37) % 100
+    ScalaSimpleFeature.create(sft, s"$j", s"name$j", f"2019-01-${j % 28 + 1}%02dT00:00:00.000Z",
+      s"POINT (${j - 50} ${50 - j})")
+  }
+
+  def z2(f: SimpleFeature): Long = {
+    val p = f.getDefaultGeometry.asInstanceOf[Point]
+    Z2SFC.index(p.getX, p.getY).z
+  }
+
+  class CollectingWriter extends FileSystemWriter {
+    val written = ArrayBuffer.empty[SimpleFeature]
+    var closed = false
+    override def write(feature: SimpleFeature): Unit = written += feature
+    override def flush(): Unit = {}
+    override def close(): Unit = closed = true
+  }
+
+  "SortingFileSystemWriter" should {
+    "only sort when configured" in {
+      val writer = new CollectingWriter
+      SortingFileSystemWriter(sft, writer) must beTheSameAs(writer)
+    }
+
+    "reject invalid configurations" in {
+      SortCurve(sft, "foo") must throwAn[IllegalArgumentException]
+      val nodate = SimpleFeatureTypes.createType("sort", "name:String,*geom:Point:srid=4326")
+      SortCurve(nodate, SortCurve.Z3Name) must throwAn[IllegalArgumentException]
+    }
+
+    "sort features by z2" in {
+      val delegate = new CollectingWriter
+      val writer = new SortingFileSystemWriter(delegate, SortCurve(sft, SortCurve.Z2Name), 1000)
+      features.foreach(writer.write)
+      delegate.written must beEmpty
+      writer.close()
+      delegate.closed must beTrue
+      delegate.written.map(_.getID) must containTheSameElementsAs(features.map(_.getID))
+      delegate.written.map(z2) mustEqual features.map(z2).sorted
+    }
+
+    "sort features by z3" in {
+      val period = TimePeriod.Week
+      val sfc = Z3SFC(period)
+      val toBin = BinnedTime.timeToBinnedTime(period)
+      def z3(f: SimpleFeature): (Short, Long) = {
+        val p = f.getDefaultGeometry.asInstanceOf[Point]
+        val BinnedTime(b, t) = toBin(f.getAttribute("dtg").asInstanceOf[java.util.Date].getTime)
+        (b, sfc.index(p.getX, p.getY, t).z)
+      }
+      val delegate = new CollectingWriter
+      val writer = new SortingFileSystemWriter(delegate, SortCurve(sft, SortCurve.Z3Name), 1000)
+      features.foreach(writer.write)
+      writer.close()
+      delegate.written.map(z3) mustEqual features.map(z3).sorted
+    }
+
+    "sort features by xz2" in {
+      val sfc = XZ2SFC(XZSFC.DefaultPrecision)
+      def xz2(f: SimpleFeature): Long = {
+        val p = f.getDefaultGeometry.asInstanceOf[Point]
+        sfc.index(p.getX, p.getY, p.getX, p.getY)
+      }
+      val delegate = new CollectingWriter
+      val writer = new SortingFileSystemWriter(delegate, SortCurve(sft, SortCurve.XZ2Name), 1000)
+      features.foreach(writer.write)
+      writer.close()
+      delegate.written.map(xz2) mustEqual features.map(xz2).sorted
+    }
+
+    "sort features in bounded runs" in {
+      val delegate = new CollectingWriter
+      val writer = new SortingFileSystemWriter(delegate, SortCurve(sft, SortCurve.Z2Name), 30)
+      features.foreach(writer.write)
+      delegate.written must haveLength(90)
+      writer.flush()
+      delegate.written must haveLength(100)
+      writer.close()
+      foreach(delegate.written.grouped(30).toSeq.zip(features.grouped(30).toSeq)) { case (run, expected) =>
+        run.map(z2) mustEqual expected.map(z2).sorted
+      }
+    }
+
+    "sort features without geometries last" in {
+      val delegate = new CollectingWriter
+      val writer = new SortingFileSystemWriter(delegate, SortCurve(sft, SortCurve.Z2Name), 1000)
+      val empty = ScalaSimpleFeature.create(sft, "empty", "empty", "2019-01-01T00:00:00.000Z", null)
+      writer.write(empty)
+      features.foreach(writer.write)
+      writer.close()
+      delegate.written.last.getID mustEqual "empty"
+    }
+
+    "read the curve from the feature type user data" in {
+      val configured = SimpleFeatureTypes.createType("sort", "name:String,dtg:Date,*geom:Point:srid=4326")
+      configured.setSortCurve("z3")
+      SortCurve(configured).map(_.name) must beSome(SortCurve.Z3Name)
+      SortingFileSystemWriter(configured, new CollectingWriter) must beAnInstanceOf[SortingFileSystemWriter]
+    }
+  }
+}
@@ -0,0 +1,118 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.fs.storage.common.stats
+
+import org.geotools.filter.text.ecql.ECQL
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.fs.storage.api.StorageMetadata.{StorageFile, StorageFileStats}
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.jts.geom.{Envelope, Geometry}
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class FileStatsTest extends Specification {
+
+  import org.locationtech.geomesa.fs.storage.common.RichSimpleFeatureType
+
+  val sft = SimpleFeatureTypes.createType("stats", "name:String,age:Int,dtg:Date,*geom:Point:srid=4326")
+  sft.setStatsAttributes(Seq("age"))
+  sft.setBloomAttributes(Seq("name"))
+  sft.setBloomIds(true)
+
+  // two files, one with features in january and one with features in february
+  val files = Seq(1, 2).map { month =>
+    (0 until 10).map { i =>
+      ScalaSimpleFeature.create(sft, s"$month-$i", s"name$month-$i", month * 10 + i,
+        f"2019-0$month-${i + 1}%02dT00:00:00.000Z", s"POINT (${month * 10 + i} ${month * 10})")
+    }
+  }
+
+  val stats = files.map { features =>
+    val tracker = new FileStatsTracker(sft)
+    val bounds = new Envelope()
+    features.foreach { f =>
+      tracker.add(f)
+      bounds.expandToInclude(f.getDefaultGeometry.asInstanceOf[Geometry].getEnvelopeInternal)
+    }
+    tracker.stats(bounds)
+  }
+
+  def matches(ecql: String): Seq[Boolean] = {
+    FileStatsFilter(sft, ECQL.toFilter(ecql)) match {
+      case None => stats.map(_ => true)
+      case Some(f) => stats.map(s => f.matches(s))
+    }
+  }
+
+  "FileStats" should {
+    "track min/max values and bloom filters" in {
+      val Seq(jan, feb) = stats
+      jan.bounds.map(_.envelope) must beSome(new Envelope(10, 19, 10, 10))
+      jan.attributes.map(_.attribute) must containTheSameElementsAs(Seq("dtg", "age"))
+      jan.attributes.find(_.attribute == "age").map(b => (b.lower, b.upper)) must beSome(("10", "19"))
+      feb.attributes.find(_.attribute == "age").map(b => (b.lower, b.upper)) must beSome(("20", "29"))
+      jan.filters.map(_.attribute) mustEqual Seq("name")
+      jan.ids must beSome
+    }
+
+    "skip files based on dates" in {
+      matches("dtg DURING 2019-01-01T12:00:00.000Z/2019-01-03T00:00:00.000Z") mustEqual Seq(true, false)
+      matches("dtg DURING 2019-02-01T12:00:00.000Z/2019-02-03T00:00:00.000Z") mustEqual Seq(false, true)
+      matches("dtg > '2019-03-01T00:00:00.000Z'") mustEqual Seq(false, false)
+      matches("dtg < '2019-03-01T00:00:00.000Z'") mustEqual Seq(true, true)
+    }
+
+    "skip files based on attributes" in {
+      matches("age = 15") mustEqual Seq(true, false)
+      matches("age >= 25") mustEqual Seq(false, true)
+      matches("age BETWEEN 19 AND 20") mustEqual Seq(true, true)
+    }
+
+    "skip files based on bounds" in {
+      matches("bbox(geom,9,9,12,11)") mustEqual Seq(true, false)
+      matches("bbox(geom,0,0,5,5)") mustEqual Seq(false, false)
+    }
+
+    "skip files based on bloom filters" in {
+      matches("name = 'name1-5'") mustEqual Seq(true, false)
+      matches("name = 'name2-5'") mustEqual Seq(false, true)
+      matches("name IN ('name1-5', 'name2-5')") mustEqual Seq(true, true)
+      matches("IN ('1-3')") mustEqual Seq(true, false)
+      matches("IN ('2-3', '2-4')") mustEqual Seq(false, true)
+      // case-insensitive and like filters can't use the bloom filters
+      matches("strToUpperCase(name) = 'NAME1-5'") mustEqual Seq(true, true)
+      matches("name like 'name1%'") mustEqual Seq(true, true)
+    }
+
+    "handle logical filters conservatively" in {
+      matches("age = 15 AND dtg > '2019-03-01T00:00:00.000Z'") mustEqual Seq(false, false)
+      matches("age = 15 OR age = 25") mustEqual Seq(true, true)
+      matches("age = 15 OR name like 'foo%'") mustEqual Seq(true, true)
+      matches("NOT (age = 15)") mustEqual Seq(true, true)
+      matches("INCLUDE") mustEqual Seq(true, true)
+    }
+
+    "never skip files without stats" in {
+      val filter = FileStatsFilter(sft, ECQL.toFilter("age = 15"))
+      filter must beSome
+      filter.get.matches(StorageFile("file", 0L)) must beTrue
+      filter.get.matches(StorageFileStats(None)) must beTrue
+    }
+
+    "serialize bloom filters" in {
+      val bloom = BloomFilter(100, 0.01)
+      (0 until 100).foreach(i => bloom.add(s"value$i"))
+      val deserialized = BloomFilter.deserialize(bloom.serialize())
+      foreach(0 until 100)(i => deserialized.mightContain(s"value$i") must beTrue)
+      (100 until 1100).count(i => deserialized.mightContain(s"value$i")) must beLessThan(50)
+    }
+  }
+}
@@ -51,6 +51,9 @@ class ConverterStorage(context: FileSystemContext, metadata: StorageMetadata, co
 
   override def compact(partition: Option[String], threads: Int): Unit =
     throw new UnsupportedOperationException("Converter storage does not support compactions")
+
+  override def compactRetainingFiles(partition: String, threads: Int): Seq[StorageFilePath] =
+    throw new UnsupportedOperationException("Converter storage does not support compactions")
 }
 
 object ConverterStorage {
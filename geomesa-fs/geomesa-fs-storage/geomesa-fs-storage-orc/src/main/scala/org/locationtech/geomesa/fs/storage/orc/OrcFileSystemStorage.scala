@@ -19,6 +19,7 @@ import org.locationtech.geomesa.fs.storage.api._
 import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage
 import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserver
+import org.locationtech.geomesa.fs.storage.common.stats.FileStatsTracker
 import org.locationtech.jts.geom.Geometry
 import org.opengis.feature.`type`.AttributeDescriptor
 import org.opengis.feature.simple.SimpleFeatureType
@@ -48,9 +49,24 @@ object OrcFileSystemStorage {
   val Encoding      = "orc"
   val FileExtension = "orc"
 
+  val FeatureIdField = "id"
+
   def geometryXField(attribute: String): String = s"${attribute}_x"
   def geometryYField(attribute: String): String = s"${attribute}_y"
 
+  /**
+    * Gets the Orc columns that should have bloom filters written, based on the bloom filter
+    * configuration of the SimpleFeatureType. Bloom filters allow row groups to be skipped for
+    * equality queries
+    *
+    * @param sft simple feature type
+    * @return
+    */
+  def bloomFilterColumns(sft: SimpleFeatureType): Seq[String] = {
+    val ids = if (FileStatsTracker.bloomIds(sft)) { Seq(FeatureIdField) } else { Seq.empty }
+    FileStatsTracker.bloomAttributes(sft) ++ ids
+  }
+
   /**
     * Create the Orc type description corresponding to the SimpleFeatureType. SimpleFeatureType is
     * modeled as an Orc Struct, with nested fields for each attribute.
@@ -66,7 +82,7 @@ object OrcFileSystemStorage {
       i += 1
     }
     if (fid) {
-      container.addField("id", TypeDescription.createString())
+      container.addField(FeatureIdField, TypeDescription.createString())
     }
     container
   }
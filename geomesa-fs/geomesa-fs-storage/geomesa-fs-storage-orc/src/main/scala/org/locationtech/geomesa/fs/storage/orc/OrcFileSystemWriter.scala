@@ -14,6 +14,7 @@ import org.apache.orc.OrcFile
 import org.locationtech.geomesa.fs.storage.api.FileSystemStorage.FileSystemWriter
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserver
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserverFactory.NoOpObserver
+import org.locationtech.geomesa.fs.storage.common.stats.BloomFppProperty
 import org.locationtech.geomesa.fs.storage.orc.utils.OrcAttributeWriter
 import org.locationtech.geomesa.utils.io.CloseQuietly
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
@@ -29,7 +30,14 @@ class OrcFileSystemWriter(
 
   private val schema = OrcFileSystemStorage.createTypeDescription(sft)
 
-  private val options = OrcFile.writerOptions(config).setSchema(schema)
+  private val options = {
+    val opts = OrcFile.writerOptions(config).setSchema(schema)
+    val bloom = OrcFileSystemStorage.bloomFilterColumns(sft)
+    if (bloom.nonEmpty) {
+      opts.bloomFilterColumns(bloom.mkString(",")).bloomFilterFpp(BloomFppProperty.toDouble.get)
+    }
+    opts
+  }
   private val writer = OrcFile.createWriter(file, options)
   private val batch = schema.createRowBatch()
 
@@ -9,7 +9,9 @@
 package org.locationtech.geomesa.fs.storage.orc.jobs
 
 import org.apache.hadoop.mapreduce.Job
+import org.apache.orc.OrcConf
 import org.locationtech.geomesa.fs.storage.common.jobs.StorageConfiguration
+import org.locationtech.geomesa.fs.storage.common.stats.BloomFppProperty
 import org.locationtech.geomesa.fs.storage.orc.OrcFileSystemStorage
 import org.opengis.feature.simple.SimpleFeatureType
 
@@ -19,5 +21,10 @@ trait OrcStorageConfiguration extends StorageConfiguration {
     StorageConfiguration.setSft(job.getConfiguration, sft)
     OrcSimpleFeatureOutputFormat.setDescription(job.getConfiguration,
       OrcFileSystemStorage.createTypeDescription(sft))
+    val bloom = OrcFileSystemStorage.bloomFilterColumns(sft)
+    if (bloom.nonEmpty) {
+      OrcConf.BLOOM_FILTER_COLUMNS.setString(job.getConfiguration, bloom.mkString(","))
+      OrcConf.BLOOM_FILTER_FPP.setDouble(job.getConfiguration, BloomFppProperty.toDouble.get)
+    }
   }
 }
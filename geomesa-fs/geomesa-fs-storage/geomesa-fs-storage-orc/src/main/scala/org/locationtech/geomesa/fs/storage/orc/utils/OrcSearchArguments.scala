@@ -16,10 +16,12 @@ import org.apache.orc.TypeDescription
 import org.locationtech.geomesa.filter.{Bounds, FilterHelper}
 import org.locationtech.geomesa.fs.storage.orc.OrcFileSystemStorage
 import org.opengis.feature.simple.SimpleFeatureType
-import org.opengis.filter.Filter
+import org.opengis.filter.{And, Filter, Id}
 
 object OrcSearchArguments {
 
+  import scala.collection.JavaConverters._
+
   /**
     * Creates a push-down predicate for Orc files based on a CQL filter
     *
@@ -72,7 +74,14 @@ object OrcSearchArguments {
             throw new IllegalArgumentException(s"SimpleFeature TypeDefinition should not have type '$category'")
         }
         typeAndConversion.toSeq.flatMap { case (typ, conversion) =>
-          FilterHelper.extractAttributeBounds(filter, prop, binding).values.flatMap(add(prop, _, typ, conversion))
+          val bounds = FilterHelper.extractAttributeBounds(filter, prop, binding).values
+          if (bounds.lengthCompare(1) > 0 && bounds.forall(_.isEquals)) {
+            // use a single 'in' predicate, which can be evaluated against bloom filters
+            val values = bounds.map(b => conversion(b.lower.value.get).asInstanceOf[AnyRef])
+            Seq[(SearchArgument.Builder) => Unit]((arg) => arg.in(prop, typ, values: _*))
+          } else {
+            bounds.flatMap(add(prop, _, typ, conversion))
+          }
         }
       }
 
@@ -83,12 +92,14 @@ object OrcSearchArguments {
       }
     }
 
-    if (predicates.isEmpty) { None } else {
+    val all = predicates ++ ids(filter).map(Seq(_))
+
+    if (all.isEmpty) { None } else {
       val arg = SearchArgumentFactory.newBuilder
-      if (predicates.length > 1) {
+      if (all.length > 1) {
         arg.startAnd()
       }
-      predicates.foreach { preds =>
+      all.foreach { preds =>
         if (preds.length == 1) {
           preds.head.apply(arg)
         } else {
@@ -97,7 +108,7 @@ object OrcSearchArguments {
           arg.end()
         }
       }
-      if (predicates.length > 1) {
+      if (all.length > 1) {
         arg.end()
       }
       // note: column name array does not matter at all
@@ -133,6 +144,27 @@ object OrcSearchArguments {
     }
   }
 
+  /**
+    * Creates a predicate for any feature ID filters, which can be evaluated against bloom filters
+    *
+    * @param filter filter
+    * @return
+    */
+  private def ids(filter: Filter): Option[(SearchArgument.Builder) => Unit] = {
+    val ids = filter match {
+      case f: Id => f.getIDs.asScala.map(_.toString).toSeq
+      // any id filters in an 'and' must match, so they can still be used to exclude row groups
+      case f: And => f.getChildren.asScala.collect { case i: Id => i.getIDs.asScala.map(_.toString) }.flatten
+      case _ => Seq.empty
+    }
+    if (ids.isEmpty) { None } else {
+      val values = ids.distinct.map(_.asInstanceOf[AnyRef])
+      val predicate: (SearchArgument.Builder) => Unit =
+        (arg) => arg.in(OrcFileSystemStorage.FeatureIdField, PredicateLeaf.Type.STRING, values: _*)
+      Some(predicate)
+    }
+  }
+
   private def addPoint(prop: String, bounds: Geometry): (SearchArgument.Builder) => Unit = {
     val x = OrcFileSystemStorage.geometryXField(prop)
     val y = OrcFileSystemStorage.geometryYField(prop)
@@ -105,6 +105,51 @@ class OrcFileSystemStorageTest extends Specification with LazyLogging {
       }
     }
 
+    "read and write features with bloom filters" in {
+      import org.locationtech.geomesa.fs.storage.common.RichSimpleFeatureType
+
+      val sft = SimpleFeatureTypes.createType("orc-test-bloom", "*geom:Point:srid=4326,name:String,age:Int,dtg:Date")
+      sft.setBloomAttributes(Seq("name"))
+      sft.setBloomIds(true)
+
+      OrcFileSystemStorage.bloomFilterColumns(sft) mustEqual Seq("name", OrcFileSystemStorage.FeatureIdField)
+
+      val features = (0 until 10).map { i =>
+        val sf = new ScalaSimpleFeature(sft, i.toString)
+        sf.getUserData.put(Hints.USE_PROVIDED_FID, java.lang.Boolean.TRUE)
+        sf.setAttribute(1, s"name${i % 5}")
+        sf.setAttribute(2, s"$i")
+        sf.setAttribute(3, f"2014-01-${i + 1}%02dT00:00:01.000Z")
+        sf.setAttribute(0, s"POINT(4$i 5$i)")
+        sf
+      }
+
+      withTestDir { dir =>
+        val context = FileSystemContext(FileContext.getFileContext(dir.toUri), config, dir)
+        val metadata =
+          new FileBasedMetadataFactory()
+              .create(context, Map.empty, Metadata(sft, "orc", scheme, leafStorage = true))
+        val storage = new OrcFileSystemStorageFactory().apply(context, metadata)
+
+        val writers = scala.collection.mutable.Map.empty[String, FileSystemWriter]
+        features.foreach { f =>
+          val partition = storage.metadata.scheme.getPartitionName(f)
+          writers.getOrElseUpdate(partition, storage.getWriter(partition)).write(f)
+        }
+        writers.foreach(_._2.close())
+
+        val doTest = testQuery(storage, sft) _
+
+        foreach(Seq(null, Array("geom", "name"))) { transforms =>
+          doTest("name = 'name1'", transforms, Seq(features(1), features(6)))
+          doTest("name IN ('name1', 'name3')", transforms, Seq(features(1), features(3), features(6), features(8)))
+          doTest("name IN ('name7', 'name8')", transforms, Seq.empty)
+          doTest("IN('0', '7')", transforms, Seq(features(0), features(7)))
+          doTest("IN('0', '7') AND name = 'name2'", transforms, Seq(features(7)))
+        }
+      }
+    }
+
     "read and write complex features" in {
       val sft = SimpleFeatureTypes.createType("orc-test-complex",
         "name:String,age:Int,time:Long,height:Float,weight:Double,bool:Boolean," +
@@ -21,6 +21,7 @@ import org.locationtech.geomesa.fs.storage.common.jobs.StorageConfiguration
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserver
 import org.locationtech.geomesa.fs.storage.common.observer.FileSystemObserverFactory.NoOpObserver
 import org.locationtech.geomesa.parquet.ParquetFileSystemStorage._
+import org.locationtech.geomesa.parquet.io.ColumnPredicate
 import org.locationtech.geomesa.utils.io.CloseQuietly
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
 import org.opengis.filter.Filter
@@ -57,7 +58,18 @@ class ParquetFileSystemStorage(context: FileSystemContext, metadata: StorageMeta
     val conf = new Configuration(context.conf)
     StorageConfiguration.setSft(conf, readSft)
 
-    new ParquetPathReader(conf, readSft, parquetFilter, gtFilter, readTransform)
+    val reader = new ParquetPathReader(conf, readSft, parquetFilter, gtFilter, readTransform)
+
+    val predicates = filter match {
+      case Some(f) if VectorizedReads.toBoolean.contains(true) => ColumnPredicate(readSft, f)
+      case _ => Seq.empty
+    }
+    if (predicates.isEmpty) { reader } else {
+      logger.debug(s"Using vectorized reads with column predicates: ${predicates.mkString(", ")}")
+      // note: the parquet filter is only used for row group selection, so we need to apply the full filter
+      val fullFilter = FastFilterFactory.optimize(readSft, filter.get)
+      new ParquetVectorizedPathReader(conf, readSft, parquetFilter, fullFilter, predicates, readTransform, reader)
+    }
   }
 }
 
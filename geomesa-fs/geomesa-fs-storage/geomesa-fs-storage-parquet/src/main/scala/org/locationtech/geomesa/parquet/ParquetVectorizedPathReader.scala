@@ -0,0 +1,256 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.parquet
+
+import java.util.{BitSet, Collections}
+
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.column.ColumnReader
+import org.apache.parquet.column.impl.ColumnReadStoreImpl
+import org.apache.parquet.filter.{RecordFilter, UnboundRecordFilter}
+import org.apache.parquet.filter2.compat.FilterCompat.FilterPredicateCompat
+import org.apache.parquet.filter2.compat.RowGroupFilter.FilterLevel
+import org.apache.parquet.filter2.compat.{FilterCompat, RowGroupFilter}
+import org.apache.parquet.format.converter.ParquetMetadataConverter
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.hadoop.api.InitContext
+import org.apache.parquet.hadoop.metadata.{BlockMetaData, ParquetMetadata}
+import org.apache.parquet.io.api.{Converter, GroupConverter, PrimitiveConverter}
+import org.apache.parquet.io.{ColumnIOFactory, RecordReader}
+import org.apache.parquet.schema.{GroupType, MessageType}
+import org.locationtech.geomesa.features.TransformSimpleFeature
+import org.locationtech.geomesa.fs.storage.common.AbstractFileSystemStorage.FileSystemPathReader
+import org.locationtech.geomesa.parquet.ParquetVectorizedPathReader.{NoOpGroupConverter, RowFilter}
+import org.locationtech.geomesa.parquet.io.SimpleFeatureReadSupport.SimpleFeatureRecordMaterializer
+import org.locationtech.geomesa.parquet.io.{ColumnPredicate, SimpleFeatureParquetSchema}
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.io.{CloseQuietly, WithClose}
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+
+import scala.util.control.NonFatal
+
+/**
+  * Vectorized reader for parquet files. For each row group, the columns referenced by simple predicates
+  * (bounding boxes on points, date ranges and equality) are decoded into primitive batches and evaluated
+  * without creating any simple features. Row groups without any matching rows are skipped entirely, and only
+  * rows that pass the predicates are materialized into simple features.
+  *
+  * Only files written with the current schema version are read through the vectorized path - any other
+  * files are read through the fallback reader
+  *
+  * @param conf configuration, including the read simple feature type
+  * @param readSft read simple feature type
+  * @param parquetFilter parquet filter, used to skip row groups based on their statistics and dictionaries
+  * @param filter full query filter, applied to any rows that pass the column predicates
+  * @param predicates column predicates
+  * @param transform transform, if any
+  * @param fallback fallback reader for older files
+  */
+class ParquetVectorizedPathReader(
+    conf: Configuration,
+    readSft: SimpleFeatureType,
+    parquetFilter: FilterCompat.Filter,
+    filter: Filter,
+    predicates: Seq[ColumnPredicate],
+    transform: Option[(String, SimpleFeatureType)],
+    fallback: FileSystemPathReader
+  ) extends FileSystemPathReader with LazyLogging {
+
+  import scala.collection.JavaConverters._
+
+  private val batchSize = VectorizedBatchSize.toInt.get
+
+  private val transformFeature: SimpleFeature => SimpleFeature = transform match {
+    case None => null
+    case Some((tdefs, tsft)) =>
+      val attributes = TransformSimpleFeature.attributes(readSft, tsft, tdefs)
+      f => new TransformSimpleFeature(tsft, attributes, f)
+  }
+
+  override def read(path: Path): CloseableIterator[SimpleFeature] = {
+    val footer = try { ParquetFileReader.readFooter(conf, path, ParquetMetadataConverter.NO_FILTER) } catch {
+      case NonFatal(e) => logger.error(s"Error reading file '$path'", e); null
+    }
+    if (footer == null) { CloseableIterator.empty } else {
+      val version = footer.getFileMetaData.getKeyValueMetaData.get(SimpleFeatureParquetSchema.SchemaVersionKey)
+      if (version == SimpleFeatureParquetSchema.CurrentSchemaVersion.toString) {
+        logger.debug(s"Opening vectorized reader for path $path")
+        new VectorizedFileIterator(path, footer)
+      } else {
+        logger.debug(s"Using non-vectorized reader for path $path with schema version $version")
+        fallback.read(path)
+      }
+    }
+  }
+
+  private class VectorizedFileIterator(path: Path, footer: ParquetMetadata)
+      extends CloseableIterator[SimpleFeature] {
+
+    private val metadata = footer.getFileMetaData
+    private val fileSchema = metadata.getSchema
+
+    // the projected schema for our read sft
+    private val schema = {
+      val keyValues = metadata.getKeyValueMetaData.asScala.map { case (k, v) => k -> Collections.singleton(v) }
+      SimpleFeatureParquetSchema.read(new InitContext(conf, keyValues.asJava, fileSchema)).getOrElse {
+        throw new IllegalArgumentException("Could not extract SimpleFeatureType from read context")
+      }
+    }
+
+    private val columns = new ColumnIOFactory(metadata.getCreatedBy).getColumnIO(schema.schema, fileSchema, true)
+
+    private val usable = predicates.filter(_.fields.forall(f => schema.schema.containsField(f)))
+    private val predicateSchema = {
+      val fields = usable.flatMap(_.fields).distinct.map(f => schema.schema.getType(f))
+      new MessageType(schema.schema.getName, fields.asJava)
+    }
+
+    private val blocks = parquetFilter match {
+      case f: FilterPredicateCompat if conf.getBoolean("parquet.filter.dictionary.enabled", true) =>
+        // also check the dictionary pages - this lets us skip row groups for equality filters where the value
+        // falls within the min/max statistics, but doesn't actually occur in the row group
+        WithClose(new ParquetFileReader(conf, metadata, path, footer.getBlocks, fileSchema.getColumns)) { reader =>
+          RowGroupFilter.filterRowGroups(FilterLevels, f, footer.getBlocks, reader)
+        }
+
+      case f => RowGroupFilter.filterRowGroups(f, footer.getBlocks, fileSchema)
+    }
+    private val iter = blocks.iterator()
+
+    // reads only the columns required to evaluate the predicates
+    private val predicateReader =
+      if (predicateSchema.getFieldCount == 0) { None } else {
+        Some(new ParquetFileReader(conf, metadata, path, blocks, predicateSchema.getColumns))
+      }
+
+    // reads all the columns for the current row group
+    private var reader: ParquetFileReader = _
+    private var records: RecordReader[SimpleFeature] = _
+    private var remaining = 0L
+
+    private var staged: SimpleFeature = _
+
+    private var skipped = 0
+
+    override def hasNext: Boolean = {
+      while (staged == null && (remaining > 0 || iter.hasNext)) {
+        if (remaining > 0) {
+          val read = try { records.read() } catch {
+            case NonFatal(e) => logger.error(s"Error reading file '$path'", e); null
+          }
+          remaining -= 1
+          if (read == null) {
+            remaining = 0
+          } else if (filter.evaluate(read)) {
+            staged = if (transformFeature == null) { read } else { transformFeature(read) }
+          }
+          if (remaining == 0) {
+            closeRowGroup()
+          }
+        } else {
+          nextRowGroup()
+        }
+      }
+      staged != null
+    }
+
+    override def next(): SimpleFeature = {
+      val res = staged
+      staged = null
+      res
+    }
+
+    override def close(): Unit = {
+      logger.debug(s"Closing vectorized reader for path $path, skipped $skipped of ${blocks.size} row groups")
+      CloseQuietly(predicateReader.toSeq ++ Option(reader)).foreach(e => throw e)
+    }
+
+    private def nextRowGroup(): Unit = {
+      val block = iter.next()
+      val rows = block.getRowCount.toInt
+      val survivors = new BitSet(rows)
+      survivors.set(0, rows)
+
+      predicateReader.foreach { r =>
+        val pages = r.readNextRowGroup()
+        val converter = new NoOpGroupConverter(predicateSchema)
+        val store = new ColumnReadStoreImpl(pages, converter, predicateSchema, metadata.getCreatedBy)
+        usable.foreach { p =>
+          if (!survivors.isEmpty) {
+            p.evaluate(store, predicateSchema, rows, batchSize, survivors)
+          }
+        }
+      }
+
+      remaining = survivors.cardinality()
+      if (remaining == 0) {
+        skipped += 1
+      } else {
+        reader = new ParquetFileReader(conf, metadata, path, Collections.singletonList[BlockMetaData](block),
+          schema.schema.getColumns)
+        val pages = reader.readNextRowGroup()
+        val materializer = new SimpleFeatureRecordMaterializer(schema)
+        records = columns.getRecordReader(pages, materializer, FilterCompat.get(new RowFilter(survivors)))
+      }
+    }
+
+    private def closeRowGroup(): Unit = {
+      records = null
+      if (reader != null) {
+        val r = reader
+        reader = null
+        r.close()
+      }
+    }
+  }
+}
+
+object ParquetVectorizedPathReader {
+
+  import scala.collection.JavaConverters._
+
+  private val FilterLevels = Seq(FilterLevel.STATISTICS, FilterLevel.DICTIONARY).asJava
+
+  /**
+    * Record filter that matches rows based on their position in the row group. Relies on the parquet
+    * filtered record reader invoking `isMatch` exactly once per record, in order
+    *
+    * @param rows rows to match
+    */
+  private class RowFilter(rows: BitSet) extends UnboundRecordFilter {
+    override def bind(readers: java.lang.Iterable[ColumnReader]): RecordFilter = new RecordFilter {
+      private var i = -1
+      override def isMatch: Boolean = {
+        i += 1
+        rows.get(i)
+      }
+    }
+  }
+
+  /**
+    * Converter that ignores all values - the column predicates read values directly from the column readers
+    *
+    * @param group group type
+    */
+  private class NoOpGroupConverter(group: GroupType) extends GroupConverter {
+
+    import scala.collection.JavaConverters._
+
+    private val converters: Array[Converter] = group.getFields.asScala.map { field =>
+      if (field.isPrimitive) { new PrimitiveConverter {} } else { new NoOpGroupConverter(field.asGroupType()) }
+    }.toArray
+
+    override def getConverter(fieldIndex: Int): Converter = converters(fieldIndex)
+    override def start(): Unit = {}
+    override def end(): Unit = {}
+  }
+}
@@ -0,0 +1,478 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.parquet.io
+
+import java.util.{BitSet, Date}
+
+import org.apache.parquet.column.{ColumnReadStore, ColumnReader}
+import org.apache.parquet.io.api.Binary
+import org.apache.parquet.schema.MessageType
+import org.locationtech.geomesa.filter.{FilterHelper, andFilters, isSpatialFilter}
+import org.locationtech.geomesa.parquet.io.SimpleFeatureParquetSchema.{GeometryColumnX, GeometryColumnY}
+import org.locationtech.geomesa.utils.geotools.converters.FastConverter
+import org.locationtech.geomesa.utils.text.StringSerialization
+import org.locationtech.jts.geom.Point
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter._
+import org.opengis.filter.expression.{Literal, PropertyName}
+import org.opengis.filter.spatial.BinarySpatialOperator
+import org.opengis.filter.temporal.BinaryTemporalOperator
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * A simple predicate that can be evaluated directly against decoded parquet column values, without
+  * materializing simple features. Predicates are necessary but not sufficient conditions for matching
+  * the query filter, so the full filter still has to be applied to any rows that pass
+  */
+sealed trait ColumnPredicate {
+
+  /**
+    * Top-level parquet fields required to evaluate this predicate
+    *
+    * @return
+    */
+  def fields: Seq[String]
+
+  /**
+    * Evaluate the predicate against the rows of a row group. Rows that don't match will be cleared from
+    * the `survivors` bit set.
+    *
+    * @param store column store for the row group, containing at least the fields required by this predicate
+    * @param schema schema used for the column store
+    * @param rows number of rows in the row group
+    * @param batch number of values to decode at once
+    * @param survivors rows that have matched so far
+    */
+  def evaluate(store: ColumnReadStore, schema: MessageType, rows: Int, batch: Int, survivors: BitSet): Unit
+}
+
+object ColumnPredicate {
+
+  import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+  import scala.collection.JavaConverters._
+
+  /**
+    * Extract column predicates from a query filter. Only top-level AND'd predicates are considered. Each
+    * column will be used by at most one predicate, as column pages can only be read once per row group
+    *
+    * @param sft simple feature type being read
+    * @param filter query filter
+    * @return
+    */
+  def apply(sft: SimpleFeatureType, filter: Filter): Seq[ColumnPredicate] = {
+    val children = filter match {
+      case and: And => and.getChildren.asScala
+      case f => Seq(f)
+    }
+    if (children.contains(Filter.EXCLUDE)) { Seq(ExcludePredicate) } else {
+      val predicates = ArrayBuffer.empty[ColumnPredicate]
+
+      val spatials = children.filter {
+        case f: BinarySpatialOperator => isSpatialFilter(f)
+        case _ => false
+      }
+      if (spatials.nonEmpty) {
+        predicates ++= spatial(sft, andFilters(spatials))
+      }
+
+      val temporals = children.flatMap(f => dateAttribute(sft, f).map(_ -> f)).groupBy(_._1)
+      temporals.foreach { case (name, filters) =>
+        predicates ++= temporal(name, andFilters(filters.map(_._2)))
+      }
+
+      children.foreach {
+        case f: PropertyIsEqualTo =>
+          equality(sft, f).foreach { p =>
+            if (!predicates.exists(_.fields == p.fields)) {
+              predicates += p
+            }
+          }
+
+        case _ => // no-op
+      }
+
+      if (predicates.contains(ExcludePredicate)) { Seq(ExcludePredicate) } else { predicates }
+    }
+  }
+
+  private def spatial(sft: SimpleFeatureType, filter: Filter): Option[ColumnPredicate] = {
+    val geom = sft.getGeomField
+    // only points are stored as single x/y values that we can easily compare
+    if (geom == null || sft.getGeometryDescriptor.getType.getBinding != classOf[Point]) { None } else {
+      val geometries = FilterHelper.extractGeometries(filter, geom)
+      if (geometries.disjoint) {
+        Some(ExcludePredicate)
+      } else if (geometries.isEmpty) {
+        None
+      } else {
+        val envelopes = geometries.values.map { g =>
+          val env = g.getEnvelopeInternal
+          Array(env.getMinX, env.getMinY, env.getMaxX, env.getMaxY)
+        }
+        Some(new BboxPredicate(field(geom), envelopes.toArray))
+      }
+    }
+  }
+
+  private def dateAttribute(sft: SimpleFeatureType, filter: Filter): Option[String] = {
+    val supported = filter match {
+      case _: BinaryComparisonOperator | _: PropertyIsBetween | _: BinaryTemporalOperator => true
+      case _ => false
+    }
+    if (!supported) { None } else {
+      val names = FilterHelper.propertyNames(filter, sft)
+      if (names.lengthCompare(1) != 0) { None } else {
+        val descriptor = sft.getDescriptor(names.head)
+        if (descriptor == null || descriptor.getType.getBinding != classOf[Date]) { None } else { names.headOption }
+      }
+    }
+  }
+
+  private def temporal(name: String, filter: Filter): Option[ColumnPredicate] = {
+    val bounds = FilterHelper.extractAttributeBounds(filter, name, classOf[Date])
+    if (bounds.disjoint) {
+      Some(ExcludePredicate)
+    } else if (bounds.isEmpty) {
+      None
+    } else {
+      val intervals = bounds.values.map { b =>
+        val lower = b.lower.value.map(d => if (b.lower.inclusive) { d.getTime } else { d.getTime + 1 })
+        val upper = b.upper.value.map(d => if (b.upper.inclusive) { d.getTime } else { d.getTime - 1 })
+        Array(lower.getOrElse(Long.MinValue), upper.getOrElse(Long.MaxValue))
+      }
+      Some(new DatePredicate(field(name), intervals.toArray))
+    }
+  }
+
+  private def equality(sft: SimpleFeatureType, filter: PropertyIsEqualTo): Option[ColumnPredicate] = {
+    val (prop, lit) = (filter.getExpression1, filter.getExpression2) match {
+      case (p: PropertyName, l: Literal) => (p, l)
+      case (l: Literal, p: PropertyName) => (p, l)
+      case _ => return None
+    }
+    val descriptor = sft.getDescriptor(prop.getPropertyName)
+    if (descriptor == null) { None } else {
+      val binding = descriptor.getType.getBinding
+      lazy val value = FastConverter.convert(lit.getValue, binding)
+      if (binding == classOf[String]) {
+        // case-insensitive comparisons would require decoding the strings
+        if (!filter.isMatchingCase || value == null) { None } else {
+          Some(new BinaryEqualsPredicate(field(prop.getPropertyName), Binary.fromString(value.asInstanceOf[String])))
+        }
+      } else if (binding == classOf[java.lang.Integer] || binding == classOf[java.lang.Long] ||
+          binding == classOf[java.lang.Float] || binding == classOf[java.lang.Double]) {
+        if (value == null) { None } else {
+          Some(new NumberEqualsPredicate(field(prop.getPropertyName), binding, value.asInstanceOf[Number]))
+        }
+      } else {
+        None
+      }
+    }
+  }
+
+  // note: matches the naming in SimpleFeatureParquetSchema
+  private def field(attribute: String): String = StringSerialization.alphaNumericSafeString(attribute)
+
+  /**
+    * Decodes a batch of values from a non-repeated column
+    *
+    * @param reader column reader
+    * @param maxDefinitionLevel max definition level of the column, i.e. the level at which values are non-null
+    */
+  private abstract class ColumnBatch(reader: ColumnReader, maxDefinitionLevel: Int) {
+
+    val nulls: Array[Boolean]
+
+    /**
+      * Decode the next `count` values into the batch
+      *
+      * @param count number of values to decode, must not exceed the batch size
+      */
+    def load(count: Int): Unit = {
+      var i = 0
+      while (i < count) {
+        if (reader.getCurrentDefinitionLevel == maxDefinitionLevel) {
+          nulls(i) = false
+          read(i)
+        } else {
+          nulls(i) = true
+        }
+        reader.consume()
+        i += 1
+      }
+    }
+
+    protected def read(i: Int): Unit
+  }
+
+  private class DoubleBatch(reader: ColumnReader, maxDefinitionLevel: Int, size: Int)
+      extends ColumnBatch(reader, maxDefinitionLevel) {
+    override val nulls: Array[Boolean] = Array.ofDim(size)
+    val values: Array[Double] = Array.ofDim(size)
+    override protected def read(i: Int): Unit = values(i) = reader.getDouble
+  }
+
+  private class LongBatch(reader: ColumnReader, maxDefinitionLevel: Int, size: Int)
+      extends ColumnBatch(reader, maxDefinitionLevel) {
+    override val nulls: Array[Boolean] = Array.ofDim(size)
+    val values: Array[Long] = Array.ofDim(size)
+    override protected def read(i: Int): Unit = values(i) = reader.getLong
+  }
+
+  private class IntBatch(reader: ColumnReader, maxDefinitionLevel: Int, size: Int)
+      extends ColumnBatch(reader, maxDefinitionLevel) {
+    override val nulls: Array[Boolean] = Array.ofDim(size)
+    val values: Array[Int] = Array.ofDim(size)
+    override protected def read(i: Int): Unit = values(i) = reader.getInteger
+  }
+
+  private class FloatBatch(reader: ColumnReader, maxDefinitionLevel: Int, size: Int)
+      extends ColumnBatch(reader, maxDefinitionLevel) {
+    override val nulls: Array[Boolean] = Array.ofDim(size)
+    val values: Array[Float] = Array.ofDim(size)
+    override protected def read(i: Int): Unit = values(i) = reader.getFloat
+  }
+
+  private class BinaryBatch(reader: ColumnReader, maxDefinitionLevel: Int, size: Int)
+      extends ColumnBatch(reader, maxDefinitionLevel) {
+    override val nulls: Array[Boolean] = Array.ofDim(size)
+    val values: Array[Binary] = Array.ofDim(size)
+    override protected def read(i: Int): Unit = values(i) = reader.getBinary
+  }
+
+  private def reader(store: ColumnReadStore, schema: MessageType, path: String*): (ColumnReader, Int) = {
+    val descriptor = schema.getColumnDescription(path.toArray)
+    (store.getColumnReader(descriptor), descriptor.getMaxDefinitionLevel)
+  }
+
+  /**
+    * Iterate over the rows of a row group in batches
+    *
+    * @param rows total rows
+    * @param batch batch size
+    * @param load load a batch of the given size
+    * @param evaluate evaluate a batch, given the batch offset and size
+    */
+  private def batches(rows: Int, batch: Int)(load: Int => Unit)(evaluate: (Int, Int) => Unit): Unit = {
+    var offset = 0
+    while (offset < rows) {
+      val count = math.min(batch, rows - offset)
+      load(count)
+      evaluate(offset, count)
+      offset += count
+    }
+  }
+
+  private object ExcludePredicate extends ColumnPredicate {
+    override val fields: Seq[String] = Seq.empty
+    override def toString: String = "ExcludePredicate"
+    override def evaluate(
+        store: ColumnReadStore,
+        schema: MessageType,
+        rows: Int,
+        batch: Int,
+        survivors: BitSet): Unit =
+      survivors.clear(0, rows)
+  }
+
+  /**
+    * Bounding box predicate on point x/y columns
+    *
+    * @param geom geometry field
+    * @param envelopes OR'd envelopes, each as [xmin, ymin, xmax, ymax]
+    */
+  private class BboxPredicate(geom: String, envelopes: Array[Array[Double]]) extends ColumnPredicate {
+
+    override val fields: Seq[String] = Seq(geom)
+    override def toString: String =
+      s"BboxPredicate($geom, ${envelopes.map(_.mkString("[", ",", "]")).mkString(" OR ")})"
+
+    override def evaluate(
+        store: ColumnReadStore,
+        schema: MessageType,
+        rows: Int,
+        batch: Int,
+        survivors: BitSet): Unit = {
+      val (xReader, xDef) = reader(store, schema, geom, GeometryColumnX)
+      val (yReader, yDef) = reader(store, schema, geom, GeometryColumnY)
+      val xs = new DoubleBatch(xReader, xDef, batch)
+      val ys = new DoubleBatch(yReader, yDef, batch)
+      batches(rows, batch) { count => xs.load(count); ys.load(count) } { (offset, count) =>
+        var i = 0
+        while (i < count) {
+          if (xs.nulls(i) || ys.nulls(i) || !contains(xs.values(i), ys.values(i))) {
+            survivors.clear(offset + i)
+          }
+          i += 1
+        }
+      }
+    }
+
+    private def contains(x: Double, y: Double): Boolean = {
+      var i = 0
+      while (i < envelopes.length) {
+        val env = envelopes(i)
+        if (x >= env(0) && y >= env(1) && x <= env(2) && y <= env(3)) {
+          return true
+        }
+        i += 1
+      }
+      false
+    }
+  }
+
+  /**
+    * Date range predicate on a timestamp column
+    *
+    * @param dtg date field
+    * @param intervals OR'd intervals, each as inclusive [lower, upper] epoch millis
+    */
+  private class DatePredicate(dtg: String, intervals: Array[Array[Long]]) extends ColumnPredicate {
+
+    override val fields: Seq[String] = Seq(dtg)
+    override def toString: String =
+      s"DatePredicate($dtg, ${intervals.map(_.mkString("[", ",", "]")).mkString(" OR ")})"
+
+    override def evaluate(
+        store: ColumnReadStore,
+        schema: MessageType,
+        rows: Int,
+        batch: Int,
+        survivors: BitSet): Unit = {
+      val (r, d) = reader(store, schema, dtg)
+      val dates = new LongBatch(r, d, batch)
+      batches(rows, batch)(dates.load) { (offset, count) =>
+        var i = 0
+        while (i < count) {
+          if (dates.nulls(i) || !contains(dates.values(i))) {
+            survivors.clear(offset + i)
+          }
+          i += 1
+        }
+      }
+    }
+
+    private def contains(millis: Long): Boolean = {
+      var i = 0
+      while (i < intervals.length) {
+        val interval = intervals(i)
+        if (millis >= interval(0) && millis <= interval(1)) {
+          return true
+        }
+        i += 1
+      }
+      false
+    }
+  }
+
+  /**
+    * Equality predicate on a string column. Values are compared as raw bytes, without decoding
+    *
+    * @param name field name
+    * @param value value to match
+    */
+  private class BinaryEqualsPredicate(name: String, value: Binary) extends ColumnPredicate {
+
+    override val fields: Seq[String] = Seq(name)
+    override def toString: String = s"EqualsPredicate($name, ${value.toStringUsingUTF8})"
+
+    override def evaluate(
+        store: ColumnReadStore,
+        schema: MessageType,
+        rows: Int,
+        batch: Int,
+        survivors: BitSet): Unit = {
+      val (r, d) = reader(store, schema, name)
+      val values = new BinaryBatch(r, d, batch)
+      batches(rows, batch)(values.load) { (offset, count) =>
+        var i = 0
+        while (i < count) {
+          if (values.nulls(i) || values.values(i) != value) {
+            survivors.clear(offset + i)
+          }
+          values.values(i) = null
+          i += 1
+        }
+      }
+    }
+  }
+
+  /**
+    * Equality predicate on a numeric column
+    *
+    * @param name field name
+    * @param binding attribute type
+    * @param value value to match
+    */
+  private class NumberEqualsPredicate(name: String, binding: Class[_], value: Number) extends ColumnPredicate {
+
+    override val fields: Seq[String] = Seq(name)
+    override def toString: String = s"EqualsPredicate($name, $value)"
+
+    override def evaluate(
+        store: ColumnReadStore,
+        schema: MessageType,
+        rows: Int,
+        batch: Int,
+        survivors: BitSet): Unit = {
+      val (r, d) = reader(store, schema, name)
+      if (binding == classOf[java.lang.Integer]) {
+        val values = new IntBatch(r, d, batch)
+        val v = value.intValue()
+        batches(rows, batch)(values.load) { (offset, count) =>
+          var i = 0
+          while (i < count) {
+            if (values.nulls(i) || values.values(i) != v) {
+              survivors.clear(offset + i)
+            }
+            i += 1
+          }
+        }
+      } else if (binding == classOf[java.lang.Long]) {
+        val values = new LongBatch(r, d, batch)
+        val v = value.longValue()
+        batches(rows, batch)(values.load) { (offset, count) =>
+          var i = 0
+          while (i < count) {
+            if (values.nulls(i) || values.values(i) != v) {
+              survivors.clear(offset + i)
+            }
+            i += 1
+          }
+        }
+      } else if (binding == classOf[java.lang.Float]) {
+        val values = new FloatBatch(r, d, batch)
+        val v = value.floatValue()
+        batches(rows, batch)(values.load) { (offset, count) =>
+          var i = 0
+          while (i < count) {
+            if (values.nulls(i) || values.values(i) != v) {
+              survivors.clear(offset + i)
+            }
+            i += 1
+          }
+        }
+      } else {
+        val values = new DoubleBatch(r, d, batch)
+        val v = value.doubleValue()
+        batches(rows, batch)(values.load) { (offset, count) =>
+          var i = 0
+          while (i < count) {
+            if (values.nulls(i) || values.values(i) != v) {
+              survivors.clear(offset + i)
+            }
+            i += 1
+          }
+        }
+      }
+    }
+  }
+}
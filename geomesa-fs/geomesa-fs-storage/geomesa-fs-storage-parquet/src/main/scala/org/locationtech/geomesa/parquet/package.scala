@@ -13,6 +13,7 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder
 import org.geotools.process.vector.TransformProcess
 import org.locationtech.geomesa.filter.FilterHelper
 import org.locationtech.geomesa.parquet.FilterConverter.reduce
+import org.locationtech.geomesa.utils.conf.GeoMesaSystemProperties.SystemProperty
 import org.opengis.feature.simple.SimpleFeatureType
 import org.opengis.filter.Filter
 import org.opengis.filter.expression.{Expression, PropertyName}
@@ -21,6 +22,9 @@ package object parquet {
 
   import scala.collection.JavaConverters._
 
+  val VectorizedReads = SystemProperty("geomesa.parquet.vectorized", "false")
+  val VectorizedBatchSize = SystemProperty("geomesa.parquet.vectorized.batch-size", "4096")
+
   /**
     * Schema to read and schema to return.
     *
@@ -0,0 +1,110 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.parquet
+
+import java.nio.file.Files
+
+import org.apache.commons.io.FileUtils
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.hadoop.metadata.CompressionCodecName
+import org.geotools.filter.text.ecql.ECQL
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.filter.factory.FastFilterFactory
+import org.locationtech.geomesa.fs.storage.common.jobs.StorageConfiguration
+import org.locationtech.geomesa.parquet.ParquetFileSystemStorage.ParquetCompressionOpt
+import org.locationtech.geomesa.parquet.io.ColumnPredicate
+import org.locationtech.geomesa.utils.collection.SelfClosingIterator
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.io.WithClose
+import org.opengis.feature.simple.SimpleFeature
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ParquetVectorizedReaderTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("test", "name:String,age:Int,dtg:Date,*geom:Point:srid=4326")
+
+  // features are written in x order, so that row groups cover distinct areas
+  val features = (0 until 1000).map { i =>
+    ScalaSimpleFeature.create(sft, s"$i", s"name${i % 10}", i % 50, f"2019-01-${i % 28 + 1}%02dT00:00:00.000Z",
+      s"POINT (${i / 10.0 - 50} ${i % 40})")
+  }
+
+  lazy val dir = Files.createTempDirectory("geomesa-parquet-vectorized")
+
+  lazy val file = {
+    val f = dir.resolve("test.parquet")
+    val conf = new Configuration()
+    StorageConfiguration.setSft(conf, sft)
+    conf.set(ParquetCompressionOpt, CompressionCodecName.GZIP.toString)
+    // use a small row group size so that we get multiple row groups
+    val builder = SimpleFeatureParquetWriter.builder(new Path(f.toUri), conf).withRowGroupSize(4 * 1024)
+    WithClose(builder.build()) { writer => features.foreach(writer.write) }
+    new Path(f.toUri)
+  }
+
+  def read(ecql: String, vectorized: Boolean): Seq[SimpleFeature] = {
+    val filter = ECQL.toFilter(ecql)
+    val ReadFilter(fc, residual) = ReadFilter(sft, Some(filter))
+    val parquetFilter = fc.map(FilterCompat.get).getOrElse(FilterCompat.NOOP)
+    val conf = new Configuration()
+    StorageConfiguration.setSft(conf, sft)
+    val standard =
+      new ParquetPathReader(conf, sft, parquetFilter, residual.map(FastFilterFactory.optimize(sft, _)), None)
+    val reader = if (!vectorized) { standard } else {
+      val predicates = ColumnPredicate(sft, filter)
+      val full = FastFilterFactory.optimize(sft, filter)
+      new ParquetVectorizedPathReader(conf, sft, parquetFilter, full, predicates, None, standard)
+    }
+    SelfClosingIterator(reader.read(file)).toList
+  }
+
+  "ParquetVectorizedPathReader" should {
+    "extract column predicates" in {
+      ColumnPredicate(sft, ECQL.toFilter("bbox(geom,0,0,10,10)")) must haveLength(1)
+      ColumnPredicate(sft, ECQL.toFilter("bbox(geom,0,0,10,10) AND dtg > '2019-01-01T00:00:00.000Z' AND " +
+          "dtg < '2019-01-10T00:00:00.000Z' AND name = 'name1'")) must haveLength(3)
+      ColumnPredicate(sft, ECQL.toFilter("bbox(geom,0,0,10,10) OR name = 'name1'")) must beEmpty
+      ColumnPredicate(sft, ECQL.toFilter("strToUpperCase(name) = 'NAME1'")) must beEmpty
+      ColumnPredicate(sft, ECQL.toFilter("name like 'name1%'")) must beEmpty
+    }
+
+    "return the same results as the standard reader" in {
+      val filters = Seq(
+        "bbox(geom,-10,0,10,20)",
+        "bbox(geom,-10,0,10,20) AND bbox(geom,0,10,20,30)",
+        "bbox(geom,-60,-10,-55,10) AND dtg DURING 2019-01-02T00:00:00.000Z/2019-01-05T00:00:00.000Z",
+        "dtg > '2019-01-10T00:00:00.000Z' AND dtg <= '2019-01-12T00:00:00.000Z'",
+        "dtg BETWEEN '2019-01-10T00:00:00.000Z' AND '2019-01-12T00:00:00.000Z'",
+        "name = 'name3'",
+        "name = 'name3' AND age = 13",
+        "age = 13 AND bbox(geom,-10,0,10,20)",
+        "name = 'name3' AND name = 'name4'",
+        "bbox(geom,100,0,110,20)",
+        "bbox(geom,-10,0,10,20) AND EXCLUDE"
+      )
+      foreach(filters) { ecql =>
+        val expected = read(ecql, vectorized = false)
+        // verify the standard reader against the input
+        expected.map(_.getID) mustEqual features.filter(ECQL.toFilter(ecql).evaluate).map(_.getID)
+        val result = read(ecql, vectorized = true)
+        result.map(_.getID) mustEqual expected.map(_.getID)
+        result.map(_.getAttributes) mustEqual expected.map(_.getAttributes)
+      }
+    }
+  }
+
+  step {
+    FileUtils.deleteDirectory(dir.toFile)
+  }
+}
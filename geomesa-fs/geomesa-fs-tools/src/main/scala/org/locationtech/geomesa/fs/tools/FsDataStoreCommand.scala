@@ -72,7 +72,7 @@ object FsDataStoreCommand {
   }
 
   trait OptionalEncodingParam {
-    @Parameter(names = Array("--encoding", "-e"), description = "Encoding (parquet, orc, converter, etc)", validateValueWith = classOf[EncodingValidator])
+    @Parameter(names = Array("--encoding", "-e"), description = "Encoding (parquet, orc, arrow, converter, etc)", validateValueWith = classOf[EncodingValidator])
     var encoding: String = _
   }
 
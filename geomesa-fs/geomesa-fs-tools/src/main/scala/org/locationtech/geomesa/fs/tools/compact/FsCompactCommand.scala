@@ -14,7 +14,7 @@ import java.util.concurrent.{CountDownLatch, Executors}
 import com.beust.jcommander.{Parameter, ParameterException, Parameters}
 import com.typesafe.scalalogging.LazyLogging
 import org.apache.hadoop.fs.Path
-import org.locationtech.geomesa.fs.data.FileSystemDataStore
+import org.locationtech.geomesa.fs.data.{FileSystemCompactionLock, FileSystemCompactionService, FileSystemDataStore}
 import org.locationtech.geomesa.fs.storage.orc.OrcFileSystemStorage
 import org.locationtech.geomesa.fs.tools.FsDataStoreCommand
 import org.locationtech.geomesa.fs.tools.FsDataStoreCommand.{FsDistributedCommand, FsParams, PartitionParam}
@@ -67,58 +67,72 @@ object FsCompactCommand {
 
       Command.user.info(s"Compacting ${toCompact.size} partitions in ${mode.toString.toLowerCase(Locale.US)} mode")
 
-      val start = System.currentTimeMillis()
-      val status = new PrintProgress(System.err, TextTools.buildString(' ', 60), '\u003d', '\u003e', '\u003e')
-
-      mode match {
-        case RunModes.Local =>
-          val total = toCompact.length
-          val latch = new CountDownLatch(total)
-          val executor = Executors.newFixedThreadPool(math.max(1, math.min(params.threads, total)))
-
-          try {
-            toCompact.foreach { p =>
-              executor.submit(
-                new Runnable() {
-                  override def run(): Unit = {
-                    try {
-                      logger.info(s"Compacting ${p.name}")
-                      storage.compact(Some(p.name))
-                    } catch {
-                      case NonFatal(e) => logger.error(s"Error processing partition '${p.name}':", e)
-                    } finally {
-                      latch.countDown()
+      val lease = FileSystemCompactionService.LeaseProperty.toDuration.get
+      val lock = FileSystemCompactionLock.acquire(storage, lease).getOrElse {
+        throw new IllegalStateException(s"Schema '${params.featureName}' is being compacted by another process - " +
+            s"if the other process has died, the lock will expire after $lease")
+      }
+
+      try {
+        val start = System.currentTimeMillis()
+        val status = new PrintProgress(System.err, TextTools.buildString(' ', 60), '\u003d', '\u003e', '\u003e')
+
+        mode match {
+          case RunModes.Local =>
+            val total = toCompact.length
+            val latch = new CountDownLatch(total)
+            val executor = Executors.newFixedThreadPool(math.max(1, math.min(params.threads, total)))
+
+            try {
+              toCompact.foreach { p =>
+                executor.submit(
+                  new Runnable() {
+                    override def run(): Unit = {
+                      try {
+                        if (lock.valid) {
+                          logger.info(s"Compacting ${p.name}")
+                          storage.compact(Some(p.name))
+                        } else {
+                          logger.warn(s"Skipping partition '${p.name}' as the compaction lock has been lost")
+                        }
+                      } catch {
+                        case NonFatal(e) => logger.error(s"Error processing partition '${p.name}':", e)
+                      } finally {
+                        latch.countDown()
+                      }
                     }
                   }
-                }
-              )
+                )
+              }
+            } finally {
+              executor.shutdown()
+            }
+
+            while (latch.getCount > 0) {
+              Thread.sleep(1000)
+              status("", 1f - latch.getCount.toFloat / total, Seq.empty, done = false)
+            }
+            status("", 1f, Seq.empty, done = true)
+            Command.user.info("Compacting metadata")
+            storage.metadata.compact(None, math.max(1, params.threads))
+            Command.user.info(s"Local compaction complete in ${TextTools.getTime(start)}")
+
+          case RunModes.Distributed =>
+            val encoding = storage.metadata.encoding
+            val job = if (ParquetFileSystemStorage.Encoding.equalsIgnoreCase(encoding)) {
+              new ParquetCompactionJob()
+            } else if (OrcFileSystemStorage.Encoding.equalsIgnoreCase(encoding)) {
+              new OrcCompactionJob()
+            } else {
+              throw new ParameterException(s"Compaction is not supported for encoding '$encoding'")
             }
-          } finally {
-            executor.shutdown()
-          }
-
-          while (latch.getCount > 0) {
-            Thread.sleep(1000)
-            status("", 1f - latch.getCount.toFloat / total, Seq.empty, done = false)
-          }
-          status("", 1f, Seq.empty, done = true)
-          Command.user.info("Compacting metadata")
-          storage.metadata.compact(None, math.max(1, params.threads))
-          Command.user.info(s"Local compaction complete in ${TextTools.getTime(start)}")
-
-        case RunModes.Distributed =>
-          val encoding = storage.metadata.encoding
-          val job = if (ParquetFileSystemStorage.Encoding.equalsIgnoreCase(encoding)) {
-            new ParquetCompactionJob()
-          } else if (OrcFileSystemStorage.Encoding.equalsIgnoreCase(encoding)) {
-            new OrcCompactionJob()
-          } else {
-            throw new ParameterException(s"Compaction is not supported for encoding '$encoding'")
-          }
-          val tempDir = Option(params.tempDir).map(t => new Path(t))
-          val (success, failed) = job.run(storage, toCompact, tempDir, libjarsFiles, libjarsPaths, status)
-          Command.user.info(s"Distributed compaction complete in ${TextTools.getTime(start)}")
-          Command.user.info(IngestCommand.getStatInfo(success, failed, "Compacted"))
+            val tempDir = Option(params.tempDir).map(t => new Path(t))
+            val (success, failed) = job.run(storage, toCompact, tempDir, libjarsFiles, libjarsPaths, status)
+            Command.user.info(s"Distributed compaction complete in ${TextTools.getTime(start)}")
+            Command.user.info(IngestCommand.getStatInfo(success, failed, "Compacted"))
+        }
+      } finally {
+        lock.close()
       }
     }
   }
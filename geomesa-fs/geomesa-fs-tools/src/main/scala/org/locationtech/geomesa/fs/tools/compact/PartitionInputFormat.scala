@@ -93,7 +93,8 @@ object PartitionInputFormat {
       out.writeUTF(name)
       out.writeLong(length)
       out.writeInt(files.length)
-      files.foreach { case StorageFile(file, ts, action) =>
+      // note: file stats aren't needed for reading, so aren't serialized
+      files.foreach { case StorageFile(file, ts, action, _) =>
         out.writeUTF(file)
         out.writeLong(ts)
         out.writeUTF(action.toString)
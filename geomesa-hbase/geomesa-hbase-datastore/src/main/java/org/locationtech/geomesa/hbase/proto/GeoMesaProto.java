@@ -477,6 +477,16 @@ public final class GeoMesaProto {
      * <code>repeated bytes payload = 1;</code>
      */
     com.google.protobuf.ByteString getPayload(int index);
+
+    // optional bytes lastScanned = 2;
+    /**
+     * <code>optional bytes lastScanned = 2;</code>
+     */
+    boolean hasLastScanned();
+    /**
+     * <code>optional bytes lastScanned = 2;</code>
+     */
+    com.google.protobuf.ByteString getLastScanned();
   }
   /**
    * Protobuf type {@code GeoMesaCoprocessorResponse}
@@ -537,6 +547,11 @@ public final class GeoMesaProto {
               payload_.add(input.readBytes());
               break;
             }
+            case 18: {
+              bitField0_ |= 0x00000001;
+              lastScanned_ = input.readBytes();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -579,6 +594,7 @@ public final class GeoMesaProto {
       return PARSER;
     }
 
+    private int bitField0_;
     // repeated bytes payload = 1;
     public static final int PAYLOAD_FIELD_NUMBER = 1;
     private java.util.List<com.google.protobuf.ByteString> payload_;
@@ -602,8 +618,25 @@ public final class GeoMesaProto {
       return payload_.get(index);
     }
 
+    // optional bytes lastScanned = 2;
+    public static final int LASTSCANNED_FIELD_NUMBER = 2;
+    private com.google.protobuf.ByteString lastScanned_;
+    /**
+     * <code>optional bytes lastScanned = 2;</code>
+     */
+    public boolean hasLastScanned() {
+      return ((bitField0_ & 0x00000001) == 0x00000001);
+    }
+    /**
+     * <code>optional bytes lastScanned = 2;</code>
+     */
+    public com.google.protobuf.ByteString getLastScanned() {
+      return lastScanned_;
+    }
+
     private void initFields() {
       payload_ = java.util.Collections.emptyList();
+      lastScanned_ = com.google.protobuf.ByteString.EMPTY;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -620,6 +653,9 @@ public final class GeoMesaProto {
       for (int i = 0; i < payload_.size(); i++) {
         output.writeBytes(1, payload_.get(i));
       }
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        output.writeBytes(2, lastScanned_);
+      }
       getUnknownFields().writeTo(output);
     }
 
@@ -638,6 +674,10 @@ public final class GeoMesaProto {
         size += dataSize;
         size += 1 * getPayloadList().size();
       }
+      if (((bitField0_ & 0x00000001) == 0x00000001)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeBytesSize(2, lastScanned_);
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -663,6 +703,11 @@ public final class GeoMesaProto {
       boolean result = true;
       result = result && getPayloadList()
           .equals(other.getPayloadList());
+      result = result && (hasLastScanned() == other.hasLastScanned());
+      if (hasLastScanned()) {
+        result = result && getLastScanned()
+            .equals(other.getLastScanned());
+      }
       result = result &&
           getUnknownFields().equals(other.getUnknownFields());
       return result;
@@ -680,6 +725,10 @@ public final class GeoMesaProto {
         hash = (37 * hash) + PAYLOAD_FIELD_NUMBER;
         hash = (53 * hash) + getPayloadList().hashCode();
       }
+      if (hasLastScanned()) {
+        hash = (37 * hash) + LASTSCANNED_FIELD_NUMBER;
+        hash = (53 * hash) + getLastScanned().hashCode();
+      }
       hash = (29 * hash) + getUnknownFields().hashCode();
       memoizedHashCode = hash;
       return hash;
@@ -791,6 +840,8 @@ public final class GeoMesaProto {
         super.clear();
         payload_ = java.util.Collections.emptyList();
         bitField0_ = (bitField0_ & ~0x00000001);
+        lastScanned_ = com.google.protobuf.ByteString.EMPTY;
+        bitField0_ = (bitField0_ & ~0x00000002);
         return this;
       }
 
@@ -818,11 +869,17 @@ public final class GeoMesaProto {
       public org.locationtech.geomesa.hbase.proto.GeoMesaProto.GeoMesaCoprocessorResponse buildPartial() {
         org.locationtech.geomesa.hbase.proto.GeoMesaProto.GeoMesaCoprocessorResponse result = new org.locationtech.geomesa.hbase.proto.GeoMesaProto.GeoMesaCoprocessorResponse(this);
         int from_bitField0_ = bitField0_;
+        int to_bitField0_ = 0;
         if (((bitField0_ & 0x00000001) == 0x00000001)) {
           payload_ = java.util.Collections.unmodifiableList(payload_);
           bitField0_ = (bitField0_ & ~0x00000001);
         }
         result.payload_ = payload_;
+        if (((from_bitField0_ & 0x00000002) == 0x00000002)) {
+          to_bitField0_ |= 0x00000001;
+        }
+        result.lastScanned_ = lastScanned_;
+        result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
       }
@@ -848,6 +905,9 @@ public final class GeoMesaProto {
           }
           onChanged();
         }
+        if (other.hasLastScanned()) {
+          setLastScanned(other.getLastScanned());
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -947,6 +1007,42 @@ public final class GeoMesaProto {
         return this;
       }
 
+      // optional bytes lastScanned = 2;
+      private com.google.protobuf.ByteString lastScanned_ = com.google.protobuf.ByteString.EMPTY;
+      /**
+       * <code>optional bytes lastScanned = 2;</code>
+       */
+      public boolean hasLastScanned() {
+        return ((bitField0_ & 0x00000002) == 0x00000002);
+      }
+      /**
+       * <code>optional bytes lastScanned = 2;</code>
+       */
+      public com.google.protobuf.ByteString getLastScanned() {
+        return lastScanned_;
+      }
+      /**
+       * <code>optional bytes lastScanned = 2;</code>
+       */
+      public Builder setLastScanned(com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  bitField0_ |= 0x00000002;
+        lastScanned_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>optional bytes lastScanned = 2;</code>
+       */
+      public Builder clearLastScanned() {
+        bitField0_ = (bitField0_ & ~0x00000002);
+        lastScanned_ = getDefaultInstance().getLastScanned();
+        onChanged();
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:GeoMesaCoprocessorResponse)
     }
 
@@ -1212,8 +1308,9 @@ public final class GeoMesaProto {
       "\nSgeomesa-hbase/geomesa-hbase-datastore/" +
       "src/main/protobuf/GeoMesaProtoGenerator." +
       "proto\",\n\031GeoMesaCoprocessorRequest\022\017\n\007op" +
-      "tions\030\001 \002(\014\"-\n\032GeoMesaCoprocessorRespons" +
-      "e\022\017\n\007payload\030\001 \003(\0142a\n\031GeoMesaCoprocessor" +
+      "tions\030\001 \002(\014\"B\n\032GeoMesaCoprocessorRespons" +
+      "e\022\017\n\007payload\030\001 \003(\014\022\023\n\013lastScanned\030\002 \001" +
+      "(\0142a\n\031GeoMesaCoprocessor" +
       "Service\022D\n\tgetResult\022\032.GeoMesaCoprocesso" +
       "rRequest\032\033.GeoMesaCoprocessorResponseB<\n" +
       "$org.locationtech.geomesa.hbase.protoB\014G" +
@@ -1235,7 +1332,7 @@ public final class GeoMesaProto {
           internal_static_GeoMesaCoprocessorResponse_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_GeoMesaCoprocessorResponse_descriptor,
-              new java.lang.String[] { "Payload", });
+              new java.lang.String[] { "Payload", "LastScanned", });
           return null;
         }
       };
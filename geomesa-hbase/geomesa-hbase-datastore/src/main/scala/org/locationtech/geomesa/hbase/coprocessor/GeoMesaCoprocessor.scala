@@ -9,26 +9,29 @@
 package org.locationtech.geomesa.hbase.coprocessor
 
 import java.io.{InterruptedIOException, _}
-import java.util.Collections
 import java.util.concurrent._
-import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger, AtomicReference}
 
 import com.google.protobuf.{ByteString, RpcCallback, RpcController, Service}
 import com.typesafe.scalalogging.LazyLogging
-import org.apache.hadoop.hbase.client.coprocessor.Batch.Call
-import org.apache.hadoop.hbase.client.{Scan, Table}
+import org.apache.hadoop.hbase.client.{Connection, Scan}
 import org.apache.hadoop.hbase.coprocessor.{CoprocessorException, CoprocessorService, RegionCoprocessorEnvironment}
 import org.apache.hadoop.hbase.filter.FilterList
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter.RowRange
+import org.apache.hadoop.hbase.ipc.{CoprocessorRpcChannel, RegionCoprocessorRpcChannel}
 import org.apache.hadoop.hbase.protobuf.generated.ClientProtos
 import org.apache.hadoop.hbase.protobuf.{ProtobufUtil, ResponseConverter}
-import org.apache.hadoop.hbase.util.Base64
-import org.apache.hadoop.hbase.{Coprocessor, CoprocessorEnvironment}
+import org.apache.hadoop.hbase.util.{Base64, Bytes}
+import org.apache.hadoop.hbase.{Coprocessor, CoprocessorEnvironment, HRegionInfo, HRegionLocation, MetaTableAccessor, ServerName, TableName}
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
 import org.locationtech.geomesa.hbase.coprocessor.aggregators.HBaseAggregator
-import org.locationtech.geomesa.hbase.coprocessor.utils.{GeoMesaHBaseCallBack, GeoMesaHBaseRpcController}
+import org.locationtech.geomesa.hbase.coprocessor.utils.GeoMesaHBaseRpcController
 import org.locationtech.geomesa.hbase.proto.GeoMesaProto
 import org.locationtech.geomesa.hbase.proto.GeoMesaProto.{GeoMesaCoprocessorRequest, GeoMesaCoprocessorResponse, GeoMesaCoprocessorService}
+import org.locationtech.geomesa.hbase.utils.RegionGrouping
 import org.locationtech.geomesa.utils.collection.CloseableIterator
-import org.locationtech.geomesa.utils.io.WithClose
+import org.locationtech.geomesa.utils.index.ByteArrays
+import org.locationtech.geomesa.utils.io.{CloseWithLogging, WithClose}
 
 import scala.util.control.NonFatal
 
@@ -62,6 +65,7 @@ class GeoMesaCoprocessor extends GeoMesaCoprocessorService with Coprocessor with
     try {
       val options = GeoMesaCoprocessor.deserializeOptions(request.getOptions.toByteArray)
       val timeout = options.get(GeoMesaCoprocessor.TimeoutOpt).map(_.toLong)
+      val maxResultSize = options.get(GeoMesaCoprocessor.MaxResultSizeOpt).map(_.toLong)
       if (!controller.isCanceled && timeout.forall(_ > System.currentTimeMillis())) {
         val aggregator = {
           val classname = options(GeoMesaCoprocessor.AggregatorClass)
@@ -77,7 +81,8 @@ class GeoMesaCoprocessor extends GeoMesaCoprocessorService with Coprocessor with
         env.getRegion.getCoprocessorHost.preScannerOpen(scan)
 
         var cancelled = false
-        // TODO: Explore use of MultiRangeFilter
+        var size = 0L
+        // note: the filter list will contain a MultiRowRangeFilter, which seeks between the query ranges
         val scanner = env.getRegion.getScanner(scan)
         try {
           aggregator.setScanner(scanner)
@@ -86,8 +91,15 @@ class GeoMesaCoprocessor extends GeoMesaCoprocessorService with Coprocessor with
             val agg = aggregator.aggregate()
             if (agg != null) {
               results.addPayload(ByteString.copyFrom(agg))
+              size += agg.length
             }
-            if (controller.isCanceled) {
+            if (maxResultSize.exists(_ <= size) && aggregator.hasNextData) {
+              // return a partial result, along with the row to resume the scan from
+              // note: geomesa only writes a single cell per row, so we will always be at a row boundary here
+              logger.debug(s"Paging results for aggregator $aggregator after $size bytes")
+              results.setLastScanned(ByteString.copyFrom(aggregator.getLastScanned))
+              cancelled = true
+            } else if (controller.isCanceled) {
               logger.warn(s"Stopping aggregator $aggregator due to controller being cancelled")
               cancelled = true
             } else if (timeout.exists(_ < System.currentTimeMillis())) {
@@ -107,7 +119,8 @@ class GeoMesaCoprocessor extends GeoMesaCoprocessorService with Coprocessor with
 
     logger.debug(
       s"Results total size: ${results.getPayloadList.asScala.map(_.size()).sum}" +
-          s"\n\tBatch sizes: ${results.getPayloadList.asScala.map(_.size()).mkString(", ")}")
+          s"\n\tBatch sizes: ${results.getPayloadList.asScala.map(_.size()).mkString(", ")}" +
+          s"\n\tPartial result: ${results.hasLastScanned}")
 
     done.run(results.build)
   }
@@ -117,9 +130,28 @@ object GeoMesaCoprocessor extends LazyLogging {
 
   val AggregatorClass = "geomesa.hbase.aggregator.class"
 
-  private val FilterOpt  = "filter"
-  private val ScanOpt    = "scan"
-  private val TimeoutOpt = "timeout"
+  private val FilterOpt        = "filter"
+  private val ScanOpt          = "scan"
+  private val TimeoutOpt       = "timeout"
+  private val MaxResultSizeOpt = "max-result-size"
+
+  // unique instance used to mark the end of the results
+  private val Terminator = ByteString.copyFromUtf8("terminator")
+
+  // max results buffered per rpc thread, before the threads block waiting for results to be consumed
+  private val ResultsPerThread = 4
+
+  private val executor = {
+    val factory = new ThreadFactory() {
+      private val count = new AtomicInteger(0)
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"geomesa-coprocessor-${count.incrementAndGet()}")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    Executors.newCachedThreadPool(factory)
+  }
 
   private def deserializeOptions(bytes: Array[Byte]): Map[String, String] = {
     WithClose(new ByteArrayInputStream(bytes)) { bais =>
@@ -143,13 +175,26 @@ object GeoMesaCoprocessor extends LazyLogging {
   /**
     * Executes a geomesa coprocessor
     *
+    * @param connection connection
     * @param table table to execute against
     * @param scan scan to execute
     * @param options configuration options
+    * @param ranges sorted and merged ranges being scanned, used to determine which regions to invoke the
+    *               coprocessor on. if empty, the start and end rows of the scan will be used
     * @return serialized results
     */
-  def execute(table: Table, scan: Scan, options: Map[String, String]): CloseableIterator[ByteString] =
-    new RpcIterator(table, scan, options)
+  def execute(
+      connection: Connection,
+      table: TableName,
+      scan: Scan,
+      options: Map[String, String],
+      threads: Int,
+      ranges: Seq[RowRange] = Seq.empty): CloseableIterator[ByteString] = {
+    val rowRanges = if (ranges.nonEmpty) { ranges } else {
+      Seq(new RowRange(scan.getStartRow, true, scan.getStopRow, false))
+    }
+    new RpcIterator(connection, table, scan, rowRanges, options, threads)
+  }
 
   /**
    * Timeout configuration option
@@ -160,59 +205,244 @@ object GeoMesaCoprocessor extends LazyLogging {
   def timeout(millis: Long): (String, String) = TimeoutOpt -> (millis + System.currentTimeMillis()).toString
 
   /**
-   * Closeable iterator implementation for invoking coprocessor rpcs
+   * Closeable iterator implementation for invoking coprocessor rpcs. The coprocessor is only invoked on regions
+   * that overlap the scan ranges. Regions are grouped by region server, so that the number of concurrent rpcs
+   * against a single server can be limited. At most `threads` rpcs will be executing at once. Results are
+   * returned as soon as each rpc completes, and only a few results are buffered before the rpcs block waiting
+   * for them to be consumed. Regions that exceed the max result size will return a partial result, which is
+   * resumed in a subsequent rpc from the last row scanned. Each rpc is routed by the row it starts from, so that
+   * regions that are split or merged during the query are still scanned in full
    *
+   * @param connection connection
    * @param table hbase table
    * @param scan scan
+   * @param ranges sorted and merged ranges
    * @param options coprocessor options
+   * @param threads max number of concurrent rpcs
    */
-  class RpcIterator(table: Table, scan: Scan, options: Map[String, String]) extends CloseableIterator[ByteString] {
+  class RpcIterator(
+      connection: Connection,
+      table: TableName,
+      scan: Scan,
+      ranges: Seq[RowRange],
+      options: Map[String, String],
+      threads: Int
+    ) extends CloseableIterator[ByteString] {
+
+    private val htable = connection.getTable(table)
 
     private val closed = new AtomicBoolean(false)
+    private val results = new LinkedBlockingQueue[ByteString](math.max(1, threads) * ResultsPerThread)
+    private val error = new AtomicReference[Throwable](null)
+    // number of workers that are still executing
+    private val remaining = new AtomicInteger(0)
+
+    private val opts = {
+      val opts = options.updated(FilterOpt, Base64.encodeBytes(scan.getFilter.toByteArray))
+      HBaseSystemProperties.CoprocessorMaxResultSize.toBytes match {
+        case Some(size) => opts.updated(MaxResultSizeOpt, size.toString)
+        case None => opts
+      }
+    }
+
+    private var futures: Seq[Future[_]] = _
+    private var current: ByteString = _
 
-    private val request = {
-      val opts = options
-          .updated(FilterOpt, Base64.encodeBytes(scan.getFilter.toByteArray))
-          .updated(ScanOpt, Base64.encodeBytes(ProtobufUtil.toScan(scan).toByteArray))
-      GeoMesaCoprocessorRequest.newBuilder().setOptions(ByteString.copyFrom(serializeOptions(opts))).build()
+    override def hasNext: Boolean = {
+      if (current != null) {
+        return true
+      }
+      if (futures == null) {
+        start()
+      }
+      current = results.take()
+      if (!current.eq(Terminator)) { true } else {
+        current = null
+        // re-queue the terminator so that subsequent calls will return false
+        results.put(Terminator)
+        val e = error.getAndSet(null)
+        if (e != null) {
+          throw e
+        }
+        false
+      }
     }
 
-    private val callable = new Call[GeoMesaCoprocessorService, java.util.List[ByteString]]() {
-      override def call(instance: GeoMesaCoprocessorService): java.util.List[ByteString] = {
-        if (closed.get) { Collections.emptyList() } else {
-          val controller: RpcController = new GeoMesaHBaseRpcController()
-          val callback = new RpcCallbackImpl()
-          // note: synchronous call
-          try { instance.getResult(controller, request, callback) } catch {
-            case _: InterruptedException | _: InterruptedIOException | _: CancellationException =>
-              logger.warn("Cancelling remote coprocessor call")
-              controller.startCancel()
-          }
+    override def next(): ByteString = {
+      if (!hasNext) {
+        throw new NoSuchElementException("Called next on empty iterator")
+      }
+      val n = current
+      current = null
+      n
+    }
 
-          if (controller.failed()) {
-            logger.error(s"Controller failed with error:\n${controller.errorText()}")
-            throw new IOException(controller.errorText())
-          }
+    override def close(): Unit = {
+      if (closed.compareAndSet(false, true)) {
+        if (futures != null) {
+          futures.foreach(_.cancel(true))
+        }
+        CloseWithLogging(htable)
+      }
+    }
 
-          callback.get()
+    /**
+      * Kicks off the rpcs
+      */
+    private def start(): Unit = {
+      val regions = WithClose(connection.getRegionLocator(table))(RegionGrouping.regions(_, ranges))
+      val server: HRegionLocation => ServerName = _.getServerName
+      val groups = RegionGrouping.bucket(regions, server, RegionGrouping.serverThreads())
+      logger.debug(s"Invoking coprocessor on ${regions.length} regions in ${groups.length} groups")
+      if (groups.isEmpty) {
+        futures = Seq.empty
+        results.put(Terminator)
+      } else {
+        // groups are interleaved by server, so taking them in order will spread the load across the cluster
+        val queue = new ConcurrentLinkedQueue[Seq[HRegionLocation]]()
+        groups.foreach(queue.add)
+        val workers = math.min(math.max(1, threads), groups.length)
+        remaining.set(workers)
+        futures = Seq.fill(workers) {
+          executor.submit(new Runnable() {
+            override def run(): Unit = {
+              try {
+                var group = queue.poll()
+                while (group != null && !closed.get && error.get == null) {
+                  val iter = group.iterator
+                  while (iter.hasNext && !closed.get && error.get == null) {
+                    scanRegion(iter.next())
+                  }
+                  group = queue.poll()
+                }
+              } catch {
+                case e @ (_ :InterruptedException | _ :InterruptedIOException) =>
+                  logger.warn("Interrupted executing coprocessor query:", e)
+                case NonFatal(e) => error.compareAndSet(null, e)
+              } finally {
+                if (remaining.decrementAndGet() == 0) {
+                  put(Terminator)
+                }
+              }
+            }
+          })
         }
       }
     }
 
-    lazy private val result = {
-      val callBack = new GeoMesaHBaseCallBack()
-      try { table.coprocessorService(classOf[GeoMesaCoprocessorService], null, null, callable, callBack) } catch {
-        case e @ (_ :InterruptedException | _ :InterruptedIOException) =>
-          logger.warn("Interrupted executing coprocessor query:", e)
+    /**
+      * Invokes the coprocessor against a single region, paging through the results
+      *
+      * @param region region
+      */
+    private def scanRegion(region: HRegionLocation): Unit = {
+      // bound the scan to the region, so that no rows are scanned twice if the region is merged with one of
+      // its neighbors during the query. note: an empty end key indicates the last region in the table
+      val bounded = new Scan(scan)
+      val start = region.getRegionInfo.getStartKey
+      val end = region.getRegionInfo.getEndKey
+      if (Bytes.compareTo(start, scan.getStartRow) > 0) {
+        bounded.setStartRow(start)
+      }
+      if (end.nonEmpty && (scan.getStopRow.isEmpty || Bytes.compareTo(end, scan.getStopRow) < 0)) {
+        bounded.setStopRow(end)
+      }
+      var row = bounded.getStartRow
+      var request = buildRequest(bounded)
+      while (request != null && !closed.get) {
+        // route each page by the row it starts from, as the region may have been split or merged since
+        // we looked up its location
+        val channel = htable.coprocessorService(row)
+        val instance = GeoMesaCoprocessorService.newStub(channel)
+        val controller: RpcController = new GeoMesaHBaseRpcController()
+        val callback = new RpcCallbackImpl()
+        // note: synchronous call
+        try { instance.getResult(controller, request, callback) } catch {
+          case _: InterruptedException | _: InterruptedIOException | _: CancellationException =>
+            logger.warn("Cancelling remote coprocessor call")
+            controller.startCancel()
+        }
+
+        if (controller.failed()) {
+          logger.error(s"Controller failed with error:\n${controller.errorText()}")
+          throw new IOException(controller.errorText())
+        }
+
+        val response = callback.get()
+        if (response == null) {
+          request = null
+        } else {
+          val payloads = response.getPayloadList.iterator()
+          while (payloads.hasNext && !closed.get) {
+            put(payloads.next())
+          }
+          request = if (response.hasLastScanned) {
+            // resume the scan from the row immediately following the last one scanned
+            row = ByteArrays.rowFollowingRow(response.getLastScanned.toByteArray)
+            buildRequest(new Scan(bounded).setStartRow(row))
+          } else {
+            // if the region that served the request ends before the region we're scanning (i.e. the region
+            // has been split), continue from the end of the serving region
+            val served = servingRegion(channel, row).getEndKey
+            val stop = bounded.getStopRow
+            if (served.isEmpty || (stop.nonEmpty && Bytes.compareTo(served, stop) >= 0)) { null } else {
+              logger.debug(s"Region ${region.getRegionInfo.getRegionNameAsString} has been split, continuing " +
+                  s"from row ${Bytes.toStringBinary(served)}")
+              row = served
+              buildRequest(new Scan(bounded).setStartRow(row))
+            }
+          }
+        }
       }
-      callBack.getResult.iterator
     }
 
-    override def hasNext: Boolean = result.hasNext
+    /**
+      * Gets the region that served the last rpc on a channel
+      *
+      * @param channel channel
+      * @param row row used to route the rpc
+      * @return
+      */
+    private def servingRegion(channel: CoprocessorRpcChannel, row: Array[Byte]): HRegionInfo = {
+      def lookup(reload: Boolean): HRegionInfo =
+        WithClose(connection.getRegionLocator(table))(_.getRegionLocation(row, reload).getRegionInfo)
+      val name = channel match {
+        case c: RegionCoprocessorRpcChannel => c.getLastRegion
+        case _ => null
+      }
+      val cached = lookup(reload = false)
+      if (name == null || Bytes.equals(cached.getRegionName, name)) { cached } else {
+        val reloaded = lookup(reload = true)
+        if (Bytes.equals(reloaded.getRegionName, name)) { reloaded } else {
+          // the serving region has been split or merged since the rpc completed, so it's no longer online
+          val info = Option(MetaTableAccessor.getRegion(connection, name)).map(_.getFirst).orNull
+          if (info == null) {
+            throw new IOException(s"Could not determine the bounds of region ${Bytes.toStringBinary(name)}")
+          }
+          info
+        }
+      }
+    }
 
-    override def next(): ByteString = result.next
+    /**
+      * Adds a result to the queue, blocking while the queue is full. Once the iterator is closed, the
+      * result is only added if there is space, so that rpc threads won't block forever
+      *
+      * @param result result
+      */
+    private def put(result: ByteString): Unit = {
+      while (!closed.get) {
+        if (results.offer(result, 100, TimeUnit.MILLISECONDS)) {
+          return
+        }
+      }
+      results.offer(result)
+    }
 
-    override def close(): Unit = closed.set(true)
+    private def buildRequest(scan: Scan): GeoMesaCoprocessorRequest = {
+      val options = opts.updated(ScanOpt, Base64.encodeBytes(ProtobufUtil.toScan(scan).toByteArray))
+      GeoMesaCoprocessorRequest.newBuilder().setOptions(ByteString.copyFrom(serializeOptions(options))).build()
+    }
   }
 
   /**
@@ -220,11 +450,10 @@ object GeoMesaCoprocessor extends LazyLogging {
     */
   class RpcCallbackImpl extends RpcCallback[GeoMesaCoprocessorResponse] {
 
-    private var result: java.util.List[ByteString] = _
+    private var result: GeoMesaCoprocessorResponse = _
 
-    def get(): java.util.List[ByteString] = result
+    def get(): GeoMesaCoprocessorResponse = result
 
-    override def run(parameter: GeoMesaCoprocessorResponse): Unit =
-      result = Option(parameter).map(_.getPayloadList).orNull
+    override def run(parameter: GeoMesaCoprocessorResponse): Unit = result = parameter
   }
 }
@@ -8,7 +8,7 @@
 
 package org.locationtech.geomesa.hbase.coprocessor.aggregators
 
-import org.apache.hadoop.hbase.Cell
+import org.apache.hadoop.hbase.{Cell, CellUtil}
 import org.apache.hadoop.hbase.regionserver.RegionScanner
 import org.locationtech.geomesa.index.iterators.AggregatingScan
 
@@ -18,9 +18,11 @@ trait HBaseAggregator[T <: AnyRef { def isEmpty: Boolean; def clear(): Unit }] e
   private var scanner: RegionScanner = _
   private var more: Boolean = false
   private var iter: java.util.Iterator[Cell] = _
+  private var last: Cell = _
 
   def setScanner(scanner: RegionScanner): Unit = {
     this.scanner = scanner
+    last = null
     results.clear()
     more = scanner.next(results)
     iter = results.iterator()
@@ -35,7 +37,15 @@ trait HBaseAggregator[T <: AnyRef { def isEmpty: Boolean; def clear(): Unit }] e
 
   override def nextData(setValues: (Array[Byte], Int, Int, Array[Byte], Int, Int) => Unit): Unit = {
     val cell = iter.next()
+    last = cell
     setValues(cell.getRowArray, cell.getRowOffset, cell.getRowLength,
       cell.getValueArray, cell.getValueOffset, cell.getValueLength)
   }
+
+  /**
+    * Gets the row key of the last cell passed to the aggregator, which can be used to resume a scan
+    *
+    * @return row key, or null if no data has been read
+    */
+  def getLastScanned: Array[Byte] = if (last == null) { null } else { CellUtil.cloneRow(last) }
 }
@@ -0,0 +1,341 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.hbase.data
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.{AtomicInteger, AtomicReference}
+import java.util.concurrent.{Executors, Semaphore, ThreadFactory}
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.hadoop.hbase.io.hfile.{CacheConfig, HFileContext, HFileContextBuilder}
+import org.apache.hadoop.hbase.mapreduce.{CellCreator, LoadIncrementalHFiles}
+import org.apache.hadoop.hbase.regionserver.{BloomType, StoreFile}
+import org.apache.hadoop.hbase.util.Bytes
+import org.apache.hadoop.hbase.{HConstants, KeyValue, KeyValueUtil, TableName}
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
+import org.locationtech.geomesa.index.api.IndexAdapter.BaseIndexWriter
+import org.locationtech.geomesa.index.api.WritableFeature.FeatureWrapper
+import org.locationtech.geomesa.index.api.{GeoMesaFeatureIndex, MultiRowKeyValue, RowKeyValue, SingleRowKeyValue}
+import org.locationtech.geomesa.index.api.{WritableFeature, KeyValue => IndexKeyValue}
+import org.locationtech.geomesa.index.conf.partition.TablePartition
+import org.locationtech.geomesa.utils.io.{CloseWithLogging, WithClose}
+
+import scala.collection.mutable.ArrayBuffer
+import scala.util.control.NonFatal
+
+/**
+  * Writes features for a single index directly to HFiles, bypassing the normal write path. The HFiles
+  * can then be bulk loaded into HBase, e.g. through `HBaseBulkWriter.load`.
+  *
+  * Rows are buffered in memory until the buffer size is reached, then sorted and written out as a 'run'
+  * of HFiles, one per column family per region. Each region in a run is written in parallel. Only a single
+  * run may be outstanding at once - if the buffer fills up while the previous run is still being written,
+  * the calling thread will block until it completes. Errors from asynchronous writes will be thrown on the next
+  * call to `write`, `flush` or `close`.
+  *
+  * This class is not thread-safe - multiple threads should each use their own writer, which may share an
+  * output directory
+  *
+  * @param ds data store
+  * @param index index to write
+  * @param wrapper feature wrapper
+  * @param output output directory, which will contain a sub-directory per column family
+  * @param bufferSize approximate size of rows to buffer in memory before writing them out, in bytes
+  */
+class HBaseBulkWriter(
+    ds: HBaseDataStore,
+    index: GeoMesaFeatureIndex[_, _],
+    wrapper: FeatureWrapper[WritableFeature],
+    output: Path,
+    bufferSize: Long
+  ) extends BaseIndexWriter(Seq(index), wrapper) {
+
+  import HBaseBulkWriter.executor
+
+  require(!TablePartition.partitioned(index.sft), "Bulk writing partitioned tables is not currently supported")
+
+  private val table = index.getTableNames(None) match {
+    case Seq(t) => TableName.valueOf(t) // should always be writing to a single table here
+    case tables => throw new IllegalStateException(s"Expected a single table but got: ${tables.mkString(", ")}")
+  }
+
+  private val conf = {
+    val conf = new Configuration(ds.connection.getConfiguration)
+    // disable the block cache, as we're only writing
+    conf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0f)
+    conf
+  }
+
+  private val fs = output.getFileSystem(conf)
+  private val cache = new CacheConfig(conf)
+
+  // hfile settings for each column family, based on the table descriptor
+  private val families: Map[String, (HFileContext, BloomType)] = {
+    val descriptor = WithClose(ds.connection.getTable(table))(_.getTableDescriptor)
+    descriptor.getColumnFamilies.map { family =>
+      val context = new HFileContextBuilder()
+          .withCompression(family.getCompressionType)
+          .withDataBlockEncoding(family.getDataBlockEncoding)
+          .withBlockSize(family.getBlocksize)
+          .withIncludesTags(true)
+          .build()
+      (family.getNameAsString, (context, family.getBloomFilterType))
+    }.toMap
+  }
+
+  // region end keys, used to align the hfiles with the current region boundaries
+  // regions may still split before the files are loaded, in which case the bulk load will split the files
+  private val splits = WithClose(ds.connection.getRegionLocator(table))(_.getStartKeys.drop(1))
+
+  // creates cells with visibility tags, based on the visibility labels defined in hbase
+  private lazy val creator = new CellCreator(conf)
+
+  private val timestamp = System.currentTimeMillis()
+
+  private val pending = ArrayBuffer.empty[KeyValue]
+  private var buffered = 0L
+
+  // permit for the single outstanding run
+  private val writing = new Semaphore(1)
+  private val error = new AtomicReference[Throwable](null)
+
+  override protected def write(feature: WritableFeature, values: Array[RowKeyValue[_]], update: Boolean): Unit = {
+    checkError()
+    values(0) match {
+      case kv: SingleRowKeyValue[_] => kv.values.foreach(add(kv.row, _))
+      case mkv: MultiRowKeyValue[_] => mkv.rows.foreach(row => mkv.values.foreach(add(row, _)))
+    }
+    if (buffered >= bufferSize) {
+      spill()
+    }
+  }
+
+  override protected def delete(feature: WritableFeature, values: Array[RowKeyValue[_]]): Unit =
+    throw new UnsupportedOperationException("Bulk writers do not support deletes")
+
+  /**
+    * Writes out any buffered rows, and waits for all outstanding writes to complete
+    */
+  override def flush(): Unit = {
+    spill()
+    writing.acquire()
+    writing.release()
+    checkError()
+  }
+
+  override def close(): Unit = flush()
+
+  /**
+    * Buffer a single cell
+    *
+    * @param row row
+    * @param value value
+    */
+  private def add(row: Array[Byte], value: IndexKeyValue): Unit = {
+    val cell = if (value.vis.isEmpty) {
+      new KeyValue(row, value.cf, value.cq, timestamp, value.value)
+    } else {
+      val vis = new String(value.vis, StandardCharsets.UTF_8)
+      KeyValueUtil.ensureKeyValue(creator.create(row, 0, row.length, value.cf, 0, value.cf.length,
+        value.cq, 0, value.cq.length, timestamp, value.value, 0, value.value.length, vis))
+    }
+    pending += cell
+    buffered += cell.heapSize()
+  }
+
+  /**
+    * Sorts the buffered rows and writes them out asynchronously. Blocks if there is already a run
+    * being written
+    */
+  private def spill(): Unit = {
+    if (pending.nonEmpty) {
+      val cells = pending.toArray
+      pending.clear()
+      buffered = 0L
+
+      // blocks if there is already a run in progress
+      writing.acquire()
+      val regions = try {
+        java.util.Arrays.parallelSort(cells, KeyValue.COMPARATOR)
+        HBaseBulkWriter.regions(cells, splits)
+      } catch {
+        case NonFatal(e) => writing.release(); throw e
+      }
+      // the last region to finish will release the permit
+      val remaining = new AtomicInteger(regions.length)
+      regions.foreach { case (from, until) => executor.execute(new RegionWriter(cells, from, until, remaining)) }
+    }
+  }
+
+  private def checkError(): Unit = {
+    val e = error.getAndSet(null)
+    if (e != null) {
+      throw e
+    }
+  }
+
+  /**
+    * Writes the cells for a single region, creating one hfile per column family
+    *
+    * @param cells sorted cells
+    * @param from index of the first cell in the region, inclusive
+    * @param until index of the last cell in the region, exclusive
+    * @param remaining count of regions left to write in the current run
+    */
+  private class RegionWriter(cells: Array[KeyValue], from: Int, until: Int, remaining: AtomicInteger)
+      extends Runnable {
+
+    private val writers = new java.util.TreeMap[Array[Byte], StoreFile.Writer](Bytes.BYTES_COMPARATOR)
+
+    override def run(): Unit = {
+      try {
+        var i = from
+        while (i < until) {
+          val cell = cells(i)
+          val family = java.util.Arrays.copyOfRange(cell.getFamilyArray, cell.getFamilyOffset,
+            cell.getFamilyOffset + cell.getFamilyLength)
+          var writer = writers.get(family)
+          if (writer == null) {
+            writer = createWriter(family)
+            writers.put(family, writer)
+          }
+          writer.append(cell)
+          i += 1
+        }
+      } catch {
+        case NonFatal(e) => error.compareAndSet(null, e)
+      } finally {
+        val iter = writers.values.iterator()
+        while (iter.hasNext) {
+          closeWriter(iter.next()).foreach(error.compareAndSet(null, _))
+        }
+        if (remaining.decrementAndGet() == 0) {
+          writing.release()
+        }
+      }
+    }
+
+    private def createWriter(family: Array[Byte]): StoreFile.Writer = {
+      val name = new String(family, StandardCharsets.UTF_8)
+      val (context, bloom) = families.getOrElse(name,
+        throw new IllegalStateException(s"Column family '$name' does not exist in table $table"))
+      new StoreFile.WriterBuilder(conf, cache, fs)
+          .withOutputDir(new Path(output, name))
+          .withComparator(KeyValue.COMPARATOR)
+          .withBloomType(bloom)
+          .withFileContext(context)
+          .build()
+    }
+
+    private def closeWriter(writer: StoreFile.Writer): Option[Throwable] = {
+      try {
+        // mark the file as a bulk load, the same as hbase's HFileOutputFormat2
+        writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()))
+        writer.appendFileInfo(StoreFile.BULKLOAD_TASK_KEY, Bytes.toBytes("geomesa"))
+        writer.appendFileInfo(StoreFile.MAJOR_COMPACTION_KEY, Bytes.toBytes(true))
+        writer.appendFileInfo(StoreFile.EXCLUDE_FROM_MINOR_COMPACTION_KEY, Bytes.toBytes(false))
+        writer.appendTrackedTimestampsToMetadata()
+        None
+      } catch {
+        case NonFatal(e) => Some(e)
+      } finally {
+        CloseWithLogging(writer)
+      }
+    }
+  }
+}
+
+object HBaseBulkWriter {
+
+  private val executor = {
+    val threads = HBaseSystemProperties.BulkWriteThreads.toInt.getOrElse(Runtime.getRuntime.availableProcessors)
+    val factory = new ThreadFactory() {
+      private val count = new AtomicInteger(0)
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"geomesa-hbase-bulk-${count.incrementAndGet()}")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    Executors.newFixedThreadPool(threads, factory)
+  }
+
+  /**
+    * Create a bulk writer
+    *
+    * @param ds data store
+    * @param index index to write
+    * @param output output directory for hfiles
+    * @return
+    */
+  def apply(ds: HBaseDataStore, index: GeoMesaFeatureIndex[_, _], output: Path): HBaseBulkWriter = {
+    val bufferSize = HBaseSystemProperties.BulkBufferSize.toBytes.getOrElse {
+      throw new IllegalArgumentException(
+        s"Invalid buffer size for property ${HBaseSystemProperties.BulkBufferSize.property}: " +
+            HBaseSystemProperties.BulkBufferSize.get)
+    }
+    new HBaseBulkWriter(ds, index, WritableFeature.wrapper(index.sft, ds.adapter.groups), output, bufferSize)
+  }
+
+  /**
+    * Bulk load hfiles into an index table
+    *
+    * @param ds data store
+    * @param index index being loaded
+    * @param input directory containing hfiles, with a sub-directory per column family
+    * @param validate validate the hfiles before loading them
+    */
+  def load(ds: HBaseDataStore, index: GeoMesaFeatureIndex[_, _], input: Path, validate: Boolean = true): Unit = {
+    require(!TablePartition.partitioned(index.sft), "Bulk loading partitioned tables is not currently supported")
+    val tableName = index.getTableNames(None) match {
+      case Seq(t) => TableName.valueOf(t) // should always be writing to a single table here
+      case tables => throw new IllegalStateException(s"Expected a single table but got: ${tables.mkString(", ")}")
+    }
+    val config = new Configuration(ds.connection.getConfiguration)
+    config.set("hbase.loadincremental.validate.hfile", validate.toString)
+    val connection = ds.connection
+    WithClose(connection.getAdmin, connection.getTable(tableName), connection.getRegionLocator(tableName)) {
+      (admin, table, locator) => new LoadIncrementalHFiles(config).doBulkLoad(input, admin, table, locator)
+    }
+  }
+
+  /**
+    * Splits sorted cells based on region boundaries
+    *
+    * @param cells sorted cells
+    * @param splits region end keys, sorted
+    * @return (start, end) indices for each region, start inclusive and end exclusive
+    */
+  private [data] def regions(cells: Array[KeyValue], splits: Seq[Array[Byte]]): Seq[(Int, Int)] = {
+    val regions = Seq.newBuilder[(Int, Int)]
+    var from = 0
+    var i = 0
+    var split = 0
+    while (i < cells.length) {
+      val cell = cells(i)
+      var crossed = false
+      // advance past any regions that end before this cell
+      while (split < splits.length && Bytes.compareTo(cell.getRowArray, cell.getRowOffset, cell.getRowLength,
+          splits(split), 0, splits(split).length) >= 0) {
+        split += 1
+        crossed = true
+      }
+      if (crossed && i > from) {
+        regions += from -> i
+        from = i
+      }
+      i += 1
+    }
+    if (i > from) {
+      regions += from -> i
+    }
+    regions.result
+  }
+}
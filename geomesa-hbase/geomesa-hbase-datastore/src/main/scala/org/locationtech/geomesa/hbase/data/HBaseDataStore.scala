@@ -19,6 +19,7 @@ import org.geotools.data.Query
 import org.locationtech.geomesa.hbase.coprocessor.GeoMesaCoprocessor
 import org.locationtech.geomesa.hbase.coprocessor.aggregators.HBaseVersionAggregator
 import org.locationtech.geomesa.hbase.data.HBaseDataStoreFactory.HBaseDataStoreConfig
+import org.locationtech.geomesa.hbase.utils.HBaseBatchWriter.WriteMetrics
 import org.locationtech.geomesa.index.geotools.GeoMesaDataStore
 import org.locationtech.geomesa.index.index.attribute.AttributeIndex
 import org.locationtech.geomesa.index.index.id.IdIndex
@@ -50,6 +51,9 @@ class HBaseDataStore(val connection: Connection, override val config: HBaseDataS
 
   override val stats: GeoMesaStats = new RunnableStats(this)
 
+  // metrics for all the feature writers created by this data store
+  val writeMetrics = new WriteMetrics()
+
   // zookeeper locking
   override protected val mock: Boolean = false
   override protected val zookeepers: String = ZKConfig.getZKQuorumServersString(connection.getConfiguration)
@@ -74,10 +78,9 @@ class HBaseDataStore(val connection: Connection, override val config: HBaseDataS
             val name = TableName.valueOf(table)
             if (connection.getAdmin.tableExists(name)) {
               val options = HBaseVersionAggregator.configure(sft, index)
-              WithClose(connection.getTable(name)) { t =>
-                WithClose(GeoMesaCoprocessor.execute(t, new Scan().setFilter(new FilterList()), options)) { bytes =>
-                  bytes.map(_.toStringUtf8).toList.iterator // force evaluation of the iterator before closing it
-                }
+              val scan = new Scan().setFilter(new FilterList())
+              WithClose(GeoMesaCoprocessor.execute(connection, name, scan, options, config.queryThreads)) { bytes =>
+                bytes.map(_.toStringUtf8).toList.iterator // force evaluation of the iterator before closing it
               }
             } else {
               Iterator.empty
@@ -152,6 +155,9 @@ class HBaseDataStore(val connection: Connection, override val config: HBaseDataS
     }
   }
 
+  override def getAuthorizations: Seq[String] =
+    config.authProvider.map(_.getAuthorizations.asScala).getOrElse(Seq.empty)
+
   private def authOpt: Option[Authorizations] =
     config.authProvider.map { provider =>
       val auths = provider.getAuthorizations
@@ -10,8 +10,10 @@ package org.locationtech.geomesa.hbase.data
 
 import java.nio.charset.StandardCharsets
 import java.util.regex.Pattern
+import java.util.concurrent.TimeUnit
 import java.util.{Collections, Locale, UUID}
 
+import com.github.benmanes.caffeine.cache.{CacheLoader, Caffeine}
 import com.typesafe.scalalogging.{LazyLogging, StrictLogging}
 import org.apache.hadoop.fs.Path
 import org.apache.hadoop.hbase.client._
@@ -22,6 +24,7 @@ import org.apache.hadoop.hbase.io.compress.Compression
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding
 import org.apache.hadoop.hbase.regionserver.BloomType
 import org.apache.hadoop.hbase.security.visibility.CellVisibility
+import org.apache.hadoop.hbase.util.Bytes
 import org.apache.hadoop.hbase.{Coprocessor, HColumnDescriptor, HTableDescriptor, TableName}
 import org.locationtech.geomesa.hbase.HBaseSystemProperties
 import org.locationtech.geomesa.hbase.HBaseSystemProperties.{CoprocessorPath, TableAvailabilityTimeout}
@@ -33,7 +36,8 @@ import org.locationtech.geomesa.hbase.coprocessor.aggregators.{HBaseArrowAggrega
 import org.locationtech.geomesa.hbase.coprocessor.{AllCoprocessors, GeoMesaCoprocessor}
 import org.locationtech.geomesa.hbase.data.HBaseQueryPlan.{CoprocessorPlan, EmptyPlan, ScanPlan}
 import org.locationtech.geomesa.hbase.filters._
-import org.locationtech.geomesa.hbase.utils.HBaseVersions
+import org.locationtech.geomesa.hbase.utils.HBaseBatchWriter.FlushPolicy
+import org.locationtech.geomesa.hbase.utils.{HBaseBatchWriter, HBaseVersions}
 import org.locationtech.geomesa.index.api.IndexAdapter.BaseIndexWriter
 import org.locationtech.geomesa.index.api.QueryPlan.IndexResultsToFeatures
 import org.locationtech.geomesa.index.api.WritableFeature.FeatureWrapper
@@ -60,6 +64,19 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
 
   import scala.collection.JavaConverters._
 
+  // region boundaries only affect the grouping of scans, so it's ok if they are slightly out of date
+  private val splitsCache = Caffeine.newBuilder().expireAfterWrite(10, TimeUnit.MINUTES).build(
+    new CacheLoader[TableName, Seq[Array[Byte]]]() {
+      override def load(table: TableName): Seq[Array[Byte]] = {
+        try {
+          WithClose(ds.connection.getRegionLocator(table))(_.getStartKeys.toSeq.filter(_.nonEmpty))
+        } catch {
+          case NonFatal(e) => logger.warn(s"Error getting region boundaries for table $table:", e); Seq.empty
+        }
+      }
+    }
+  )
+
   override def createTable(
       index: GeoMesaFeatureIndex[_, _],
       partition: Option[String],
@@ -222,12 +239,13 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
       val reducer = Some(new LocalTransformReducer(schema, filter.filter, None, transform, hints, arrowHook))
 
       if (ranges.isEmpty) { EmptyPlan(filter, reducer) } else {
-        val scans = configureScans(ranges, colFamily, Seq.empty, coprocessor = false)
+        val scans = configureScans(ranges, colFamily, Seq.empty, coprocessor = false, regionSplits(tables))
         val resultsToFeatures = new HBaseResultsToFeatures(index, schema)
         val sort = hints.getSortFields
         val max = hints.getMaxFeatures
         val project = hints.getProjection
-        ScanPlan(filter, tables, ranges, scans, resultsToFeatures, reducer, sort, max, project)
+        val priority = hints.getScanPriority
+        ScanPlan(filter, tables, ranges, scans, resultsToFeatures, reducer, sort, max, project, priority)
       }
     } else {
       lazy val returnSchema = transform.map(_._2).getOrElse(schema)
@@ -299,9 +317,10 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
       } else {
         if (ranges.isEmpty) { EmptyPlan(filter, None) } else {
           val filters = (cqlFilter ++ indexFilter).sortBy(_._1).map(_._2)
-          val scans = configureScans(ranges, colFamily, filters, coprocessor = false)
+          val scans = configureScans(ranges, colFamily, filters, coprocessor = false, regionSplits(tables))
           val results = new HBaseResultsToFeatures(index, returnSchema)
-          ScanPlan(filter, tables, ranges, scans, results, None, hints.getSortFields, max, projection)
+          val sort = hints.getSortFields
+          ScanPlan(filter, tables, ranges, scans, results, None, sort, max, projection, hints.getScanPriority)
         }
       }
     }
@@ -312,6 +331,16 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
                             partition: Option[String]): HBaseIndexWriter =
     new HBaseIndexWriter(ds, indices, WritableFeature.wrapper(sft, groups), partition)
 
+  /**
+    * Gets the region split points for a query. Region boundaries are only considered when scanning
+    * a single table, as partitioned tables may each be split differently
+    *
+    * @param tables tables being scanned
+    * @return region start keys, or an empty seq
+    */
+  protected def regionSplits(tables: Seq[TableName]): Seq[Array[Byte]] =
+    if (tables.lengthCompare(1) != 0) { Seq.empty } else { splitsCache.get(tables.head) }
+
   /**
     * Configure the hbase scan
     *
@@ -319,12 +348,14 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
     * @param colFamily col family to scan
     * @param filters scan filters
     * @param coprocessor coprocessor scan or not
+    * @param splits sorted region split points, used to keep grouped scans within a single region
     * @return
     */
   protected def configureScans(originalRanges: Seq[Scan],
                                colFamily: Array[Byte],
                                filters: Seq[HFilter],
-                               coprocessor: Boolean): Seq[Scan] = {
+                               coprocessor: Boolean,
+                               splits: => Seq[Array[Byte]] = Seq.empty): Seq[Scan] = {
     import scala.collection.JavaConverters._
 
     val cacheBlocks = HBaseSystemProperties.ScannerBlockCaching.toBoolean.get // has a default value so .get is safe
@@ -333,10 +364,12 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
     logger.debug(s"HBase client scanner: block caching: $cacheBlocks, caching: $cacheSize")
 
     if (coprocessor) {
-      val scan = new Scan()
+      val rowRanges = sortAndMerge(originalRanges)
+      // bound the scan by the ranges, so that the coprocessor is only invoked on regions that may contain data
+      val scan = new Scan(rowRanges.get(0).getStartRow, rowRanges.get(rowRanges.size() - 1).getStopRow)
       scan.addFamily(colFamily)
-      // note: mrrf first priority
-      val mrrf = new MultiRowRangeFilter(sortAndMerge(originalRanges))
+      // note: mrrf first priority - it will seek between the ranges on the region server
+      val mrrf = new MultiRowRangeFilter(rowRanges)
       // note: our coprocessors always expect a filter list
       scan.setFilter(new FilterList(filters.+:(mrrf): _*))
       scan.setCacheBlocks(cacheBlocks)
@@ -394,7 +427,16 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
         groupedScans.add(s)
       }
 
-      // TODO GEOMESA-1806 align partitions with region boundaries
+      lazy val regions = if (rowRanges.size() > 1) { splits.toIndexedSeq } else { IndexedSeq.empty }
+
+      // gets the index of the region containing the row, starting the search at the given region index
+      def regionIndex(row: Array[Byte], from: Int): Int = {
+        var i = from
+        while (i < regions.length && Bytes.compareTo(regions(i), row) <= 0) {
+          i += 1
+        }
+        i
+      }
 
       if (!rowRanges.isEmpty) {
         var i = 1
@@ -402,15 +444,19 @@ class HBaseIndexAdapter(ds: HBaseDataStore) extends IndexAdapter[HBaseDataStore]
         var groupCount = 1
         var groupFirstByte: Byte =
           if (rowRanges.get(0).getStartRow.isEmpty) { 0 } else { rowRanges.get(0).getStartRow()(0) }
+        var groupRegion = regionIndex(rowRanges.get(0).getStartRow, 0)
 
         while (i < rowRanges.size()) {
           val nextRange = rowRanges.get(i)
-          // add the group if we hit our group size or if we transition the first byte (i.e. our shard byte)
-          if (groupCount == rangesPerThread ||
+          val nextRegion = regionIndex(nextRange.getStartRow, groupRegion)
+          // add the group if we hit our group size, if we transition the first byte (i.e. our shard byte),
+          // or if we cross a region boundary, so that each scan can seek through its ranges in a single region
+          if (groupCount == rangesPerThread || nextRegion != groupRegion ||
               (nextRange.getStartRow.length > 0 && groupFirstByte != nextRange.getStartRow()(0))) {
             // note: excludes current range we're checking
             addGroup(rowRanges.subList(groupStart, i))
             groupFirstByte = if (nextRange.getStopRow.isEmpty) { Byte.MaxValue } else { nextRange.getStopRow()(0) }
+            groupRegion = nextRegion
             groupStart = i
             groupCount = 1
           } else {
@@ -474,6 +520,37 @@ object HBaseIndexAdapter extends LazyLogging {
     MultiRowRangeFilter.sortAndMerge(rowRanges)
   }
 
+  /**
+    * Creates puts for a row. Values with the same visibility are combined into a single put
+    *
+    * @param row row key
+    * @param values values
+    * @return
+    */
+  private def puts(row: Array[Byte], values: Seq[KeyValue]): Seq[Put] = {
+    if (values.lengthCompare(1) == 0) { Seq(put(row, values)) } else {
+      values.groupBy(v => new String(v.vis, StandardCharsets.UTF_8)).values.map(put(row, _)).toSeq
+    }
+  }
+
+  /**
+    * Creates a put for a row. All values must have the same visibility
+    *
+    * @param row row key
+    * @param values values
+    * @return
+    */
+  private def put(row: Array[Byte], values: Seq[KeyValue]): Put = {
+    val put = new Put(row)
+    values.foreach(value => put.addImmutable(value.cf, value.cq, value.value))
+    val vis = values.head.vis
+    if (!vis.isEmpty) {
+      put.setCellVisibility(new CellVisibility(new String(vis, StandardCharsets.UTF_8)))
+    }
+    put.setDurability(durability)
+    put
+  }
+
   /**
     * Deserializes row bytes into simple features
     *
@@ -506,16 +583,14 @@ object HBaseIndexAdapter extends LazyLogging {
       partition: Option[String]
     ) extends BaseIndexWriter(indices, wrapper) {
 
-    private val batchSize = HBaseSystemProperties.WriteBatchSize.toLong
+    private val policy = FlushPolicy()
 
-    private val mutators = indices.toArray.map { index =>
+    private val writers = indices.toArray.map { index =>
       val table = index.getTableNames(partition) match {
         case Seq(t) => t // should always be writing to a single table here
         case tables => throw new IllegalStateException(s"Expected a single table but got: ${tables.mkString(", ")}")
       }
-      val params = new BufferedMutatorParams(TableName.valueOf(table))
-      batchSize.foreach(params.writeBufferSize)
-      ds.connection.getBufferedMutator(params)
+      new HBaseBatchWriter(ds.connection, TableName.valueOf(table), policy, ds.writeMetrics)
     }
 
     private var i = 0
@@ -528,31 +603,10 @@ object HBaseIndexAdapter extends LazyLogging {
       }
       i = 0
       while (i < values.length) {
-        val mutator = mutators(i)
+        val writer = writers(i)
         values(i) match {
-          case kv: SingleRowKeyValue[_] =>
-            kv.values.foreach { value =>
-              val put = new Put(kv.row)
-              put.addImmutable(value.cf, value.cq, value.value)
-              if (!value.vis.isEmpty) {
-                put.setCellVisibility(new CellVisibility(new String(value.vis, StandardCharsets.UTF_8)))
-              }
-              put.setDurability(durability)
-              mutator.mutate(put)
-            }
-
-          case mkv: MultiRowKeyValue[_] =>
-            mkv.rows.foreach { row =>
-              mkv.values.foreach { value =>
-                val put = new Put(row)
-                put.addImmutable(value.cf, value.cq, value.value)
-                if (!value.vis.isEmpty) {
-                  put.setCellVisibility(new CellVisibility(new String(value.vis, StandardCharsets.UTF_8)))
-                }
-                put.setDurability(durability)
-                mutator.mutate(put)
-              }
-            }
+          case kv: SingleRowKeyValue[_] => puts(kv.row, kv.values).foreach(writer.mutate)
+          case mkv: MultiRowKeyValue[_] => mkv.rows.foreach(row => puts(row, mkv.values).foreach(writer.mutate))
         }
         i += 1
       }
@@ -561,7 +615,7 @@ object HBaseIndexAdapter extends LazyLogging {
     override protected def delete(feature: WritableFeature, values: Array[RowKeyValue[_]]): Unit = {
       i = 0
       while (i < values.length) {
-        val mutator = mutators(i)
+        val writer = writers(i)
         values(i) match {
           case kv: SingleRowKeyValue[_] =>
             kv.values.foreach { value =>
@@ -570,7 +624,7 @@ object HBaseIndexAdapter extends LazyLogging {
               if (!value.vis.isEmpty) {
                 del.setCellVisibility(new CellVisibility(new String(value.vis, StandardCharsets.UTF_8)))
               }
-              mutator.mutate(del)
+              writer.mutate(del)
             }
 
           case mkv: MultiRowKeyValue[_] =>
@@ -581,7 +635,7 @@ object HBaseIndexAdapter extends LazyLogging {
                 if (!value.vis.isEmpty) {
                   del.setCellVisibility(new CellVisibility(new String(value.vis, StandardCharsets.UTF_8)))
                 }
-                mutator.mutate(del)
+                writer.mutate(del)
               }
             }
         }
@@ -590,7 +644,7 @@ object HBaseIndexAdapter extends LazyLogging {
     }
 
     override def flush(): Unit = {
-      val exceptions = mutators.flatMap(FlushWithLogging.apply)
+      val exceptions = writers.flatMap(FlushWithLogging.apply)
       if (exceptions.nonEmpty) {
         val head = exceptions.head
         exceptions.tail.foreach(head.addSuppressed)
@@ -599,7 +653,7 @@ object HBaseIndexAdapter extends LazyLogging {
     }
 
     override def close(): Unit = {
-      val exceptions = mutators.flatMap(CloseWithLogging.apply)
+      val exceptions = writers.flatMap(CloseWithLogging.apply)
       if (exceptions.nonEmpty) {
         val head = exceptions.head
         exceptions.tail.foreach(head.addSuppressed)
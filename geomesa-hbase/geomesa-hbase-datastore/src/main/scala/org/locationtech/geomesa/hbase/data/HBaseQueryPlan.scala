@@ -16,7 +16,7 @@ import org.locationtech.geomesa.hbase.utils.HBaseBatchScan
 import org.locationtech.geomesa.index.PartitionParallelScan
 import org.locationtech.geomesa.index.api.QueryPlan.{FeatureReducer, ResultsToFeatures}
 import org.locationtech.geomesa.index.api.{FilterStrategy, QueryPlan}
-import org.locationtech.geomesa.index.utils.Explainer
+import org.locationtech.geomesa.index.utils.{Explainer, ScanScheduler}
 import org.locationtech.geomesa.index.utils.Reprojection.QueryReferenceSystems
 import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
 
@@ -102,7 +102,8 @@ object HBaseQueryPlan {
       reducer: Option[FeatureReducer],
       sort: Option[Seq[(String, Boolean)]],
       maxFeatures: Option[Int],
-      projection: Option[QueryReferenceSystems]
+      projection: Option[QueryReferenceSystems],
+      priority: Int = ScanScheduler.DefaultPriority
     ) extends HBaseQueryPlan {
 
     override type Results = Result
@@ -126,7 +127,7 @@ object HBaseQueryPlan {
         table: TableName,
         copyScans: Boolean): CloseableIterator[Result] = {
       val s = if (copyScans) { scans.map(new Scan(_)) } else { scans }
-      HBaseBatchScan(ds.connection, table, s, ds.config.queryThreads)
+      HBaseBatchScan(ds.connection, table, s, ds.config.queryThreads, priority)
     }
   }
 
@@ -144,9 +145,14 @@ object HBaseQueryPlan {
 
     import org.locationtech.geomesa.hbase.coprocessor._
 
+    import scala.collection.JavaConverters._
+
     override type Results = Array[Byte]
 
     override def scans: Seq[Scan] = Seq(scan)
+
+    // used to determine which regions to invoke the coprocessor on
+    private lazy val rowRanges = HBaseIndexAdapter.sortAndMerge(ranges).asScala
     override def sort: Option[Seq[(String, Boolean)]] = None // client side sorting is not relevant for coprocessors
 
     /**
@@ -177,9 +183,9 @@ object HBaseQueryPlan {
         table: TableName,
         copyScans: Boolean): CloseableIterator[Array[Byte]] = {
       val s = if (copyScans) { new Scan(scan) } else { scan }
-      GeoMesaCoprocessor.execute(ds.connection.getTable(table), s, coprocessorOptions).collect {
-        case r if r.size() > 0 => r.toByteArray
-      }
+      val results = GeoMesaCoprocessor.execute(ds.connection, table, s, coprocessorOptions, ds.config.queryThreads,
+        rowRanges)
+      results.collect { case r if r.size() > 0 => r.toByteArray }
     }
   }
 }
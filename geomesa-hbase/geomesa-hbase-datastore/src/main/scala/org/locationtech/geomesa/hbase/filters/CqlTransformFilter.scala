@@ -21,6 +21,7 @@ import org.locationtech.geomesa.features.SerializationOption.SerializationOption
 import org.locationtech.geomesa.features.kryo.{KryoBufferSimpleFeature, KryoFeatureSerializer}
 import org.locationtech.geomesa.hbase.filters.CqlTransformFilter.{DelegateFilter, serialize}
 import org.locationtech.geomesa.index.api.{FilterStrategy, GeoMesaFeatureIndex, IndexKeySpace}
+import org.locationtech.geomesa.index.filters.KryoBufferFilter
 import org.locationtech.geomesa.index.iterators.{IteratorCache, SamplingIterator}
 import org.locationtech.geomesa.index.stats.GeoMesaStats
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
@@ -440,11 +441,14 @@ object CqlTransformFilter extends StrictLogging with SamplingIterator {
     override def samplingOptions: Option[(Float,Option[String])] = samplingOpt
     val sampling = createSamplingFunction(sft,samplingOptions)
 
+    // evaluates the filter against the serialized bytes where possible
+    private val bufferFilter = KryoBufferFilter(sft, filt)
+
     override def filterKeyValue(v: Cell): ReturnCode = {
       try {
         feature.setIdBuffer(v.getRowArray, v.getRowOffset, v.getRowLength)
         feature.setBuffer(v.getValueArray, v.getValueOffset, v.getValueLength)
-        if (filt.evaluate(feature) && sampling(feature)) { ReturnCode.INCLUDE } else { ReturnCode.SKIP }
+        if (bufferFilter.evaluate(feature) && sampling(feature)) { ReturnCode.INCLUDE } else { ReturnCode.SKIP }
       } catch {
         case NonFatal(e) =>
           logger.error("Error evaluating filter, skipping:", e)
@@ -532,11 +536,14 @@ object CqlTransformFilter extends StrictLogging with SamplingIterator {
     override def filter: Option[Filter] = Some(filt)
     override def transform: Option[(String, SimpleFeatureType)] = feature.getTransform
 
+    // evaluates the filter against the serialized bytes where possible
+    private val bufferFilter = KryoBufferFilter(sft, filt)
+
     override def filterKeyValue(v: Cell): ReturnCode = {
       try {
         feature.setIdBuffer(v.getRowArray, v.getRowOffset, v.getRowLength)
         feature.setBuffer(v.getValueArray, v.getValueOffset, v.getValueLength)
-        if (filt.evaluate(feature)&& sampling(feature)) { ReturnCode.INCLUDE } else { ReturnCode.SKIP }
+        if (bufferFilter.evaluate(feature) && sampling(feature)) { ReturnCode.INCLUDE } else { ReturnCode.SKIP }
       } catch {
         case NonFatal(e) =>
           logger.error("Error evaluating filter, skipping:", e)
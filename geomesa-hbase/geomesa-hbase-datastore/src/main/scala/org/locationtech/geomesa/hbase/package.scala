@@ -14,11 +14,18 @@ package object hbase {
 
   object HBaseSystemProperties {
     val CoprocessorPath = SystemProperty("geomesa.hbase.coprocessor.path")
+    val CoprocessorMaxResultSize = SystemProperty("geomesa.hbase.coprocessor.max.result.size", "16MB")
     val WriteBatchSize = SystemProperty("geomesa.hbase.write.batch")
+    val WriteFlushCount = SystemProperty("geomesa.hbase.write.flush.count")
+    val WriteFlushInterval = SystemProperty("geomesa.hbase.write.flush.interval")
+    val WriteFlushPolicy = SystemProperty("geomesa.hbase.write.flush.policy")
     val WalDurability = SystemProperty("geomesa.hbase.wal.durability")
+    val BulkBufferSize = SystemProperty("geomesa.hbase.bulk.buffer.size", "256MB")
+    val BulkWriteThreads = SystemProperty("geomesa.hbase.bulk.threads")
     val ScannerCaching = SystemProperty("geomesa.hbase.client.scanner.caching.size")
     val ScannerBlockCaching = SystemProperty("geomesa.hbase.query.block.caching.enabled", "true")
     val ScanBufferSize = SystemProperty("geomesa.hbase.scan.buffer", "100000")
+    val ServerQueryThreads = SystemProperty("geomesa.hbase.query.server.threads")
     val TableAvailabilityTimeout = SystemProperty("geomesa.hbase.table.availability.timeout", "30 minutes")
   }
 }
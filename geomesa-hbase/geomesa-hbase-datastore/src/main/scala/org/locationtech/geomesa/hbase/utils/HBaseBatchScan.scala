@@ -8,27 +8,33 @@
 
 package org.locationtech.geomesa.hbase.utils
 
-import java.util.concurrent._
-
-import org.apache.hadoop.hbase.TableName
+import com.typesafe.scalalogging.LazyLogging
 import org.apache.hadoop.hbase.client._
+import org.apache.hadoop.hbase.{ServerName, TableName}
 import org.locationtech.geomesa.hbase.HBaseSystemProperties
-import org.locationtech.geomesa.index.utils.AbstractBatchScan
+import org.locationtech.geomesa.index.utils.{AbstractBatchScan, ScanScheduler}
 import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.io.WithClose
 
-private class HBaseBatchScan(table: Table, ranges: Seq[Scan], threads: Int, buffer: Int)
-    extends AbstractBatchScan[Scan, Result](ranges, threads, buffer, HBaseBatchScan.Sentinel) {
+import scala.collection.JavaConverters._
+import scala.util.control.NonFatal
 
-  override protected def scan(range: Scan, out: BlockingQueue[Result]): Unit = {
-    val scan = table.getScanner(range)
-    try {
-      var result = scan.next()
-      while (result != null) {
-        out.put(result)
-        result = scan.next()
-      }
-    } finally {
-      scan.close()
+/**
+  * Batch scan over groups of ranges. Each group is scanned sequentially by a single thread
+  *
+  * @param table table
+  * @param ranges groups of ranges
+  * @param threads number of threads
+  * @param buffer result buffer size
+  * @param priority scan priority
+  */
+private class HBaseBatchScan(table: Table, ranges: Seq[Seq[Scan]], threads: Int, buffer: Int, priority: Int)
+    extends AbstractBatchScan[Seq[Scan], Result](ranges, threads, buffer, HBaseBatchScan.Sentinel, priority) {
+
+  override protected def scan(group: Seq[Scan]): CloseableIterator[Result] = {
+    CloseableIterator(group.iterator).flatMap { range =>
+      val scanner = table.getScanner(range)
+      CloseableIterator(scanner.iterator.asScala, scanner.close())
     }
   }
 
@@ -38,11 +44,36 @@ private class HBaseBatchScan(table: Table, ranges: Seq[Scan], threads: Int, buff
   }
 }
 
-object HBaseBatchScan {
+object HBaseBatchScan extends LazyLogging {
 
   private val Sentinel = new Result
   private val BufferSize = HBaseSystemProperties.ScanBufferSize.toInt.get
 
-  def apply(connection: Connection, table: TableName, ranges: Seq[Scan], threads: Int): CloseableIterator[Result] =
-    new HBaseBatchScan(connection.getTable(table), ranges, threads, BufferSize).start()
+  /**
+    * Creates a batch scan. Scans are grouped by region server, so that the number of concurrent scans
+    * against a single server can be limited
+    *
+    * @param connection connection
+    * @param table table to scan
+    * @param ranges ranges to scan
+    * @param threads number of threads
+    * @param priority scan priority
+    * @return
+    */
+  def apply(
+      connection: Connection,
+      table: TableName,
+      ranges: Seq[Scan],
+      threads: Int,
+      priority: Int = ScanScheduler.DefaultPriority): CloseableIterator[Result] = {
+    val groups = try {
+      WithClose(connection.getRegionLocator(table)) { locator =>
+        def server(scan: Scan): ServerName = locator.getRegionLocation(scan.getStartRow).getServerName
+        RegionGrouping.bucket(ranges, server, RegionGrouping.serverThreads())
+      }
+    } catch {
+      case NonFatal(e) => logger.warn(s"Error grouping scans by region server for table $table:", e); ranges.map(Seq(_))
+    }
+    new HBaseBatchScan(connection.getTable(table), groups, threads, BufferSize, priority).start()
+  }
 }
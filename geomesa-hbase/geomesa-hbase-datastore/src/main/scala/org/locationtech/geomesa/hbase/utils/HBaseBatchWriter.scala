@@ -0,0 +1,325 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.hbase.utils
+
+import java.io.{Closeable, Flushable}
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong, AtomicReference}
+
+import org.apache.hadoop.hbase.TableName
+import org.apache.hadoop.hbase.client.BufferedMutator.ExceptionListener
+import org.apache.hadoop.hbase.client._
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
+import org.locationtech.geomesa.hbase.utils.HBaseBatchWriter.{FlushPolicy, WriteMetrics}
+
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+
+/**
+  * Batched writer for a single table. Mutations are buffered and sent to HBase asynchronously, based on the
+  * configured flush policy. The underlying buffered mutator groups mutations by region server when sending them.
+  *
+  * Only a single flush may be outstanding at once - if a flush is triggered while another is still in progress,
+  * the calling thread will block until the first flush completes, which provides back-pressure to writers.
+  * Errors from asynchronous flushes will be thrown on the next call to `mutate` or `flush`.
+  *
+  * @param connection connection
+  * @param table table to write to
+  * @param policy flush policy
+  * @param metrics write metrics
+  */
+class HBaseBatchWriter(connection: Connection, table: TableName, policy: FlushPolicy, metrics: WriteMetrics)
+    extends Closeable with Flushable {
+
+  import HBaseBatchWriter.{executor, scheduler}
+
+  private val listener = new ExceptionListener() {
+    override def onException(e: RetriesExhaustedWithDetailsException, mutator: BufferedMutator): Unit = {
+      metrics.failures.addAndGet(e.getNumExceptions)
+      throw e
+    }
+  }
+
+  private val mutator = {
+    val params = new BufferedMutatorParams(table).listener(listener)
+    policy.bufferSize.foreach(params.writeBufferSize)
+    connection.getBufferedMutator(params)
+  }
+
+  // permit for the single outstanding flush
+  private val flushing = new Semaphore(1)
+  private val error = new AtomicReference[Throwable](null)
+
+  // mutations buffered since the last flush - guarded by `this`
+  private var count = 0L
+  private var bytes = 0L
+  private var start = 0L
+
+  // check for idle writers in the background, so that buffered mutations don't wait indefinitely.
+  // the flush itself is handed off to the executor, so that a slow table doesn't delay the timer for other writers
+  private val timer = policy.interval.map { interval =>
+    val check = new Runnable() {
+      override def run(): Unit = {
+        if (shouldFlush() && flushing.tryAcquire()) {
+          try { flushAsync(reset()) } catch {
+            case NonFatal(e) => error.compareAndSet(null, e)
+          }
+        }
+      }
+    }
+    scheduler.scheduleWithFixedDelay(check, interval.toMillis, interval.toMillis, TimeUnit.MILLISECONDS)
+  }
+
+  /**
+    * Buffer a mutation
+    *
+    * @param mutation mutation
+    */
+  def mutate(mutation: Mutation): Unit = {
+    checkError()
+    mutator.mutate(mutation)
+    val size = mutation.heapSize()
+    metrics.queued.addAndGet(size)
+    val flush = synchronized {
+      if (count == 0) {
+        start = System.currentTimeMillis()
+      }
+      count += 1
+      bytes += size
+      policy.shouldFlush(count, bytes, System.currentTimeMillis() - start)
+    }
+    if (flush) {
+      // blocks if there is already a flush in progress
+      flushing.acquire()
+      flushAsync(reset())
+    }
+  }
+
+  /**
+    * Synchronously flushes any buffered mutations, waiting for any asynchronous flush to complete
+    */
+  override def flush(): Unit = {
+    flushing.acquire()
+    try { flushBuffered(reset()) } finally {
+      flushing.release()
+    }
+    checkError()
+  }
+
+  override def close(): Unit = {
+    timer.foreach(_.cancel(false))
+    try { flush() } finally {
+      mutator.close()
+    }
+  }
+
+  private def shouldFlush(): Boolean = synchronized {
+    count > 0 && policy.shouldFlush(count, bytes, System.currentTimeMillis() - start)
+  }
+
+  /**
+    * Reset the buffered mutation counts
+    *
+    * @return the approximate size of the mutations buffered since the last reset
+    */
+  private def reset(): Long = synchronized {
+    val flushed = bytes
+    count = 0L
+    bytes = 0L
+    flushed
+  }
+
+  /**
+    * Flush the mutator in the background. Caller must hold the flush permit, which will be released
+    * once the flush completes
+    *
+    * @param flushed approximate size of the mutations being flushed
+    */
+  private def flushAsync(flushed: Long): Unit = {
+    try {
+      executor.execute(new Runnable() {
+        override def run(): Unit = try { flushBuffered(flushed) } finally { flushing.release() }
+      })
+    } catch {
+      case NonFatal(e) => flushing.release(); throw e
+    }
+  }
+
+  /**
+    * Flush the mutator and update the metrics. Caller must hold the flush permit
+    *
+    * @param flushed approximate size of the mutations being flushed
+    */
+  private def flushBuffered(flushed: Long): Unit = {
+    val begin = System.currentTimeMillis()
+    try { mutator.flush() } catch {
+      case NonFatal(e) => error.compareAndSet(null, e)
+    } finally {
+      metrics.queued.addAndGet(-1 * flushed)
+      metrics.flushes.incrementAndGet()
+      metrics.flushTime.addAndGet(System.currentTimeMillis() - begin)
+    }
+  }
+
+  private def checkError(): Unit = {
+    val e = error.getAndSet(null)
+    if (e != null) {
+      throw e
+    }
+  }
+}
+
+object HBaseBatchWriter {
+
+  private val executor = {
+    val factory = new ThreadFactory() {
+      private val count = new AtomicInteger(0)
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"geomesa-hbase-flush-${count.incrementAndGet()}")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    Executors.newCachedThreadPool(factory)
+  }
+
+  private val scheduler = {
+    val factory = new ThreadFactory() {
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, "geomesa-hbase-flush-timer")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    val executor = new ScheduledThreadPoolExecutor(1, factory)
+    executor.setRemoveOnCancelPolicy(true)
+    executor
+  }
+
+  /**
+    * Policy for flushing buffered mutations. Implementations must have a no-arg constructor, and can be
+    * configured with the system property `geomesa.hbase.write.flush.policy`
+    */
+  trait FlushPolicy {
+
+    /**
+      * Size of the write buffer for the underlying buffered mutator. Mutations will be sent to HBase
+      * in the background when the buffer fills up, regardless of the flush policy
+      *
+      * @return size in bytes, or None to use the HBase default
+      */
+    def bufferSize: Option[Long]
+
+    /**
+      * Interval to check for flushes in the background, so that idle writers still get flushed
+      *
+      * @return interval, or None to only check when mutations are written
+      */
+    def interval: Option[Duration]
+
+    /**
+      * Check if buffered mutations should be flushed
+      *
+      * @param count number of buffered mutations
+      * @param bytes approximate size of buffered mutations
+      * @param age time since the oldest buffered mutation was written, in millis
+      * @return true if should flush
+      */
+    def shouldFlush(count: Long, bytes: Long, age: Long): Boolean
+  }
+
+  object FlushPolicy {
+
+    /**
+      * Load the configured flush policy
+      *
+      * @return
+      */
+    def apply(): FlushPolicy = {
+      HBaseSystemProperties.WriteFlushPolicy.option match {
+        case None => new DefaultFlushPolicy()
+        case Some(c) => Class.forName(c).newInstance().asInstanceOf[FlushPolicy]
+      }
+    }
+  }
+
+  /**
+    * Flush policy based on system properties. Flushes are triggered by the number of mutations
+    * (`geomesa.hbase.write.flush.count`) or by the time since the first buffered mutation
+    * (`geomesa.hbase.write.flush.interval`). Buffer size is controlled by `geomesa.hbase.write.batch`
+    */
+  class DefaultFlushPolicy extends FlushPolicy {
+
+    private val count = HBaseSystemProperties.WriteFlushCount.toLong
+    private val latency = HBaseSystemProperties.WriteFlushInterval.toDuration.filter(_.isFinite()).map(_.toMillis)
+
+    override val bufferSize: Option[Long] = HBaseSystemProperties.WriteBatchSize.toLong
+
+    override val interval: Option[Duration] = HBaseSystemProperties.WriteFlushInterval.toDuration.filter(_.isFinite())
+
+    override def shouldFlush(count: Long, bytes: Long, age: Long): Boolean =
+      this.count.exists(_ <= count) || latency.exists(_ <= age)
+  }
+
+  /**
+    * Metrics for batched writes
+    */
+  class WriteMetrics {
+
+    private [utils] val queued = new AtomicLong(0L)
+    private [utils] val flushes = new AtomicLong(0L)
+    private [utils] val flushTime = new AtomicLong(0L)
+    private [utils] val failures = new AtomicLong(0L)
+
+    /**
+      * Approximate size of mutations that have been written since the last flush triggered by the flush
+      * policy (or an explicit call to `flush`). Note that the underlying buffered mutator will also send
+      * mutations to HBase whenever its write buffer fills up, which is not reflected here - so with a
+      * flush policy that never triggers, this will keep growing until the writer is flushed or closed
+      *
+      * @return bytes
+      */
+    def queuedBytes: Long = queued.get
+
+    /**
+      * Number of flushes
+      *
+      * @return
+      */
+    def flushCount: Long = flushes.get
+
+    /**
+      * Total time spent flushing
+      *
+      * @return millis
+      */
+    def flushMillis: Long = flushTime.get
+
+    /**
+      * Average flush latency
+      *
+      * @return millis
+      */
+    def averageFlushMillis: Double = {
+      val count = flushes.get
+      if (count == 0) { 0d } else { flushTime.get.toDouble / count }
+    }
+
+    /**
+      * Number of mutations that failed after exhausting the client retries
+      *
+      * @return
+      */
+    def failedMutations: Long = failures.get
+
+    override def toString: String =
+      s"WriteMetrics[queued bytes: $queuedBytes, flushes: $flushCount, " +
+          f"avg flush latency: $averageFlushMillis%.2fms, failed mutations: $failedMutations]"
+  }
+}
@@ -0,0 +1,93 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.hbase.utils
+
+import com.typesafe.scalalogging.LazyLogging
+import org.apache.hadoop.hbase.client.RegionLocator
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter.RowRange
+import org.apache.hadoop.hbase.util.Bytes
+import org.apache.hadoop.hbase.{HRegionLocation, ServerName}
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Utilities for distributing query work based on region locations
+  */
+object RegionGrouping extends LazyLogging {
+
+  /**
+    * Gets the max number of concurrent scans per region server for a single query, if configured
+    *
+    * @return
+    */
+  def serverThreads(): Option[Int] = {
+    val prop = HBaseSystemProperties.ServerQueryThreads
+    prop.toInt.filter { threads =>
+      threads > 0 || {
+        logger.warn(s"Ignoring invalid value for '${prop.property}': $threads - must be at least 1")
+        false
+      }
+    }
+  }
+
+  /**
+    * Gets the regions that overlap the given ranges. Region locations are cached by the connection,
+    * so this generally won't require any remote calls
+    *
+    * @param locator region locator
+    * @param ranges sorted and merged ranges
+    * @return regions, in sorted order
+    */
+  def regions(locator: RegionLocator, ranges: Seq[RowRange]): Seq[HRegionLocation] = {
+    val regions = ArrayBuffer.empty[HRegionLocation]
+    // end key of the last region added - an empty end key indicates the last region in the table
+    var end: Array[Byte] = null
+    val iter = ranges.iterator
+    while (iter.hasNext && (end == null || end.nonEmpty)) {
+      val range = iter.next()
+      // if the range starts in the last region added, continue from the end of that region
+      var row = if (end != null && Bytes.compareTo(range.getStartRow, end) < 0) { end } else { range.getStartRow }
+      while (row != null && (range.getStopRow.isEmpty || Bytes.compareTo(row, range.getStopRow) < 0)) {
+        val location = locator.getRegionLocation(row)
+        regions += location
+        end = location.getRegionInfo.getEndKey
+        row = if (end.isEmpty) { null } else { end }
+      }
+    }
+    regions
+  }
+
+  /**
+    * Groups items by the region server hosting them, and splits each server's items into at most `limit`
+    * buckets. The buckets are interleaved by server, so that executing them in order will spread the
+    * load across the cluster instead of hot-spotting a single server
+    *
+    * @param items items to group
+    * @param server region server for a given item
+    * @param limit max buckets per server - if not specified, each item will be in its own bucket
+    * @tparam T item type
+    * @return buckets
+    */
+  def bucket[T](items: Seq[T], server: T => ServerName, limit: Option[Int]): Seq[Seq[T]] = {
+    require(limit.forall(_ > 0), s"Bucket limit must be at least 1: ${limit.get}")
+    val buckets = items.groupBy(server).values.toSeq.map { group =>
+      val count = limit.map(math.min(_, group.length)).getOrElse(group.length)
+      val split = Array.fill(count)(Seq.newBuilder[T])
+      var i = 0
+      group.foreach { item =>
+        split(i % count) += item
+        i += 1
+      }
+      split.toSeq.map(_.result)
+    }
+    val max = if (buckets.isEmpty) { 0 } else { buckets.map(_.length).max }
+    Seq.tabulate(max)(i => buckets.flatMap(_.lift(i))).flatten
+  }
+}
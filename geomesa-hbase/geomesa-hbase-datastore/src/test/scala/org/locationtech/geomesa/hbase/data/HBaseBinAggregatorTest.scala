@@ -19,8 +19,11 @@ import org.geotools.feature.DefaultFeatureCollection
 import org.locationtech.geomesa.features.ScalaSimpleFeature
 import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder
 import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder.EncodedValues
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
 import org.locationtech.geomesa.hbase.data.HBaseDataStoreParams._
+import org.locationtech.geomesa.index.conf.QueryHints
 import org.locationtech.geomesa.process.transform.BinConversionProcess
+import org.locationtech.geomesa.utils.collection.SelfClosingIterator
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
 import org.opengis.filter.Filter
 
@@ -107,6 +110,22 @@ class HBaseBinAggregatorTest extends HBaseTest with LazyLogging {
       val decoded = bytes.reduceLeft(_ ++ _).grouped(24).toSeq.map(BinaryOutputEncoder.decode).map(toTuples)
       decoded must containTheSameElementsAs(names.zip(dates).zip(lonlat).zip(tracks))
     }
+
+    "page large results back from the coprocessor" in {
+      HBaseSystemProperties.CoprocessorMaxResultSize.threadLocalValue.set("16")
+      try {
+        val query = new Query(sftName, Filter.INCLUDE)
+        query.getHints.put(QueryHints.BIN_TRACK, "name")
+        query.getHints.put(QueryHints.BIN_BATCH_SIZE, Int.box(1))
+        val bytes = SelfClosingIterator(ds.getFeatureReader(query, Transaction.AUTO_COMMIT)).map { sf =>
+          sf.getAttribute(BinaryOutputEncoder.BIN_ATTRIBUTE_INDEX).asInstanceOf[Array[Byte]]
+        }.toList
+        val decoded = bytes.reduceLeft(_ ++ _).grouped(16).toSeq.map(BinaryOutputEncoder.decode).map(toTuples)
+        decoded must containTheSameElementsAs(names.zip(dates).zip(lonlat))
+      } finally {
+        HBaseSystemProperties.CoprocessorMaxResultSize.threadLocalValue.remove()
+      }
+    }
   }
 
   step {
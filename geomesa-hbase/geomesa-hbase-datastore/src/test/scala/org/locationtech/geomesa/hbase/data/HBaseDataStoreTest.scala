@@ -9,9 +9,12 @@
 package org.locationtech.geomesa.hbase.data
 
 import java.io.File
+import java.nio.file.Files
 import java.util.Collections
 
 import com.typesafe.scalalogging.LazyLogging
+import org.apache.commons.io.FileUtils
+import org.apache.hadoop.fs.Path
 import org.apache.hadoop.hbase.TableName
 import org.geotools.data._
 import org.geotools.data.collection.ListFeatureCollection
@@ -20,6 +23,7 @@ import org.geotools.filter.text.ecql.ECQL
 import org.geotools.util.factory.Hints
 import org.locationtech.geomesa.features.ScalaSimpleFeature
 import org.locationtech.geomesa.filter.function.ProxyIdFunction
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
 import org.locationtech.geomesa.hbase.data.HBaseDataStoreParams._
 import org.locationtech.geomesa.index.api.GeoMesaFeatureIndex
 import org.locationtech.geomesa.index.conf.{QueryHints, QueryProperties, SchemaProperties}
@@ -31,6 +35,7 @@ import org.locationtech.geomesa.process.tube.TubeSelectProcess
 import org.locationtech.geomesa.utils.collection.SelfClosingIterator
 import org.locationtech.geomesa.utils.conf.{GeoMesaProperties, SemanticVersion}
 import org.locationtech.geomesa.utils.geotools.{FeatureUtils, SimpleFeatureTypes}
+import org.locationtech.geomesa.utils.index.{ByteArrays, IndexMode}
 import org.locationtech.geomesa.utils.io.WithClose
 import org.opengis.feature.simple.SimpleFeature
 import org.opengis.filter.Filter
@@ -239,6 +244,87 @@ class HBaseDataStoreTest extends HBaseTest with LazyLogging {
       }
     }
 
+    "support asynchronous flushes" in {
+      val typeName = "test-async-flush"
+
+      val params = Map(ConnectionParam.getName -> connection, HBaseCatalogParam.getName -> catalogTableName)
+      val ds = DataStoreFinder.getDataStore(params).asInstanceOf[HBaseDataStore]
+      ds must not(beNull)
+
+      try {
+        ds.getSchema(typeName) must beNull
+        ds.createSchema(SimpleFeatureTypes.createType(typeName, "name:String,dtg:Date,*geom:Point:srid=4326"))
+        val sft = ds.getSchema(typeName)
+
+        val features = Seq.tabulate(20) { i =>
+          ScalaSimpleFeature.create(sft, s"$i", s"name$i", s"2014-01-02T00:00:${10 + i}.000Z", s"POINT(45 ${40 + i})")
+        }
+
+        HBaseSystemProperties.WriteFlushCount.threadLocalValue.set("3")
+        try {
+          WithClose(ds.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT)) { writer =>
+            features.foreach(FeatureUtils.write(writer, _, useProvidedFid = true))
+          }
+        } finally {
+          HBaseSystemProperties.WriteFlushCount.threadLocalValue.remove()
+        }
+
+        // each index should be flushed after every 3 features, plus a final flush on close
+        ds.writeMetrics.flushCount must beGreaterThan(6L)
+        ds.writeMetrics.queuedBytes mustEqual 0L
+        ds.writeMetrics.failedMutations mustEqual 0L
+
+        val result = SelfClosingIterator(ds.getFeatureSource(typeName).getFeatures.features).toList
+        result must containTheSameElementsAs(features)
+      } finally {
+        ds.dispose()
+      }
+    }
+
+    "support bulk writes" in {
+      val typeName = "test-bulk-write"
+
+      val params = Map(ConnectionParam.getName -> connection, HBaseCatalogParam.getName -> catalogTableName)
+      val ds = DataStoreFinder.getDataStore(params).asInstanceOf[HBaseDataStore]
+      ds must not(beNull)
+
+      val dir = Files.createTempDirectory("geomesa-hbase-bulk")
+
+      try {
+        ds.getSchema(typeName) must beNull
+        ds.createSchema(SimpleFeatureTypes.createType(typeName, "name:String:index=true,dtg:Date,*geom:Point:srid=4326"))
+        val sft = ds.getSchema(typeName)
+
+        val features = Seq.tabulate(20) { i =>
+          ScalaSimpleFeature.create(sft, s"$i", s"name$i", s"2014-01-02T00:00:${10 + i}.000Z", s"POINT(45 ${40 + i})")
+        }
+
+        ds.manager.indices(sft, IndexMode.Write).foreach { index =>
+          val output = new Path(dir.toUri.toString, index.identifier)
+          // use a small buffer so that we write out multiple runs
+          HBaseSystemProperties.BulkBufferSize.threadLocalValue.set("1KB")
+          try {
+            WithClose(HBaseBulkWriter(ds, index, output)) { writer =>
+              features.foreach(writer.write(_, update = false))
+            }
+          } finally {
+            HBaseSystemProperties.BulkBufferSize.threadLocalValue.remove()
+          }
+          HBaseBulkWriter.load(ds, index, output)
+        }
+
+        foreach(Seq("INCLUDE", "IN('2', '12')", "name = 'name5'", "bbox(geom,44,50,46,55)",
+          "bbox(geom,44,50,46,55) AND dtg DURING 2014-01-02T00:00:15.000Z/2014-01-02T00:00:25.000Z")) { filter =>
+          val query = new Query(typeName, ECQL.toFilter(filter))
+          val result = SelfClosingIterator(ds.getFeatureReader(query, Transaction.AUTO_COMMIT)).toList
+          result must containTheSameElementsAs(features.filter(query.getFilter.evaluate))
+        }
+      } finally {
+        ds.dispose()
+        FileUtils.deleteDirectory(dir.toFile)
+      }
+    }
+
     "support updates" in {
       val typeName = "test-updates"
 
@@ -311,6 +397,20 @@ class HBaseDataStoreTest extends HBaseTest with LazyLogging {
             haveLength(80) // 0-9 + [8]0-9 * 4 shards
         splits(Z3Index.name) must haveLength(16) // 2 bits * 4 shards
         splits(IdIndex.name) must haveLength(4) // default 4 splits
+
+        // verify that grouped scans don't cross region boundaries
+        val nameIndex = GeoMesaFeatureIndex.identifier(AttributeIndex.name, AttributeIndex.version, Seq("name"))
+        val nameSplits = splits(nameIndex)
+        val query = new Query(typeName, ECQL.toFilter("name IN ('a1', 'b1', 'c1', 'd1', 'e1', 'f1')"))
+        query.getHints.put(QueryHints.QUERY_INDEX, nameIndex)
+        val scans = ds.getQueryPlan(query).flatMap(_.scans)
+        scans must not(beEmpty)
+        forall(scans) { scan =>
+          nameSplits.exists { split =>
+            ByteArrays.ByteOrdering.compare(split, scan.getStartRow) > 0 &&
+                ByteArrays.ByteOrdering.compare(split, scan.getStopRow) < 0
+          } must beFalse
+        }
       } finally {
         ds.dispose()
       }
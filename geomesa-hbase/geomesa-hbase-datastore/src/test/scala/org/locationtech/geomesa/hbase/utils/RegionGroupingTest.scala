@@ -0,0 +1,69 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.hbase.utils
+
+import org.apache.hadoop.hbase.ServerName
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.hbase.HBaseSystemProperties
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class RegionGroupingTest extends Specification {
+
+  val servers = Seq.tabulate(3)(i => ServerName.valueOf(s"server$i", 16020, 0L))
+
+  // items are assigned to servers 0, 0, 0, 0, 1, 1, 2, 0, 0, 1
+  val items = Seq(0, 0, 0, 0, 1, 1, 2, 0, 0, 1).zipWithIndex.map { case (s, i) => (servers(s), i) }
+
+  def server(item: (ServerName, Int)): ServerName = item._1
+
+  "RegionGrouping" should {
+    "put each item in its own bucket when not limited" in {
+      val buckets = RegionGrouping.bucket(items, server, None)
+      buckets must haveLength(10)
+      foreach(buckets)(_ must haveLength(1))
+      buckets.flatten must containTheSameElementsAs(items)
+      // the first buckets should be spread across all the servers
+      buckets.take(3).map(_.head._1) must containTheSameElementsAs(servers)
+    }
+
+    "limit the buckets per server" in {
+      val buckets = RegionGrouping.bucket(items, server, Some(2))
+      buckets must haveLength(5) // 2 for server 0, 2 for server 1, 1 for server 2
+      foreach(buckets)(b => b.map(_._1).distinct must haveLength(1))
+      buckets.flatten must containTheSameElementsAs(items)
+      buckets.groupBy(_.head._1).mapValues(_.length) mustEqual
+          Map(servers(0) -> 2, servers(1) -> 2, servers(2) -> 1)
+      // items should be distributed evenly between the buckets for each server
+      buckets.filter(_.head._1 == servers(0)).map(_.length) must containTheSameElementsAs(Seq(3, 3))
+    }
+
+    "handle empty input" in {
+      RegionGrouping.bucket(Seq.empty[(ServerName, Int)], server, Some(2)) must beEmpty
+    }
+
+    "ignore invalid server thread counts" in {
+      foreach(Seq("0", "-1")) { threads =>
+        HBaseSystemProperties.ServerQueryThreads.threadLocalValue.set(threads)
+        try {
+          RegionGrouping.serverThreads() must beNone
+        } finally {
+          HBaseSystemProperties.ServerQueryThreads.threadLocalValue.remove()
+        }
+      }
+      HBaseSystemProperties.ServerQueryThreads.threadLocalValue.set("2")
+      try {
+        RegionGrouping.serverThreads() must beSome(2)
+      } finally {
+        HBaseSystemProperties.ServerQueryThreads.threadLocalValue.remove()
+      }
+    }
+  }
+}
@@ -12,10 +12,13 @@ import com.beust.jcommander.Parameters
 import com.typesafe.config.Config
 import org.apache.hadoop.fs.Path
 import org.apache.hadoop.mapreduce.Job
-import org.geotools.data.DataStore
-import org.locationtech.geomesa.hbase.data.HBaseDataStore
+import org.geotools.data.{DataStore, FeatureWriter}
+import org.geotools.util.factory.Hints
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.hbase.data.{HBaseBulkWriter, HBaseDataStore}
 import org.locationtech.geomesa.hbase.jobs.HBaseIndexFileMapper
 import org.locationtech.geomesa.hbase.tools.HBaseDataStoreCommand.HBaseDistributedCommand
+import org.locationtech.geomesa.hbase.tools.ingest.HBaseBulkIngestCommand.HBaseBulkFeatureWriter
 import org.locationtech.geomesa.hbase.tools.ingest.HBaseBulkIngestCommand.HBaseBulkIngestParams
 import org.locationtech.geomesa.hbase.tools.ingest.HBaseIngestCommand.HBaseIngestParams
 import org.locationtech.geomesa.tools.DistributedRunParam.RunModes
@@ -26,7 +29,8 @@ import org.locationtech.geomesa.tools.ingest._
 import org.locationtech.geomesa.tools.utils.StatusCallback
 import org.locationtech.geomesa.tools.{Command, OutputPathParam, RequiredIndexParam}
 import org.locationtech.geomesa.utils.index.IndexMode
-import org.opengis.feature.simple.SimpleFeatureType
+import org.locationtech.geomesa.utils.uuid.Z3FeatureIdGenerator
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
 
 class HBaseBulkIngestCommand extends HBaseIngestCommand with HBaseDistributedCommand {
 
@@ -39,7 +43,15 @@ class HBaseBulkIngestCommand extends HBaseIngestCommand with HBaseDistributedCom
                                       inputs: Seq[String]): Runnable = {
     mode match {
       case RunModes.Local =>
-        throw new IllegalArgumentException("Bulk ingest must be run in distributed mode")
+        new LocalConverterIngest(connection, sft, converter, inputs, params.threads) with BulkConverterIngest {
+          override protected def createWriter(
+              ds: DataStore,
+              sft: SimpleFeatureType): FeatureWriter[SimpleFeatureType, SimpleFeature] = {
+            val hbase = ds.asInstanceOf[HBaseDataStore]
+            val idx = hbase.manager.index(sft, index, IndexMode.Write)
+            new HBaseBulkFeatureWriter(sft, HBaseBulkWriter(hbase, idx, new Path(params.outputPath)))
+          }
+        }
 
       case RunModes.Distributed if params.combineInputs =>
         new DistributedCombineConverterIngest(connection, sft, converter, inputs, libjarsFiles, libjarsPaths,
@@ -89,4 +101,43 @@ class HBaseBulkIngestCommand extends HBaseIngestCommand with HBaseDistributedCom
 object HBaseBulkIngestCommand {
   @Parameters(commandDescription = "Convert various file formats into HBase HFiles suitable for incremental load")
   class HBaseBulkIngestParams extends HBaseIngestParams with RequiredIndexParam with OutputPathParam
+
+  /**
+    * Append-only feature writer that writes out HFiles instead of writing to HBase
+    *
+    * @param sft simple feature type
+    * @param writer bulk writer
+    */
+  class HBaseBulkFeatureWriter(sft: SimpleFeatureType, writer: HBaseBulkWriter)
+      extends FeatureWriter[SimpleFeatureType, SimpleFeature] {
+
+    private val feature = new ScalaSimpleFeature(sft, "")
+    private lazy val idGenerator = new Z3FeatureIdGenerator()
+
+    override def getFeatureType: SimpleFeatureType = sft
+
+    override def hasNext: Boolean = false
+
+    override def next(): SimpleFeature = {
+      var i = 0
+      while (i < sft.getAttributeCount) {
+        feature.setAttributeNoConvert(i, null)
+        i += 1
+      }
+      feature.getUserData.clear()
+      feature.setId("")
+      feature
+    }
+
+    override def write(): Unit = {
+      if (!java.lang.Boolean.TRUE.equals(feature.getUserData.get(Hints.USE_PROVIDED_FID))) {
+        feature.setId(idGenerator.createId(sft, feature))
+      }
+      writer.write(feature, update = false)
+    }
+
+    override def remove(): Unit = throw new UnsupportedOperationException("Bulk ingest does not support deletes")
+
+    override def close(): Unit = writer.close()
+  }
 }
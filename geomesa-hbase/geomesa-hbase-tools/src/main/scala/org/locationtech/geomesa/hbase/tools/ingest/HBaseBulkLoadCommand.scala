@@ -9,11 +9,8 @@
 package org.locationtech.geomesa.hbase.tools.ingest
 
 import com.beust.jcommander.{Parameter, ParameterException, Parameters}
-import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.Path
-import org.apache.hadoop.hbase.TableName
-import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles
-import org.locationtech.geomesa.hbase.data.HBaseDataStore
+import org.locationtech.geomesa.hbase.data.{HBaseBulkWriter, HBaseDataStore}
 import org.locationtech.geomesa.hbase.tools.HBaseDataStoreCommand
 import org.locationtech.geomesa.hbase.tools.HBaseDataStoreCommand.{HBaseParams, RemoteFilterNotUsedParam}
 import org.locationtech.geomesa.hbase.tools.ingest.HBaseBulkLoadCommand.BulkLoadParams
@@ -41,15 +38,7 @@ class HBaseBulkLoadCommand extends HBaseDataStoreCommand {
 
     Command.user.info(s"Running HBase incremental load...")
     val start = System.currentTimeMillis()
-    val tableName = index.getTableNames(None) match {
-      case Seq(t) => TableName.valueOf(t) // should always be writing to a single table here
-      case tables => throw new IllegalStateException(s"Expected a single table but got: ${tables.mkString(", ")}")
-    }
-    val table = ds.connection.getTable(tableName)
-    val locator = ds.connection.getRegionLocator(tableName)
-    val config = new Configuration
-    config.set("hbase.loadincremental.validate.hfile", params.validate.toString)
-    new LoadIncrementalHFiles(config).doBulkLoad(input, ds.connection.getAdmin, table, locator)
+    HBaseBulkWriter.load(ds, index, input, params.validate)
     Command.user.info(s"HBase incremental load complete in ${TextTools.getTime(start)}")
   }
 }
@@ -18,6 +18,21 @@ object QueryProperties {
   val QueryCostType   = SystemProperty("geomesa.query.cost.type")
   val QueryTimeout    = SystemProperty("geomesa.query.timeout") // default is no timeout
 
+  // query result caching is disabled by default
+  val QueryCacheSize        = SystemProperty("geomesa.query.cache.size")
+  val QueryCacheExpiry      = SystemProperty("geomesa.query.cache.expiry", "1 minute")
+  val QueryCacheMaxFeatures = SystemProperty("geomesa.query.cache.max-features", "10000")
+
+  // caching of filter plan selection is disabled by default
+  val QueryPlanCacheSize   = SystemProperty("geomesa.query.plan.cache.size")
+  val QueryPlanCacheExpiry = SystemProperty("geomesa.query.plan.cache.expiry", "10 minutes")
+
+  // approximate memory used for sorting query results before spilling to disk
+  val SortMemoryThreshold = SystemProperty("geomesa.query.sort.memory", "128MB")
+
+  // max threads used for client-side scans, shared across all queries in the jvm
+  val ScanThreads = SystemProperty("geomesa.scan.threads")
+
   // rough upper limit on the number of ranges we will generate per query
   val ScanRangesTarget = SystemProperty("geomesa.scan.ranges.target", "2000")
 
@@ -0,0 +1,300 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.filters
+
+import java.util.Date
+
+import org.locationtech.geomesa.features.kryo.KryoBufferSimpleFeature
+import org.locationtech.geomesa.filter.expression.AttributeExpression.PropertyLiteral
+import org.locationtech.geomesa.utils.geotools.converters.FastConverter
+import org.locationtech.jts.geom.{Envelope, Geometry}
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter.MultiValuedFilter.MatchAction
+import org.opengis.filter._
+import org.opengis.filter.expression.{Literal, PropertyName}
+import org.opengis.filter.spatial.{BBOX, BinarySpatialOperator, Contains, Intersects, Within}
+import org.opengis.filter.temporal.{After, Before, BinaryTemporalOperator, During}
+import org.opengis.temporal.Period
+
+/**
+  * Evaluates a filter directly against a serialized kryo feature, without deserializing attributes
+  * where possible.
+  *
+  * Date predicates are evaluated against the serialized millisecond values. Spatial predicates are first
+  * evaluated against the serialized geometry bounds, and only deserialize the geometry if the bounds
+  * aren't sufficient to determine the result. Other predicates fall back to regular filter evaluation,
+  * which will lazily deserialize the attributes being compared.
+  *
+  * Instances hold reusable state, and are not thread-safe
+  */
+trait KryoBufferFilter {
+
+  /**
+    * Evaluate the filter
+    *
+    * @param sf feature, with the serialized buffer set
+    * @return
+    */
+  def evaluate(sf: KryoBufferSimpleFeature): Boolean
+}
+
+object KryoBufferFilter {
+
+  import scala.collection.JavaConverters._
+
+  /**
+    * Create a buffer filter. The filter is expected to have been optimized through the `FastFilterFactory`
+    *
+    * @param sft simple feature type of the serialized features
+    * @param filter filter
+    * @return
+    */
+  def apply(sft: SimpleFeatureType, filter: Filter): KryoBufferFilter = {
+    filter match {
+      case Filter.INCLUDE        => IncludeBufferFilter
+      case Filter.EXCLUDE        => ExcludeBufferFilter
+      case f: And                => new AndBufferFilter(f.getChildren.asScala.map(apply(sft, _)).toArray)
+      case f: Or                 => new OrBufferFilter(f.getChildren.asScala.map(apply(sft, _)).toArray)
+      case f: Not                => new NotBufferFilter(apply(sft, f.getFilter))
+      case f: BBOX               => spatial(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: Intersects         => spatial(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: Within             => spatial(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: Contains           => spatial(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: During             => during(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: Before             => temporal(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: After              => temporal(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: PropertyIsBetween  => between(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f: BinaryComparisonOperator if f.getMatchAction == MatchAction.ANY =>
+        comparison(sft, f).getOrElse(new DelegateBufferFilter(f))
+      case f => new DelegateBufferFilter(f)
+    }
+  }
+
+  private def spatial(sft: SimpleFeatureType, filter: BinarySpatialOperator): Option[KryoBufferFilter] = {
+    org.locationtech.geomesa.filter.checkOrder(filter.getExpression1, filter.getExpression2).collect {
+      case PropertyLiteral(name, lit, flipped) if geometryIndex(sft, name) != -1 =>
+        val geom = FastConverter.convert(lit.evaluate(null), classOf[Geometry])
+        if (geom == null || geom.isEmpty) { new DelegateBufferFilter(filter) } else {
+          val i = geometryIndex(sft, name)
+          val bounds = geom.getEnvelopeInternal
+          filter match {
+            case _: BBOX       => new IntersectsBufferFilter(filter, i, bounds, rectangle = true)
+            case _: Intersects => new IntersectsBufferFilter(filter, i, bounds, geom.isRectangle)
+            // for flipped within/contains, the literal is within/contains the attribute instead
+            case _: Within if flipped   => new ContainsBufferFilter(filter, i, bounds)
+            case _: Within              => new WithinBufferFilter(filter, i, bounds)
+            case _: Contains if flipped => new WithinBufferFilter(filter, i, bounds)
+            case _: Contains            => new ContainsBufferFilter(filter, i, bounds)
+            case _                      => new DelegateBufferFilter(filter)
+          }
+        }
+    }
+  }
+
+  private def during(sft: SimpleFeatureType, filter: During): Option[KryoBufferFilter] = {
+    org.locationtech.geomesa.filter.checkOrder(filter.getExpression1, filter.getExpression2).collect {
+      case PropertyLiteral(name, lit, false) if dateIndex(sft, name) != -1 =>
+        val period = FastConverter.convert(lit.evaluate(null), classOf[Period])
+        if (period == null) { new DelegateBufferFilter(filter) } else {
+          // during is exclusive on both ends
+          val lower = period.getBeginning.getPosition.getDate.getTime + 1L
+          val upper = period.getEnding.getPosition.getDate.getTime - 1L
+          new DateRangeBufferFilter(dateIndex(sft, name), lower, upper)
+        }
+    }
+  }
+
+  private def temporal(sft: SimpleFeatureType, filter: BinaryTemporalOperator): Option[KryoBufferFilter] = {
+    org.locationtech.geomesa.filter.checkOrder(filter.getExpression1, filter.getExpression2).collect {
+      case PropertyLiteral(name, lit, flipped) if dateIndex(sft, name) != -1 =>
+        val date = FastConverter.convert(lit.evaluate(null), classOf[Date])
+        if (date == null) { new DelegateBufferFilter(filter) } else {
+          val i = dateIndex(sft, name)
+          val millis = date.getTime
+          // before/after are exclusive
+          val isBefore = filter.isInstanceOf[Before]
+          if (isBefore != flipped) {
+            new DateRangeBufferFilter(i, Long.MinValue, millis - 1L)
+          } else {
+            new DateRangeBufferFilter(i, millis + 1L, Long.MaxValue)
+          }
+        }
+    }
+  }
+
+  private def between(sft: SimpleFeatureType, filter: PropertyIsBetween): Option[KryoBufferFilter] = {
+    (filter.getExpression, filter.getLowerBoundary, filter.getUpperBoundary) match {
+      case (p: PropertyName, lo: Literal, hi: Literal) if dateIndex(sft, p.getPropertyName) != -1 =>
+        val lower = FastConverter.convert(lo.evaluate(null), classOf[Date])
+        val upper = FastConverter.convert(hi.evaluate(null), classOf[Date])
+        if (lower == null || upper == null) { None } else {
+          Some(new DateRangeBufferFilter(dateIndex(sft, p.getPropertyName), lower.getTime, upper.getTime))
+        }
+
+      case _ => None
+    }
+  }
+
+  private def comparison(sft: SimpleFeatureType, filter: BinaryComparisonOperator): Option[KryoBufferFilter] = {
+    org.locationtech.geomesa.filter.checkOrder(filter.getExpression1, filter.getExpression2).flatMap {
+      case PropertyLiteral(name, lit, flipped) if dateIndex(sft, name) != -1 =>
+        val date = FastConverter.convert(lit.evaluate(null), classOf[Date])
+        if (date == null) { None } else {
+          val i = dateIndex(sft, name)
+          val millis = date.getTime
+          // normalize to 'attribute op literal'
+          val range = (filter, flipped) match {
+            case (_: PropertyIsGreaterThan, false)          => Some((millis + 1L, Long.MaxValue))
+            case (_: PropertyIsGreaterThan, true)           => Some((Long.MinValue, millis - 1L))
+            case (_: PropertyIsGreaterThanOrEqualTo, false) => Some((millis, Long.MaxValue))
+            case (_: PropertyIsGreaterThanOrEqualTo, true)  => Some((Long.MinValue, millis))
+            case (_: PropertyIsLessThan, false)             => Some((Long.MinValue, millis - 1L))
+            case (_: PropertyIsLessThan, true)              => Some((millis + 1L, Long.MaxValue))
+            case (_: PropertyIsLessThanOrEqualTo, false)    => Some((Long.MinValue, millis))
+            case (_: PropertyIsLessThanOrEqualTo, true)     => Some((millis, Long.MaxValue))
+            case (_: PropertyIsEqualTo, _)                  => Some((millis, millis))
+            case _ => None
+          }
+          range.map { case (lower, upper) => new DateRangeBufferFilter(i, lower, upper) }
+        }
+
+      case _ => None
+    }
+  }
+
+  private def geometryIndex(sft: SimpleFeatureType, name: String): Int = {
+    val i = sft.indexOf(name)
+    if (i != -1 && classOf[Geometry].isAssignableFrom(sft.getDescriptor(i).getType.getBinding)) { i } else { -1 }
+  }
+
+  private def dateIndex(sft: SimpleFeatureType, name: String): Int = {
+    val i = sft.indexOf(name)
+    if (i != -1 && classOf[Date].isAssignableFrom(sft.getDescriptor(i).getType.getBinding)) { i } else { -1 }
+  }
+
+  private object IncludeBufferFilter extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = true
+  }
+
+  private object ExcludeBufferFilter extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = false
+  }
+
+  /**
+    * Fall-back to regular filter evaluation
+    *
+    * @param filter filter
+    */
+  private class DelegateBufferFilter(filter: Filter) extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = filter.evaluate(sf)
+  }
+
+  private class AndBufferFilter(children: Array[KryoBufferFilter]) extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = {
+      var i = 0
+      while (i < children.length) {
+        if (!children(i).evaluate(sf)) {
+          return false
+        }
+        i += 1
+      }
+      true
+    }
+  }
+
+  private class OrBufferFilter(children: Array[KryoBufferFilter]) extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = {
+      var i = 0
+      while (i < children.length) {
+        if (children(i).evaluate(sf)) {
+          return true
+        }
+        i += 1
+      }
+      false
+    }
+  }
+
+  private class NotBufferFilter(child: KryoBufferFilter) extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = !child.evaluate(sf)
+  }
+
+  /**
+    * Date range, inclusive on both ends
+    *
+    * @param index attribute index
+    * @param lower lower bound, in millis
+    * @param upper upper bound, in millis
+    */
+  private class DateRangeBufferFilter(index: Int, lower: Long, upper: Long) extends KryoBufferFilter {
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = {
+      !sf.isNull(index) && {
+        val millis = sf.getDateAsLong(index)
+        millis >= lower && millis <= upper
+      }
+    }
+  }
+
+  /**
+    * Intersects-style predicate. Geometries with disjoint bounds are rejected without deserialization. If
+    * the literal is a rectangle, geometries with bounds inside it are accepted without deserialization
+    *
+    * @param filter full filter
+    * @param index geometry attribute index
+    * @param bounds bounds of the filter literal
+    * @param rectangle the filter literal is a rectangle
+    */
+  private class IntersectsBufferFilter(filter: Filter, index: Int, bounds: Envelope, rectangle: Boolean)
+      extends KryoBufferFilter {
+
+    private val envelope = new Envelope()
+
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean = {
+      if (!sf.getGeometryEnvelope(index, envelope) || !bounds.intersects(envelope)) {
+        false
+      } else if (rectangle && bounds.contains(envelope)) {
+        true
+      } else {
+        filter.evaluate(sf)
+      }
+    }
+  }
+
+  /**
+    * Attribute within literal. Geometries with bounds not contained in the literal are rejected
+    * without deserialization
+    *
+    * @param filter full filter
+    * @param index geometry attribute index
+    * @param bounds bounds of the filter literal
+    */
+  private class WithinBufferFilter(filter: Filter, index: Int, bounds: Envelope) extends KryoBufferFilter {
+
+    private val envelope = new Envelope()
+
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean =
+      sf.getGeometryEnvelope(index, envelope) && bounds.contains(envelope) && filter.evaluate(sf)
+  }
+
+  /**
+    * Attribute contains literal. Geometries with bounds that don't contain the literal are rejected
+    * without deserialization
+    *
+    * @param filter full filter
+    * @param index geometry attribute index
+    * @param bounds bounds of the filter literal
+    */
+  private class ContainsBufferFilter(filter: Filter, index: Int, bounds: Envelope) extends KryoBufferFilter {
+
+    private val envelope = new Envelope()
+
+    override def evaluate(sf: KryoBufferSimpleFeature): Boolean =
+      sf.getGeometryEnvelope(index, envelope) && envelope.contains(bounds) && filter.evaluate(sf)
+  }
+}
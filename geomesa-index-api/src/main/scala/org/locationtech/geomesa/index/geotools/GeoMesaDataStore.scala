@@ -208,6 +208,9 @@ abstract class GeoMesaDataStore[DS <: GeoMesaDataStore[DS]](val config: GeoMesaD
 
   // create the new index tables (if not using partitioned tables)
   override protected def onSchemaUpdated(sft: SimpleFeatureType, previous: SimpleFeatureType): Unit = {
+    queryPlanner.invalidate(sft.getTypeName)
+    queryPlanner.invalidate(previous.getTypeName)
+
     val partitioned = TablePartition.partitioned(sft)
 
     // check for column renaming
@@ -290,6 +293,7 @@ abstract class GeoMesaDataStore[DS <: GeoMesaDataStore[DS]](val config: GeoMesaD
 
   // delete the index tables
   override protected def onSchemaDeleted(sft: SimpleFeatureType): Unit = {
+    queryPlanner.invalidate(sft.getTypeName)
     // noinspection ScalaDeprecation
     if (sft.isTableSharing && getTypeNames.exists(t => t != sft.getTypeName && getSchema(t).isTableSharing)) {
       manager.indices(sft).par.foreach { index =>
@@ -512,6 +516,14 @@ abstract class GeoMesaDataStore[DS <: GeoMesaDataStore[DS]](val config: GeoMesaD
     queryPlanner.planQuery(sft, query, index, explainer)
   }
 
+  /**
+    * Gets the authorizations of the current user, for data stores that support visibilities. Used to
+    * ensure that cached query results are not shared between users
+    *
+    * @return
+    */
+  def getAuthorizations: Seq[String] = Seq.empty
+
   /**
     * Gets the geomesa version
     *
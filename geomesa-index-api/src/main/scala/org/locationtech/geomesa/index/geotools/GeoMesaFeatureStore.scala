@@ -124,6 +124,7 @@ class GeoMesaFeatureStore(ds: DataStore with HasGeoMesaStats, sft: SimpleFeature
           }
         }
         gm.stats.writer.clear(sft)
+        gm.queryPlanner.invalidate(sft.getTypeName)
 
       case _ =>
         WithClose(writer(Some(filter))) { writer =>
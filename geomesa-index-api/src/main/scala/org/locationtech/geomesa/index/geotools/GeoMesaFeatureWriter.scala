@@ -41,6 +41,9 @@ trait GeoMesaFeatureWriter[DS <: GeoMesaDataStore[DS]] extends SimpleFeatureWrit
 
   protected val statUpdater: StatUpdater = ds.stats.writer.updater(sft)
 
+  // tracks writes since the last flush, for invalidating cached query results
+  private var dirty = false
+
   override def getFeatureType: SimpleFeatureType = sft
 
   protected def getWriter(feature: SimpleFeature): IndexWriter
@@ -55,12 +58,14 @@ trait GeoMesaFeatureWriter[DS <: GeoMesaDataStore[DS]] extends SimpleFeatureWrit
         throw new IllegalArgumentException(s"Error indexing feature '$attributes'", e)
     }
     statUpdater.add(writable)
+    written()
   }
 
   protected def removeFeature(feature: SimpleFeature): Unit = {
     // the feature has come directly from our reader, so it should be valid and already have a FID
     getWriter(feature).delete(feature)
     statUpdater.remove(feature)
+    written()
   }
 
   protected def suppressException(e: Throwable): Unit = exceptions += e
@@ -74,6 +79,27 @@ trait GeoMesaFeatureWriter[DS <: GeoMesaDataStore[DS]] extends SimpleFeatureWrit
     }
   }
 
+  /**
+    * Invalidate any cached query results once pending writes have been flushed
+    */
+  protected def flushed(): Unit = {
+    if (dirty) {
+      ds.queryPlanner.invalidate(sft.getTypeName)
+      dirty = false
+    }
+  }
+
+  /**
+    * Invalidate any cached query results on the first write after a flush, as buffered writes
+    * may become visible before we explicitly flush them
+    */
+  private def written(): Unit = {
+    if (!dirty) {
+      ds.queryPlanner.invalidate(sft.getTypeName)
+      dirty = true
+    }
+  }
+
   // returns a temporary id - we will replace it just before write
   protected def nextFeatureId: String = GeoMesaFeatureWriter.tempFeatureIds.getAndIncrement().toString
 }
@@ -151,12 +177,14 @@ object GeoMesaFeatureWriter extends LazyLogging {
     override def flush(): Unit = {
       FlushQuietly(writer).foreach(suppressException)
       FlushQuietly(statUpdater).foreach(suppressException)
+      flushed()
       propagateExceptions()
     }
 
     override def close(): Unit = {
       CloseQuietly(writer).foreach(suppressException)
       CloseQuietly(statUpdater).foreach(suppressException)
+      flushed()
       propagateExceptions()
     }
   }
@@ -196,12 +224,14 @@ object GeoMesaFeatureWriter extends LazyLogging {
     override def flush(): Unit = {
       view.foreach { case (_, writer) => FlushQuietly(writer).foreach(suppressException) }
       FlushQuietly(statUpdater).foreach(suppressException)
+      flushed()
       propagateExceptions()
     }
 
     override def close(): Unit = {
       view.foreach { case (_, writer) => CloseQuietly(writer).foreach(suppressException) }
       CloseQuietly(statUpdater).foreach(suppressException)
+      flushed()
       propagateExceptions()
     }
   }
@@ -0,0 +1,106 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.index.z3
+
+import java.util.concurrent.RecursiveTask
+
+import org.locationtech.geomesa.index.api.BoundedRange
+import org.locationtech.sfcurve.IndexRange
+
+/**
+  * Generates scan ranges for queries that span multiple time bins.
+  *
+  * Each distinct set of times is only computed once (typically the whole period, plus the partial
+  * periods at each end of an interval). When there is more than one distinct set of times, the computations
+  * are forked into the common fork-join pool, so that they run in parallel. Ranges are returned lazily in bin
+  * order, so that the ranges for the first bins can be consumed while later bins are still being computed.
+  *
+  * Ranges that are adjacent across bins, i.e. where one bin is covered to the end of the curve and the
+  * next bin is covered from the start of the curve, are merged together.
+  */
+object BinnedRanges {
+
+  /**
+    * Get ranges for the given bins
+    *
+    * @param bins map of bins to the times in that bin
+    * @param bounds the min and max values of the curve being used
+    * @param ranges function to compute the curve ranges for a set of times
+    * @tparam T time type
+    * @return
+    */
+  def apply[T](
+      bins: Map[Short, T],
+      bounds: => (Long, Long))
+     (ranges: T => Seq[IndexRange]): Iterator[BoundedRange[Z3IndexKey]] = {
+    val sorted = bins.toSeq.sortBy(_._1)
+    val distinct = sorted.map(_._2).distinct
+
+    val lookup: T => Seq[IndexRange] = if (distinct.lengthCompare(1) <= 0) {
+      // nothing to parallelize
+      lazy val single = distinct.headOption.map(ranges).getOrElse(Seq.empty)
+      _ => single
+    } else {
+      val tasks = distinct.map { times =>
+        val task = new RecursiveTask[Seq[IndexRange]]() {
+          override def compute(): Seq[IndexRange] = ranges(times)
+        }
+        times -> task.fork()
+      }.toMap
+      times => tasks(times).join()
+    }
+
+    val all = sorted.iterator.flatMap { case (bin, times) =>
+      lookup(times).iterator.map(r => BoundedRange(Z3IndexKey(bin, r.lower), Z3IndexKey(bin, r.upper)))
+    }
+
+    new MergingIterator(all, bounds)
+  }
+
+  /**
+    * Merges adjacent ranges. Ranges are expected to be sorted
+    *
+    * @param ranges ranges
+    * @param bounds the min and max values of the curve being used
+    */
+  private class MergingIterator(ranges: Iterator[BoundedRange[Z3IndexKey]], bounds: => (Long, Long))
+      extends Iterator[BoundedRange[Z3IndexKey]] {
+
+    private lazy val limits = bounds
+
+    private var pending: BoundedRange[Z3IndexKey] = if (ranges.hasNext) { ranges.next() } else { null }
+
+    override def hasNext: Boolean = pending != null
+
+    override def next(): BoundedRange[Z3IndexKey] = {
+      if (pending == null) {
+        throw new NoSuchElementException("next on empty iterator")
+      }
+      var current = pending
+      pending = null
+      while (pending == null && ranges.hasNext) {
+        val range = ranges.next()
+        if (adjacent(current.upper, range.lower)) {
+          current = BoundedRange(current.lower, if (range.upper > current.upper) { range.upper } else { current.upper })
+        } else {
+          pending = range
+        }
+      }
+      current
+    }
+
+    private def adjacent(upper: Z3IndexKey, lower: Z3IndexKey): Boolean = {
+      if (upper.bin == lower.bin) {
+        upper.z == Long.MaxValue || lower.z <= upper.z + 1
+      } else {
+        lower.bin == upper.bin + 1 && upper.z >= limits._2 && lower.z <= limits._1
+      }
+    }
+  }
+}
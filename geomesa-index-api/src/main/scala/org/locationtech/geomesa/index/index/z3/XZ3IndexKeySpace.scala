@@ -177,13 +177,15 @@ class XZ3IndexKeySpace(val sft: SimpleFeatureType, val sharding: ShardStrategy,
     def toZRanges(t: (Double, Double)): Seq[IndexRange] =
       sfc.ranges(xy.map { case (xmin, ymin, xmax, ymax) => (xmin, ymin, t._1, xmax, ymax, t._2) }, target)
 
-    lazy val wholePeriodRanges = toZRanges(sfc.zBounds)
-
-    val bounded = timesByBin.iterator.flatMap { case (bin, times) =>
-      val zs = if (times.eq(sfc.zBounds)) { wholePeriodRanges } else { toZRanges(times) }
-      zs.map(r => BoundedRange(Z3IndexKey(bin, r.lower), Z3IndexKey(bin, r.upper)))
+    def bounds: (Long, Long) = {
+      val whole = sfc.ranges(sfc.xBounds._1, sfc.yBounds._1, sfc.zBounds._1,
+        sfc.xBounds._2, sfc.yBounds._2, sfc.zBounds._2, Some(1))
+      (whole.head.lower, whole.last.upper)
     }
 
+    // ranges are computed in parallel across bins, and merged where adjacent
+    val bounded = BinnedRanges(timesByBin, bounds)(toZRanges)
+
     val unbounded = unboundedBins.iterator.map {
       case (lower, Short.MaxValue) => LowerBoundedRange(Z3IndexKey(lower, 0L))
       case (0, upper)              => UpperBoundedRange(Z3IndexKey(upper, Long.MaxValue))
@@ -25,7 +25,6 @@ import org.locationtech.geomesa.index.utils.Explainer
 import org.locationtech.geomesa.utils.geotools.{GeometryUtils, WholeWorldPolygon}
 import org.locationtech.geomesa.utils.index.ByteArrays
 import org.locationtech.jts.geom.{Geometry, Point}
-import org.locationtech.sfcurve.IndexRange
 import org.opengis.feature.simple.SimpleFeatureType
 import org.opengis.filter.Filter
 
@@ -167,14 +166,10 @@ class Z3IndexKeySpace(val sft: SimpleFeatureType,
       math.max(1, if (timesByBin.isEmpty) { t.toInt } else { t.toInt / timesByBin.size } / multiplier)
     }
 
-    def toZRanges(t: Seq[(Long, Long)]): Seq[IndexRange] = z3.ranges(xy, t, 64, target)
+    def bounds: (Long, Long) = (0L, z3.index(z3.lon.max, z3.lat.max, z3.time.max.toLong).z)
 
-    lazy val wholePeriodRanges = toZRanges(z3.wholePeriod)
-
-    val bounded = timesByBin.iterator.flatMap { case (bin, times) =>
-      val zs = if (times.eq(z3.wholePeriod)) { wholePeriodRanges } else { toZRanges(times) }
-      zs.map(range => BoundedRange(Z3IndexKey(bin, range.lower), Z3IndexKey(bin, range.upper)))
-    }
+    // ranges are computed in parallel across bins, and merged where adjacent
+    val bounded = BinnedRanges(timesByBin, bounds)(t => z3.ranges(xy, t, 64, target))
 
     val unbounded = unboundedBins.iterator.map {
       case (0, Short.MaxValue)     => UnboundedRange(Z3IndexKey(0, 0L))
@@ -14,6 +14,7 @@ import org.locationtech.geomesa.features.SerializationOption.SerializationOption
 import org.locationtech.geomesa.features.TransformSimpleFeature
 import org.locationtech.geomesa.features.kryo.KryoBufferSimpleFeature
 import org.locationtech.geomesa.index.api.GeoMesaFeatureIndex
+import org.locationtech.geomesa.index.filters.KryoBufferFilter
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
 import org.opengis.filter.Filter
@@ -62,12 +63,12 @@ trait AggregatingScan[T <: AnyRef { def isEmpty: Boolean; def clear(): Unit }]
     hasTransform = transform.isDefined
 
     val sampling = sample(options)
-    val cql = options.get(CqlOpt).map(IteratorCache.filter(sft, spec, _))
+    val cql = options.get(CqlOpt).map(IteratorCache.filter(sft, spec, _)).map(bufferFilter)
     validate = (cql, sampling) match {
       case (None, None)             => _ => true
-      case (Some(filt), None)       => filt.evaluate(_)
+      case (Some(filt), None)       => filt
       case (None, Some(samp))       => samp.apply
-      case (Some(filt), Some(samp)) => f => filt.evaluate(f) && samp.apply(f)
+      case (Some(filt), Some(samp)) => f => filt(f) && samp.apply(f)
     }
     result = initResult(sft, if (hasTransform) { Some(transformSft) } else { None }, options)
   }
@@ -101,6 +102,20 @@ trait AggregatingScan[T <: AnyRef { def isEmpty: Boolean; def clear(): Unit }]
     }
   }
 
+  /**
+    * Evaluates the filter against the serialized bytes when possible
+    *
+    * @param filter filter
+    * @return
+    */
+  private def bufferFilter(filter: Filter): SimpleFeature => Boolean = {
+    val buffer = KryoBufferFilter(sft, filter)
+    f => f match {
+      case k: KryoBufferSimpleFeature => buffer.evaluate(k)
+      case _ => filter.evaluate(f)
+    }
+  }
+
   private def setValues(row: Array[Byte], rowOffset: Int, rowLength: Int,
                         value: Array[Byte], valueOffset: Int, valueLength: Int): Unit = {
     reusableSf.setIdBuffer(row, rowOffset, rowLength)
@@ -168,7 +168,7 @@ object ArrowScan {
       toLookup.flatMap(stats.getTopK[AnyRef](sft, _)).map(k => k.property -> k).toMap
     }
 
-    if (hints.isArrowDoublePass ||
+    if (hints.isArrowStreaming || hints.isArrowDoublePass ||
           dictionaryFields.forall(f => providedDictionaries.contains(f) || cachedDictionaries.contains(f))) {
       // we have all the dictionary values, or we will run a query to determine them up front
       val dictionaries = createDictionaries(stats, sft, filter, dictionaryFields, providedDictionaries, cachedDictionaries)
@@ -176,7 +176,9 @@ object ArrowScan {
         TypeKey       -> Configuration.Types.BatchType,
         DictionaryKey -> encodeDictionaries(dictionaries)
       )
-      ArrowScanConfig(config, new BatchReducer(arrowSft, dictionaries, encoding, batchSize, sort))
+      // when streaming, batches are returned as they arrive without merging, so each batch is only sorted locally
+      val reduceSort = if (hints.isArrowStreaming) { None } else { sort }
+      ArrowScanConfig(config, new BatchReducer(arrowSft, dictionaries, encoding, batchSize, reduceSort))
     } else if (hints.isArrowMultiFile) {
       val config = baseConfig ++ Map(
         TypeKey       -> Configuration.Types.FileType,
@@ -0,0 +1,215 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.planning
+
+import java.util.concurrent.TimeUnit
+
+import com.github.benmanes.caffeine.cache.{Cache, Caffeine}
+import org.locationtech.geomesa.index.api.FilterPlan
+import org.locationtech.geomesa.index.conf.QueryProperties
+import org.locationtech.geomesa.index.planning.FilterPlanCache.{CacheKey, CachedStrategy}
+import org.locationtech.geomesa.index.planning.QueryPlanner.CostEvaluation.CostEvaluation
+import org.locationtech.geomesa.index.utils.Explainer
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter._
+import org.opengis.filter.expression.{BinaryExpression, Expression, Function, Literal, PropertyName}
+import org.opengis.filter.spatial.BinarySpatialOperator
+import org.opengis.filter.temporal.BinaryTemporalOperator
+
+import scala.concurrent.duration.Duration
+
+/**
+  * Caches the filter plan selected for a query, keyed by the 'shape' of the query filter, i.e. the filter
+  * with any literal values removed. Queries that only differ in their literal values will re-use the
+  * indices chosen for the first query, which avoids re-evaluating the cost of each option.
+  *
+  * The query filter still has to be split for the new literal values, and the ranges are calculated as normal.
+  * If the cached indices are not available for the new values, the plan will be selected as normal.
+  *
+  * @param size max number of filter plans to cache
+  * @param expiry max time to keep a cached plan, so that changes in data statistics are picked up
+  */
+class FilterPlanCache(size: Long, expiry: Duration) {
+
+  import scala.collection.JavaConverters._
+
+  private val cache: Cache[CacheKey, Seq[CachedStrategy]] = {
+    val builder = Caffeine.newBuilder().maximumSize(size)
+    if (expiry.isFinite) {
+      builder.expireAfterWrite(expiry.toMillis, TimeUnit.MILLISECONDS)
+    }
+    builder.build[CacheKey, Seq[CachedStrategy]]()
+  }
+
+  /**
+    * Select a filter plan, using a cached selection if available
+    *
+    * @param sft simple feature type
+    * @param filter query filter
+    * @param transform query transform
+    * @param evaluation cost evaluation type
+    * @param options possible filter plans
+    * @param explain explain logging
+    * @param select select the filter plan, if there isn't a cached selection
+    * @return
+    */
+  def select(
+      sft: SimpleFeatureType,
+      filter: Filter,
+      transform: Option[SimpleFeatureType],
+      evaluation: CostEvaluation,
+      options: Seq[FilterPlan],
+      explain: Explainer)
+     (select: => FilterPlan): FilterPlan = {
+    val names = transform.map(_.getAttributeDescriptors.asScala.map(_.getLocalName).mkString(","))
+    val key = CacheKey(sft.getTypeName, FilterPlanCache.template(filter), names, evaluation)
+    val cached = Option(cache.getIfPresent(key)).flatMap(c => options.find(o => FilterPlanCache.strategies(o) == c))
+    cached match {
+      case Some(plan) =>
+        explain("Using cached filter plan selection")
+        plan
+
+      case None =>
+        val plan = select
+        cache.put(key, FilterPlanCache.strategies(plan))
+        plan
+    }
+  }
+}
+
+object FilterPlanCache {
+
+  import scala.collection.JavaConverters._
+
+  /**
+    * Create a cache based on the system properties, if enabled
+    *
+    * @return
+    */
+  def apply(): Option[FilterPlanCache] = {
+    import QueryProperties.{QueryPlanCacheExpiry, QueryPlanCacheSize}
+    QueryPlanCacheSize.toLong.filter(_ > 0).map { size =>
+      new FilterPlanCache(size, QueryPlanCacheExpiry.toDuration.getOrElse(Duration(10, TimeUnit.MINUTES)))
+    }
+  }
+
+  /**
+    * Gets a template for a filter, consisting of the filter structure and attributes, without any literal values.
+    * Filters that only differ by their literal values will have the same template
+    *
+    * @param filter filter
+    * @return
+    */
+  def template(filter: Filter): String = {
+    val builder = new StringBuilder()
+    appendFilter(filter, builder)
+    builder.toString
+  }
+
+  private def strategies(plan: FilterPlan): Seq[CachedStrategy] =
+    plan.strategies.map(s => CachedStrategy(s.index.identifier, s.primary.map(template)))
+
+  private def appendFilter(filter: Filter, builder: StringBuilder): Unit = {
+    filter match {
+      case f: BinaryLogicOperator =>
+        builder.append(if (f.isInstanceOf[And]) { "AND(" } else { "OR(" })
+        appendFilters(f.getChildren.asScala, builder)
+        builder.append(')')
+
+      case f: Not =>
+        builder.append("NOT(")
+        appendFilter(f.getFilter, builder)
+        builder.append(')')
+
+      case f: BinarySpatialOperator  => appendOperator(f, f.getExpression1, f.getExpression2, builder)
+      case f: BinaryTemporalOperator => appendOperator(f, f.getExpression1, f.getExpression2, builder)
+      case f: BinaryComparisonOperator =>
+        appendOperator(f, f.getExpression1, f.getExpression2, builder)
+        builder.append(if (f.isMatchingCase) { "" } else { "i" })
+
+      case f: PropertyIsBetween =>
+        builder.append("BETWEEN(")
+        appendExpressions(Seq(f.getExpression, f.getLowerBoundary, f.getUpperBoundary), builder)
+        builder.append(')')
+
+      // note: the like pattern determines whether the attribute index can be used, but that is
+      // checked when selecting the cached plan
+      case f: PropertyIsLike =>
+        builder.append("LIKE(")
+        appendExpression(f.getExpression, builder)
+        builder.append(if (f.isMatchingCase) { ")" } else { ")i" })
+
+      case f: PropertyIsNull =>
+        builder.append("NULL(")
+        appendExpression(f.getExpression, builder)
+        builder.append(')')
+
+      case f: PropertyIsNil =>
+        builder.append("NIL(")
+        appendExpression(f.getExpression, builder)
+        builder.append(')')
+
+      case _: Id          => builder.append("ID")
+      case Filter.INCLUDE => builder.append("INCLUDE")
+      case Filter.EXCLUDE => builder.append("EXCLUDE")
+      case f              => builder.append(f.getClass.getSimpleName).append('[').append(f).append(']')
+    }
+  }
+
+  private def appendFilters(filters: Seq[Filter], builder: StringBuilder): Unit = {
+    filters.headOption.foreach(appendFilter(_, builder))
+    filters.drop(1).foreach { f => builder.append(','); appendFilter(f, builder) }
+  }
+
+  private def appendOperator(filter: Filter, e1: Expression, e2: Expression, builder: StringBuilder): Unit = {
+    builder.append(filter.getClass.getSimpleName).append('(')
+    appendExpressions(Seq(e1, e2), builder)
+    builder.append(')')
+  }
+
+  private def appendExpression(expression: Expression, builder: StringBuilder): Unit = {
+    expression match {
+      case e: PropertyName =>
+        builder.append('[').append(e.getPropertyName).append(']')
+
+      case e: Literal =>
+        builder.append('?')
+        val value = e.getValue
+        if (value != null) {
+          builder.append(value.getClass.getSimpleName)
+        }
+
+      case e: Function =>
+        builder.append(e.getName).append('(')
+        appendExpressions(e.getParameters.asScala, builder)
+        builder.append(')')
+
+      case e: BinaryExpression =>
+        builder.append(e.getClass.getSimpleName).append('(')
+        appendExpressions(Seq(e.getExpression1, e.getExpression2), builder)
+        builder.append(')')
+
+      case e =>
+        builder.append(e)
+    }
+  }
+
+  private def appendExpressions(expressions: Seq[Expression], builder: StringBuilder): Unit = {
+    expressions.headOption.foreach(appendExpression(_, builder))
+    expressions.drop(1).foreach { e => builder.append(','); appendExpression(e, builder) }
+  }
+
+  private case class CacheKey(
+      typeName: String,
+      filter: String,
+      transform: Option[String],
+      evaluation: CostEvaluation)
+
+  private case class CachedStrategy(index: String, primary: Option[String])
+}
@@ -27,14 +27,13 @@ import org.locationtech.geomesa.index.geoserver.ViewParams
 import org.locationtech.geomesa.index.iterators.{ArrowScan, DensityScan, StatsScan}
 import org.locationtech.geomesa.index.planning.LocalQueryRunner.ArrowDictionaryHook
 import org.locationtech.geomesa.index.stats.GeoMesaStats
-import org.locationtech.geomesa.index.utils.{Explainer, FeatureSampler, Reprojection}
+import org.locationtech.geomesa.index.utils.{Explainer, ExternalSortingSimpleFeatureIterator, FeatureSampler, Reprojection}
 import org.locationtech.geomesa.security.{AuthorizationsProvider, SecurityUtils, VisibilityEvaluator}
 import org.locationtech.geomesa.utils.bin.BinaryEncodeCallback.ByteStreamCallback
 import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder
 import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder.EncodingOptions
 import org.locationtech.geomesa.utils.collection.CloseableIterator
 import org.locationtech.geomesa.utils.geotools.{GeometryUtils, RenderingGrid, SimpleFeatureOrdering, SimpleFeatureTypes}
-import org.locationtech.geomesa.utils.iterators.SortingSimpleFeatureIterator
 import org.locationtech.geomesa.utils.stats.{Stat, TopK}
 import org.locationtech.jts.geom.Envelope
 import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
@@ -83,7 +82,7 @@ abstract class LocalQueryRunner(stats: GeoMesaStats, authProvider: Option[Author
     var result = transform(sft, iter, query.getHints.getTransform, query.getHints, hook)
 
     query.getHints.getSortFields.foreach { sort =>
-      result = new SortingSimpleFeatureIterator(result, sort)
+      result = new ExternalSortingSimpleFeatureIterator(result, sort)
     }
 
     query.getHints.getMaxFeatures.foreach { maxFeatures =>
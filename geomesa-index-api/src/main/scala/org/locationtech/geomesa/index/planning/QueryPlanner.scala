@@ -22,12 +22,11 @@ import org.locationtech.geomesa.index.geotools.GeoMesaDataStore
 import org.locationtech.geomesa.index.iterators.{BinAggregatingScan, DensityScan}
 import org.locationtech.geomesa.index.planning.QueryInterceptor.QueryInterceptorFactory
 import org.locationtech.geomesa.index.utils.Reprojection.QueryReferenceSystems
-import org.locationtech.geomesa.index.utils.{ExplainLogging, Explainer, Reprojection}
+import org.locationtech.geomesa.index.utils.{ExplainLogging, Explainer, ExternalSortingSimpleFeatureIterator, Reprojection}
 import org.locationtech.geomesa.utils.bin.BinaryOutputEncoder
 import org.locationtech.geomesa.utils.cache.SoftThreadLocal
 import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
 import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
-import org.locationtech.geomesa.utils.iterators.SortingSimpleFeatureIterator
 import org.locationtech.geomesa.utils.stats.{MethodProfiling, StatParser}
 import org.locationtech.jts.geom.Geometry
 import org.opengis.feature.`type`.{AttributeDescriptor, GeometryDescriptor}
@@ -44,6 +43,10 @@ class QueryPlanner[DS <: GeoMesaDataStore[DS]](ds: DS) extends QueryRunner with
 
   override protected val interceptors: QueryInterceptorFactory = ds.interceptors
 
+  private val cache = QueryResultCache()
+
+  private val filterPlans = FilterPlanCache()
+
   /**
     * Plan the query, but don't execute it - used for m/r jobs and explain query
     *
@@ -60,8 +63,40 @@ class QueryPlanner[DS <: GeoMesaDataStore[DS]](ds: DS) extends QueryRunner with
     getQueryPlans(sft, query, index, output).toList // toList forces evaluation of entire iterator
   }
 
-  override def runQuery(sft: SimpleFeatureType, query: Query, explain: Explainer): CloseableIterator[SimpleFeature] = {
-    val plans = getQueryPlans(sft, query, None, explain)
+  override def runQuery(
+      sft: SimpleFeatureType,
+      original: Query,
+      explain: Explainer): CloseableIterator[SimpleFeature] = {
+    // set hints that we'll need later on, fix the query filter so it meets our expectations going forward
+    val query = configureQuery(sft, original)
+    cache match {
+      case None    => runQuery(sft, original, query, explain)
+      case Some(c) => c.query(query, ds.getAuthorizations)(runQuery(sft, original, query, explain))
+    }
+  }
+
+  /**
+    * Invalidate any cached query results for the given feature type
+    *
+    * @param typeName feature type name
+    */
+  def invalidate(typeName: String): Unit = cache.foreach(_.invalidate(typeName))
+
+  /**
+    * Execute a query
+    *
+    * @param sft simple feature type
+    * @param original original query
+    * @param query configured query
+    * @param explain explain output
+    * @return
+    */
+  private def runQuery(
+      sft: SimpleFeatureType,
+      original: Query,
+      query: Query,
+      explain: Explainer): CloseableIterator[SimpleFeature] = {
+    val plans = getQueryPlans(sft, original, query, None, explain)
 
     var iterator = SelfClosingIterator(plans.iterator).flatMap(p => p.scan(ds).map(p.resultsToFeatures.apply))
 
@@ -74,7 +109,7 @@ class QueryPlanner[DS <: GeoMesaDataStore[DS]](ds: DS) extends QueryRunner with
 
     plans.headOption.flatMap(_.sort).foreach { sort =>
       require(plans.tail.forall(_.sort.contains(sort)), "Sort must be the same in all query plans")
-      iterator = new SortingSimpleFeatureIterator(iterator, sort)
+      iterator = new ExternalSortingSimpleFeatureIterator(iterator, sort)
     }
 
     plans.headOption.flatMap(_.maxFeatures).foreach { maxFeatures =>
@@ -113,12 +148,29 @@ class QueryPlanner[DS <: GeoMesaDataStore[DS]](ds: DS) extends QueryRunner with
       original: Query,
       requested: Option[String],
       output: Explainer): Seq[QueryPlan[DS]] = {
+    // set hints that we'll need later on, fix the query filter so it meets our expectations going forward
+    getQueryPlans(sft, original, configureQuery(sft, original), requested, output)
+  }
+
+  /**
+    * Set up the query plans and strategies used to execute them
+    *
+    * @param sft simple feature type
+    * @param original original query
+    * @param query configured query to plan
+    * @param requested override index to use for executing the query
+    * @param output planning explanation output
+    * @return
+    */
+  private def getQueryPlans(
+      sft: SimpleFeatureType,
+      original: Query,
+      query: Query,
+      requested: Option[String],
+      output: Explainer): Seq[QueryPlan[DS]] = {
     import org.locationtech.geomesa.filter.filterToString
 
     profile(time => output(s"Query planning took ${time}ms")) {
-      // set hints that we'll need later on, fix the query filter so it meets our expectations going forward
-      val query = configureQuery(sft, original)
-
       val hints = query.getHints
 
       output.pushLevel(s"Planning '${query.getTypeName}' ${filterToString(query.getFilter)}")
@@ -133,8 +185,8 @@ class QueryPlanner[DS <: GeoMesaDataStore[DS]](ds: DS) extends QueryRunner with
       val requestedIndex = requested.orElse(hints.getRequestedIndex)
       val transform = query.getHints.getTransformSchema
       val evaluation = query.getHints.getCostEvaluation
-      val strategies =
-        StrategyDecider.getFilterPlan(ds, sft, query.getFilter, transform, evaluation, requestedIndex, output)
+      val strategies = StrategyDecider.getFilterPlan(ds, sft, query.getFilter, transform, evaluation,
+        requestedIndex, output, filterPlans)
       output.popLevel()
 
       var strategyCount = 1
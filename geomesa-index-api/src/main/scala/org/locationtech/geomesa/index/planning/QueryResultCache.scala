@@ -0,0 +1,162 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.planning
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+
+import com.github.benmanes.caffeine.cache.{Cache, Caffeine}
+import com.typesafe.scalalogging.LazyLogging
+import org.geotools.data.Query
+import org.geotools.filter.text.ecql.ECQL
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.index.conf.QueryProperties
+import org.locationtech.geomesa.index.geoserver.ViewParams
+import org.locationtech.geomesa.index.planning.QueryResultCache.{CacheKey, CachedResults}
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.opengis.feature.simple.SimpleFeature
+
+import scala.collection.mutable.ArrayBuffer
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+
+/**
+  * Caches the results of queries, including aggregating queries (density, stats, bin, arrow). Results are keyed by
+  * feature type, filter, query hints and user authorizations.
+  *
+  * Each feature type has a generation counter, which is incremented whenever the type is written to through
+  * the data store. Cached results are only returned if they were created in the current generation.
+  * Writes made outside of this JVM can't be detected, so entries also expire after a fixed interval.
+  *
+  * @param size max number of queries to cache
+  * @param expiry max time to keep a cached result
+  * @param maxFeatures max number of features to cache for a single query - larger results will not be cached
+  */
+class QueryResultCache(size: Long, expiry: Duration, maxFeatures: Int) extends LazyLogging {
+
+  private val cache: Cache[CacheKey, CachedResults] = {
+    val builder = Caffeine.newBuilder().maximumSize(size)
+    if (expiry.isFinite) {
+      builder.expireAfterWrite(expiry.toMillis, TimeUnit.MILLISECONDS)
+    }
+    builder.build[CacheKey, CachedResults]()
+  }
+
+  private val generations = new ConcurrentHashMap[String, AtomicLong]()
+
+  /**
+    * Invalidate any cached results for a feature type
+    *
+    * @param typeName feature type name
+    */
+  def invalidate(typeName: String): Unit = generation(typeName).incrementAndGet()
+
+  /**
+    * Get cached results for a query, or run the query and cache the results
+    *
+    * @param query query, after it has been configured by the query planner
+    * @param auths authorizations of the current user
+    * @param run run the query
+    * @return
+    */
+  def query(
+      query: Query,
+      auths: Seq[String])
+     (run: => CloseableIterator[SimpleFeature]): CloseableIterator[SimpleFeature] = {
+    val filter = try { Some(ECQL.toCQL(query.getFilter)) } catch {
+      case NonFatal(e) => logger.debug(s"Unable to cache query with filter ${query.getFilter}", e); None
+    }
+    filter match {
+      case None => run
+      case Some(f) =>
+        val key = CacheKey(query.getTypeName, f, ViewParams.serialize(query.getHints), auths.sorted)
+        val current = generation(query.getTypeName).get
+        val cached = cache.getIfPresent(key)
+        if (cached != null && cached.generation == current) {
+          logger.debug(s"Returning cached results for $key")
+          // copy the features, in case the caller modifies them
+          CloseableIterator(cached.features.iterator.map(f => ScalaSimpleFeature.copy(f)))
+        } else {
+          new CachingIterator(run, key, current)
+        }
+    }
+  }
+
+  private def generation(typeName: String): AtomicLong = {
+    val generation = generations.get(typeName)
+    if (generation != null) { generation } else {
+      val created = new AtomicLong(0L)
+      val existing = generations.putIfAbsent(typeName, created)
+      if (existing == null) { created } else { existing }
+    }
+  }
+
+  /**
+    * Buffers results as they are read, and caches them once the query has been fully read
+    *
+    * @param delegate query results
+    * @param key cache key
+    * @param generation generation of the feature type when the query was started
+    */
+  private class CachingIterator(delegate: CloseableIterator[SimpleFeature], key: CacheKey, generation: Long)
+      extends CloseableIterator[SimpleFeature] {
+
+    private var buffer = ArrayBuffer.empty[SimpleFeature]
+
+    override def hasNext: Boolean = {
+      if (delegate.hasNext) { true } else {
+        // only cache if nothing has been written since the query started
+        if (buffer != null && QueryResultCache.this.generation(key.typeName).get == generation) {
+          cache.put(key, CachedResults(buffer, generation))
+        }
+        buffer = null
+        false
+      }
+    }
+
+    override def next(): SimpleFeature = {
+      val next = delegate.next()
+      if (buffer != null) {
+        if (buffer.lengthCompare(maxFeatures) < 0) {
+          buffer += ScalaSimpleFeature.copy(next)
+        } else {
+          logger.debug(s"Not caching results for $key, as it exceeds the max of $maxFeatures features")
+          buffer = null
+        }
+      }
+      next
+    }
+
+    override def close(): Unit = {
+      buffer = null
+      delegate.close()
+    }
+  }
+}
+
+object QueryResultCache {
+
+  /**
+    * Create a cache based on the system properties, if enabled
+    *
+    * @return
+    */
+  def apply(): Option[QueryResultCache] = {
+    import QueryProperties.{QueryCacheExpiry, QueryCacheMaxFeatures, QueryCacheSize}
+    QueryCacheSize.toLong.filter(_ > 0).map { size =>
+      val expiry = QueryCacheExpiry.toDuration.getOrElse(Duration(1, TimeUnit.MINUTES))
+      val maxFeatures = QueryCacheMaxFeatures.toInt.getOrElse(10000)
+      new QueryResultCache(size, expiry, maxFeatures)
+    }
+  }
+
+  private case class CacheKey(typeName: String, filter: String, hints: String, auths: Seq[String])
+
+  private case class CachedResults(features: Seq[SimpleFeature], generation: Long)
+}
@@ -62,6 +62,7 @@ object StrategyDecider extends MethodProfiling with LazyLogging {
     * @param transform return transformation
     * @param requested requested index
     * @param explain for trace logging
+    * @param cache cache of previously selected filter plans
     * @return
     */
   def getFilterPlan[DS <: GeoMesaDataStore[DS]](ds: DS,
@@ -70,7 +71,8 @@ object StrategyDecider extends MethodProfiling with LazyLogging {
                                                 transform: Option[SimpleFeatureType],
                                                 evaluation: CostEvaluation,
                                                 requested: Option[String],
-                                                explain: Explainer = ExplainNull): Seq[FilterStrategy] = {
+                                                explain: Explainer = ExplainNull,
+                                                cache: Option[FilterPlanCache] = None): Seq[FilterStrategy] = {
 
     def complete(op: String, time: Long, count: Int): Unit = explain(s"$op took ${time}ms for $count options")
 
@@ -101,7 +103,11 @@ object StrategyDecider extends MethodProfiling with LazyLogging {
         explain(s"Filter plan: ${options.head}")
         options.head
       } else {
-        val plan = decider.selectFilterPlan(sft, options, explain)
+        def select: FilterPlan = decider.selectFilterPlan(sft, options, explain)
+        val plan = cache match {
+          case None    => select
+          case Some(c) => c.select(sft, filter, transform, evaluation, options, explain)(select)
+        }
         explain(s"Filter plan selected: $plan")
         explain(s"Filter plans not selected: ${options.filterNot(_.eq(plan)).mkString(", ")}")
         plan
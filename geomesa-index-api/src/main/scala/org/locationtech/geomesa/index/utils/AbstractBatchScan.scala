@@ -12,26 +12,40 @@ import java.io.Closeable
 import java.util.concurrent._
 import java.util.concurrent.atomic.AtomicBoolean
 
+import org.locationtech.geomesa.index.utils.ScanScheduler.ScanJob
 import org.locationtech.geomesa.utils.collection.CloseableIterator
-
-import scala.annotation.tailrec
+import org.locationtech.geomesa.utils.io.CloseWithLogging
 
 /**
   * Provides parallelism for scanning multiple ranges at a given time, for systems that don't
   * natively support that.
   *
+  * Scans are executed by a scan scheduler, which is shared between all queries by default. This caps the
+  * total number of scan threads, regardless of the number of concurrent queries. If the output buffer stays
+  * full, a scan will be paused and its thread returned to the scheduler, so that a slow client doesn't
+  * starve other queries. Paused scans keep their results iterator open, and are resumed once the client
+  * reads from the buffer.
+  *
   * Subclasses should generally only expose the `CloseableIterator` interface, and make sure to
   * invoke `start()` before returning to the caller.
   *
   * @param ranges ranges to scan
-  * @param threads number of client threads to use for scanning
+  * @param threads max number of ranges to scan at once
   * @param buffer max size of the buffer for storing results before they are read by the caller
   * @param sentinel singleton sentinel value used to indicate the completion of scanning threads
+  * @param priority priority relative to other concurrent scans
+  * @param scheduler scan scheduler
   * @tparam T range type
   * @tparam R scan result type
   */
-abstract class AbstractBatchScan[T, R <: AnyRef](ranges: Seq[T], threads: Int, buffer: Int, sentinel: R)
-    extends CloseableIterator[R] {
+abstract class AbstractBatchScan[T, R <: AnyRef](
+    ranges: Seq[T],
+    threads: Int,
+    buffer: Int,
+    sentinel: R,
+    priority: Int = ScanScheduler.DefaultPriority,
+    scheduler: ScanScheduler = ScanScheduler.Shared
+  ) extends CloseableIterator[R] {
 
   import scala.collection.JavaConverters._
 
@@ -40,31 +54,34 @@ abstract class AbstractBatchScan[T, R <: AnyRef](ranges: Seq[T], threads: Int, b
   private val inQueue = new ConcurrentLinkedQueue(ranges.asJava)
   private val outQueue = new LinkedBlockingQueue[R](buffer)
 
-  private val latch = new CountDownLatch(threads)
-  private val terminator = new Terminator()
-  private val pool = Executors.newFixedThreadPool(threads + 1)
+  // scans that were paused due to a full output buffer
+  private val paused = new ConcurrentLinkedQueue[ScanTask]()
+  // set when a scan is paused, and cleared once the client has read enough from the buffer to resume
+  private val blocked = new AtomicBoolean(false)
+  private val resumeThreshold = math.max(1, buffer / 2)
+
+  private val job = new BatchScanJob()
+  private val closed = new AtomicBoolean(false)
+
+  @volatile
+  private var done = false
 
   private var retrieved: R = _
 
   /**
-    * Scan a single range, putting the results in the provided queue
+    * Scan a single range. The results should be lazily evaluated, as the scan may be paused and resumed
+    * by a different thread
     *
     * @param range range to scan
-    * @param out results queue
+    * @return results
     */
-  protected def scan(range: T, out: BlockingQueue[R])
+  protected def scan(range: T): CloseableIterator[R]
 
   /**
     * Start the threaded scans executing
     */
   protected def start(): CloseableIterator[R] = {
-    var i = 0
-    while (i < threads) {
-      pool.submit(new SingleThreadScan())
-      i += 1
-    }
-    pool.submit(terminator)
-    pool.shutdown()
+    scheduler.submit(job)
     this
   }
 
@@ -72,11 +89,10 @@ abstract class AbstractBatchScan[T, R <: AnyRef](ranges: Seq[T], threads: Int, b
     if (retrieved != null) {
       true
     } else {
-      retrieved = outQueue.take
+      retrieved = take()
       if (!retrieved.eq(sentinel)) {
         true
       } else {
-        outQueue.put(sentinel) // re-queue in case hasNext is called again
         retrieved = null.asInstanceOf[R]
         false
       }
@@ -90,20 +106,23 @@ abstract class AbstractBatchScan[T, R <: AnyRef](ranges: Seq[T], threads: Int, b
   }
 
   override def close(): Unit = {
-    terminator.close()
-    pool.shutdownNow()
+    if (closed.compareAndSet(false, true)) {
+      inQueue.clear()
+      scheduler.cancel(job)
+      closePaused()
+    }
   }
 
   /**
     * Exposed for testing only
     *
     * @param timeout timeout to wait
-    * @return true if all threads have terminated, otherwise false
+    * @return true if all scans have terminated, otherwise false
     */
   private [utils] def waitForDone(timeout: Long): Boolean = {
     val start = System.currentTimeMillis()
     while (true) {
-      if (pool.isTerminated) {
+      if (done) {
         return true
       } else if (System.currentTimeMillis() - start > timeout) {
         return false
@@ -135,52 +154,138 @@ abstract class AbstractBatchScan[T, R <: AnyRef](ranges: Seq[T], threads: Int, b
   }
 
   /**
-    * Pulls ranges off the queue and executes them
+    * Blocks until a result is available, or all the scans are complete
+    *
+    * @return the next result, or the sentinel if there are no more results
+    */
+  private def take(): R = {
+    var result = outQueue.poll()
+    while (result == null) {
+      resume()
+      // the sentinel may not have fit in the queue when the scans completed - in that case, once
+      // the queue is drained we return it here instead
+      if (done) {
+        result = outQueue.poll()
+        if (result == null) {
+          result = sentinel
+        }
+      } else {
+        result = outQueue.poll(100, TimeUnit.MILLISECONDS)
+      }
+    }
+    resume()
+    result
+  }
+
+  /**
+    * Resumes any paused scans, if there is enough room in the output buffer
+    */
+  private def resume(): Unit = {
+    if (blocked.get && outQueue.remainingCapacity() >= resumeThreshold && blocked.compareAndSet(true, false)) {
+      scheduler.resume(job)
+    }
+  }
+
+  /**
+    * Re-queue a paused scan
+    *
+    * @param task scan
     */
-  private class SingleThreadScan extends Runnable {
+  private def pause(task: ScanTask): Unit = {
+    paused.add(task)
+    blocked.set(true)
+    if (closed.get) {
+      closePaused()
+    }
+  }
+
+  private def closePaused(): Unit = {
+    var task = paused.poll()
+    while (task != null) {
+      CloseWithLogging(task)
+      task = paused.poll()
+    }
+  }
+
+  /**
+    * Scans a single range. If the output buffer stays full, the scan will be paused and re-queued,
+    * and can be resumed by calling `run` again
+    *
+    * @param range range to scan
+    */
+  private class ScanTask(range: T) extends Runnable with Closeable {
+
+    private var results: CloseableIterator[R] = _
+    private var result: R = _
+
     override def run(): Unit = {
+      var pause = false
       try {
-        var range = inQueue.poll()
-        while (range != null && !Thread.currentThread().isInterrupted) {
-          scan(range, outQueue)
-          range = inQueue.poll()
+        if (results == null) {
+          results = scan(range)
+          result = if (results.hasNext) { results.next() } else { null.asInstanceOf[R] }
+        }
+        while (result != null && !pause) {
+          if (outQueue.offer(result, AbstractBatchScan.PauseMillis, TimeUnit.MILLISECONDS)) {
+            result = if (results.hasNext) { results.next() } else { null.asInstanceOf[R] }
+          } else {
+            pause = true
+          }
         }
       } finally {
-        latch.countDown()
+        if (pause) {
+          AbstractBatchScan.this.pause(this)
+        } else {
+          close()
+        }
+      }
+    }
+
+    override def close(): Unit = {
+      if (results != null) {
+        results.close()
       }
     }
   }
 
   /**
-    * Injects the terminal value into the output buffer, once all the scans are complete
+    * Hands out ranges to the scheduler, and injects the terminal value into the output buffer
+    * once all the scans are complete
     */
-  private class Terminator extends Runnable with Closeable {
+  private class BatchScanJob extends ScanJob {
+
+    override def threads: Int = AbstractBatchScan.this.threads
 
-    private val closed = new AtomicBoolean(false)
+    override def priority: Int = AbstractBatchScan.this.priority
 
-    override def run(): Unit = try { latch.await() } finally { terminate() }
+    override def pending: Int = inQueue.size() + paused.size()
 
-    override def close(): Unit = closed.set(true)
+    override def blocked: Boolean = AbstractBatchScan.this.blocked.get
+
+    override def next(): Runnable = {
+      val task = paused.poll()
+      if (task != null) { task } else {
+        val range = inQueue.poll()
+        if (range == null) { null } else { new ScanTask(range) }
+      }
+    }
 
-    @tailrec
-    private def terminate(): Unit = {
-      // it's possible that the queue is full, in which case we can't immediately
-      // add the sentinel to the queue to indicate to the client that scans are done
+    override def complete(): Unit = {
+      done = true
+      // we can't block here, as we'd be tying up a shared scan thread. if the queue is full,
+      // `take` will return the sentinel once the client empties it
       if (closed.get) {
         // if the scan has been closed, then the client is done
         // reading and we don't mind dropping some results
-        terminateWithDrops()
+        while (!outQueue.offer(sentinel)) { outQueue.poll() }
       } else {
-        // otherwise we wait and give the client a chance to empty the queue
-        val added = try { outQueue.offer(sentinel, 1000, TimeUnit.MILLISECONDS) } catch {
-          case _: InterruptedException => terminateWithDrops(); true
-        }
-        if (!added) {
-          terminate()
-        }
+        outQueue.offer(sentinel)
       }
     }
-
-    private def terminateWithDrops(): Unit = while (!outQueue.offer(sentinel)) { outQueue.poll() }
   }
 }
+
+object AbstractBatchScan {
+  // how long a scan will wait for room in a full output buffer before pausing
+  private val PauseMillis = 100L
+}
@@ -0,0 +1,162 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.utils
+
+import java.io._
+import java.nio.file.Files
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
+import org.locationtech.geomesa.features.SimpleFeatureSerializer
+import org.locationtech.geomesa.features.kryo.KryoFeatureSerializer
+import org.locationtech.geomesa.index.conf.QueryProperties
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureOrdering
+import org.locationtech.geomesa.utils.io.{CloseWithLogging, WithClose}
+import org.locationtech.geomesa.utils.iterators.SortedMergeIterator
+import org.opengis.feature.simple.SimpleFeature
+
+import scala.collection.mutable.ArrayBuffer
+
+/**
+  * Sorting of simple features with bounded memory. Features are sorted in memory until they exceed the
+  * memory threshold, at which point the sorted run is serialized to a local temp file. The spilled runs
+  * are merged back together when the results are read. If the features fit in memory, no files are written.
+  *
+  * Memory use is estimated based on the serialized size of a sample of the features, so the actual heap
+  * used will generally be higher than the threshold
+  *
+  * @param features unsorted feature iterator
+  * @param sortBy attributes to sort by, in the form: (name, reverse).
+  *               for sort by feature id (e.g. natural sort), use an empty string for name
+  * @param threshold memory threshold, in bytes, before spilling sorted runs to disk
+  */
+class ExternalSortingSimpleFeatureIterator(
+    features: CloseableIterator[SimpleFeature],
+    sortBy: Seq[(String, Boolean)],
+    threshold: Long = QueryProperties.SortMemoryThreshold.toBytes.get
+  ) extends CloseableIterator[SimpleFeature] with LazyLogging {
+
+  import ExternalSortingSimpleFeatureIterator.{SampleRate, SpilledRunIterator}
+
+  // spilled runs and the number of features in each
+  private val runs = ArrayBuffer.empty[(File, Int)]
+
+  private var merged: CloseableIterator[SimpleFeature] = _
+
+  private lazy val sorted: CloseableIterator[SimpleFeature] = {
+    if (!features.hasNext) { features } else {
+      val first = features.next()
+      val sft = first.getFeatureType
+      val ordering = SimpleFeatureOrdering(sft, sortBy)
+      val serializer = KryoFeatureSerializer(sft, SerializationOptions.withUserData)
+
+      val buf = ArrayBuffer(first)
+      var sampled = 1L
+      var sampledBytes: Long = serializer.serialize(first).length
+
+      while (features.hasNext) {
+        buf.append(features.next())
+        if (buf.length % SampleRate == 0) {
+          sampled += 1
+          sampledBytes += serializer.serialize(buf.last).length
+          if (buf.length * (sampledBytes / sampled) > threshold) {
+            spill(buf, ordering, serializer)
+            buf.clear()
+          }
+        }
+      }
+      features.close()
+
+      val last = CloseableIterator(buf.sorted(ordering).iterator)
+      if (runs.isEmpty) { last } else {
+        logger.debug(s"Merging ${runs.length} sorted runs spilled to disk")
+        val spilled = runs.map { case (file, count) => new SpilledRunIterator(file, count, serializer) }
+        // runs are ordered by input position, which keeps the merge sort stable
+        merged = new SortedMergeIterator(spilled :+ last)(ordering)
+        merged
+      }
+    }
+  }
+
+  override def hasNext: Boolean = sorted.hasNext
+
+  override def next(): SimpleFeature = sorted.next()
+
+  override def close(): Unit = {
+    CloseWithLogging(features)
+    if (merged != null) {
+      CloseWithLogging(merged)
+    }
+    runs.foreach { case (file, _) =>
+      if (!file.delete() && file.exists()) {
+        logger.warn(s"Unable to delete sort file: ${file.getAbsolutePath}")
+      }
+    }
+    runs.clear()
+  }
+
+  /**
+    * Sort the features and write them to a temp file
+    *
+    * @param buf features
+    * @param ordering sort ordering
+    * @param serializer serializer
+    */
+  private def spill(
+      buf: Seq[SimpleFeature],
+      ordering: Ordering[SimpleFeature],
+      serializer: SimpleFeatureSerializer): Unit = {
+    val file = Files.createTempFile("gm-sort-", ".kryo").toFile
+    // add the file before writing, so that it's cleaned up on close even if there are errors
+    runs += file -> buf.length
+    logger.debug(s"Spilling ${buf.length} sorted features to ${file.getAbsolutePath}")
+    WithClose(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) { out =>
+      buf.sorted(ordering).foreach { feature =>
+        val bytes = serializer.serialize(feature)
+        out.writeInt(bytes.length)
+        out.write(bytes)
+      }
+    }
+  }
+}
+
+object ExternalSortingSimpleFeatureIterator {
+
+  // every nth feature is serialized to estimate memory use
+  private val SampleRate = 100
+
+  /**
+    * Reads back a sorted run that was spilled to disk
+    *
+    * @param file spill file
+    * @param count number of features in the file
+    * @param serializer serializer
+    */
+  private class SpilledRunIterator(file: File, count: Int, serializer: SimpleFeatureSerializer)
+      extends CloseableIterator[SimpleFeature] {
+
+    private val in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))
+    private var remaining = count
+
+    override def hasNext: Boolean = remaining > 0
+
+    override def next(): SimpleFeature = {
+      if (remaining < 1) {
+        throw new NoSuchElementException("Called next on empty iterator")
+      }
+      remaining -= 1
+      val bytes = Array.ofDim[Byte](in.readInt())
+      in.readFully(bytes)
+      serializer.deserialize(bytes)
+    }
+
+    override def close(): Unit = in.close()
+  }
+}
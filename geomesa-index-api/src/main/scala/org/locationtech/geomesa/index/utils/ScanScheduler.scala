@@ -0,0 +1,365 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.utils
+
+import java.io.Closeable
+import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, LongAdder}
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.index.conf.QueryProperties
+import org.locationtech.geomesa.index.utils.ScanScheduler.{JobState, ScanJob, ScanMetrics}
+
+import scala.util.control.NonFatal
+
+/**
+  * Executes client-side scans from any number of concurrent queries using a single, bounded pool of threads.
+  *
+  * Each query registers a job, consisting of a queue of ranges. Threads pick up one range at a time, so work
+  * is re-balanced between queries every time a range completes. When choosing the next range to scan,
+  * jobs that are below their fair share of threads (the pool size divided by the number of active jobs)
+  * are preferred, followed by jobs that are below their requested thread count. Within each group, jobs
+  * with a higher priority are preferred, then jobs with the fewest running scans, then older jobs.
+  *
+  * Jobs may report themselves as blocked (e.g. when their output buffer is full), in which case they will not
+  * be scheduled until they are explicitly resumed. This prevents slow clients from tying up shared threads.
+  *
+  * @param threads max number of threads used for scanning
+  */
+class ScanScheduler(val threads: Int) extends Closeable with LazyLogging {
+
+  import scala.collection.JavaConverters._
+
+  require(threads > 0, "Thread count must be greater than 0")
+
+  private val pool = {
+    val factory = new ThreadFactory() {
+      private val count = new AtomicInteger(0)
+      override def newThread(r: Runnable): Thread = {
+        val thread = new Thread(r, s"geomesa-scan-${count.incrementAndGet()}")
+        thread.setDaemon(true)
+        thread
+      }
+    }
+    val executor =
+      new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue[Runnable](), factory)
+    executor.allowCoreThreadTimeOut(true)
+    executor
+  }
+
+  // note: all mutable state is guarded by `this`
+  private val jobs = new java.util.ArrayList[JobState]()
+  private var workers = 0
+  private var active = 0
+  private var sequence = 0L
+
+  private val completed = new LongAdder()
+
+  /**
+    * Submit a job for execution
+    *
+    * @param job job
+    */
+  def submit(job: ScanJob): Unit = synchronized {
+    jobs.add(new JobState(job, sequence))
+    sequence += 1
+    var i = math.min(job.threads, threads - workers)
+    while (i > 0) {
+      workers += 1
+      pool.execute(new Worker())
+      i -= 1
+    }
+    logger.trace(s"Submitted scan job: ${metrics.debug}")
+  }
+
+  /**
+    * Resume a job that was previously blocked. Threads will be started to pick up the job's pending ranges,
+    * up to the job's thread count
+    *
+    * @param job job
+    */
+  def resume(job: ScanJob): Unit = synchronized {
+    var i = math.min(job.threads, threads - workers)
+    while (i > 0) {
+      workers += 1
+      pool.execute(new Worker())
+      i -= 1
+    }
+    logger.trace(s"Resumed scan job: ${metrics.debug}")
+  }
+
+  /**
+    * Cancel a job. Any pending ranges will be skipped, and any running scans will be interrupted.
+    * The job will be completed once all running scans have terminated
+    *
+    * @param job job
+    */
+  def cancel(job: ScanJob): Unit = synchronized {
+    var i = 0
+    while (i < jobs.size()) {
+      val state = jobs.get(i)
+      if (state.job.eq(job)) {
+        state.exhausted = true
+        state.canceled = true
+        state.threads.asScala.foreach(_.interrupt())
+        if (state.running == 0) {
+          finish(state)
+        }
+        i = jobs.size()
+      }
+      i += 1
+    }
+  }
+
+  /**
+    * Current state of the scheduler
+    *
+    * @return
+    */
+  def metrics: ScanMetrics = synchronized {
+    var pending = 0
+    var i = 0
+    while (i < jobs.size()) {
+      pending += jobs.get(i).job.pending
+      i += 1
+    }
+    ScanMetrics(jobs.size(), active, pending, completed.sum())
+  }
+
+  override def close(): Unit = pool.shutdownNow()
+
+  /**
+    * Release the previous task, and select the next range to scan
+    *
+    * @param previous previous task, may be null
+    * @return next task, or null if there is nothing that can be scanned
+    */
+  private def next(previous: Task): Task = synchronized {
+    if (previous != null) {
+      release(previous)
+    }
+    // clear any interrupt from a canceled job, so that it doesn't affect the next scan
+    Thread.interrupted()
+
+    var task: Task = null
+    var done = false
+    while (!done) {
+      val state = select()
+      if (state == null) {
+        workers -= 1
+        done = true
+      } else {
+        val scan = state.job.next()
+        if (scan == null) {
+          state.exhausted = true
+          if (state.running == 0) {
+            finish(state)
+          }
+        } else {
+          state.running += 1
+          state.threads.add(Thread.currentThread())
+          active += 1
+          task = new Task(state, scan)
+          done = true
+        }
+      }
+    }
+    task
+  }
+
+  /**
+    * Release a task. Must be called while synchronized
+    *
+    * @param task task
+    */
+  private def release(task: Task): Unit = {
+    val state = task.state
+    state.running -= 1
+    state.threads.remove(Thread.currentThread())
+    active -= 1
+    completed.increment()
+    if (state.exhausted && !state.canceled && state.job.pending > 0) {
+      // the task re-queued part of its range after the job had run out of ranges
+      state.exhausted = false
+    }
+    if (state.exhausted && state.running == 0) {
+      finish(state)
+    }
+  }
+
+  /**
+    * Remove a job and notify it of completion. Must be called while synchronized
+    *
+    * @param state job state
+    */
+  private def finish(state: JobState): Unit = {
+    jobs.remove(state)
+    try { state.job.complete() } catch {
+      case NonFatal(e) => logger.error("Error completing scan job", e)
+    }
+    logger.trace(s"Completed scan job: ${metrics.debug}")
+  }
+
+  /**
+    * Choose the job to scan next. Must be called while synchronized
+    *
+    * @return job, or null if no jobs can be scanned
+    */
+  private def select(): JobState = {
+    var count = 0
+    var i = 0
+    while (i < jobs.size()) {
+      val state = jobs.get(i)
+      if (!state.exhausted && !state.job.blocked) {
+        count += 1
+      }
+      i += 1
+    }
+    if (count == 0) { null } else {
+      val share = math.max(1, threads / count)
+      val fair = best(s => math.min(s.job.threads, share))
+      // if every job has its fair share, let idle threads pick up work from other jobs
+      if (fair != null) { fair } else { best(_.job.threads) }
+    }
+  }
+
+  /**
+    * Choose the best job that is below the given limit. Must be called while synchronized
+    *
+    * @param limit max concurrent scans for a job
+    * @return job, or null if no jobs are below their limit
+    */
+  private def best(limit: JobState => Int): JobState = {
+    var selected: JobState = null
+    var i = 0
+    while (i < jobs.size()) {
+      val state = jobs.get(i)
+      if (!state.exhausted && !state.job.blocked && state.running < limit(state) &&
+          (selected == null || state.before(selected))) {
+        selected = state
+      }
+      i += 1
+    }
+    selected
+  }
+
+  /**
+    * Pulls ranges from the active jobs and scans them, until there are no more ranges available
+    */
+  private class Worker extends Runnable {
+    override def run(): Unit = {
+      var task = next(null)
+      while (task != null) {
+        try { task.scan.run() } catch {
+          case _: InterruptedException => logger.trace("Scan interrupted")
+          case NonFatal(e) => logger.error("Error executing scan", e)
+          case e: Throwable =>
+            ScanScheduler.this.synchronized { release(task); workers -= 1 }
+            throw e
+        }
+        task = next(task)
+      }
+    }
+  }
+
+  private class Task(val state: JobState, val scan: Runnable)
+}
+
+object ScanScheduler {
+
+  val DefaultPriority: Int = 0
+
+  /**
+    * Scheduler shared by all queries in the JVM
+    */
+  lazy val Shared: ScanScheduler = {
+    val threads = QueryProperties.ScanThreads.toInt.getOrElse(math.max(16, 4 * Runtime.getRuntime.availableProcessors()))
+    new ScanScheduler(threads)
+  }
+
+  /**
+    * A unit of work submitted to the scheduler
+    */
+  trait ScanJob {
+
+    /**
+      * Max number of ranges to scan at once
+      *
+      * @return
+      */
+    def threads: Int
+
+    /**
+      * Priority relative to other jobs - higher priority jobs will be scanned first
+      *
+      * @return
+      */
+    def priority: Int
+
+    /**
+      * Number of ranges that are still waiting to be scanned
+      *
+      * @return
+      */
+    def pending: Int
+
+    /**
+      * Whether the job is currently blocked, i.e. it can't make progress until it is resumed. Blocked
+      * jobs will not be scheduled until `ScanScheduler.resume` is invoked
+      *
+      * @return
+      */
+    def blocked: Boolean = false
+
+    /**
+      * Get the next range to scan
+      *
+      * @return a runnable that will scan the next range, or null if there are no more ranges
+      */
+    def next(): Runnable
+
+    /**
+      * Callback invoked once all ranges have been scanned, or the job has been canceled and
+      * all running scans have terminated
+      */
+    def complete(): Unit
+  }
+
+  /**
+    * Snapshot of the scheduler state
+    *
+    * @param jobs number of active jobs
+    * @param scans number of ranges currently being scanned
+    * @param pending number of ranges waiting to be scanned (i.e. the queue depth)
+    * @param completed total number of ranges that have been scanned
+    */
+  case class ScanMetrics(jobs: Int, scans: Int, pending: Int, completed: Long) {
+    def debug: String = s"active jobs: $jobs, active scans: $scans, queued ranges: $pending, completed: $completed"
+  }
+
+  /**
+    * Scheduling state for a job. Mutable fields are guarded by the scheduler
+    *
+    * @param job job
+    * @param order submission order
+    */
+  private class JobState(val job: ScanJob, val order: Long) {
+
+    val threads = new java.util.HashSet[Thread]()
+    var running = 0
+    var exhausted = false
+    var canceled = false
+
+    def before(other: JobState): Boolean = {
+      if (job.priority != other.job.priority) { job.priority > other.job.priority }
+      else if (running != other.running) { running < other.running }
+      else { order < other.order }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.filters
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.features.kryo.KryoFeatureSerializer
+import org.locationtech.geomesa.filter.factory.FastFilterFactory
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class KryoBufferFilterTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("kryoBufferFilterTest",
+    "name:String,age:Int,dtg:Date,poly:Polygon:srid=4326,*geom:Point:srid=4326")
+
+  val features = Seq(
+    ScalaSimpleFeature.create(sft, "0", "name0", 20, "2014-01-01T00:00:00.000Z",
+      "POLYGON((40 50, 42 50, 42 52, 40 52, 40 50))", "POINT(45 55)"),
+    ScalaSimpleFeature.create(sft, "1", "name1", 30, "2014-01-05T00:00:00.000Z",
+      "POLYGON((30 30, 50 30, 50 70, 30 70, 30 30))", "POINT(30 30)"),
+    ScalaSimpleFeature.create(sft, "2", "name2", 40, "2014-01-10T00:00:00.000Z",
+      "POLYGON((0 0, 1 0, 1 1, 0 1, 0 0))", "POINT(38 48)"),
+    ScalaSimpleFeature.create(sft, "3", null, null, null, null, null)
+  )
+
+  val filters = Seq(
+    "bbox(geom,38,48,52,62)",
+    "bbox(poly,39,49,43,53)",
+    "bbox(poly,41,51,60,60)",
+    "intersects(poly,POLYGON((41 51, 60 51, 60 60, 41 60, 41 51)))",
+    "intersects(poly,POLYGON((0 0, 55 55, 0 55, 0 0)))",
+    "within(poly,POLYGON((35 45, 45 45, 45 55, 35 55, 35 45)))",
+    "contains(poly,POINT(40 40))",
+    "dtg DURING 2014-01-01T00:00:00.000Z/2014-01-08T12:00:00.000Z",
+    "dtg BEFORE 2014-01-05T00:00:00.000Z",
+    "dtg AFTER 2014-01-05T00:00:00.000Z",
+    "dtg >= '2014-01-05T00:00:00.000Z'",
+    "dtg < '2014-01-05T00:00:00.000Z'",
+    "dtg BETWEEN '2014-01-01T00:00:00.000Z' AND '2014-01-05T00:00:00.000Z'",
+    "bbox(geom,38,48,52,62) AND dtg DURING 2013-12-15T00:00:00.000Z/2014-01-15T00:00:00.000Z",
+    "bbox(geom,38,48,52,62) OR name = 'name1'",
+    "NOT bbox(geom,38,48,52,62) AND age > 25",
+    "INCLUDE",
+    "EXCLUDE"
+  )
+
+  "KryoBufferFilter" should {
+    "evaluate filters consistently with regular evaluation" in {
+      val serializer = KryoFeatureSerializer(sft)
+      val reusable = serializer.getReusableFeature
+      val serialized = features.map(serializer.serialize)
+      foreach(filters) { ecql =>
+        val filter = FastFilterFactory.toFilter(sft, ecql)
+        val buffer = KryoBufferFilter(sft, filter)
+        foreach(features.zip(serialized)) { case (feature, bytes) =>
+          reusable.setBuffer(bytes)
+          buffer.evaluate(reusable) must beEqualTo(filter.evaluate(feature)).setMessage(s"$ecql ${feature.getID}")
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.index
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.curve.{TimePeriod, Z3SFC}
+import org.locationtech.geomesa.index.api.BoundedRange
+import org.locationtech.geomesa.index.index.z3.{BinnedRanges, Z3IndexKey}
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class BinnedRangesTest extends Specification {
+
+  val sfc = Z3SFC(TimePeriod.Week)
+
+  val bounds = (0L, sfc.index(sfc.lon.max, sfc.lat.max, sfc.time.max.toLong).z)
+
+  val whole = Seq((sfc.lon.min, sfc.lat.min, sfc.lon.max, sfc.lat.max))
+  val bbox = Seq((-10d, -10d, 10d, 10d))
+
+  val start = Seq((sfc.time.max.toLong / 2, sfc.time.max.toLong))
+  val end = Seq((sfc.time.min.toLong, sfc.time.max.toLong / 4))
+
+  def sequential(xy: Seq[(Double, Double, Double, Double)],
+                 bins: Map[Short, Seq[(Long, Long)]]): Seq[BoundedRange[Z3IndexKey]] = {
+    bins.toSeq.sortBy(_._1).flatMap { case (bin, times) =>
+      sfc.ranges(xy, times, 64, Some(100)).map(r => BoundedRange(Z3IndexKey(bin, r.lower), Z3IndexKey(bin, r.upper)))
+    }
+  }
+
+  "BinnedRanges" should {
+    "compute ranges across bins in order" in {
+      val bins = Map[Short, Seq[(Long, Long)]](3.toShort -> end, 1.toShort -> start, 2.toShort -> sfc.wholePeriod)
+      val ranges = BinnedRanges(bins, bounds)(t => sfc.ranges(bbox, t, 64, Some(100))).toList
+      ranges mustEqual sequential(bbox, bins)
+      ranges.map(_.lower.bin.toInt).distinct mustEqual Seq(1, 2, 3)
+    }
+
+    "merge adjacent ranges across bins" in {
+      val bins = Map[Short, Seq[(Long, Long)]](
+        1.toShort -> start, 2.toShort -> sfc.wholePeriod, 3.toShort -> sfc.wholePeriod, 4.toShort -> end)
+      val ranges = BinnedRanges(bins, bounds)(t => sfc.ranges(whole, t, 64, Some(100))).toList
+      val expected = sequential(whole, bins)
+      ranges.length must beLessThan(expected.length)
+      ranges.head.lower mustEqual expected.head.lower
+      ranges.last.upper mustEqual expected.last.upper
+      // bins 2 and 3 are covered completely, so should be merged with the adjacent bins
+      ranges.exists(r => r.lower.bin == 1 && r.upper.bin == 4) must beTrue
+    }
+
+    "handle empty bins" in {
+      BinnedRanges(Map.empty[Short, Seq[(Long, Long)]], bounds)(t => sfc.ranges(bbox, t, 64, None)) must beEmpty
+    }
+  }
+}
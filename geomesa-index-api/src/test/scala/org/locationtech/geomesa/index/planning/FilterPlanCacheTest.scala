@@ -0,0 +1,108 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.planning
+
+import org.geotools.filter.text.ecql.ECQL
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.index.TestGeoMesaDataStore
+import org.locationtech.geomesa.index.api.FilterPlan
+import org.locationtech.geomesa.index.index.attribute.AttributeIndex
+import org.locationtech.geomesa.index.index.z3.Z3Index
+import org.locationtech.geomesa.index.planning.QueryPlanner.CostEvaluation
+import org.locationtech.geomesa.index.utils.ExplainNull
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.index.IndexMode
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class FilterPlanCacheTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("plan-cache",
+    "name:String:index=true,age:Int,dtg:Date,*geom:Point:srid=4326")
+
+  val ds = new TestGeoMesaDataStore(true)
+  ds.createSchema(sft)
+
+  def options(ecql: String): Seq[FilterPlan] =
+    new FilterSplitter(sft, ds.manager.indices(sft, IndexMode.Read), None).getQueryOptions(ECQL.toFilter(ecql))
+
+  def attribute(options: Seq[FilterPlan]): FilterPlan =
+    options.find(_.strategies.forall(_.index.name == AttributeIndex.name)).get
+
+  val base = "name = '%s' AND bbox(geom,%d,%d,%d,%d) AND dtg DURING 2019-01-01T00:00:00Z/2019-01-0%dT00:00:00Z"
+
+  "FilterPlanCache" should {
+    "create the same template for filters that only differ by literals" in {
+      val f1 = ECQL.toFilter(base.format("alice", 0, 0, 10, 10, 2))
+      val f2 = ECQL.toFilter(base.format("bob", -10, -5, 5, 15, 3))
+      val f3 = ECQL.toFilter("age = 5 AND bbox(geom,0,0,10,10) AND " +
+          "dtg DURING 2019-01-01T00:00:00Z/2019-01-02T00:00:00Z")
+      val f4 = ECQL.toFilter("name = 'alice' OR bbox(geom,0,0,10,10)")
+      FilterPlanCache.template(f1) mustEqual FilterPlanCache.template(f2)
+      FilterPlanCache.template(f1) mustNotEqual FilterPlanCache.template(f3)
+      FilterPlanCache.template(f1) mustNotEqual FilterPlanCache.template(f4)
+      FilterPlanCache.template(f1) must not(contain("alice"))
+    }
+
+    "re-use cached plan selections for new literals" in {
+      val cache = new FilterPlanCache(10, Duration.Inf)
+      var count = 0
+
+      def select(ecql: String): FilterPlan = {
+        val opts = options(ecql)
+        opts.length must beGreaterThan(1)
+        cache.select(sft, ECQL.toFilter(ecql), None, CostEvaluation.Index, opts, ExplainNull) {
+          count += 1
+          attribute(opts)
+        }
+      }
+
+      val first = select(base.format("alice", 0, 0, 10, 10, 2))
+      count mustEqual 1
+      first.strategies.map(_.index.name) mustEqual Seq(AttributeIndex.name)
+
+      val second = select(base.format("bob", -10, -5, 5, 15, 3))
+      count mustEqual 1
+      second.strategies.map(_.index.name) mustEqual Seq(AttributeIndex.name)
+      // the plan should reflect the new literal values
+      second.strategies.head.primary.map(f => ECQL.toCQL(f)) must beSome(contain("bob"))
+
+      // different filter structure
+      select("age = 5 AND bbox(geom,0,0,10,10) AND dtg DURING 2019-01-01T00:00:00Z/2019-01-02T00:00:00Z " +
+          "AND name = 'alice'")
+      count mustEqual 2
+    }
+
+    "select a new plan if the cached indices aren't available" in {
+      val cache = new FilterPlanCache(10, Duration.Inf)
+      var count = 0
+      val ecql = base.format("alice", 0, 0, 10, 10, 2)
+      val opts = options(ecql)
+      val z3 = opts.find(_.strategies.forall(_.index.name == Z3Index.name)).get
+
+      cache.select(sft, ECQL.toFilter(ecql), None, CostEvaluation.Index, opts, ExplainNull) {
+        count += 1
+        attribute(opts)
+      }
+      count mustEqual 1
+
+      // remove the cached option from the available plans
+      val remaining = opts.filterNot(_.strategies.forall(_.index.name == AttributeIndex.name))
+      val plan = cache.select(sft, ECQL.toFilter(ecql), None, CostEvaluation.Index, remaining, ExplainNull) {
+        count += 1
+        z3
+      }
+      count mustEqual 2
+      plan mustEqual z3
+    }
+  }
+}
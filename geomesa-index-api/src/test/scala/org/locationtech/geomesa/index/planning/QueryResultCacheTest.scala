@@ -0,0 +1,107 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.planning
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.geotools.data.Query
+import org.geotools.filter.text.ecql.ECQL
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.index.conf.QueryHints
+import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.opengis.feature.simple.SimpleFeature
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class QueryResultCacheTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("cache", "name:String,dtg:Date,*geom:Point:srid=4326")
+
+  val features = Seq.tabulate(10) { i =>
+    ScalaSimpleFeature.create(sft, s"$i", s"name$i", s"2019-01-01T00:0$i:00.000Z", s"POINT (4$i 5$i)")
+  }
+
+  def query(ecql: String = "bbox(geom,35,45,55,65)"): Query = new Query(sft.getTypeName, ECQL.toFilter(ecql))
+
+  class Runner {
+    val count = new AtomicInteger(0)
+    def run(): CloseableIterator[SimpleFeature] = {
+      count.incrementAndGet()
+      CloseableIterator(features.iterator)
+    }
+  }
+
+  "QueryResultCache" should {
+    "cache fully read results" in {
+      val cache = new QueryResultCache(10, Duration.Inf, 100)
+      val runner = new Runner()
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList mustEqual features
+      runner.count.get mustEqual 1
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList mustEqual features
+      runner.count.get mustEqual 1
+    }
+
+    "key results by filter, hints and auths" in {
+      val cache = new QueryResultCache(10, Duration.Inf, 100)
+      val runner = new Runner()
+      SelfClosingIterator(cache.query(query(), Seq("user"))(runner.run())).toList
+      runner.count.get mustEqual 1
+      SelfClosingIterator(cache.query(query(), Seq("admin"))(runner.run())).toList
+      runner.count.get mustEqual 2
+      SelfClosingIterator(cache.query(query("INCLUDE"), Seq("user"))(runner.run())).toList
+      runner.count.get mustEqual 3
+      val hinted = query()
+      hinted.getHints.put(QueryHints.EXACT_COUNT, java.lang.Boolean.TRUE)
+      SelfClosingIterator(cache.query(hinted, Seq("user"))(runner.run())).toList
+      runner.count.get mustEqual 4
+      SelfClosingIterator(cache.query(query(), Seq("user"))(runner.run())).toList
+      runner.count.get mustEqual 4
+    }
+
+    "invalidate results on write" in {
+      val cache = new QueryResultCache(10, Duration.Inf, 100)
+      val runner = new Runner()
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList
+      cache.invalidate(sft.getTypeName)
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList mustEqual features
+      runner.count.get mustEqual 2
+    }
+
+    "not cache results written during the query" in {
+      val cache = new QueryResultCache(10, Duration.Inf, 100)
+      val runner = new Runner()
+      val iter = cache.query(query(), Seq.empty)(runner.run())
+      iter.next()
+      cache.invalidate(sft.getTypeName)
+      SelfClosingIterator(iter).toList must haveLength(9)
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList
+      runner.count.get mustEqual 2
+    }
+
+    "not cache partially read or large results" in {
+      val runner = new Runner()
+      val cache = new QueryResultCache(10, Duration.Inf, 100)
+      val iter = cache.query(query(), Seq.empty)(runner.run())
+      iter.next()
+      iter.close()
+      SelfClosingIterator(cache.query(query(), Seq.empty)(runner.run())).toList
+      runner.count.get mustEqual 2
+
+      val small = new QueryResultCache(10, Duration.Inf, 5)
+      SelfClosingIterator(small.query(query(), Seq.empty)(runner.run())).toList mustEqual features
+      SelfClosingIterator(small.query(query(), Seq.empty)(runner.run())).toList mustEqual features
+      runner.count.get mustEqual 4
+    }
+  }
+}
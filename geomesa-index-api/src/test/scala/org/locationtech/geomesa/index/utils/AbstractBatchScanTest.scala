@@ -8,25 +8,27 @@
 
 package org.locationtech.geomesa.index.utils
 
-import java.util.concurrent.BlockingQueue
-
 import org.junit.runner.RunWith
-import org.locationtech.geomesa.utils.collection.SelfClosingIterator
+import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
 import org.specs2.mutable.Specification
 import org.specs2.runner.JUnitRunner
 
 @RunWith(classOf[JUnitRunner])
 class AbstractBatchScanTest extends Specification {
 
-  class TestBatchScan(ranges: Seq[String], threads: Int, buffer: Int)
-      extends AbstractBatchScan[String, String](ranges, threads, buffer, "SENTINEL") {
-    override protected def scan(range: String, out: BlockingQueue[String]): Unit =
-      range.foreach(c => out.put(c.toString))
+  class TestBatchScan(ranges: Seq[String], threads: Int, buffer: Int, scheduler: ScanScheduler)
+      extends AbstractBatchScan[String, String](ranges, threads, buffer, "SENTINEL", scheduler = scheduler) {
+    override protected def scan(range: String): CloseableIterator[String] =
+      CloseableIterator(range.iterator.map(_.toString))
   }
 
   object TestBatchScan {
-    def apply(ranges: Seq[String], threads: Int, buffer: Int): TestBatchScan =
-      new TestBatchScan(ranges, threads, buffer).start().asInstanceOf[TestBatchScan]
+    def apply(
+        ranges: Seq[String],
+        threads: Int,
+        buffer: Int,
+        scheduler: ScanScheduler = ScanScheduler.Shared): TestBatchScan =
+      new TestBatchScan(ranges, threads, buffer, scheduler).start().asInstanceOf[TestBatchScan]
   }
 
   "AbstractBatchScan" should {
@@ -41,6 +43,21 @@ class AbstractBatchScanTest extends Specification {
       SelfClosingIterator(iter).toList must containTheSameElementsAs(Seq("f", "o", "o", "b", "a", "r"))
       iter.waitForDone(1000) must beTrue
     }
+    "yield threads when the buffer is full" in {
+      val scheduler = new ScanScheduler(1)
+      try {
+        val blocked = TestBatchScan(Seq("foo", "bar"), 1, 1, scheduler)
+        blocked.waitForFull(1000) must beTrue
+        // the first scan is not being read, but it shouldn't prevent the second scan from completing
+        val other = TestBatchScan(Seq("baz"), 1, 10, scheduler)
+        other.waitForDone(1000) must beTrue
+        SelfClosingIterator(other).toList mustEqual Seq("b", "a", "z")
+        SelfClosingIterator(blocked).toList must containTheSameElementsAs(Seq("f", "o", "o", "b", "a", "r"))
+        blocked.waitForDone(1000) must beTrue
+      } finally {
+        scheduler.close()
+      }
+    }
     "handle being closed prematurely" in {
       val iter = TestBatchScan(Seq("foo", "bar"), 2, 100)
       iter.close()
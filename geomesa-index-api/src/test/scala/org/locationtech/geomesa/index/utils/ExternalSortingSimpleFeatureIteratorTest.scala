@@ -0,0 +1,104 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.utils
+
+import java.io.File
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.utils.collection.CloseableIterator
+import org.locationtech.geomesa.utils.geotools.{SimpleFeatureOrdering, SimpleFeatureTypes}
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ExternalSortingSimpleFeatureIteratorTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("sort", "name:String,age:Int,dtg:Date,*geom:Point:srid=4326")
+
+  val features = Seq.tabulate(1000) { i =>
+    val sf = ScalaSimpleFeature.create(sft, f"$i%04d", s"name${i % 7}", (i * 31) % 100,
+      f"2018-01-01T${i % 24}%02d:00:00.000Z", s"POINT(${i % 45} ${i % 30})")
+    sf.getUserData.put("foo", s"bar$i")
+    sf
+  }
+
+  val sorts = Seq(
+    Seq(("", false)),
+    Seq(("", true)),
+    Seq(("age", false)),
+    Seq(("name", true)),
+    Seq(("name", false), ("age", true)),
+    Seq(("dtg", false), ("", true))
+  )
+
+  def spillFiles(): Int = {
+    val dir = new File(System.getProperty("java.io.tmpdir"))
+    Option(dir.listFiles()).map(_.count(f => f.getName.startsWith("gm-sort-"))).getOrElse(0)
+  }
+
+  "ExternalSortingSimpleFeatureIterator" should {
+    "sort in memory when under the threshold" in {
+      foreach(sorts) { sort =>
+        val expected = features.sorted(SimpleFeatureOrdering(sft, sort))
+        val iter = new ExternalSortingSimpleFeatureIterator(CloseableIterator(features.iterator), sort, Long.MaxValue)
+        try {
+          iter.toList mustEqual expected
+        } finally {
+          iter.close()
+        }
+      }
+    }
+
+    "spill to disk when over the threshold" in {
+      val start = spillFiles()
+      foreach(sorts) { sort =>
+        // note: the in-memory sort is stable, so the results should be in exactly the same order
+        val expected = features.sorted(SimpleFeatureOrdering(sft, sort))
+        val iter = new ExternalSortingSimpleFeatureIterator(CloseableIterator(features.iterator), sort, 1000L)
+        try {
+          iter.hasNext must beTrue
+          spillFiles() must beGreaterThan(start)
+          val result = iter.toList
+          result mustEqual expected
+          foreach(result.zip(expected)) { case (r, e) =>
+            r.getID mustEqual e.getID
+            r.getUserData.get("foo") mustEqual e.getUserData.get("foo")
+          }
+        } finally {
+          iter.close()
+        }
+        spillFiles() mustEqual start
+      }
+    }
+
+    "handle empty iterators" in {
+      val iter = new ExternalSortingSimpleFeatureIterator(CloseableIterator.empty, Seq(("", false)), 1000L)
+      try {
+        iter.hasNext must beFalse
+      } finally {
+        iter.close()
+      }
+    }
+
+    "close the delegate iterator" in {
+      var closed = false
+      val delegate = CloseableIterator(features.iterator.take(10), { closed = true })
+      val iter = new ExternalSortingSimpleFeatureIterator(delegate, Seq(("name", false)), 1000L)
+      try {
+        iter.hasNext must beTrue
+        // the delegate should be closed as soon as it's been fully read
+        closed must beTrue
+        iter.toList must haveLength(10)
+      } finally {
+        iter.close()
+      }
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.index.utils
+
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, TimeUnit}
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.index.utils.ScanScheduler.ScanJob
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class ScanSchedulerTest extends Specification {
+
+  import scala.collection.JavaConverters._
+
+  class TestJob(ranges: Seq[Runnable], val threads: Int, val priority: Int = 0) extends ScanJob {
+    private val queue = new ConcurrentLinkedQueue(ranges.asJava)
+    val done = new CountDownLatch(1)
+    override def pending: Int = queue.size()
+    override def next(): Runnable = queue.poll()
+    override def complete(): Unit = done.countDown()
+  }
+
+  def withScheduler[T](threads: Int)(fn: ScanScheduler => T): T = {
+    val scheduler = new ScanScheduler(threads)
+    try { fn(scheduler) } finally {
+      scheduler.close()
+    }
+  }
+
+  "ScanScheduler" should {
+    "cap the number of concurrent scans across jobs" in {
+      withScheduler(2) { scheduler =>
+        val running = new AtomicInteger(0)
+        val max = new AtomicInteger(0)
+        val scanned = new AtomicInteger(0)
+        def range: Runnable = new Runnable() {
+          override def run(): Unit = {
+            val current = running.incrementAndGet()
+            var previous = max.get
+            while (current > previous && !max.compareAndSet(previous, current)) {
+              previous = max.get
+            }
+            Thread.sleep(5)
+            running.decrementAndGet()
+            scanned.incrementAndGet()
+          }
+        }
+        val jobs = Seq.fill(3)(new TestJob(Seq.fill(5)(range), 4))
+        jobs.foreach(scheduler.submit)
+        foreach(jobs)(_.done.await(5, TimeUnit.SECONDS) must beTrue)
+        scanned.get mustEqual 15
+        max.get must beBetween(1, 2)
+        scheduler.metrics mustEqual ScanScheduler.ScanMetrics(0, 0, 0, 15L)
+      }
+    }
+
+    "prefer higher priority jobs" in {
+      withScheduler(1) { scheduler =>
+        val latch = new CountDownLatch(1)
+        val order = new ConcurrentLinkedQueue[String]()
+        def range(name: String): Runnable = new Runnable() {
+          override def run(): Unit = order.add(name)
+        }
+        val blocker = new TestJob(Seq(new Runnable() { override def run(): Unit = latch.await() }), 1)
+        scheduler.submit(blocker)
+        val low = new TestJob(Seq.fill(2)(range("low")), 1)
+        val high = new TestJob(Seq.fill(2)(range("high")), 1, priority = 1)
+        scheduler.submit(low)
+        scheduler.submit(high)
+        scheduler.metrics.pending mustEqual 4
+        latch.countDown()
+        foreach(Seq(blocker, low, high))(_.done.await(5, TimeUnit.SECONDS) must beTrue)
+        order.asScala.toList mustEqual Seq("high", "high", "low", "low")
+      }
+    }
+
+    "share threads between concurrent jobs" in {
+      withScheduler(2) { scheduler =>
+        val order = new ConcurrentLinkedQueue[String]()
+        def range(name: String): Runnable = new Runnable() {
+          override def run(): Unit = { order.add(name); Thread.sleep(20) }
+        }
+        val big = new TestJob(Seq.fill(10)(range("big")), 2)
+        scheduler.submit(big)
+        val small = new TestJob(Seq(range("small")), 2)
+        scheduler.submit(small)
+        foreach(Seq(big, small))(_.done.await(5, TimeUnit.SECONDS) must beTrue)
+        order.asScala.toList.indexOf("small") must beBetween(0, 3)
+      }
+    }
+
+    "cancel jobs" in {
+      withScheduler(1) { scheduler =>
+        val latch = new CountDownLatch(1)
+        val interrupted = new AtomicInteger(0)
+        val scan = new Runnable() {
+          override def run(): Unit = try { latch.await() } catch {
+            case e: InterruptedException => interrupted.incrementAndGet(); throw e
+          }
+        }
+        val job = new TestJob(Seq(scan), 1)
+        scheduler.submit(job)
+        val next = new TestJob(Seq(new Runnable() { override def run(): Unit = {} }), 1)
+        scheduler.submit(next)
+        val start = System.currentTimeMillis()
+        while (scheduler.metrics.scans == 0 && System.currentTimeMillis() - start < 5000) {
+          Thread.sleep(10)
+        }
+        scheduler.metrics.scans mustEqual 1
+        scheduler.cancel(job)
+        job.done.await(5, TimeUnit.SECONDS) must beTrue
+        next.done.await(5, TimeUnit.SECONDS) must beTrue
+        interrupted.get mustEqual 1
+      }
+    }
+  }
+}
@@ -106,7 +106,8 @@ object KafkaCacheLoader {
       frequency: Long,
       serializer: GeoMessageSerializer,
       doInitialLoad: Boolean,
-      initialLoadConfig: Option[EventTimeConfig]
+      initialLoadConfig: Option[EventTimeConfig],
+      snapshot: Option[KafkaCacheSnapshot] = None
     ) extends ThreadedConsumer(consumers, Duration.ofMillis(frequency)) with KafkaCacheLoader {
 
     try { classOf[ConsumerRecord[Any, Any]].getMethod("timestamp") } catch {
@@ -121,7 +122,7 @@ object KafkaCacheLoader {
       executor.shutdown()
       Some(loader)
     } else {
-      startConsumers()
+      startLoading()
       None
     }
 
@@ -130,10 +131,28 @@ object KafkaCacheLoader {
         super.close()
       } finally {
         initialLoader.foreach(CloseWithLogging.apply)
+        // note: this will write a final snapshot, so needs to happen after the consumers are stopped
+        snapshot.foreach(CloseWithLogging.apply)
         cache.close()
       }
     }
 
+    /**
+      * Start the normal consumer threads, and begin taking snapshots of the cache
+      */
+    private [KafkaCacheLoader] def startLoading(): Unit = {
+      snapshot.foreach(_.schedule(cache))
+      startConsumers()
+    }
+
+    /**
+      * Track the offset of a consumed message, for snapshots
+      *
+      * @param record record
+      */
+    private [KafkaCacheLoader] def track(record: ConsumerRecord[Array[Byte], Array[Byte]]): Unit =
+      snapshot.foreach(_.update(record.partition, record.offset))
+
     override protected [KafkaCacheLoader] def consume(record: ConsumerRecord[Array[Byte], Array[Byte]]): Unit = {
       val headers = RecordVersions.getHeaders(record)
       val timestamp = RecordVersions.getTimestamp(record)
@@ -145,6 +164,7 @@ object KafkaCacheLoader {
         case m: Clear  => fireEvent(m, timestamp); cache.clear()
         case m => throw new IllegalArgumentException(s"Unknown message: $m")
       }
+      track(record)
     }
   }
 
@@ -187,6 +207,7 @@ object KafkaCacheLoader {
           case m: Clear  => toLoad.fireEvent(m, timestamp); cache.clear()
           case m => throw new IllegalArgumentException(s"Unknown message: $m")
         }
+        toLoad.track(record)
         // once we've hit the max offset for the partition, remove from the offset map to indicate we're done
         val maxOffset = offsets.getOrDefault(record.partition, Long.MaxValue)
         if (maxOffset <= record.offset) {
@@ -240,7 +261,7 @@ object KafkaCacheLoader {
       }
       logger.info(s"Starting normal load for [$topic]")
       // start the normal loading
-      toLoad.startConsumers()
+      toLoad.startLoading()
     }
   }
 }
@@ -0,0 +1,220 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.kafka.data
+
+import java.io._
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.channels.FileChannel.MapMode
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, StandardCopyOption, StandardOpenOption}
+import java.util.concurrent.{ConcurrentHashMap, Executors, ScheduledFuture, TimeUnit}
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
+import org.locationtech.geomesa.features.kryo.KryoFeatureSerializer
+import org.locationtech.geomesa.kafka.index.KafkaFeatureCache
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.io.WithClose
+import org.opengis.feature.simple.SimpleFeatureType
+import org.opengis.filter.Filter
+
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+
+/**
+  * Persists the state of a feature cache to local disk, along with the kafka offsets that the state
+  * corresponds to. On start up, the snapshot can be used to populate the cache and resume consuming from the
+  * stored offsets, instead of replaying the whole topic.
+  *
+  * Snapshots are written periodically in a background thread, without pausing the consumers. The offsets are
+  * captured before the cache is read, so any messages consumed while the snapshot is being written will be
+  * replayed on restore. As messages are keyed by feature ID, replaying them is idempotent.
+  *
+  * The file format is a header (magic, version, timestamp, feature type spec and partition offsets), followed
+  * by length-prefixed kryo-serialized features, terminated by a length of -1. Files are written to a
+  * temporary location and then moved into place, and are memory-mapped for reading.
+  *
+  * @param sft simple feature type
+  * @param topic kafka topic
+  * @param dir local directory used to store snapshots
+  * @param interval interval between snapshots
+  */
+class KafkaCacheSnapshot(sft: SimpleFeatureType, topic: String, dir: File, interval: Duration)
+    extends Closeable with LazyLogging {
+
+  import KafkaCacheSnapshot.{Magic, Version}
+
+  import scala.collection.JavaConverters._
+
+  private val file = new File(dir, s"$topic.snapshot")
+
+  private val spec = SimpleFeatureTypes.encodeType(sft, includeUserData = false)
+
+  private val serializer = KryoFeatureSerializer(sft, SerializationOptions.withUserData)
+
+  // last offset consumed, per partition
+  private val offsets = new ConcurrentHashMap[Int, java.lang.Long]()
+
+  // offsets from the last snapshot written, used to skip writes when nothing has changed
+  private var written = Map.empty[Int, Long]
+
+  private val executor = Executors.newSingleThreadScheduledExecutor()
+  private var scheduled: Option[(KafkaFeatureCache, ScheduledFuture[_])] = None
+
+  /**
+    * Track a consumed message
+    *
+    * @param partition partition
+    * @param offset offset of the consumed message
+    */
+  def update(partition: Int, offset: Long): Unit = offsets.put(partition, offset)
+
+  /**
+    * Populate the cache from the last snapshot, if any. If the snapshot can't be read, the cache will
+    * be left empty
+    *
+    * @param cache cache to populate
+    * @param expiry cache expiry - if the snapshot is older than this, the features will be skipped
+    * @return offsets of the last message consumed per partition, or empty if there is no valid snapshot
+    */
+  def restore(cache: KafkaFeatureCache, expiry: Duration): Map[Int, Long] = synchronized {
+    if (!file.exists()) {
+      logger.debug(s"No cache snapshot found for [$topic] at ${file.getAbsolutePath}")
+      Map.empty
+    } else {
+      try {
+        val restored = WithClose(FileChannel.open(file.toPath, StandardOpenOption.READ)) { channel =>
+          read(channel.map(MapMode.READ_ONLY, 0, channel.size()), cache, expiry)
+        }
+        restored.foreach { case (p, o) => offsets.put(p, o) }
+        written = restored
+        restored
+      } catch {
+        case NonFatal(e) =>
+          logger.warn(s"Error reading cache snapshot for [$topic] at ${file.getAbsolutePath}, ignoring it", e)
+          cache.clear()
+          Map.empty
+      }
+    }
+  }
+
+  /**
+    * Start writing snapshots periodically
+    *
+    * @param cache cache to snapshot
+    */
+  def schedule(cache: KafkaFeatureCache): Unit = synchronized {
+    if (scheduled.isEmpty) {
+      val runnable = new Runnable() {
+        override def run(): Unit = {
+          try { write(cache) } catch {
+            case NonFatal(e) => logger.warn(s"Error writing cache snapshot for [$topic]", e)
+          }
+        }
+      }
+      val millis = interval.toMillis
+      scheduled = Some((cache, executor.scheduleWithFixedDelay(runnable, millis, millis, TimeUnit.MILLISECONDS)))
+    }
+  }
+
+  /**
+    * Write a snapshot of the cache, if any messages have been consumed since the last snapshot
+    *
+    * @param cache cache
+    * @return true if a snapshot was written
+    */
+  def write(cache: KafkaFeatureCache): Boolean = synchronized {
+    // capture the offsets before reading the cache - any messages consumed while we're reading will be replayed
+    val current = offsets.asScala.map { case (p, o) => (p, o.longValue) }.toMap
+    if (current.isEmpty || current == written) { false } else {
+      val start = System.currentTimeMillis()
+      dir.mkdirs()
+      val tmp = new File(dir, s".${file.getName}.tmp")
+      var count = 0
+      WithClose(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) { out =>
+        out.writeInt(Magic)
+        out.writeInt(Version)
+        out.writeLong(start)
+        val bytes = spec.getBytes(StandardCharsets.UTF_8)
+        out.writeInt(bytes.length)
+        out.write(bytes)
+        out.writeInt(current.size)
+        current.foreach { case (p, o) => out.writeInt(p); out.writeLong(o) }
+        cache.query(Filter.INCLUDE).foreach { feature =>
+          val bytes = serializer.serialize(feature)
+          out.writeInt(bytes.length)
+          out.write(bytes)
+          count += 1
+        }
+        out.writeInt(-1)
+      }
+      Files.move(tmp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      written = current
+      logger.debug(s"Wrote cache snapshot for [$topic] with $count features in " +
+          s"${System.currentTimeMillis() - start}ms")
+      true
+    }
+  }
+
+  /**
+    * Stops any periodic snapshots. If snapshots were scheduled, a final snapshot will be written
+    */
+  override def close(): Unit = synchronized {
+    executor.shutdownNow()
+    scheduled.foreach { case (cache, future) =>
+      future.cancel(false)
+      write(cache)
+    }
+    scheduled = None
+  }
+
+  private def read(buffer: ByteBuffer, cache: KafkaFeatureCache, expiry: Duration): Map[Int, Long] = {
+    if (buffer.getInt != Magic) {
+      throw new IllegalArgumentException("Invalid snapshot file")
+    }
+    val version = buffer.getInt
+    if (version != Version) {
+      throw new IllegalArgumentException(s"Unsupported snapshot version: $version")
+    }
+    val timestamp = buffer.getLong
+    val bytes = Array.ofDim[Byte](buffer.getInt)
+    buffer.get(bytes)
+    if (new String(bytes, StandardCharsets.UTF_8) != spec) {
+      logger.warn(s"Ignoring cache snapshot for [$topic] as the schema has changed")
+      Map.empty
+    } else {
+      val restored = Seq.fill(buffer.getInt)((buffer.getInt, buffer.getLong)).toMap
+      // features are expired based on when they were consumed, which we don't track... if the snapshot is
+      // older than the expiry then we know that all the features would have expired
+      val expired = expiry.isFinite() && System.currentTimeMillis() - timestamp >= expiry.toMillis
+      var count = 0
+      var length = buffer.getInt
+      while (length != -1) {
+        if (expired) {
+          buffer.position(buffer.position() + length)
+        } else {
+          val bytes = Array.ofDim[Byte](length)
+          buffer.get(bytes)
+          cache.put(serializer.deserialize(bytes))
+          count += 1
+        }
+        length = buffer.getInt
+      }
+      logger.info(s"Restored $count features from cache snapshot for [$topic], resuming from offsets " +
+          restored.toSeq.sorted.map { case (p, o) => s"[$topic:$p:$o]" }.mkString(","))
+      restored
+    }
+  }
+}
+
+object KafkaCacheSnapshot {
+  private val Magic = 0x474d4b53 // 'GMKS'
+  private val Version = 1
+}
@@ -8,7 +8,7 @@
 
 package org.locationtech.geomesa.kafka.data
 
-import java.io.IOException
+import java.io.{File, IOException}
 import java.util.concurrent.{ConcurrentHashMap, ScheduledExecutorService}
 import java.util.{Collections, Properties, UUID}
 
@@ -81,12 +81,18 @@ class KafkaDataStore(
         val sft = getSchema(key)
         val cache = KafkaFeatureCache(sft, config.indices)
         val topic = KafkaDataStore.topic(sft)
-        val consumers = KafkaDataStore.consumers(config, topic)
+        val snapshot = config.consumers.snapshots.map { s =>
+          new KafkaCacheSnapshot(sft, topic, new File(s.dir), s.interval)
+        }
+        // if we restore from a snapshot, we resume consuming from the stored offsets instead of the initial load
+        val offsets = snapshot.map(_.restore(cache, config.indices.expiry)).getOrElse(Map.empty)
+        val consumers = KafkaDataStore.consumers(config, topic, offsets)
         val frequency = KafkaDataStore.LoadIntervalProperty.toDuration.get.toMillis
         val serializer = serialization.apply(sft, config.serialization, config.indices.lazyDeserialization)
-        val initialLoad = config.consumers.readBack.isDefined
+        val initialLoad = config.consumers.readBack.isDefined && offsets.isEmpty
         val eventTime = config.indices.eventTime
-        new KafkaCacheLoaderImpl(sft, cache, consumers, topic, frequency, serializer, initialLoad, eventTime)
+        new KafkaCacheLoaderImpl(sft, cache, consumers, topic, frequency, serializer, initialLoad, eventTime,
+          snapshot)
       }
     }
   })
@@ -273,21 +279,28 @@ object KafkaDataStore extends LazyLogging {
     new KafkaConsumer[Array[Byte], Array[Byte]](props)
   }
 
-  // creates a consumer and sets to the latest offsets
-  private [kafka] def consumers(config: KafkaDataStoreConfig, topic: String): Seq[Consumer[Array[Byte], Array[Byte]]] = {
+  // creates a consumer and sets to the latest offsets, or the offsets from a cache snapshot
+  private [kafka] def consumers(
+      config: KafkaDataStoreConfig,
+      topic: String,
+      offsets: Map[Int, Long] = Map.empty): Seq[Consumer[Array[Byte], Array[Byte]]] = {
     require(config.consumers.count > 0, "Number of consumers must be greater than 0")
 
     val group = UUID.randomUUID().toString
     val partitions = Collections.newSetFromMap(new ConcurrentHashMap[Int, java.lang.Boolean])
+    val restored = Collections.newSetFromMap(new ConcurrentHashMap[Int, java.lang.Boolean])
 
     logger.debug(s"Creating ${config.consumers.count} consumers for topic [$topic] with group-id [$group]")
 
     Seq.fill(config.consumers.count) {
       val consumer = KafkaDataStore.consumer(config, group)
-      val listener = config.consumers.readBack match {
+      val readBack = config.consumers.readBack match {
         case None    => new NoOpConsumerRebalanceListener()
         case Some(d) => new ReadBackRebalanceListener(consumer, partitions, d)
       }
+      val listener = if (offsets.isEmpty) { readBack } else {
+        new SnapshotRebalanceListener(consumer, restored, offsets, readBack)
+      }
       KafkaConsumerVersions.subscribe(consumer, topic, listener)
       consumer
     }
@@ -352,6 +365,45 @@ object KafkaDataStore extends LazyLogging {
     }
   }
 
+  /**
+    * Rebalance listener that seeks the consumer to the offsets stored in a cache snapshot. Partitions
+    * that aren't in the snapshot are handled by the delegate listener
+    *
+    * @param consumer consumer
+    * @param partitions shared partition map, to ensure we only seek once per partition. For subsequent
+    *                   rebalances, we should have committed offsets that will be used
+    * @param offsets offset of the last message consumed per partition, from the snapshot
+    * @param delegate delegate listener for any partitions not in the snapshot
+    */
+  private [kafka] class SnapshotRebalanceListener(consumer: Consumer[Array[Byte], Array[Byte]],
+                                                  partitions: java.util.Set[Int],
+                                                  offsets: Map[Int, Long],
+                                                  delegate: ConsumerRebalanceListener)
+      extends ConsumerRebalanceListener with LazyLogging {
+
+    import scala.collection.JavaConverters._
+
+    override def onPartitionsRevoked(topicPartitions: java.util.Collection[TopicPartition]): Unit =
+      delegate.onPartitionsRevoked(topicPartitions)
+
+    override def onPartitionsAssigned(topicPartitions: java.util.Collection[TopicPartition]): Unit = {
+      val remaining = new java.util.ArrayList[TopicPartition]()
+      topicPartitions.asScala.foreach { tp =>
+        offsets.get(tp.partition()) match {
+          case None => remaining.add(tp)
+          case Some(o) =>
+            if (partitions.add(tp.partition())) {
+              logger.debug(s"Seeking to offset ${o + 1} from cache snapshot on [${tp.topic}:${tp.partition}]")
+              consumer.seek(tp, o + 1)
+            }
+        }
+      }
+      if (!remaining.isEmpty) {
+        delegate.onPartitionsAssigned(remaining)
+      }
+    }
+  }
+
   case class KafkaDataStoreConfig(
       catalog: String,
       brokers: String,
@@ -367,7 +419,12 @@ object KafkaDataStore extends LazyLogging {
       audit: Option[(AuditWriter, AuditProvider, String)],
       namespace: Option[String]) extends NamespaceConfig
 
-  case class ConsumerConfig(count: Int, properties: Map[String, String], readBack: Option[Duration])
+  case class ConsumerConfig(count: Int,
+                            properties: Map[String, String],
+                            readBack: Option[Duration],
+                            snapshots: Option[SnapshotConfig] = None)
+
+  case class SnapshotConfig(dir: String, interval: Duration)
 
   case class ProducerConfig(properties: Map[String, String])
 
@@ -380,7 +437,9 @@ object KafkaDataStore extends LazyLogging {
                          ssiTiers: Seq[(Double, Double)],
                          cqAttributes: Seq[(String, CQIndexType)],
                          lazyDeserialization: Boolean,
-                         executor: Option[(ScheduledExecutorService, Ticker)])
+                         executor: Option[(ScheduledExecutorService, Ticker)],
+                         offHeap: Boolean = false,
+                         stripedIndex: Boolean = false)
 
   case class EventTimeConfig(expression: String, ordering: Boolean)
 }
@@ -85,6 +85,8 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
       KafkaDataStoreFactoryParams.ConsumerCount,
       KafkaDataStoreFactoryParams.ConsumerConfig,
       KafkaDataStoreFactoryParams.ConsumerReadBack,
+      KafkaDataStoreFactoryParams.CacheSnapshotDir,
+      KafkaDataStoreFactoryParams.CacheSnapshotInterval,
       KafkaDataStoreFactoryParams.CacheExpiry,
       KafkaDataStoreFactoryParams.EventTime,
       KafkaDataStoreFactoryParams.SerializationType,
@@ -95,6 +97,8 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
       KafkaDataStoreFactoryParams.EventTimeOrdering,
       KafkaDataStoreFactoryParams.LazyLoad,
       KafkaDataStoreFactoryParams.LazyFeatures,
+      KafkaDataStoreFactoryParams.OffHeapCache,
+      KafkaDataStoreFactoryParams.StripedIndex,
       KafkaDataStoreFactoryParams.AuditQueries,
       KafkaDataStoreFactoryParams.LooseBBox,
       KafkaDataStoreFactoryParams.Authorizations
@@ -119,7 +123,10 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
       val count = ConsumerCount.lookup(params).intValue
       val props = ConsumerConfig.lookupOpt(params).map(_.asScala.toMap).getOrElse(Map.empty[String, String])
       val readBack = ConsumerReadBack.lookupOpt(params)
-      KafkaDataStore.ConsumerConfig(count, props, readBack)
+      val snapshots = CacheSnapshotDir.lookupOpt(params).map { dir =>
+        KafkaDataStore.SnapshotConfig(dir, CacheSnapshotInterval.lookup(params))
+      }
+      KafkaDataStore.ConsumerConfig(count, props, readBack, snapshots)
     }
 
     val producers = {
@@ -164,7 +171,11 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
 
       val executor = ExecutorTicker.lookupOpt(params)
 
-      IndexConfig(cacheExpiry, eventTime, xBuckets, yBuckets, ssiTiers, cqEngine, lazyDeserialization, executor)
+      val offHeap = OffHeapCache.lookup(params).booleanValue()
+      val striped = StripedIndex.lookup(params).booleanValue()
+
+      IndexConfig(cacheExpiry, eventTime, xBuckets, yBuckets, ssiTiers, cqEngine, lazyDeserialization, executor,
+        offHeap, striped)
     }
 
     val looseBBox = LooseBBox.lookup(params).booleanValue()
@@ -355,6 +366,19 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
         deprecatedParams = Seq(DeprecatedExpiry),
         supportsNiFiExpressions = true)
 
+    val CacheSnapshotDir =
+      new GeoMesaParam[String](
+        "kafka.cache.snapshot.dir",
+        "Local directory used to periodically save the state of the feature cache. On start-up, the cache " +
+            "will be restored from the last snapshot and consumers will resume from the saved offsets, instead " +
+            "of replaying the topic. The directory should not be shared with other data store instances")
+
+    val CacheSnapshotInterval =
+      new GeoMesaParam[Duration](
+        "kafka.cache.snapshot.interval",
+        "Interval between feature cache snapshots, when a snapshot directory is configured",
+        default = Duration("5 minutes"))
+
     val EventTime =
       new GeoMesaParam[String](
         "kafka.cache.event-time",
@@ -411,6 +435,20 @@ object KafkaDataStoreFactory extends GeoMesaDataStoreInfo with LazyLogging {
             "This may improve processing load at the expense of slightly slower query times",
         default = Boolean.box(true))
 
+    val OffHeapCache =
+      new GeoMesaParam[java.lang.Boolean](
+        "kafka.cache.off-heap",
+        "Store cached features serialized in off-heap memory, instead of as objects on the heap. " +
+            "This may reduce garbage collection pressure for large caches, at the expense of slower query times",
+        default = Boolean.box(false))
+
+    val StripedIndex =
+      new GeoMesaParam[java.lang.Boolean](
+        "kafka.index.striped",
+        "Use a lock-striped grid index for point features, instead of the default bucket index. " +
+            "This may reduce contention between simultaneous updates and queries",
+        default = Boolean.box(false))
+
     val LooseBBox      = GeoMesaDataStoreFactory.LooseBBoxParam
     val AuditQueries   = GeoMesaDataStoreFactory.AuditQueriesParam
     val Authorizations = org.locationtech.geomesa.security.AuthsParam
@@ -43,7 +43,13 @@ object KafkaFeatureCache extends LazyLogging {
     * @param config cache config
     * @return
     */
-  def apply(sft: SimpleFeatureType, config: IndexConfig): KafkaFeatureCache = new KafkaFeatureCacheImpl(sft, config)
+  def apply(sft: SimpleFeatureType, config: IndexConfig): KafkaFeatureCache = {
+    if (config.offHeap) {
+      new OffHeapFeatureCache(sft, config)
+    } else {
+      new KafkaFeatureCacheImpl(sft, config)
+    }
+  }
 
   /**
     * No-op cache
@@ -12,7 +12,7 @@ import java.util.concurrent._
 
 import com.typesafe.scalalogging.StrictLogging
 import org.locationtech.geomesa.filter.factory.FastFilterFactory
-import org.locationtech.geomesa.filter.index.{BucketIndexSupport, SizeSeparatedBucketIndexSupport}
+import org.locationtech.geomesa.filter.index.{BucketIndexSupport, SizeSeparatedBucketIndexSupport, StripedGridIndexSupport}
 import org.locationtech.geomesa.kafka.data.KafkaDataStore.IndexConfig
 import org.locationtech.geomesa.kafka.index.FeatureStateFactory.{FeatureExpiration, FeatureState}
 import org.locationtech.geomesa.utils.cache.Ticker
@@ -39,6 +39,8 @@ class KafkaFeatureCacheImpl(sft: SimpleFeatureType, config: IndexConfig)
   // note: CQEngine handles points vs non-points internally
   private val support = if (config.cqAttributes.nonEmpty) {
     KafkaFeatureCache.cqIndexSupport(sft, config)
+  } else if (sft.isPoints && config.stripedIndex) {
+    StripedGridIndexSupport(sft, config.resolutionX, config.resolutionY)
   } else if (sft.isPoints) {
     BucketIndexSupport(sft, config.resolutionX, config.resolutionY)
   } else {
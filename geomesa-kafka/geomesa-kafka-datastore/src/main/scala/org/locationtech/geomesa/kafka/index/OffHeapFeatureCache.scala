@@ -0,0 +1,270 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.kafka.index
+
+import java.util.concurrent._
+
+import com.typesafe.scalalogging.StrictLogging
+import org.locationtech.geomesa.features.SerializationOption.SerializationOptions
+import org.locationtech.geomesa.features.kryo.KryoFeatureSerializer
+import org.locationtech.geomesa.filter.FilterHelper
+import org.locationtech.geomesa.filter.factory.FastFilterFactory
+import org.locationtech.geomesa.kafka.data.KafkaDataStore.IndexConfig
+import org.locationtech.geomesa.kafka.index.OffHeapFeatureCache.OffHeapState
+import org.locationtech.geomesa.utils.cache.Ticker
+import org.locationtech.geomesa.utils.index.{BucketIndex, SizeSeparatedBucketIndex, SpatialIndex, StripedGridIndex}
+import org.locationtech.jts.geom.{Coordinate, Envelope, Geometry, GeometryFactory}
+import org.opengis.feature.simple.{SimpleFeature, SimpleFeatureType}
+import org.opengis.filter.Filter
+
+import scala.concurrent.duration.Duration
+import scala.util.control.NonFatal
+
+/**
+  * Feature cache implementation that keeps serialized features in off-heap memory. Only the feature ID,
+  * bounds and a handle to the off-heap memory are kept on the heap. Features are lazily deserialized on query.
+  *
+  * This trades some query performance for a much smaller heap, which reduces garbage collection pressure
+  * for large caches
+  *
+  * @param sft simple feature type
+  * @param config index config
+  */
+class OffHeapFeatureCache(sft: SimpleFeatureType, config: IndexConfig) extends KafkaFeatureCache with StrictLogging {
+
+  import org.locationtech.geomesa.utils.geotools.RichSimpleFeatureType.RichSimpleFeatureType
+
+  private val geom = sft.getGeomIndex
+
+  private val serializer =
+    KryoFeatureSerializer(sft, SerializationOptions.builder.withoutId.withUserData.immutable.`lazy`.build)
+
+  private val store = new OffHeapSlabStore()
+
+  // keeps off-heap handles keyed by feature ID. to reduce contention, we never iterate over this map
+  private val state = new ConcurrentHashMap[String, OffHeapState]
+
+  private val index: SpatialIndex[OffHeapState] = if (sft.isPoints && config.stripedIndex) {
+    new StripedGridIndex(config.resolutionX, config.resolutionY)
+  } else if (sft.isPoints) {
+    new BucketIndex(config.resolutionX, config.resolutionY)
+  } else {
+    new SizeSeparatedBucketIndex(config.ssiTiers, config.resolutionX / 360d, config.resolutionY / 180d)
+  }
+
+  private val eventTime = config.eventTime.map(e => (FastFilterFactory.toExpression(sft, e.expression), e.ordering))
+
+  private val expiry = if (config.expiry == Duration.Inf) { None } else {
+    val (executor, ticker) = config.executor.getOrElse {
+      val ex = new ScheduledThreadPoolExecutor(2)
+      // don't keep running scheduled tasks after shutdown
+      ex.setExecuteExistingDelayedTasksAfterShutdownPolicy(false)
+      // remove tasks when canceled, otherwise they will only be removed from the task queue
+      // when they would be executed. we expect frequent cancellations due to feature updates
+      ex.setRemoveOnCancelPolicy(true)
+      (ex, Ticker.SystemTicker)
+    }
+    Some((executor, ticker, config.expiry.toMillis))
+  }
+
+  if (config.cqAttributes.nonEmpty) {
+    logger.warn("CQEngine attribute indices are not supported with off-heap caching and will be ignored")
+  }
+
+  /**
+    * Note: this method is not thread-safe. The `state` and `index` can get out of sync if the same feature
+    * is updated simultaneously from two different threads
+    *
+    * In our usage, this isn't a problem, as a given feature ID is always operated on by a single thread
+    * due to kafka consumer partitioning
+    */
+  override def put(feature: SimpleFeature): Unit = {
+    val id = feature.getID
+    val time = eventTime match {
+      case Some((exp, true)) => FeatureStateFactory.time(exp, feature)
+      case _ => 0L
+    }
+    val ttl = expiry.map { case (_, ticker, millis) =>
+      eventTime match {
+        case None => millis
+        case Some((_, true)) => time + millis - ticker.currentTimeMillis()
+        case Some((exp, false)) => FeatureStateFactory.time(exp, feature) + millis - ticker.currentTimeMillis()
+      }
+    }
+
+    val old = state.get(id)
+    if (old != null && old.time > time) {
+      logger.trace(s"$id ignoring out of sequence feature")
+    } else if (ttl.exists(_ < 1L)) {
+      logger.trace(s"$id ignoring expired feature")
+      if (old != null) {
+        remove(id)
+      }
+    } else {
+      val stamp = store.stamp()
+      val handle = store.write(serializer.serialize(feature), stamp)
+      val env = feature.getAttribute(geom).asInstanceOf[Geometry].getEnvelopeInternal
+      val featureState =
+        new OffHeapState(id, env.getMinX, env.getMinY, env.getMaxX, env.getMaxY, handle, stamp, time)
+      logger.trace(s"$id adding feature $featureState")
+      state.put(id, featureState)
+      if (old != null) {
+        logger.trace(s"$id removing old feature")
+        release(old)
+      }
+      index.insert(featureState.geometry, id, featureState)
+      ttl.foreach { t =>
+        val (executor, _, _) = expiry.get
+        featureState.future = executor.schedule(new Expiration(featureState), t, TimeUnit.MILLISECONDS)
+      }
+    }
+    logger.trace(s"Current index size: ${state.size()}/${index.size()}")
+  }
+
+  /**
+    * Note: this method is not thread-safe. The `state` and `index` can get out of sync if the same feature
+    * is updated simultaneously from two different threads
+    *
+    * In our usage, this isn't a problem, as a given feature ID is always operated on by a single thread
+    * due to kafka consumer partitioning
+    */
+  override def remove(id: String): Unit = {
+    logger.trace(s"$id removing feature")
+    val old = state.remove(id)
+    if (old != null) {
+      release(old)
+    }
+    logger.trace(s"Current index size: ${state.size()}/${index.size()}")
+  }
+
+  override def clear(): Unit = {
+    logger.trace("Clearing index")
+    state.clear()
+    index.clear()
+    store.clear()
+  }
+
+  override def size(): Int = state.size()
+
+  // optimized for filter.include
+  override def size(f: Filter): Int = if (f == Filter.INCLUDE) { size() } else { query(f).length }
+
+  override def query(id: String): Option[SimpleFeature] = Option(state.get(id)).flatMap(s => Option(read(s)))
+
+  override def query(filter: Filter): Iterator[SimpleFeature] = {
+    if (filter == Filter.INCLUDE) { deserialize(index.query()) } else {
+      val geometries = FilterHelper.extractGeometries(filter, sft.getGeomField, intersect = false)
+      val states = if (geometries.isEmpty) { index.query() } else {
+        val env = geometries.values.head.getEnvelopeInternal
+        geometries.values.tail.foreach(g => env.expandToInclude(g.getEnvelopeInternal))
+        index.query(env.getMinX, env.getMinY, env.getMaxX, env.getMaxY)
+      }
+      deserialize(states).filter(filter.evaluate)
+    }
+  }
+
+  override def close(): Unit = {
+    expiry.foreach { case (executor, _, _) => executor.shutdownNow() }
+    clear()
+  }
+
+  /**
+    * Removes a feature from the spatial index and frees its off-heap memory
+    *
+    * @param featureState state
+    */
+  private def release(featureState: OffHeapState): Unit = {
+    if (featureState.future != null) {
+      featureState.future.cancel(false)
+    }
+    index.remove(featureState.geometry, featureState.id)
+    store.free(featureState.handle, featureState.stamp)
+  }
+
+  private def deserialize(states: Iterator[OffHeapState]): Iterator[SimpleFeature] =
+    states.map(read).filter(_ != null)
+
+  /**
+    * Reads a feature from off-heap memory
+    *
+    * @param featureState state
+    * @return the feature, or null if it has been removed concurrently
+    */
+  private def read(featureState: OffHeapState): SimpleFeature = {
+    val bytes = store.read(featureState.handle, featureState.stamp)
+    if (bytes == null) { null } else {
+      try { serializer.deserialize(featureState.id, bytes) } catch {
+        case NonFatal(e) => logger.debug(s"${featureState.id} error reading off-heap feature", e); null
+      }
+    }
+  }
+
+  /**
+    * Expiration callback
+    *
+    * @param featureState state to expire
+    */
+  private class Expiration(featureState: OffHeapState) extends Runnable {
+    override def run(): Unit = {
+      logger.trace(s"${featureState.id} expiring from index")
+      if (state.remove(featureState.id, featureState)) {
+        release(featureState)
+      }
+      logger.trace(s"Current index size: ${state.size()}/${index.size()}")
+    }
+  }
+}
+
+object OffHeapFeatureCache {
+
+  private val gf = new GeometryFactory()
+
+  /**
+    * On-heap state for an off-heap feature. We keep the bounds as primitives instead of keeping a
+    * reference to the (potentially large) feature geometry
+    *
+    * @param id feature id
+    * @param xmin min x of the feature geometry
+    * @param ymin min y of the feature geometry
+    * @param xmax max x of the feature geometry
+    * @param ymax max y of the feature geometry
+    * @param handle handle to the off-heap serialized feature
+    * @param stamp stamp used to validate the off-heap memory
+    * @param time feature time, used for ordering
+    */
+  class OffHeapState private [OffHeapFeatureCache] (
+      val id: String,
+      xmin: Double,
+      ymin: Double,
+      xmax: Double,
+      ymax: Double,
+      val handle: Long,
+      val stamp: Int,
+      val time: Long
+    ) {
+
+    @volatile
+    private [OffHeapFeatureCache] var future: ScheduledFuture[_] = _
+
+    /**
+      * Geometry used for spatial index operations - a point, or the bounding box of the original geometry
+      *
+      * @return
+      */
+    def geometry: Geometry = {
+      if (xmin == xmax && ymin == ymax) {
+        gf.createPoint(new Coordinate(xmin, ymin))
+      } else {
+        gf.toGeometry(new Envelope(xmin, xmax, ymin, ymax))
+      }
+    }
+
+    override def toString: String = s"OffHeapState($id)"
+  }
+}
@@ -0,0 +1,282 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.kafka.index
+
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
+
+import org.locationtech.geomesa.kafka.index.OffHeapSlabStore.{HeaderBytes, LongStack, SizeClass}
+
+/**
+  * Stores byte arrays in off-heap memory. Memory is allocated in fixed-size direct buffers ('slabs'), which are
+  * carved up into chunks by size class, similar to memcached. Freed chunks are recycled within their size class.
+  * Values larger than the largest size class are given a dedicated buffer.
+  *
+  * Values are referenced by a 'handle', which encodes the slab and offset of the chunk. Each chunk is prefixed
+  * with a caller-provided stamp - reads will return null if the stamp no longer matches, i.e. the chunk has been
+  * freed and possibly re-used since the handle was obtained.
+  *
+  * Note: allocation is thread-safe, but a given handle must only be freed by a single thread
+  *
+  * @param slabSize size of each slab, in bytes
+  * @param minChunkSize smallest chunk size, in bytes
+  * @param growthFactor multiplier between successive chunk size classes
+  */
+class OffHeapSlabStore(
+    slabSize: Int = OffHeapSlabStore.DefaultSlabSize,
+    minChunkSize: Int = 64,
+    growthFactor: Double = 1.25
+  ) {
+
+  require(slabSize >= minChunkSize && minChunkSize > HeaderBytes && growthFactor > 1d,
+    s"Invalid slab configuration: $slabSize/$minChunkSize/$growthFactor")
+
+  private val stamps = new AtomicInteger(0)
+
+  // chunk sizes, in ascending order
+  private val sizes: Array[Int] = {
+    val builder = Array.newBuilder[Int]
+    var size = minChunkSize
+    while (size < slabSize) {
+      builder += size
+      // align to 8 bytes
+      size = math.min(slabSize, (math.ceil(size * growthFactor).toInt + 7) & ~7)
+    }
+    builder += slabSize
+    builder.result
+  }
+
+  private val classes = sizes.map(new SizeClass(_, this))
+
+  // note: written while synchronized, read without synchronization
+  // the array reference is volatile, and handles are published through thread-safe collections
+  @volatile
+  private var slabs = new Array[ByteBuffer](16)
+  private var count = 0
+  // indices of freed dedicated slabs, available for re-use - guarded by `this`
+  private val freeSlabs = new LongStack()
+
+  /**
+    * Get a new, unique (modulo wrap-around) non-zero stamp
+    *
+    * @return
+    */
+  def stamp(): Int = {
+    val s = stamps.incrementAndGet()
+    if (s != 0) { s } else { stamp() }
+  }
+
+  /**
+    * Write a value into off-heap memory
+    *
+    * @param bytes value
+    * @param stamp stamp used to validate subsequent reads
+    * @return handle to the stored value
+    */
+  def write(bytes: Array[Byte], stamp: Int): Long = {
+    val size = bytes.length + HeaderBytes
+    val handle = sizeClass(size) match {
+      case -1 => addSlab(ByteBuffer.allocateDirect(size)).toLong << 32
+      case i  => classes(i).allocate()
+    }
+    val slab = slabs((handle >>> 32).toInt)
+    val offset = handle.toInt
+    val buf = slab.duplicate()
+    buf.position(offset + HeaderBytes)
+    buf.put(bytes)
+    slab.putInt(offset + 4, bytes.length)
+    // write the stamp last, so that readers won't validate a partially written chunk
+    slab.putInt(offset, stamp)
+    handle
+  }
+
+  /**
+    * Read a value from off-heap memory
+    *
+    * @param handle handle, as returned from `write`
+    * @param stamp stamp used when writing the value
+    * @return the value, or null if it has been freed
+    */
+  def read(handle: Long, stamp: Int): Array[Byte] = {
+    val slabs = this.slabs
+    val i = (handle >>> 32).toInt
+    val offset = handle.toInt
+    val slab = if (i < slabs.length) { slabs(i) } else { null }
+    if (slab == null || slab.getInt(offset) != stamp) { null } else {
+      val length = slab.getInt(offset + 4)
+      if (length < 0 || length > slab.capacity() - offset - HeaderBytes) { null } else {
+        val bytes = new Array[Byte](length)
+        val buf = slab.duplicate()
+        buf.position(offset + HeaderBytes)
+        buf.get(bytes)
+        // re-check the stamp to ensure the chunk wasn't re-used while we were reading it
+        if (slab.getInt(offset) == stamp) { bytes } else { null }
+      }
+    }
+  }
+
+  /**
+    * Free a value, making its memory available for re-use
+    *
+    * @param handle handle, as returned from `write`
+    * @param stamp stamp used when writing the value
+    */
+  def free(handle: Long, stamp: Int): Unit = {
+    val slabs = this.slabs
+    val i = (handle >>> 32).toInt
+    val offset = handle.toInt
+    val slab = if (i < slabs.length) { slabs(i) } else { null }
+    // if the stamp doesn't match, the store has been cleared out from under us
+    if (slab != null && slab.getInt(offset) == stamp) {
+      val length = slab.getInt(offset + 4)
+      // invalidate any outstanding reads
+      slab.putInt(offset, 0)
+      sizeClass(length + HeaderBytes) match {
+        case -1 => synchronized { this.slabs(i) = null; freeSlabs.push(i) }
+        case c  => classes(c).release(handle)
+      }
+    }
+  }
+
+  /**
+    * Free all values and release the backing memory
+    */
+  def clear(): Unit = synchronized {
+    classes.foreach(_.reset())
+    slabs = new Array[ByteBuffer](16)
+    count = 0
+    freeSlabs.clear()
+  }
+
+  /**
+    * Number of bytes currently allocated off-heap
+    *
+    * @return
+    */
+  def allocated(): Long = {
+    val slabs = this.slabs
+    var sum = 0L
+    var i = 0
+    while (i < slabs.length) {
+      val slab = slabs(i)
+      if (slab != null) {
+        sum += slab.capacity()
+      }
+      i += 1
+    }
+    sum
+  }
+
+  /**
+    * Register a new slab
+    *
+    * @param slab slab
+    * @return index of the slab
+    */
+  private [index] def addSlab(slab: ByteBuffer): Int = synchronized {
+    if (freeSlabs.nonEmpty) {
+      // re-use the index of a freed dedicated slab - any stale handles will fail the stamp check
+      val i = freeSlabs.pop().toInt
+      slabs(i) = slab
+      i
+    } else {
+      if (count == slabs.length) {
+        slabs = java.util.Arrays.copyOf(slabs, count * 2)
+      }
+      slabs(count) = slab
+      count += 1
+      count - 1
+    }
+  }
+
+  private [index] def newSlab(): Int = addSlab(ByteBuffer.allocateDirect(slabSize))
+
+  private [index] def slabCapacity: Int = slabSize
+
+  /**
+    * Gets the smallest size class that will hold the value
+    *
+    * @param size size of the value, including header
+    * @return index of the size class, or -1 if too large
+    */
+  private def sizeClass(size: Int): Int = {
+    val i = java.util.Arrays.binarySearch(sizes, size)
+    if (i >= 0) { i } else if (-i - 1 < sizes.length) { -i - 1 } else { -1 }
+  }
+}
+
+object OffHeapSlabStore {
+
+  val DefaultSlabSize: Int = 1024 * 1024
+
+  // stamp (int) + length (int)
+  private val HeaderBytes = 8
+
+  /**
+    * Chunk allocator for a single size class
+    *
+    * @param chunk size of each chunk, in bytes
+    * @param store parent store
+    */
+  private class SizeClass(chunk: Int, store: OffHeapSlabStore) {
+
+    private val free = new LongStack()
+    private var slab = -1
+    private var offset = 0
+
+    def allocate(): Long = synchronized {
+      if (free.nonEmpty) { free.pop() } else {
+        if (slab == -1 || offset + chunk > store.slabCapacity) {
+          slab = store.newSlab()
+          offset = 0
+        }
+        val handle = (slab.toLong << 32) | offset
+        offset += chunk
+        handle
+      }
+    }
+
+    def release(handle: Long): Unit = synchronized { free.push(handle) }
+
+    def reset(): Unit = synchronized {
+      free.clear()
+      slab = -1
+      offset = 0
+    }
+  }
+
+  /**
+    * Growable stack of primitive longs
+    */
+  private class LongStack {
+
+    private var values = new Array[Long](16)
+    private var size = 0
+
+    def nonEmpty: Boolean = size > 0
+
+    def push(value: Long): Unit = {
+      if (size == values.length) {
+        values = java.util.Arrays.copyOf(values, size * 2)
+      }
+      values(size) = value
+      size += 1
+    }
+
+    def pop(): Long = {
+      size -= 1
+      values(size)
+    }
+
+    def clear(): Unit = {
+      values = new Array[Long](16)
+      size = 0
+    }
+  }
+}
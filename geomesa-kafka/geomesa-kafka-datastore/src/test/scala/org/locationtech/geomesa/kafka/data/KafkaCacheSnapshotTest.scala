@@ -0,0 +1,117 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.kafka.data
+
+import java.nio.file.Files
+
+import org.geotools.filter.text.ecql.ECQL
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.features.ScalaSimpleFeature
+import org.locationtech.geomesa.kafka.data.KafkaDataStore.IndexConfig
+import org.locationtech.geomesa.kafka.index.KafkaFeatureCache
+import org.locationtech.geomesa.utils.geotools.SimpleFeatureTypes
+import org.locationtech.geomesa.utils.io.PathUtils
+import org.opengis.filter.Filter
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.concurrent.duration.Duration
+
+@RunWith(classOf[JUnitRunner])
+class KafkaCacheSnapshotTest extends Specification {
+
+  val sft = SimpleFeatureTypes.createType("track", "trackId:String,dtg:Date,*geom:Point:srid=4326")
+
+  val features = Seq.tabulate(10) { i =>
+    ScalaSimpleFeature.create(sft, s"$i", s"track$i", s"2019-01-01T00:0$i:00.000Z", s"POINT (4$i 5$i)")
+  }
+
+  val config = IndexConfig(Duration.Inf, None, 360, 180, Seq.empty, Seq.empty, lazyDeserialization = true, None)
+
+  def withDir[T](fn: java.io.File => T): T = {
+    val dir = Files.createTempDirectory("gm-kafka-snapshot")
+    try { fn(dir.toFile) } finally {
+      PathUtils.deleteRecursively(dir)
+    }
+  }
+
+  "KafkaCacheSnapshot" should {
+    "write and restore the cache with offsets" in {
+      withDir { dir =>
+        val cache = KafkaFeatureCache(sft, config)
+        val restored = KafkaFeatureCache(sft, config)
+        try {
+          val snapshot = new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute"))
+          features.foreach(cache.put)
+          // no messages tracked yet
+          snapshot.write(cache) must beFalse
+          snapshot.update(0, 10L)
+          snapshot.update(1, 5L)
+          snapshot.update(0, 11L)
+          snapshot.write(cache) must beTrue
+          // no new messages since last snapshot
+          snapshot.write(cache) must beFalse
+
+          val offsets = new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute")).restore(restored, Duration.Inf)
+          offsets mustEqual Map(0 -> 11L, 1 -> 5L)
+          restored.size() mustEqual 10
+          restored.query(Filter.INCLUDE).toSeq must containTheSameElementsAs(features)
+          val filter = ECQL.toFilter("bbox(geom,40,50,43.5,53.5)")
+          restored.query(filter).toSeq must containTheSameElementsAs(features.take(4))
+        } finally {
+          cache.close()
+          restored.close()
+        }
+      }
+    }
+
+    "ignore missing or incompatible snapshots" in {
+      withDir { dir =>
+        val cache = KafkaFeatureCache(sft, config)
+        val restored = KafkaFeatureCache(sft, config)
+        try {
+          new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute")).restore(restored, Duration.Inf) must beEmpty
+
+          val snapshot = new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute"))
+          features.foreach(cache.put)
+          snapshot.update(0, 10L)
+          snapshot.write(cache) must beTrue
+
+          val updated = SimpleFeatureTypes.createType("track", "trackId:String,name:String,dtg:Date,*geom:Point:srid=4326")
+          new KafkaCacheSnapshot(updated, "test-topic", dir, Duration("1 minute")).restore(restored, Duration.Inf) must beEmpty
+          restored.size() mustEqual 0
+        } finally {
+          cache.close()
+          restored.close()
+        }
+      }
+    }
+
+    "skip features from expired snapshots" in {
+      withDir { dir =>
+        val cache = KafkaFeatureCache(sft, config)
+        val restored = KafkaFeatureCache(sft, config)
+        try {
+          val snapshot = new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute"))
+          features.foreach(cache.put)
+          snapshot.update(0, 10L)
+          snapshot.write(cache) must beTrue
+          Thread.sleep(10)
+
+          val offsets = new KafkaCacheSnapshot(sft, "test-topic", dir, Duration("1 minute")).restore(restored, Duration("1ms"))
+          offsets mustEqual Map(0 -> 10L)
+          restored.size() mustEqual 0
+        } finally {
+          cache.close()
+          restored.close()
+        }
+      }
+    }
+  }
+}
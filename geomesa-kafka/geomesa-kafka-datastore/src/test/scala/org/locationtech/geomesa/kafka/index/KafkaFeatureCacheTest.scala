@@ -54,7 +54,10 @@ class KafkaFeatureCacheTest extends Specification with Mockito {
     }
     Seq(
       KafkaFeatureCache(sft, config),
-      KafkaFeatureCache(sft, config.copy(cqAttributes = Seq(("geom", CQIndexType.GEOMETRY))))
+      KafkaFeatureCache(sft, config.copy(cqAttributes = Seq(("geom", CQIndexType.GEOMETRY)))),
+      KafkaFeatureCache(sft, config.copy(offHeap = true)),
+      KafkaFeatureCache(sft, config.copy(stripedIndex = true)),
+      KafkaFeatureCache(sft, config.copy(offHeap = true, stripedIndex = true))
     )
   }
 
@@ -0,0 +1,84 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.kafka.index
+
+import java.nio.charset.StandardCharsets
+
+import org.junit.runner.RunWith
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+@RunWith(classOf[JUnitRunner])
+class OffHeapSlabStoreTest extends Specification {
+
+  def bytes(s: String): Array[Byte] = s.getBytes(StandardCharsets.UTF_8)
+
+  "OffHeapSlabStore" should {
+    "write and read values" in {
+      val store = new OffHeapSlabStore(slabSize = 1024)
+      val values = Seq("foo", "bar" * 10, "baz" * 100).map(bytes)
+      val handles = values.map { v =>
+        val stamp = store.stamp()
+        (store.write(v, stamp), stamp)
+      }
+      foreach(values.zip(handles)) { case (v, (handle, stamp)) =>
+        store.read(handle, stamp) mustEqual v
+      }
+    }
+
+    "store large values in dedicated buffers" in {
+      val store = new OffHeapSlabStore(slabSize = 1024)
+      val value = Array.fill[Byte](4096)(1)
+      val stamp = store.stamp()
+      val handle = store.write(value, stamp)
+      store.read(handle, stamp) mustEqual value
+      store.allocated() mustEqual 4096 + 8
+      store.free(handle, stamp)
+      store.read(handle, stamp) must beNull
+      store.allocated() mustEqual 0
+    }
+
+    "re-use the slots of freed dedicated buffers" in {
+      val store = new OffHeapSlabStore(slabSize = 1024)
+      val value = Array.fill[Byte](4096)(1)
+      val stamp1 = store.stamp()
+      val handle1 = store.write(value, stamp1)
+      store.free(handle1, stamp1)
+      val stamp2 = store.stamp()
+      val handle2 = store.write(value, stamp2)
+      handle2 mustEqual handle1
+      store.read(handle1, stamp1) must beNull
+      store.read(handle2, stamp2) mustEqual value
+      store.allocated() mustEqual 4096 + 8
+    }
+
+    "re-use freed chunks and invalidate stale reads" in {
+      val store = new OffHeapSlabStore(slabSize = 1024)
+      val stamp1 = store.stamp()
+      val handle1 = store.write(bytes("foo"), stamp1)
+      store.free(handle1, stamp1)
+      store.read(handle1, stamp1) must beNull
+      val stamp2 = store.stamp()
+      val handle2 = store.write(bytes("bar"), stamp2)
+      handle2 mustEqual handle1
+      store.read(handle1, stamp1) must beNull
+      store.read(handle2, stamp2) mustEqual bytes("bar")
+      store.allocated() mustEqual 1024
+    }
+
+    "clear all values" in {
+      val store = new OffHeapSlabStore(slabSize = 1024)
+      val stamp = store.stamp()
+      val handle = store.write(bytes("foo"), stamp)
+      store.clear()
+      store.read(handle, stamp) must beNull
+      store.allocated() mustEqual 0
+    }
+  }
+}
@@ -58,6 +58,11 @@ class KuduDataStore(val client: KuduClient, override val config: KuduDataStoreCo
     super.preSchemaCreate(sft)
   }
 
+  override def getAuthorizations: Seq[String] = {
+    import scala.collection.JavaConverters._
+    config.authProvider.getAuthorizations.asScala
+  }
+
   override def getQueryPlan(query: Query, index: Option[String], explainer: Explainer): Seq[KuduQueryPlan] = {
     super.getQueryPlan(query, index, explainer).asInstanceOf[Seq[KuduQueryPlan]]
   }
@@ -120,7 +120,8 @@ class KuduIndexAdapter(ds: KuduDataStore) extends IndexAdapter[KuduDataStore] {
       val max = hints.getMaxFeatures
       val project = hints.getProjection
       val threads = ds.config.queryThreads
-      ScanPlan(filter, tables, ranges, predicates, ecql, adapter, sort, max, project, threads)
+      val priority = hints.getScanPriority
+      ScanPlan(filter, tables, ranges, predicates, ecql, adapter, sort, max, project, threads, priority)
     }
   }
 
@@ -11,7 +11,7 @@ package org.locationtech.geomesa.kudu.data
 import org.apache.kudu.client.{KuduPredicate, PartialRow}
 import org.locationtech.geomesa.index.api.QueryPlan.{FeatureReducer, ResultsToFeatures}
 import org.locationtech.geomesa.index.api.{FilterStrategy, QueryPlan}
-import org.locationtech.geomesa.index.utils.Explainer
+import org.locationtech.geomesa.index.utils.{Explainer, ScanScheduler}
 import org.locationtech.geomesa.index.utils.Reprojection.QueryReferenceSystems
 import org.locationtech.geomesa.kudu.result.KuduResultAdapter
 import org.locationtech.geomesa.kudu.result.KuduResultAdapter.EmptyAdapter
@@ -76,7 +76,8 @@ object KuduQueryPlan {
       sort: Option[Seq[(String, Boolean)]],
       maxFeatures: Option[Int],
       projection: Option[QueryReferenceSystems],
-      numThreads: Int
+      numThreads: Int,
+      priority: Int = ScanScheduler.DefaultPriority
     ) extends KuduQueryPlan {
 
     import scala.collection.JavaConverters._
@@ -90,7 +91,7 @@ object KuduQueryPlan {
 
       if (numThreads > 1 || tables.lengthCompare(1) > 0) {
         CloseableIterator(tables.iterator).flatMap { table =>
-          val scan = KuduBatchScan(ds.client, table, adapter.columns, ranges, predicates, numThreads)
+          val scan = KuduBatchScan(ds.client, table, adapter.columns, ranges, predicates, numThreads, priority)
           adapter.adapt(scan.flatMap(_.iterator.asScala))
         }
       } else {
@@ -8,12 +8,10 @@
 
 package org.locationtech.geomesa.kudu.utils
 
-import java.util.concurrent._
-
 import org.apache.kudu.Schema
 import org.apache.kudu.client._
 import org.apache.kudu.util.Slice
-import org.locationtech.geomesa.index.utils.AbstractBatchScan
+import org.locationtech.geomesa.index.utils.{AbstractBatchScan, ScanScheduler}
 import org.locationtech.geomesa.kudu.utils.KuduBatchScan.KuduAbstractBatchScan
 import org.locationtech.geomesa.utils.collection.CloseableIterator
 
@@ -32,6 +30,7 @@ import scala.collection.JavaConverters._
   * @param predicates predicates
   * @param threads number of threads
   * @param buffer size of output buffer
+  * @param priority scan priority
   */
 private class KuduBatchScan(
     client: KuduClient,
@@ -40,23 +39,22 @@ private class KuduBatchScan(
     ranges: Seq[(Option[PartialRow], Option[PartialRow])],
     predicates: Seq[KuduPredicate],
     threads: Int,
-    buffer: Int
-  ) extends KuduAbstractBatchScan(ranges, threads, buffer, KuduBatchScan.Sentinel) {
+    buffer: Int,
+    priority: Int
+  ) extends KuduAbstractBatchScan(ranges, threads, buffer, KuduBatchScan.Sentinel, priority) {
 
-  override protected def scan(range: (Option[PartialRow], Option[PartialRow]),
-                              out: BlockingQueue[RowResultIterator]): Unit = {
+  override protected def scan(
+      range: (Option[PartialRow], Option[PartialRow])): CloseableIterator[RowResultIterator] = {
     val builder = client.newScannerBuilder(table).setProjectedColumnIndexes(columns)
     range._1.foreach(builder.lowerBound)
     range._2.foreach(builder.exclusiveUpperBound)
     predicates.foreach(builder.addPredicate)
     val scanner = builder.build()
-    try {
-      while (scanner.hasMoreRows) {
-        out.put(scanner.nextRows())
-      }
-    } finally {
-      scanner.close()
+    val results = new Iterator[RowResultIterator] {
+      override def hasNext: Boolean = scanner.hasMoreRows
+      override def next(): RowResultIterator = scanner.nextRows()
     }
+    CloseableIterator(results, scanner.close())
   }
 }
 
@@ -79,9 +77,10 @@ object KuduBatchScan {
       columns: Seq[String],
       ranges: Seq[(Option[PartialRow], Option[PartialRow])],
       predicates: Seq[KuduPredicate],
-      threads: Int): CloseableIterator[RowResultIterator] = {
+      threads: Int,
+      priority: Int = ScanScheduler.DefaultPriority): CloseableIterator[RowResultIterator] = {
     val kuduTable = client.openTable(table)
     val cols = columns.map(kuduTable.getSchema.getColumnIndex).asJava.asInstanceOf[java.util.List[Integer]]
-    new KuduBatchScan(client, kuduTable, cols, ranges, predicates, threads, 1000).start()
+    new KuduBatchScan(client, kuduTable, cols, ranges, predicates, threads, 1000, priority).start()
   }
 }
@@ -82,6 +82,8 @@ class RedisDataStore(val connection: JedisPool, override val config: RedisDataSt
     aging.remove(sft)
   }
 
+  override def getAuthorizations: Seq[String] = config.authProvider.getAuthorizations.asScala
+
   override def getQueryPlan(query: Query, index: Option[String], explainer: Explainer): Seq[RedisQueryPlan] =
     super.getQueryPlan(query, index, explainer).asInstanceOf[Seq[RedisQueryPlan]]
 
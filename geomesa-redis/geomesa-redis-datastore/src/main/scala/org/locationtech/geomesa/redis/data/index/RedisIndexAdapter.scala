@@ -79,8 +79,9 @@ class RedisIndexAdapter(ds: RedisDataStore) extends IndexAdapter[RedisDataStore]
       val sort = hints.getSortFields
       val max = hints.getMaxFeatures
       val project = hints.getProjection
+      val priority = hints.getScanPriority
 
-      ZLexPlan(filter, tables, ranges, ds.config.pipeline, ecql, results, reducer, sort, max, project)
+      ZLexPlan(filter, tables, ranges, ds.config.pipeline, ecql, results, reducer, sort, max, project, priority)
     }
   }
 
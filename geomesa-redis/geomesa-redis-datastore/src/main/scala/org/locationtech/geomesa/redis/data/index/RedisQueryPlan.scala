@@ -14,7 +14,7 @@ import java.nio.charset.StandardCharsets
 import org.locationtech.geomesa.index.PartitionParallelScan
 import org.locationtech.geomesa.index.api.QueryPlan.{FeatureReducer, ResultsToFeatures}
 import org.locationtech.geomesa.index.api.{BoundedByteRange, FilterStrategy, QueryPlan}
-import org.locationtech.geomesa.index.utils.Explainer
+import org.locationtech.geomesa.index.utils.{Explainer, ScanScheduler}
 import org.locationtech.geomesa.index.utils.Reprojection.QueryReferenceSystems
 import org.locationtech.geomesa.redis.data.util.RedisBatchScan
 import org.locationtech.geomesa.utils.collection.{CloseableIterator, SelfClosingIterator}
@@ -99,7 +99,8 @@ object RedisQueryPlan {
       reducer: Option[FeatureReducer],
       sort: Option[Seq[(String, Boolean)]],
       maxFeatures: Option[Int],
-      projection: Option[QueryReferenceSystems]
+      projection: Option[QueryReferenceSystems],
+      priority: Int = ScanScheduler.DefaultPriority
     ) extends RedisQueryPlan {
 
     import scala.collection.JavaConverters._
@@ -132,7 +133,7 @@ object RedisQueryPlan {
         }
         result.result.iterator.flatMap(_.get.iterator().asScala)
       } else {
-        RedisBatchScan(ds.connection, table, ranges, ds.config.queryThreads)
+        RedisBatchScan(ds.connection, table, ranges, ds.config.queryThreads, priority)
       }
     }
   }
@@ -8,27 +8,27 @@
 
 package org.locationtech.geomesa.redis.data.util
 
-import java.util.concurrent.BlockingQueue
-
 import org.locationtech.geomesa.index.api.BoundedByteRange
-import org.locationtech.geomesa.index.utils.AbstractBatchScan
+import org.locationtech.geomesa.index.utils.{AbstractBatchScan, ScanScheduler}
 import org.locationtech.geomesa.utils.collection.CloseableIterator
 import org.locationtech.geomesa.utils.io.WithClose
 import redis.clients.jedis.JedisPool
 
+import scala.collection.JavaConverters._
+
 private class RedisBatchScan(
     connection: JedisPool,
     table: Array[Byte],
     ranges: Seq[BoundedByteRange],
     threads: Int,
-    buffer: Int
-  ) extends AbstractBatchScan[BoundedByteRange, Array[Byte]](ranges, threads, buffer, RedisBatchScan.Sentinel) {
-
-  override protected def scan(range: BoundedByteRange, out: BlockingQueue[Array[Byte]]): Unit = {
-    val iter = WithClose(connection.getResource)(_.zrangeByLex(table, range.lower, range.upper)).iterator()
-    while (iter.hasNext) {
-      out.put(iter.next())
-    }
+    buffer: Int,
+    priority: Int
+  ) extends AbstractBatchScan[BoundedByteRange, Array[Byte]](
+      ranges, threads, buffer, RedisBatchScan.Sentinel, priority) {
+
+  override protected def scan(range: BoundedByteRange): CloseableIterator[Array[Byte]] = {
+    val results = WithClose(connection.getResource)(_.zrangeByLex(table, range.lower, range.upper))
+    CloseableIterator(results.iterator.asScala)
   }
 }
 
@@ -40,6 +40,7 @@ object RedisBatchScan {
       connection: JedisPool,
       table: Array[Byte],
       ranges: Seq[BoundedByteRange],
-      threads: Int): CloseableIterator[Array[Byte]] =
-    new RedisBatchScan(connection, table, ranges, threads, 100000).start()
+      threads: Int,
+      priority: Int = ScanScheduler.DefaultPriority): CloseableIterator[Array[Byte]] =
+    new RedisBatchScan(connection, table, ranges, threads, 100000, priority).start()
 }
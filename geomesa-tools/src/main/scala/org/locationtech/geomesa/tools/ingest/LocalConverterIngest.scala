@@ -55,6 +55,17 @@ class LocalConverterIngest(
     */
   protected def features(iter: CloseableIterator[SimpleFeature]): CloseableIterator[SimpleFeature] = iter
 
+  /**
+    * Hook to allow modification of the feature writers used to persist features. Writers will be pooled and
+    * used by a single thread at a time
+    *
+    * @param ds data store
+    * @param sft simple feature type
+    * @return
+    */
+  protected def createWriter(ds: DataStore, sft: SimpleFeatureType): FeatureWriter[SimpleFeatureType, SimpleFeature] =
+    ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT)
+
   override protected def runIngest(ds: DataStore, sft: SimpleFeatureType, callback: StatusCallback): Unit = {
     Command.user.info("Running ingestion in local mode")
 
@@ -83,7 +94,7 @@ class LocalConverterIngest(
     val bytesRead = new AtomicLong(0L)
 
     val converters = CloseablePool(SimpleFeatureConverter(sft, converterConfig), threads)
-    val writers = CloseablePool(ds.getFeatureWriterAppend(sft.getTypeName, Transaction.AUTO_COMMIT), threads)
+    val writers = CloseablePool(createWriter(ds, sft), threads)
     val batches = new ConcurrentHashMap[FeatureWriter[SimpleFeatureType, SimpleFeature], AtomicInteger](threads)
 
     try {
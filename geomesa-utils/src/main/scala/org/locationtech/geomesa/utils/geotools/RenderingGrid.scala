@@ -284,6 +284,17 @@ class RenderingGrid(env: Envelope, xSize: Int, ySize: Int) extends LazyLogging {
     */
   def iterator: Iterator[((Int, Int), Double)] = pixels.iterator
 
+  /**
+    * Merge the pixels rendered in another grid into this one. The other grid must have been created
+    * with the same envelope and dimensions
+    *
+    * @param other grid to merge
+    */
+  def +=(other: RenderingGrid): Unit = {
+    other.pixels.foreach { case (xy, weight) => pixels(xy) += weight }
+    count += other.count
+  }
+
   /**
     * Clear any rendered pixels
     */
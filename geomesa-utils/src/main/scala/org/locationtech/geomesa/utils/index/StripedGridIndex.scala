@@ -0,0 +1,423 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.utils.index
+
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.StampedLock
+
+import com.typesafe.scalalogging.LazyLogging
+import org.locationtech.geomesa.utils.geotools.GridSnap
+import org.locationtech.geomesa.utils.index.StripedGridIndex.{Cell, Table}
+import org.locationtech.jts.geom.{Envelope, Geometry, Point}
+
+import scala.annotation.tailrec
+
+/**
+  * Spatial index that breaks up space into discrete buckets to index points. Functionally equivalent
+  * to `BucketIndex`, but optimized for high write throughput:
+  *
+  *   - each bucket is an open-addressing hash table backed by arrays, allocated on first insert
+  *   - buckets are guarded by a fixed number of striped `StampedLock`s, instead of a map per bucket
+  *   - reads use optimistic locking, and only block if they overlap with a write to the same stripe
+  *   - points can be inserted and removed by x/y, without creating a geometry
+  *
+  * Queries return a snapshot of each bucket as it is iterated, so (like `BucketIndex`) iterators are weakly
+  * consistent and are not affected by concurrent modifications.
+  *
+  * Does not support non-point inserts
+  *
+  * @param xBuckets number of x buckets
+  * @param yBuckets number of y buckets
+  * @param extents area to be indexed
+  * @param stripes number of locks used to guard the buckets, will be rounded up to a power of 2
+  * @tparam T index value binding
+  */
+class StripedGridIndex[T](xBuckets: Int = 360,
+                          yBuckets: Int = 180,
+                          extents: Envelope = new Envelope(-180.0, 180.0, -90.0, 90.0),
+                          stripes: Int = StripedGridIndex.DefaultStripes)
+    extends SpatialIndex[T] with LazyLogging {
+
+  // buckets are stored in a flattened array, and are created lazily
+  private val cells = new Array[Cell](xBuckets * yBuckets)
+
+  private val locks = Array.fill(Integer.highestOneBit(math.max(1, stripes - 1)) << 1)(new StampedLock())
+  private val mask = locks.length - 1
+
+  private val count = new LongAdder()
+
+  private val gridSnap = new GridSnap(extents, xBuckets, yBuckets)
+
+  /**
+    * Insert a value indexed by a point
+    *
+    * @param x x coordinate
+    * @param y y coordinate
+    * @param key unique value key
+    * @param item value to store
+    */
+  override def insert(x: Double, y: Double, key: String, item: T): Unit = {
+    val cell = snap(x, y)
+    val lock = locks(cell & mask)
+    val stamp = lock.writeLock()
+    try {
+      var c = cells(cell)
+      if (c == null) {
+        c = new Cell()
+        cells(cell) = c
+      }
+      if (c.put(key, item.asInstanceOf[AnyRef])) {
+        count.increment()
+      }
+    } finally {
+      lock.unlockWrite(stamp)
+    }
+  }
+
+  /**
+    * Remove a value based on its indexed point
+    *
+    * @param x x coordinate
+    * @param y y coordinate
+    * @param key unique value key
+    * @return value, if it exists, or null
+    */
+  override def remove(x: Double, y: Double, key: String): T = {
+    val cell = snap(x, y)
+    val lock = locks(cell & mask)
+    val stamp = lock.writeLock()
+    try {
+      val c = cells(cell)
+      val removed = if (c == null) { null } else { c.remove(key) }
+      if (removed != null) {
+        count.decrement()
+      }
+      removed.asInstanceOf[T]
+    } finally {
+      lock.unlockWrite(stamp)
+    }
+  }
+
+  /**
+    * Retrieves a value by its indexed point and key
+    *
+    * @param x x coordinate
+    * @param y y coordinate
+    * @param key unique value key
+    * @return value, if it exists, or null
+    */
+  override def get(x: Double, y: Double, key: String): T = {
+    val cell = snap(x, y)
+    val lock = locks(cell & mask)
+    var stamp = lock.tryOptimisticRead()
+    var result = lookup(cell, key)
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock()
+      try { result = lookup(cell, key) } finally {
+        lock.unlockRead(stamp)
+      }
+    }
+    result.asInstanceOf[T]
+  }
+
+  override def insert(geom: Geometry, key: String, value: T): Unit = {
+    val pt = geom.asInstanceOf[Point]
+    insert(pt.getX, pt.getY, key, value)
+  }
+
+  override def insert(envelope: Envelope, key: String, item: T): Unit = {
+    if (envelope.getArea > 0) {
+      logger.warn(s"This index only supports point inserts, but received $envelope - will insert using the centroid")
+    }
+    insert((envelope.getMinX + envelope.getMaxX) / 2.0, (envelope.getMinY + envelope.getMaxY) / 2.0, key, item)
+  }
+
+  override def remove(geom: Geometry, key: String): T = {
+    val pt = geom.asInstanceOf[Point]
+    remove(pt.getX, pt.getY, key)
+  }
+
+  override def remove(envelope: Envelope, key: String): T =
+    remove((envelope.getMinX + envelope.getMaxX) / 2.0, (envelope.getMinY + envelope.getMaxY) / 2.0, key)
+
+  override def get(geom: Geometry, key: String): T = {
+    val pt = geom.asInstanceOf[Point]
+    get(pt.getX, pt.getY, key)
+  }
+
+  override def get(envelope: Envelope, key: String): T =
+    get((envelope.getMinX + envelope.getMaxX) / 2.0, (envelope.getMinY + envelope.getMaxY) / 2.0, key)
+
+  override def query(xmin: Double, ymin: Double, xmax: Double, ymax: Double): Iterator[T] =
+    new CellIterator(snapX(xmin), snapX(xmax), snapY(ymin), snapY(ymax))
+
+  override def query(): Iterator[T] = new CellIterator(0, xBuckets - 1, 0, yBuckets - 1)
+
+  override def size(): Int = count.intValue()
+
+  override def clear(): Unit = {
+    var i = 0
+    while (i < cells.length) {
+      val lock = locks(i & mask)
+      val stamp = lock.writeLock()
+      try {
+        val c = cells(i)
+        if (c != null) {
+          count.add(-c.size)
+          cells(i) = null
+        }
+      } finally {
+        lock.unlockWrite(stamp)
+      }
+      i += 1
+    }
+  }
+
+  private def lookup(cell: Int, key: String): AnyRef = {
+    val c = cells(cell)
+    if (c == null) { null } else { c.get(key) }
+  }
+
+  private def snap(x: Double, y: Double): Int = snapX(x) * yBuckets + snapY(y)
+
+  private def snapX(x: Double): Int = {
+    val i = gridSnap.i(x)
+    if (i != -1) { i } else if (x < extents.getMinX) { 0 } else { xBuckets - 1 }
+  }
+
+  private def snapY(y: Double): Int = {
+    val j = gridSnap.j(y)
+    if (j != -1) { j } else if (y < extents.getMinY) { 0 } else { yBuckets - 1 }
+  }
+
+  /**
+    * Iterator over a range of buckets. Each bucket is copied out under its lock as it is reached
+    */
+  class CellIterator private [StripedGridIndex] (mini: Int, maxi: Int, minj: Int, maxj: Int) extends Iterator[T] {
+
+    private var i = mini
+    private var j = minj
+
+    private var values: Array[AnyRef] = Table.Empty
+    private var size = 0
+    private var pos = 0
+
+    load(i * yBuckets + j)
+
+    @tailrec
+    override final def hasNext: Boolean = pos < size || {
+      if (i == maxi && j == maxj) { false } else {
+        if (j < maxj) {
+          j += 1
+        } else {
+          j = minj
+          i += 1
+        }
+        load(i * yBuckets + j)
+        hasNext
+      }
+    }
+
+    override def next(): T = {
+      val value = values(pos)
+      pos += 1
+      value.asInstanceOf[T]
+    }
+
+    private def load(cell: Int): Unit = {
+      val lock = locks(cell & mask)
+      var stamp = lock.tryOptimisticRead()
+      copy(cell)
+      if (!lock.validate(stamp)) {
+        stamp = lock.readLock()
+        try { copy(cell) } finally {
+          lock.unlockRead(stamp)
+        }
+      }
+    }
+
+    private def copy(cell: Int): Unit = {
+      pos = 0
+      size = 0
+      val c = cells(cell)
+      if (c != null) {
+        // read the table once, so that we have a consistent view of the arrays even if the cell is resized
+        val table = c.table
+        if (values.length < table.values.length) {
+          values = new Array[AnyRef](table.values.length)
+        }
+        var k = 0
+        while (k < table.values.length) {
+          val value = table.values(k)
+          if (value != null) {
+            values(size) = value
+            size += 1
+          }
+          k += 1
+        }
+      }
+    }
+  }
+}
+
+object StripedGridIndex {
+
+  val DefaultStripes: Int = 256
+
+  private val InitialCapacity = 4
+
+  /**
+    * Hash table arrays. Arrays are replaced as a unit when resizing, so that optimistic readers
+    * always see arrays of a consistent length
+    *
+    * @param hashes key hashes
+    * @param keys keys
+    * @param values values
+    */
+  private class Table(val hashes: Array[Int], val keys: Array[String], val values: Array[AnyRef]) {
+    def this(capacity: Int) = this(new Array[Int](capacity), new Array[String](capacity), new Array[AnyRef](capacity))
+  }
+
+  private object Table {
+    val Empty: Array[AnyRef] = Array.empty
+  }
+
+  /**
+    * A single bucket, implemented as an open-addressing hash table with linear probing.
+    *
+    * Writes must be externally synchronized. Reads may be done optimistically, but must be validated
+    * afterwards, as they may return incorrect results if there is a concurrent write
+    */
+  private class Cell {
+
+    var table = new Table(InitialCapacity)
+    var size = 0
+
+    def get(key: String): AnyRef = {
+      val t = table
+      val mask = t.keys.length - 1
+      val hash = spread(key.hashCode)
+      var i = hash & mask
+      var probes = 0
+      while (probes <= mask) {
+        val k = t.keys(i)
+        if (k == null) {
+          return null
+        } else if (t.hashes(i) == hash && k == key) {
+          return t.values(i)
+        }
+        i = (i + 1) & mask
+        probes += 1
+      }
+      null
+    }
+
+    /**
+      * Insert or update a value
+      *
+      * @param key key
+      * @param value value
+      * @return true if the key is new, false if it was an update
+      */
+    def put(key: String, value: AnyRef): Boolean = {
+      if ((size + 1) * 4 > table.keys.length * 3) {
+        resize()
+      }
+      val t = table
+      val mask = t.keys.length - 1
+      val hash = spread(key.hashCode)
+      var i = hash & mask
+      while (true) {
+        val k = t.keys(i)
+        if (k == null) {
+          t.hashes(i) = hash
+          t.values(i) = value
+          t.keys(i) = key
+          size += 1
+          return true
+        } else if (t.hashes(i) == hash && k == key) {
+          t.values(i) = value
+          return false
+        }
+        i = (i + 1) & mask
+      }
+      false // unreachable, as we always keep free slots
+    }
+
+    def remove(key: String): AnyRef = {
+      val t = table
+      val mask = t.keys.length - 1
+      val hash = spread(key.hashCode)
+      var i = hash & mask
+      while (true) {
+        val k = t.keys(i)
+        if (k == null) {
+          return null
+        } else if (t.hashes(i) == hash && k == key) {
+          val value = t.values(i)
+          delete(t, i)
+          size -= 1
+          return value
+        }
+        i = (i + 1) & mask
+      }
+      null // unreachable, as we always keep free slots
+    }
+
+    /**
+      * Removes the entry at the given slot, and shifts back any subsequent entries in the probe
+      * sequence, so that we don't need tombstones
+      *
+      * @param t table
+      * @param slot slot to remove
+      */
+    private def delete(t: Table, slot: Int): Unit = {
+      val mask = t.keys.length - 1
+      var hole = slot
+      var i = (slot + 1) & mask
+      while (t.keys(i) != null) {
+        val ideal = t.hashes(i) & mask
+        // move the entry if its ideal slot is not between the hole and its current position
+        if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+          t.hashes(hole) = t.hashes(i)
+          t.keys(hole) = t.keys(i)
+          t.values(hole) = t.values(i)
+          hole = i
+        }
+        i = (i + 1) & mask
+      }
+      t.keys(hole) = null
+      t.values(hole) = null
+    }
+
+    private def resize(): Unit = {
+      val old = table
+      val t = new Table(old.keys.length * 2)
+      val mask = t.keys.length - 1
+      var i = 0
+      while (i < old.keys.length) {
+        val k = old.keys(i)
+        if (k != null) {
+          var j = old.hashes(i) & mask
+          while (t.keys(j) != null) {
+            j = (j + 1) & mask
+          }
+          t.hashes(j) = old.hashes(i)
+          t.keys(j) = k
+          t.values(j) = old.values(i)
+        }
+        i += 1
+      }
+      table = t
+    }
+  }
+
+  // spread the hash bits, as strings with common prefixes tend to cluster in the low bits
+  private def spread(hash: Int): Int = hash ^ (hash >>> 16)
+}
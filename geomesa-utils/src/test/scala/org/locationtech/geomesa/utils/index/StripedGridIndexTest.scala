@@ -0,0 +1,122 @@
+/***********************************************************************
+ * Copyright (c) 2013-2019 Commonwealth Computer Research, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution and is available at
+ * http://www.opensource.org/licenses/apache2.0.php.
+ ***********************************************************************/
+
+package org.locationtech.geomesa.utils.index
+
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{Executors, TimeUnit}
+
+import org.junit.runner.RunWith
+import org.locationtech.geomesa.utils.text.WKTUtils
+import org.locationtech.jts.geom.{Envelope, Point}
+import org.specs2.mutable.Specification
+import org.specs2.runner.JUnitRunner
+
+import scala.util.Random
+
+@RunWith(classOf[JUnitRunner])
+class StripedGridIndexTest extends Specification {
+
+  "StripedGridIndex" should {
+    "be thread safe" in {
+      val numFeatures = 100
+      val points = (0 until numFeatures).map(i => WKTUtils.read(s"POINT(45.$i 50)").asInstanceOf[Point]).toArray
+      val index = new StripedGridIndex[Int]()
+      val running = new AtomicBoolean(true)
+
+      val es = Executors.newFixedThreadPool(3)
+      es.submit(new Runnable(){
+        override def run(): Unit = {
+          val r = new Random
+          while (running.get) {
+            val i = r.nextInt(numFeatures)
+            index.insert(points(i), i.toString, i)
+          }
+        }
+      })
+      es.submit(new Runnable(){
+        override def run(): Unit = {
+          val r = new Random
+          while (running.get) {
+            val i = r.nextInt(numFeatures)
+            index.query(points(i).getEnvelopeInternal).foreach(_ => Unit)
+          }
+        }
+      })
+      es.submit(new Runnable(){
+        override def run(): Unit = {
+          val r = new Random
+          while (running.get) {
+            val i = r.nextInt(numFeatures)
+            index.remove(points(i), i.toString)
+          }
+        }
+      })
+
+      es.shutdown()
+      Thread.sleep(1000)
+      running.set(false)
+      es.awaitTermination(1, TimeUnit.SECONDS)
+
+      index.size() mustEqual index.query().length
+    }
+
+    "support insert by point and query" in {
+      val index = new StripedGridIndex[Point]()
+      val pts = for (x <- -180 to 180; y <- -90 to 90) yield { WKTUtils.read(s"POINT($x $y)").asInstanceOf[Point] }
+      pts.foreach { pt =>
+        index.insert(pt.getX, pt.getY, pt.toString, pt)
+      }
+      index.size() mustEqual pts.length
+      foreach(pts) { pt =>
+        index.query(pt.getEnvelopeInternal).toSeq must contain(pt)
+        index.get(pt.getX, pt.getY, pt.toString) mustEqual pt
+      }
+    }
+
+    "support updates and removes within a single bucket" in {
+      val index = new StripedGridIndex[String]()
+      val keys = (0 until 1000).map(i => s"key$i")
+      keys.foreach(k => index.insert(10.5, 10.5, k, k))
+      keys.foreach(k => index.insert(10.5, 10.5, k, s"$k-updated"))
+      index.size() mustEqual 1000
+      index.query().toSeq must containTheSameElementsAs(keys.map(k => s"$k-updated"))
+
+      val (removed, kept) = keys.partition(_.hashCode % 3 == 0)
+      foreach(removed)(k => index.remove(10.5, 10.5, k) mustEqual s"$k-updated")
+      index.size() mustEqual kept.length
+      foreach(removed)(k => index.get(10.5, 10.5, k) must beNull)
+      foreach(kept)(k => index.get(10.5, 10.5, k) mustEqual s"$k-updated")
+      index.query(10, 10, 11, 11).toSeq must containTheSameElementsAs(kept.map(k => s"$k-updated"))
+
+      index.clear()
+      index.size() mustEqual 0
+      index.query() must beEmpty
+    }
+
+    "support envelopes" in {
+      val index = new StripedGridIndex[String]()
+      val pts = for (x <- -180 to 180; y <- -90 to 90) yield {
+        s"POINT($x $y)"
+      }
+      pts.foreach { pt =>
+        index.insert(WKTUtils.read(pt), pt, pt)
+      }
+      val bbox = new Envelope(-10, -8, 8, 10)
+      val results = index.query(bbox).toSeq
+      results must haveLength(9)
+      results must containTheSameElementsAs(for (x <- -10 to -8; y <- 8 to 10) yield s"POINT($x $y)")
+
+      bbox.init(-10.5, -8.5, 8.5, 10.5)
+      val results2 = index.query(bbox).toSeq
+      // fine grain filtering is not applied - we want everything that *might* intersect
+      results2 must haveLength(9)
+      results2 must containTheSameElementsAs(for (x <- -11 to -9; y <- 8 to 10) yield s"POINT($x $y)")
+    }
+  }
+}